@@ -1,19 +1,13 @@
 package com.mdp_grp12.android_grp12.android_grp12;
 
-import android.animation.Animator;
-import android.animation.AnimatorListenerAdapter;
-import android.animation.AnimatorSet;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.content.Intent;
-import android.content.IntentFilter;
-import android.content.SharedPreferences;
 import android.graphics.Color;
 import android.os.Bundle;
 import android.os.SystemClock;
 import android.util.Log;
 import android.util.TypedValue;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.MenuInflater;
 import android.view.MenuItem;
@@ -28,141 +22,121 @@ import android.widget.PopupMenu;
 import android.widget.PopupWindow;
 import android.widget.TextView;
 import android.widget.Toast;
-import android.animation.ObjectAnimator;
 
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.mdp_grp12.android_grp12.R;
 
+import java.io.File;
+import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 public class Arena extends AppCompatActivity {
+    // Only read to move old saves into layoutStore, see migrateSharedPreferences()
     public static final String SHARED_PREFS = "sharedPrefs";
+    // Marker in the layouts directory, SHARED_PREFS has been imported and deleted
+    private static final String PREFERENCES_MIGRATED = "preferences.migrated";
     private static final String TAG = "Arena->DEBUG";
-    public static boolean firstStart = true;
     public static String currentPreset = "blank";
     public static int numberOfObstaclesAdded = 0;
     public static int numberOfImagesRead = 0;
 
-    public void saveData() {
-        SharedPreferences sharedPreferences = getSharedPreferences(SHARED_PREFS, MODE_PRIVATE);
-        SharedPreferences.Editor editor = sharedPreferences.edit();
+    // Saved presets, written in the background, see LayoutStore
+    private LayoutStore layoutStore;
+    // Journals every change to the arena, which comes back as it was left, see StateCheckpointer
+    private StateCheckpointer checkpointer;
 
-        editor.putFloat("obs1X", findViewById(R.id.obstacle1).getTranslationX());
-        editor.putFloat("obs1Y", findViewById(R.id.obstacle1).getTranslationY());
-        editor.putFloat("obs1Rotation", findViewById(R.id.obstacle1).getRotation());
-
-        editor.putFloat("obs2X", findViewById(R.id.obstacle2).getTranslationX());
-        editor.putFloat("obs2Y", findViewById(R.id.obstacle2).getTranslationY());
-        editor.putFloat("obs2Rotation", findViewById(R.id.obstacle2).getRotation());
-
-        editor.putFloat("obs3X", findViewById(R.id.obstacle3).getTranslationX());
-        editor.putFloat("obs3Y", findViewById(R.id.obstacle3).getTranslationY());
-        editor.putFloat("obs3Rotation", findViewById(R.id.obstacle3).getRotation());
-
-        editor.putFloat("obs4X", findViewById(R.id.obstacle4).getTranslationX());
-        editor.putFloat("obs4Y", findViewById(R.id.obstacle4).getTranslationY());
-        editor.putFloat("obs4Rotation", findViewById(R.id.obstacle4).getRotation());
-
-        editor.putFloat("obs5X", findViewById(R.id.obstacle5).getTranslationX());
-        editor.putFloat("obs5Y", findViewById(R.id.obstacle5).getTranslationY());
-        editor.putFloat("obs5Rotation", findViewById(R.id.obstacle5).getRotation());
-
-        editor.putFloat("obs6X", findViewById(R.id.obstacle6).getTranslationX());
-        editor.putFloat("obs6Y", findViewById(R.id.obstacle6).getTranslationY());
-        editor.putFloat("obs6Rotation", findViewById(R.id.obstacle6).getRotation());
-
-        editor.putFloat("obs7X", findViewById(R.id.obstacle7).getTranslationX());
-        editor.putFloat("obs7Y", findViewById(R.id.obstacle7).getTranslationY());
-        editor.putFloat("obs7Rotation", findViewById(R.id.obstacle7).getRotation());
-
-        editor.putFloat("obs8X", findViewById(R.id.obstacle8).getTranslationX());
-        editor.putFloat("obs8Y", findViewById(R.id.obstacle8).getTranslationY());
-        editor.putFloat("obs8Rotation", findViewById(R.id.obstacle8).getRotation());
-
-        editor.putFloat("carX", findViewById(R.id.car).getTranslationX());
-        editor.putFloat("carY", findViewById(R.id.car).getTranslationY());
-        editor.putFloat("carRotation", findViewById(R.id.car).getRotation());
-
-        int x = (int) (car.getX() + SNAP_GRID_INTERVAL) / SNAP_GRID_INTERVAL;
-        int y = (int) (car.getY() + SNAP_GRID_INTERVAL) / SNAP_GRID_INTERVAL;
-
-        editor.putString("x_tv", String.valueOf(car_x.getText()));
-        editor.putString("y_tv", String.valueOf(car_y.getText()));
-        editor.putString("car_dir", String.valueOf(car_dir.getText()));
-        editor.apply();
-    }
-
-    public void loadData() {
-        SharedPreferences sharedPreferences = getSharedPreferences(SHARED_PREFS, MODE_PRIVATE);
-        obstacle1.setX(sharedPreferences.getFloat("obs1X", 0.0f));
-        obstacle1.setY(sharedPreferences.getFloat("obs1Y", 0.0f));
-        obstacle1.setRotation((sharedPreferences.getFloat("obs1Rotation", 0.0f)));
-
-        obstacle2.setX(sharedPreferences.getFloat("obs2X", 0.0f));
-        obstacle2.setY(sharedPreferences.getFloat("obs2Y", 0.0f));
-        obstacle2.setRotation((sharedPreferences.getFloat("obs2Rotation", 0.0f)));
-
-        obstacle3.setX(sharedPreferences.getFloat("obs3X", 0.0f));
-        obstacle3.setY(sharedPreferences.getFloat("obs3Y", 0.0f));
-        obstacle3.setRotation((sharedPreferences.getFloat("obs3Rotation", 0.0f)));
-
-        obstacle4.setX(sharedPreferences.getFloat("obs4X", 0.0f));
-        obstacle4.setY(sharedPreferences.getFloat("obs4Y", 0.0f));
-        obstacle4.setRotation((sharedPreferences.getFloat("obs4Rotation", 0.0f)));
-
-        obstacle5.setX(sharedPreferences.getFloat("obs5X", 0.0f));
-        obstacle5.setY(sharedPreferences.getFloat("obs5Y", 0.0f));
-        obstacle5.setRotation((sharedPreferences.getFloat("obs5Rotation", 0.0f)));
-
-        obstacle6.setX(sharedPreferences.getFloat("obs6X", 0.0f));
-        obstacle6.setY(sharedPreferences.getFloat("obs6Y", 0.0f));
-        obstacle6.setRotation((sharedPreferences.getFloat("obs6Rotation", 0.0f)));
-
-        obstacle7.setX(sharedPreferences.getFloat("obs7X", 0.0f));
-        obstacle7.setY(sharedPreferences.getFloat("obs7Y", 0.0f));
-        obstacle7.setRotation((sharedPreferences.getFloat("obs7Rotation", 0.0f)));
-
-        obstacle8.setX(sharedPreferences.getFloat("obs8X", 0.0f));
-        obstacle8.setY(sharedPreferences.getFloat("obs8Y", 0.0f));
-        obstacle8.setRotation((sharedPreferences.getFloat("obs8Rotation", 0.0f)));
-
-        car.setX(sharedPreferences.getFloat("carX", 0.0f));
-        car.setY(sharedPreferences.getFloat("carY", 0.0f));
-        car.setRotation(sharedPreferences.getFloat("carRotation", 0.0f));
+    /*
+     * Presets from before LayoutStore lived in SharedPreferences. They are copied over once,
+     * off the main thread, then the whole file goes: besides the presets it only held the
+     * arena as saveData() left it, which StateCheckpointer has replaced.
+     */
+    private void migrateSharedPreferences() {
+        Context context = getApplicationContext();
+        int cols = arenaState.getCols();
+        int rows = arenaState.getRows();
+        int obstacleCount = arenaState.getObstacleCount();
+        layoutStore.migrateOnce(PREFERENCES_MIGRATED, new LayoutStore.Migration() {
+            @Override
+            public List<LayoutStore.Layout> layouts() {
+                Map<String, ?> saved = context.getSharedPreferences(SHARED_PREFS, MODE_PRIVATE).getAll();
+                List<LayoutStore.Layout> layouts = new ArrayList<>();
+                long now = System.currentTimeMillis();
+                for (int preset = 1; preset <= 5; preset++) {
+                    LayoutStore.Layout layout = LayoutStore.Layout.fromPreferences("Preset " + preset, now,
+                            cols, rows, obstacleCount, saved, "config" + preset + "_");
+                    if (layout != null) {
+                        layouts.add(layout);
+                    }
+                }
+                return layouts;
+            }
 
-        car_x.setText((sharedPreferences.getString("x_tv", "")));
-        car_y.setText((sharedPreferences.getString("y_tv", "")));
-        car_dir.setText((sharedPreferences.getString("car_dir", "")));
-        Log.d(TAG, "obs1X: " + Float.toString(sharedPreferences.getFloat("obs1X", 0.0f)));
+            @Override
+            public void onMigrated() {
+                context.deleteSharedPreferences(SHARED_PREFS);
+            }
+        });
     }
 
-    private static final int SNAP_GRID_INTERVAL = 35;
     private static final int ANIMATOR_DURATION = 100;
+    // Obstacle being dragged over a cell it cannot be dropped on
+    private static final float BLOCKED_ALPHA = 0.4f;
+
+    // Cell size in px and arena dimensions, shared with CanvasGrid, see ArenaGeometry.
+    // Null until the grid has been laid out, see initGeometry()
+    private ArenaGeometry geometry;
 
     /*
-     * start from (1,1)
-     * NOTE: remember to invert y
+     * Robot pose and obstacles, see ArenaState. The views below only render it.
+     * NOTE: state is in RPi cells, remember to invert y for the views
      */
-    private final int INITIAL_X = 1 * SNAP_GRID_INTERVAL - SNAP_GRID_INTERVAL ;
-    private final int INITIAL_Y = 18 * SNAP_GRID_INTERVAL - SNAP_GRID_INTERVAL;
+    private ArenaState arenaState;
+
+    // Obstacle footprints for checking moves and drops, follows arenaState
+    private CollisionChecker collisionChecker;
+
+    // Plays COMMAND moves in order, owns the car view while it has moves queued
+    private CommandAnimator commandAnimator;
 
     private boolean canSetObstacles = false;
     private String curMode = "IDLE";
 
     Button IRButton, SPButton, resetButton, presetsButton, setButton, timerButton, saveButton;
-    ImageView obstacle1, obstacle2, obstacle3, obstacle4, obstacle5, obstacle6, obstacle7, obstacle8, car;
-    TextView statusWindow, car_x, car_y, car_dir;
+    ImageView car;
+    TextView statusWindow, car_x, car_y, car_dir, linkMetricsOverlay;
 
-    Map<Integer, ImageView> obstacles;
+    // Link metrics overlay, refreshed once a second while the arena is in the foreground
+    private static final long METRICS_REFRESH_MS = 1000;
+    private final StringBuilder metricsText = new StringBuilder();
+    private final Runnable metricsRefresh = new Runnable() {
+        @Override
+        public void run() {
+            LinkMetrics metrics = link.getMetrics();
+            if (metrics != null) {
+                metrics.sample(System.nanoTime());
+                metricsText.setLength(0);
+                metrics.appendSummary(metricsText);
+                metricsText.append("  queue ").append(link.getQueueDepth());
+                linkMetricsOverlay.setText(metricsText);
+            }
+            linkMetricsOverlay.postDelayed(this, METRICS_REFRESH_MS);
+        }
+    };
+
+    // Obstacle views by obstacle number, count from res/values/arena.xml
+    ObstacleRegistry obstacles;
+
+    // Bound to BluetoothLinkService, which owns the Bluetooth link
+    LinkClient link = new LinkClient(this);
 
     // RecyclerView
     ArrayList<String> s1 = new ArrayList<String>();
@@ -172,7 +146,47 @@ public class Arena extends AppCompatActivity {
     protected void onPause() {
         super.onPause();
         Log.d("onpause", "OnPause() called");
-        saveData();
+        linkMetricsOverlay.removeCallbacks(metricsRefresh);
+        // Whatever is still waiting for the debounce, written in the background
+        checkpointer.flush();
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        link.bind();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        link.unbind();
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        linkMetricsOverlay.post(metricsRefresh);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        unsubscribeFromMessages();
+        arenaState.removeListener(arenaListener);
+        arenaState.removeListener(collisionChecker);
+        if (commandAnimator != null) {
+            commandAnimator.cancel();
+        }
+        Choreographer.getInstance().removeFrameCallback(poseFrameCallback);
+        planExecutor.shutdownNow();
+        if (replayThread != null) {
+            replayThread.interrupt();
+        }
+        legExecutor.shutdownNow();
+        // Queued saves still finish
+        layoutStore.close();
+        checkpointer.close();
     }
 
     @Override
@@ -182,203 +196,75 @@ public class Arena extends AppCompatActivity {
         Log.d(TAG, "onCreate called");
 
         setContentView(R.layout.arena);
+        initState();
+        layoutStore = new LayoutStore(new File(getFilesDir(), "layouts"));
+        migrateSharedPreferences();
+        // Several view poses per obstacle, the planner picks the best combination
+        pathPlanner.setCandidateViews(true);
 
         // start listening for incoming messages
-        LocalBroadcastManager.getInstance(this).registerReceiver(myReceiver, new IntentFilter("incomingMessage"));
+        subscribeToMessages();
 
         initObstacles();
         initButtons();
         initMovementButtons();
 
-        if (!firstStart) {
-            loadData();
-        } else {
-            firstStart = false;
-            saveData();
+        // The arena as it was left, restored in the background
+        checkpointer = new StateCheckpointer(new File(getFilesDir(), "checkpoint"));
+        checkpointer.attach(arenaState);
+
+        // Views follow the state from here on, the car starts in the bottom left.
+        // They are placed once the grid has been laid out and the cell size is known.
+        arenaState.addListener(arenaListener);
+        CanvasGrid canvasGrid = findViewById(R.id.grid);
+        canvasGrid.setOnGeometryListener(this::initGeometry);
+    }
+
+    /*
+     * The arena in cells, which needs no layout: dimensions from CanvasGrid, obstacle count from resources
+     */
+    private void initState() {
+        CanvasGrid canvasGrid = findViewById(R.id.grid);
+        obstacles = new ObstacleRegistry(this, getResources().getInteger(R.integer.arena_obstacles));
+        arenaState = new ArenaState(canvasGrid.getCols(), canvasGrid.getRows(), obstacles.size());
+        collisionChecker = new CollisionChecker(canvasGrid.getCols(), canvasGrid.getRows(), obstacles.size());
+        arenaState.addListener(collisionChecker);
+    }
+
+    /*
+     * Takes the cell size CanvasGrid fitted to its own size and sizes the car (3x3 cells) and
+     * obstacles (1 cell) to match. Called after layout, again if the grid is resized.
+     */
+    private void initGeometry(ArenaGeometry fitted) {
+        geometry = fitted;
+        int cellSize = geometry.getCellSize();
+        obstacles.setCellSize(cellSize);
+
+        View carView = findViewById(R.id.car);
+        ViewGroup.LayoutParams params = carView.getLayoutParams();
+        params.width = 3 * cellSize;
+        params.height = 3 * cellSize;
+        carView.setLayoutParams(params);
+        // same proportions as the original 32.5px padding on 35px cells
+        int padding = Math.round(cellSize * 32.5f / 35f);
+        carView.setPadding(padding, padding, padding, padding);
+
+        if (commandAnimator != null) {
+            commandAnimator.cancel();
         }
+        commandAnimator = new CommandAnimator(carView, geometry, renderRobotTask);
+        renderArena();
     }
 
     /**
      * Initializes obstacles and setup listeners
      */
     private void initObstacles() {
-        obstacle1 = findViewById(R.id.obstacle1);
-        obstacle2 = findViewById(R.id.obstacle2);
-        obstacle3 = findViewById(R.id.obstacle3);
-        obstacle4 = findViewById(R.id.obstacle4);
-        obstacle5 = findViewById(R.id.obstacle5);
-        obstacle6 = findViewById(R.id.obstacle6);
-        obstacle7 = findViewById(R.id.obstacle7);
-        obstacle8 = findViewById(R.id.obstacle8);
-
-        obstacles = new HashMap<Integer, ImageView>() {
-            {
-                put(1, obstacle1);
-                put(2, obstacle2);
-                put(3, obstacle3);
-                put(4, obstacle4);
-                put(5, obstacle5);
-                put(6, obstacle6);
-                put(7, obstacle7);
-                put(8, obstacle8);
-            }
-        };
-
-        obstacle1.setOnClickListener(view -> {
-            obstacle1.setRotation((obstacle1.getRotation() + 90) % 360);
-            int orientation = (int) obstacle1.getRotation();
-            switch (((orientation / 90) % 4 + 4) % 4) {
-                case 0:
-                    obstacle1.setImageResource(Helper.resources.get("o1n"));
-                    break;
-                case 1:
-                    obstacle1.setImageResource(Helper.resources.get("o1e"));
-                    break;
-                case 2:
-                    obstacle1.setImageResource(Helper.resources.get("o1s"));
-                    break;
-                case 3:
-                    obstacle1.setImageResource(Helper.resources.get("o1w"));
-                    break;
-            }
-        });
-
-        obstacle2.setOnClickListener(view -> {
-            obstacle2.setRotation((obstacle2.getRotation() + 90) % 360);
-            int orientation = (int) obstacle2.getRotation();
-            switch (((orientation / 90) % 4 + 4) % 4) {
-                case 0:
-                    obstacle2.setImageResource(Helper.resources.get("o2n"));
-                    break;
-                case 1:
-                    obstacle2.setImageResource(Helper.resources.get("o2e"));
-                    break;
-                case 2:
-                    obstacle2.setImageResource(Helper.resources.get("o2s"));
-                    break;
-                case 3:
-                    obstacle2.setImageResource(Helper.resources.get("o2w"));
-                    break;
-            }
-        });
-
-        obstacle3.setOnClickListener(view -> {
-            obstacle3.setRotation((obstacle3.getRotation() + 90) % 360);
-            int orientation = (int) obstacle3.getRotation();
-            switch (((orientation / 90) % 4 + 4) % 4) {
-                case 0:
-                    obstacle3.setImageResource(Helper.resources.get("o3n"));
-                    break;
-                case 1:
-                    obstacle3.setImageResource(Helper.resources.get("o3e"));
-                    break;
-                case 2:
-                    obstacle3.setImageResource(Helper.resources.get("o3s"));
-                    break;
-                case 3:
-                    obstacle3.setImageResource(Helper.resources.get("o3w"));
-                    break;
-            }
-        });
-
-        obstacle4.setOnClickListener(view -> {
-            obstacle4.setRotation((obstacle4.getRotation() + 90) % 360);
-            int orientation = (int) obstacle4.getRotation();
-            switch (((orientation / 90) % 4 + 4) % 4) {
-                case 0:
-                    obstacle4.setImageResource(Helper.resources.get("o4n"));
-                    break;
-                case 1:
-                    obstacle4.setImageResource(Helper.resources.get("o4e"));
-                    break;
-                case 2:
-                    obstacle4.setImageResource(Helper.resources.get("o4s"));
-                    break;
-                case 3:
-                    obstacle4.setImageResource(Helper.resources.get("o4w"));
-                    break;
-            }
-        });
-
-        obstacle5.setOnClickListener(view -> {
-            obstacle5.setRotation((obstacle5.getRotation() + 90) % 360);
-            int orientation = (int) obstacle5.getRotation();
-            switch (((orientation / 90) % 4 + 4) % 4) {
-                case 0:
-                    obstacle5.setImageResource(Helper.resources.get("o5n"));
-                    break;
-                case 1:
-                    obstacle5.setImageResource(Helper.resources.get("o5e"));
-                    break;
-                case 2:
-                    obstacle5.setImageResource(Helper.resources.get("o5s"));
-                    break;
-                case 3:
-                    obstacle5.setImageResource(Helper.resources.get("o5w"));
-                    break;
-            }
-        });
-
-        obstacle6.setOnClickListener(view -> {
-            obstacle6.setRotation((obstacle6.getRotation() + 90) % 360);
-            int orientation = (int) obstacle6.getRotation();
-            switch (((orientation / 90) % 4 + 4) % 4) {
-                case 0:
-                    obstacle6.setImageResource(Helper.resources.get("o6n"));
-                    break;
-                case 1:
-                    obstacle6.setImageResource(Helper.resources.get("o6e"));
-                    break;
-                case 2:
-                    obstacle6.setImageResource(Helper.resources.get("o6s"));
-                    break;
-                case 3:
-                    obstacle6.setImageResource(Helper.resources.get("o6w"));
-                    break;
-            }
-        });
-
-        obstacle7.setOnClickListener(view -> {
-            obstacle7.setRotation((obstacle7.getRotation() + 90) % 360);
-            int orientation = (int) obstacle7.getRotation();
-            switch (((orientation / 90) % 4 + 4) % 4) {
-                case 0:
-                    obstacle7.setImageResource(Helper.resources.get("o7n"));
-                    break;
-                case 1:
-                    obstacle7.setImageResource(Helper.resources.get("o7e"));
-                    break;
-                case 2:
-                    obstacle7.setImageResource(Helper.resources.get("o7s"));
-                    break;
-                case 3:
-                    obstacle7.setImageResource(Helper.resources.get("o7w"));
-                    break;
-            }
-        });
-
-        obstacle8.setOnClickListener(view -> {
-            obstacle8.setRotation((obstacle8.getRotation() + 90) % 360);
-            int orientation = (int) obstacle8.getRotation();
-            switch (((orientation / 90) % 4 + 4) % 4) {
-                case 0:
-                    obstacle8.setImageResource(Helper.resources.get("o8n"));
-                    break;
-                case 1:
-                    obstacle8.setImageResource(Helper.resources.get("o8e"));
-                    break;
-                case 2:
-                    obstacle8.setImageResource(Helper.resources.get("o8s"));
-                    break;
-                case 3:
-                    obstacle8.setImageResource(Helper.resources.get("o8w"));
-                    break;
-            }
-        });
-
         CanvasGrid canvasGrid = findViewById(R.id.grid);
 
-        obstacle1.setOnTouchListener(new View.OnTouchListener() {
+        // One handler for every obstacle, the view's tag says which one it is
+        obstacles.setListeners(view -> arenaState.rotateObstacle(ObstacleRegistry.indexOf(view)),
+                new View.OnTouchListener() {
             int x = 0;
             int y = 0;
             int dx = 0;
@@ -396,21 +282,19 @@ public class Arena extends AppCompatActivity {
                     case MotionEvent.ACTION_DOWN:
                         x = (int) event.getX();
                         y = (int) event.getY();
-                        orientation = (int) obstacle1.getRotation();
-                        obstacle1.setRotation(0);
+                        orientation = (int) v.getRotation();
+                        v.setRotation(0);
                         break;
                     case MotionEvent.ACTION_MOVE:
                         dx = (int) event.getX() - x;
                         dy = (int) event.getY() - y;
 
-                        obstacle1.setX(obstacle1.getX() + dx);
-                        obstacle1.setY(obstacle1.getY() + dy);
+                        v.setX(v.getX() + dx);
+                        v.setY(v.getY() + dy);
 
                         // Calculate the cell coordinates based on the obstacle's current position
-                        int cellY = (int) ((obstacle1.getX() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL);
-                        int cellX = (int) ((obstacle1.getY() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL);
-
-
+                        int cellY = geometry.nearestCell(v.getX());
+                        int cellX = geometry.nearestCell(v.getY());
 
                         // Check if the obstacle is over a different cell
                         if (cellX != lastCellX || cellY != lastCellY) {
@@ -423,6 +307,11 @@ public class Arena extends AppCompatActivity {
                             canvasGrid.highlightCell(cellX, cellY);
                             lastCellX = cellX;
                             lastCellY = cellY;
+
+                            // Faded while over the car or another obstacle, it will not drop there
+                            boolean blocked = collisionChecker.isObstacleBlocked(ObstacleRegistry.indexOf(v),
+                                    cellY, geometry.flipY(cellX), arenaState.getRobotX(), arenaState.getRobotY());
+                            v.setAlpha(blocked ? BLOCKED_ALPHA : 1f);
                         }
                         break;
                     case MotionEvent.ACTION_UP:
@@ -431,14 +320,12 @@ public class Arena extends AppCompatActivity {
                             canvasGrid.clearHighlight();
                         }
 
-                        int snapToX = ((int) ((obstacle1.getX() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL))
-                                * SNAP_GRID_INTERVAL;
-                        int snapToY = ((int) ((obstacle1.getY() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL))
-                                * SNAP_GRID_INTERVAL;
+                        int snapToX = geometry.snapPx(v.getX());
+                        int snapToY = geometry.snapPx(v.getY());
 
-                        obstacle1.setX(snapToX);
-                        obstacle1.setY(snapToY);
-                        obstacle1.setRotation(orientation % 360);
+                        v.setRotation(orientation % 360);
+                        v.setAlpha(1f);
+                        dropObstacle(ObstacleRegistry.indexOf(v), snapToX, snapToY);
                         break;
                     default:
                         break;
@@ -446,1771 +333,275 @@ public class Arena extends AppCompatActivity {
                 return true;
             }
         });
+    }
 
-        obstacle2.setOnTouchListener(new View.OnTouchListener() {
-            int x = 0;
-            int y = 0;
-            int dx = 0;
-            int dy = 0;
-            int orientation;
-            int lastCellX = -1; // Track the last highlighted cell X position
-            int lastCellY = -1; // Track the last highlighted cell Y position
+        private class LongClickListener implements View.OnLongClickListener {
+            private String imageId;
+            public LongClickListener(String imageId) {
+                this.imageId = imageId;
+            }
+            public boolean onLongClick(View v) {
+                // Handle the long press event here.
 
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                if (!canSetObstacles) {
-                    return false;
-                }
-                switch (event.getAction()) {
-                    case MotionEvent.ACTION_DOWN:
-                        x = (int) event.getX();
-                        y = (int) event.getY();
-                        orientation = (int) obstacle2.getRotation();
-                        obstacle2.setRotation(0);
-                        break;
-                    case MotionEvent.ACTION_MOVE:
-                        dx = (int) event.getX() - x;
-                        dy = (int) event.getY() - y;
+                // Show the popup bubble or tooltip.
+                showPopupBubble(v, imageId);
 
-                        obstacle2.setX(obstacle2.getX() + dx);
-                        obstacle2.setY(obstacle2.getY() + dy);
+                return true; // Consume the long click event.
+            }
+        }
 
-                        // Calculate the cell coordinates based on the obstacle's current position
-                        int cellY = (int) ((obstacle2.getX() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL);
-                        int cellX = (int) ((obstacle2.getY() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL);
+        private void showPopupBubble(View anchorView, String info) {
+            // Create a TextView to hold the information.
+            TextView bubbleTextView = new TextView(this);
+            String message = "Image ID: " + info;
+            bubbleTextView.setText(message);
+            bubbleTextView.setTextColor(Color.WHITE);
+            bubbleTextView.setBackgroundColor(Color.BLACK);
 
+            int textSizeInDp = 30;
+            float textSizePixels = TypedValue.applyDimension(
+                    TypedValue.COMPLEX_UNIT_DIP, textSizeInDp, getResources().getDisplayMetrics());
 
+            // Set the text size (in pixels) for the TextView
+            bubbleTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, textSizePixels);
 
-                        // Check if the obstacle is over a different cell
-                        if (cellX != lastCellX || cellY != lastCellY) {
-                            // Remove highlighting from the previous cell
-                            if (lastCellX >= 0 && lastCellY >= 0) {
-                                canvasGrid.clearHighlight();
-                            }
+            // Create a PopupWindow to display the bubble.
+            PopupWindow popupWindow = new PopupWindow(bubbleTextView,
+                    ViewGroup.LayoutParams.WRAP_CONTENT,
+                    ViewGroup.LayoutParams.WRAP_CONTENT);
 
-                            // Highlight the current cell
-                            canvasGrid.highlightCell(cellX, cellY);
-                            lastCellX = cellX;
-                            lastCellY = cellY;
-                        }
-                        break;
-                    case MotionEvent.ACTION_UP:
-                        // Clear highlighting when the touch is released
-                        if (lastCellX >= 0 && lastCellY >= 0) {
-                            canvasGrid.clearHighlight();
-                        }
+            // Calculate the screen coordinates for the middle of the screen.
+            int[] location = new int[2];
+            anchorView.getLocationOnScreen(location);
+            int screenWidth = getResources().getDisplayMetrics().widthPixels;
+            int screenHeight = getResources().getDisplayMetrics().heightPixels;
+            bubbleTextView.measure(View.MeasureSpec.UNSPECIFIED, View.MeasureSpec.UNSPECIFIED);
+            int popupWidth = bubbleTextView.getMeasuredWidth();
+            int popupHeight = bubbleTextView.getMeasuredHeight();
 
-                        int snapToX = ((int) ((obstacle2.getX() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL))
-                                * SNAP_GRID_INTERVAL;
-                        int snapToY = ((int) ((obstacle2.getY() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL))
-                                * SNAP_GRID_INTERVAL;
+            int x = Math.max(0, location[0] + anchorView.getWidth() / 2 - popupWidth / 2);
+            x = Math.min(x, screenWidth - popupWidth);
 
-                        obstacle2.setX(snapToX);
-                        obstacle2.setY(snapToY);
-                        obstacle2.setRotation(orientation % 360);
-                        break;
-                    default:
-                        break;
-                }
-                return true;
-            }
-        });
+            int y = location[1] - popupHeight; // Above the anchorView
 
-        obstacle3.setOnTouchListener(new View.OnTouchListener() {
-            int x = 0;
-            int y = 0;
-            int dx = 0;
-            int dy = 0;
-            int orientation;
-            int lastCellX = -1; // Track the last highlighted cell X position
-            int lastCellY = -1; // Track the last highlighted cell Y position
+            // Check if there's enough space above the anchorView to show the popup.
+            if (y < 0) {
+                // Display the popup below the anchorView.
+                y = location[1] + anchorView.getHeight();
+            }
 
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                if (!canSetObstacles) {
-                    return false;
+            // Show the popup at the calculated coordinates.
+            popupWindow.showAtLocation(anchorView, Gravity.NO_GRAVITY, x, y);
+            // Set up a touch listener on the anchorView to dismiss the popup on release.
+            anchorView.setOnTouchListener(new View.OnTouchListener() {
+                @Override
+                public boolean onTouch(View v, MotionEvent event) {
+                    switch (event.getAction()) {
+                        case MotionEvent.ACTION_DOWN:
+                            // Show the popup when touched.
+                            showPopupBubble(anchorView, info);
+                            break;
+                        case MotionEvent.ACTION_UP:
+                            // Dismiss the popup when the touch is released.
+                            if (popupWindow != null && popupWindow.isShowing()) {
+                                popupWindow.dismiss();
+                            }
+                            break;
+                    }
+                    return true; // Consume the touch event.
                 }
-                switch (event.getAction()) {
-                    case MotionEvent.ACTION_DOWN:
-                        x = (int) event.getX();
-                        y = (int) event.getY();
-                        orientation = (int) obstacle3.getRotation();
-                        obstacle3.setRotation(0);
-                        break;
-                    case MotionEvent.ACTION_MOVE:
-                        dx = (int) event.getX() - x;
-                        dy = (int) event.getY() - y;
+            });
 
-                        obstacle3.setX(obstacle3.getX() + dx);
-                        obstacle3.setY(obstacle3.getY() + dy);
+            // Set up the long click listener.
+            anchorView.setOnLongClickListener(new LongClickListener(info));
+        }
 
-                        // Calculate the cell coordinates based on the obstacle's current position
-                        int cellY = (int) ((obstacle3.getX() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL);
-                        int cellX = (int) ((obstacle3.getY() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL);
+        // Call this method to set up the long hold listener on your image views.
+        private void setupLongHoldListener(View anchorView, String info) {
+            anchorView.setOnLongClickListener(new View.OnLongClickListener() {
+                @Override
+                public boolean onLongClick(View v) {
+                    // Show the popup bubble or tooltip.
+                    showPopupBubble(v, info);
+                    return true; // Consume the long click event.
+                }
+            });
+        }
 
+        /*
+         * Obstacle recognised by the RPi, the image itself is drawn by renderObstacle()
+         */
+        private void onTargetRecognised(int index, int targetId) {
+            if (!arenaState.setTarget(index, targetId)) {
+                return;
+            }
+            numberOfImagesRead++;
 
+            if (numberOfImagesRead == numberOfObstaclesAdded) {
+                Chronometer IRTimer = (Chronometer) findViewById(R.id.IRTimer);
+                IRTimer.stop();
+                updateStatusWindow("IR Complete");
+                numberOfImagesRead = 0;
+            }
 
-                        // Check if the obstacle is over a different cell
-                        if (cellX != lastCellX || cellY != lastCellY) {
-                            // Remove highlighting from the previous cell
-                            if (lastCellX >= 0 && lastCellY >= 0) {
-                                canvasGrid.clearHighlight();
-                            }
-
-                            // Highlight the current cell
-                            canvasGrid.highlightCell(cellX, cellY);
-                            lastCellX = cellX;
-                            lastCellY = cellY;
-                        }
-                        break;
-                    case MotionEvent.ACTION_UP:
-                        // Clear highlighting when the touch is released
-                        if (lastCellX >= 0 && lastCellY >= 0) {
-                            canvasGrid.clearHighlight();
-                        }
-
-                        int snapToX = ((int) ((obstacle3.getX() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL))
-                                * SNAP_GRID_INTERVAL;
-                        int snapToY = ((int) ((obstacle3.getY() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL))
-                                * SNAP_GRID_INTERVAL;
-
-                        obstacle3.setX(snapToX);
-                        obstacle3.setY(snapToY);
-                        obstacle3.setRotation(orientation % 360);
-                        break;
-                    default:
-                        break;
-                }
-                return true;
-            }
-        });
-
-        obstacle4.setOnTouchListener(new View.OnTouchListener() {
-            int x = 0;
-            int y = 0;
-            int dx = 0;
-            int dy = 0;
-            int orientation;
-            int lastCellX = -1; // Track the last highlighted cell X position
-            int lastCellY = -1; // Track the last highlighted cell Y position
-
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                if (!canSetObstacles) {
-                    return false;
-                }
-                switch (event.getAction()) {
-                    case MotionEvent.ACTION_DOWN:
-                        x = (int) event.getX();
-                        y = (int) event.getY();
-                        orientation = (int) obstacle4.getRotation();
-                        obstacle4.setRotation(0);
-                        break;
-                    case MotionEvent.ACTION_MOVE:
-                        dx = (int) event.getX() - x;
-                        dy = (int) event.getY() - y;
-
-                        obstacle4.setX(obstacle4.getX() + dx);
-                        obstacle4.setY(obstacle4.getY() + dy);
-
-                        // Calculate the cell coordinates based on the obstacle's current position
-                        int cellY = (int) ((obstacle4.getX() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL);
-                        int cellX = (int) ((obstacle4.getY() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL);
-
-
-
-                        // Check if the obstacle is over a different cell
-                        if (cellX != lastCellX || cellY != lastCellY) {
-                            // Remove highlighting from the previous cell
-                            if (lastCellX >= 0 && lastCellY >= 0) {
-                                canvasGrid.clearHighlight();
-                            }
-
-                            // Highlight the current cell
-                            canvasGrid.highlightCell(cellX, cellY);
-                            lastCellX = cellX;
-                            lastCellY = cellY;
-                        }
-                        break;
-                    case MotionEvent.ACTION_UP:
-                        // Clear highlighting when the touch is released
-                        if (lastCellX >= 0 && lastCellY >= 0) {
-                            canvasGrid.clearHighlight();
-                        }
-
-                        int snapToX = ((int) ((obstacle4.getX() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL))
-                                * SNAP_GRID_INTERVAL;
-                        int snapToY = ((int) ((obstacle4.getY() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL))
-                                * SNAP_GRID_INTERVAL;
-
-                        obstacle4.setX(snapToX);
-                        obstacle4.setY(snapToY);
-                        obstacle4.setRotation(orientation % 360);
-                        break;
-                    default:
-                        break;
-                }
-                return true;
-            }
-        });
-
-        obstacle5.setOnTouchListener(new View.OnTouchListener() {
-            int x = 0;
-            int y = 0;
-            int dx = 0;
-            int dy = 0;
-            int orientation;
-            int lastCellX = -1; // Track the last highlighted cell X position
-            int lastCellY = -1; // Track the last highlighted cell Y position
-
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                if (!canSetObstacles) {
-                    return false;
-                }
-                switch (event.getAction()) {
-                    case MotionEvent.ACTION_DOWN:
-                        x = (int) event.getX();
-                        y = (int) event.getY();
-                        orientation = (int) obstacle5.getRotation();
-                        obstacle5.setRotation(0);
-                        break;
-                    case MotionEvent.ACTION_MOVE:
-                        dx = (int) event.getX() - x;
-                        dy = (int) event.getY() - y;
-
-                        obstacle5.setX(obstacle5.getX() + dx);
-                        obstacle5.setY(obstacle5.getY() + dy);
-
-                        // Calculate the cell coordinates based on the obstacle's current position
-                        int cellY = (int) ((obstacle5.getX() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL);
-                        int cellX = (int) ((obstacle5.getY() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL);
-
-
-
-                        // Check if the obstacle is over a different cell
-                        if (cellX != lastCellX || cellY != lastCellY) {
-                            // Remove highlighting from the previous cell
-                            if (lastCellX >= 0 && lastCellY >= 0) {
-                                canvasGrid.clearHighlight();
-                            }
-
-                            // Highlight the current cell
-                            canvasGrid.highlightCell(cellX, cellY);
-                            lastCellX = cellX;
-                            lastCellY = cellY;
-                        }
-                        break;
-                    case MotionEvent.ACTION_UP:
-                        // Clear highlighting when the touch is released
-                        if (lastCellX >= 0 && lastCellY >= 0) {
-                            canvasGrid.clearHighlight();
-                        }
-
-                        int snapToX = ((int) ((obstacle5.getX() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL))
-                                * SNAP_GRID_INTERVAL;
-                        int snapToY = ((int) ((obstacle5.getY() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL))
-                                * SNAP_GRID_INTERVAL;
-
-                        obstacle5.setX(snapToX);
-                        obstacle5.setY(snapToY);
-                        obstacle5.setRotation(orientation % 360);
-                        break;
-                    default:
-                        break;
-                }
-                return true;
-            }
-        });
-
-        obstacle6.setOnTouchListener(new View.OnTouchListener() {
-            int x = 0;
-            int y = 0;
-            int dx = 0;
-            int dy = 0;
-            int orientation;
-            int lastCellX = -1; // Track the last highlighted cell X position
-            int lastCellY = -1; // Track the last highlighted cell Y position
-
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                if (!canSetObstacles) {
-                    return false;
-                }
-                switch (event.getAction()) {
-                    case MotionEvent.ACTION_DOWN:
-                        x = (int) event.getX();
-                        y = (int) event.getY();
-                        orientation = (int) obstacle6.getRotation();
-                        obstacle6.setRotation(0);
-                        break;
-                    case MotionEvent.ACTION_MOVE:
-                        dx = (int) event.getX() - x;
-                        dy = (int) event.getY() - y;
-
-                        obstacle6.setX(obstacle6.getX() + dx);
-                        obstacle6.setY(obstacle6.getY() + dy);
-
-                        // Calculate the cell coordinates based on the obstacle's current position
-                        int cellY = (int) ((obstacle6.getX() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL);
-                        int cellX = (int) ((obstacle6.getY() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL);
-
-
-
-                        // Check if the obstacle is over a different cell
-                        if (cellX != lastCellX || cellY != lastCellY) {
-                            // Remove highlighting from the previous cell
-                            if (lastCellX >= 0 && lastCellY >= 0) {
-                                canvasGrid.clearHighlight();
-                            }
-
-                            // Highlight the current cell
-                            canvasGrid.highlightCell(cellX, cellY);
-                            lastCellX = cellX;
-                            lastCellY = cellY;
-                        }
-                        break;
-                    case MotionEvent.ACTION_UP:
-                        // Clear highlighting when the touch is released
-                        if (lastCellX >= 0 && lastCellY >= 0) {
-                            canvasGrid.clearHighlight();
-                        }
-
-                        int snapToX = ((int) ((obstacle6.getX() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL))
-                                * SNAP_GRID_INTERVAL;
-                        int snapToY = ((int) ((obstacle6.getY() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL))
-                                * SNAP_GRID_INTERVAL;
-
-                        obstacle6.setX(snapToX);
-                        obstacle6.setY(snapToY);
-                        obstacle6.setRotation(orientation % 360);
-                        break;
-                    default:
-                        break;
-                }
-                return true;
-            }
-        });
-
-        obstacle7.setOnTouchListener(new View.OnTouchListener() {
-            int x = 0;
-            int y = 0;
-            int dx = 0;
-            int dy = 0;
-            int orientation;
-            int lastCellX = -1; // Track the last highlighted cell X position
-            int lastCellY = -1; // Track the last highlighted cell Y position
-
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                if (!canSetObstacles) {
-                    return false;
-                }
-                switch (event.getAction()) {
-                    case MotionEvent.ACTION_DOWN:
-                        x = (int) event.getX();
-                        y = (int) event.getY();
-                        orientation = (int) obstacle7.getRotation();
-                        obstacle7.setRotation(0);
-                        break;
-                    case MotionEvent.ACTION_MOVE:
-                        dx = (int) event.getX() - x;
-                        dy = (int) event.getY() - y;
-
-                        obstacle7.setX(obstacle7.getX() + dx);
-                        obstacle7.setY(obstacle7.getY() + dy);
-
-                        // Calculate the cell coordinates based on the obstacle's current position
-                        int cellY = (int) ((obstacle7.getX() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL);
-                        int cellX = (int) ((obstacle7.getY() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL);
-
-
-
-                        // Check if the obstacle is over a different cell
-                        if (cellX != lastCellX || cellY != lastCellY) {
-                            // Remove highlighting from the previous cell
-                            if (lastCellX >= 0 && lastCellY >= 0) {
-                                canvasGrid.clearHighlight();
-                            }
-
-                            // Highlight the current cell
-                            canvasGrid.highlightCell(cellX, cellY);
-                            lastCellX = cellX;
-                            lastCellY = cellY;
-                        }
-                        break;
-                    case MotionEvent.ACTION_UP:
-                        // Clear highlighting when the touch is released
-                        if (lastCellX >= 0 && lastCellY >= 0) {
-                            canvasGrid.clearHighlight();
-                        }
-
-                        int snapToX = ((int) ((obstacle7.getX() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL))
-                                * SNAP_GRID_INTERVAL;
-                        int snapToY = ((int) ((obstacle7.getY() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL))
-                                * SNAP_GRID_INTERVAL;
-
-                        obstacle7.setX(snapToX);
-                        obstacle7.setY(snapToY);
-                        obstacle7.setRotation(orientation % 360);
-                        break;
-                    default:
-                        break;
-                }
-                return true;
-            }
-        });
-
-        obstacle8.setOnTouchListener(new View.OnTouchListener() {
-            int x = 0;
-            int y = 0;
-            int dx = 0;
-            int dy = 0;
-            int orientation;
-            int lastCellX = -1; // Track the last highlighted cell X position
-            int lastCellY = -1; // Track the last highlighted cell Y position
-
-            @Override
-            public boolean onTouch(View v, MotionEvent event) {
-                if (!canSetObstacles) {
-                    return false;
-                }
-                switch (event.getAction()) {
-                    case MotionEvent.ACTION_DOWN:
-                        x = (int) event.getX();
-                        y = (int) event.getY();
-                        orientation = (int) obstacle8.getRotation();
-                        obstacle8.setRotation(0);
-                        break;
-                    case MotionEvent.ACTION_MOVE:
-                        dx = (int) event.getX() - x;
-                        dy = (int) event.getY() - y;
-
-                        obstacle8.setX(obstacle8.getX() + dx);
-                        obstacle8.setY(obstacle8.getY() + dy);
-
-                        // Calculate the cell coordinates based on the obstacle's current position
-                        int cellY = (int) ((obstacle8.getX() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL);
-                        int cellX = (int) ((obstacle8.getY() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL);
-
-
-
-                        // Check if the obstacle is over a different cell
-                        if (cellX != lastCellX || cellY != lastCellY) {
-                            // Remove highlighting from the previous cell
-                            if (lastCellX >= 0 && lastCellY >= 0) {
-                                canvasGrid.clearHighlight();
-                            }
-
-                            // Highlight the current cell
-                            canvasGrid.highlightCell(cellX, cellY);
-                            lastCellX = cellX;
-                            lastCellY = cellY;
-                        }
-                        break;
-                    case MotionEvent.ACTION_UP:
-                        // Clear highlighting when the touch is released
-                        if (lastCellX >= 0 && lastCellY >= 0) {
-                            canvasGrid.clearHighlight();
-                        }
-
-                        int snapToX = ((int) ((obstacle8.getX() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL))
-                                * SNAP_GRID_INTERVAL;
-                        int snapToY = ((int) ((obstacle8.getY() + SNAP_GRID_INTERVAL / 2) / SNAP_GRID_INTERVAL))
-                                * SNAP_GRID_INTERVAL;
-
-                        obstacle8.setX(snapToX);
-                        obstacle8.setY(snapToY);
-                        obstacle8.setRotation(orientation % 360);
-                        break;
-                    default:
-                        break;
-                }
-                return true;
-            }
-        });
-    }
-
-        private class LongClickListener implements View.OnLongClickListener {
-            private String imageId;
-            public LongClickListener(String imageId) {
-                this.imageId = imageId;
-            }
-            public boolean onLongClick(View v) {
-                // Handle the long press event here.
-
-                // Show the popup bubble or tooltip.
-                showPopupBubble(v, imageId);
-
-                return true; // Consume the long click event.
-            }
-        }
-
-        private void showPopupBubble(View anchorView, String info) {
-            // Create a TextView to hold the information.
-            TextView bubbleTextView = new TextView(this);
-            String message = "Image ID: " + info;
-            bubbleTextView.setText(message);
-            bubbleTextView.setTextColor(Color.WHITE);
-            bubbleTextView.setBackgroundColor(Color.BLACK);
-
-            int textSizeInDp = 30;
-            float textSizePixels = TypedValue.applyDimension(
-                    TypedValue.COMPLEX_UNIT_DIP, textSizeInDp, getResources().getDisplayMetrics());
-
-            // Set the text size (in pixels) for the TextView
-            bubbleTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, textSizePixels);
-
-            // Create a PopupWindow to display the bubble.
-            PopupWindow popupWindow = new PopupWindow(bubbleTextView,
-                    ViewGroup.LayoutParams.WRAP_CONTENT,
-                    ViewGroup.LayoutParams.WRAP_CONTENT);
-
-            // Calculate the screen coordinates for the middle of the screen.
-            int[] location = new int[2];
-            anchorView.getLocationOnScreen(location);
-            int screenWidth = getResources().getDisplayMetrics().widthPixels;
-            int screenHeight = getResources().getDisplayMetrics().heightPixels;
-            bubbleTextView.measure(View.MeasureSpec.UNSPECIFIED, View.MeasureSpec.UNSPECIFIED);
-            int popupWidth = bubbleTextView.getMeasuredWidth();
-            int popupHeight = bubbleTextView.getMeasuredHeight();
-
-            int x = Math.max(0, location[0] + anchorView.getWidth() / 2 - popupWidth / 2);
-            x = Math.min(x, screenWidth - popupWidth);
-
-            int y = location[1] - popupHeight; // Above the anchorView
-
-            // Check if there's enough space above the anchorView to show the popup.
-            if (y < 0) {
-                // Display the popup below the anchorView.
-                y = location[1] + anchorView.getHeight();
-            }
-
-            // Show the popup at the calculated coordinates.
-            popupWindow.showAtLocation(anchorView, Gravity.NO_GRAVITY, x, y);
-            // Set up a touch listener on the anchorView to dismiss the popup on release.
-            anchorView.setOnTouchListener(new View.OnTouchListener() {
-                @Override
-                public boolean onTouch(View v, MotionEvent event) {
-                    switch (event.getAction()) {
-                        case MotionEvent.ACTION_DOWN:
-                            // Show the popup when touched.
-                            showPopupBubble(anchorView, info);
-                            break;
-                        case MotionEvent.ACTION_UP:
-                            // Dismiss the popup when the touch is released.
-                            if (popupWindow != null && popupWindow.isShowing()) {
-                                popupWindow.dismiss();
-                            }
-                            break;
-                    }
-                    return true; // Consume the touch event.
-                }
-            });
-
-            // Set up the long click listener.
-            anchorView.setOnLongClickListener(new LongClickListener(info));
-        }
-
-        // Call this method to set up the long hold listener on your image views.
-        private void setupLongHoldListener(View anchorView, String info) {
-            anchorView.setOnLongClickListener(new View.OnLongClickListener() {
-                @Override
-                public boolean onLongClick(View v) {
-                    // Show the popup bubble or tooltip.
-                    showPopupBubble(v, info);
-                    return true; // Consume the long click event.
-                }
-            });
-        }
-
-        /*
-         * Set obstacle ID images
-         */
-        private void setObstacleImage(int obstacleNumber, String image) {
-            int orientation = (int) obstacles.get(obstacleNumber).getRotation();
-
-            try {
-                if (orientation == 0) {
-                    obstacles.get(obstacleNumber).setImageResource(Helper.resources.get(image + "n"));
-                } else if (orientation == 90) {
-                    obstacles.get(obstacleNumber).setImageResource(Helper.resources.get(image + "e"));
-                } else if (orientation == 180) {
-                    obstacles.get(obstacleNumber).setImageResource(Helper.resources.get(image + "s"));
-                } else if (orientation == 270) {
-                    obstacles.get(obstacleNumber).setImageResource(Helper.resources.get(image + "w"));
-                } else {
-                    obstacles.get(obstacleNumber).setImageResource(Helper.resources.get(image));
-                    obstacles.get(obstacleNumber).setRotation(0);
-                }
-                numberOfImagesRead++;
-            } catch (Exception e) {
-                // TODO: handle exception
-                e.printStackTrace();
-            }
-
-            if (numberOfImagesRead == numberOfObstaclesAdded) {
-                Chronometer IRTimer = (Chronometer) findViewById(R.id.IRTimer);
-                IRTimer.stop();
-                updateStatusWindow("IR Complete");
-                numberOfImagesRead = 0;
-            }
-
-            // Function to implement long hold listener that shows Image ID.
-            setupLongHoldListener(obstacles.get(obstacleNumber), image);
-            obstacles.get(obstacleNumber).setOnClickListener(view -> {});
-        }
-
-    /*
-     * Initializes the arrow buttons
-     */
-    private void initMovementButtons() {
-        ImageButton forwardButton = (ImageButton) findViewById(R.id.forwardButton);
-        forwardButton.setOnClickListener(v -> {
-            // Log.d(TAG, "forward");
-
-            // Bluetooth message
-            if (BluetoothService.BluetoothConnectionStatus) {
-                // byte[] bytes = "STM:w100n".getBytes(Charset.defaultCharset());
-                byte[] bytes = "SF050".getBytes(Charset.defaultCharset());
-                BluetoothService.write(bytes);
-            }
-
-            // Animation
-            forwardButtonCommand(1);
-        });
-
-        ImageButton reverseButton = (ImageButton) findViewById(R.id.reverseButton);
-        reverseButton.setOnClickListener(v -> {
-            // Log.d(TAG, "reverse");
-
-            // Bluetooth message
-            if (BluetoothService.BluetoothConnectionStatus) {
-                // byte[] bytes = "STM:s100n".getBytes(Charset.defaultCharset());
-                byte[] bytes = "SB050".getBytes(Charset.defaultCharset());
-                BluetoothService.write(bytes);
-            }
-
-            // Animation
-            reverseButtonCommand(1);
-        });
-
-        ImageButton leftButton = (ImageButton) findViewById(R.id.leftButton);
-        leftButton.setOnClickListener(v -> {
-            // Log.d(TAG, "left");
-
-            if (BluetoothService.BluetoothConnectionStatus) {
-                // byte[] bytes = "STM:ln".getBytes(Charset.defaultCharset());
-                byte[] bytes = "LF090".getBytes(Charset.defaultCharset());
-                BluetoothService.write(bytes);
-            }
-
-            leftCommand();
-        });
-
-        ImageButton rightButton = (ImageButton) findViewById(R.id.rightButton);
-        rightButton.setOnClickListener(v -> {
-            // Log.d(TAG, "right");
-
-            if (BluetoothService.BluetoothConnectionStatus) {
-                // byte[] bytes = "STM:rn".getBytes(Charset.defaultCharset());
-                byte[] bytes = "RF090".getBytes(Charset.defaultCharset());
-                BluetoothService.write(bytes);
-            }
-
-            rightCommand();
-        });
-    }
-
-    /**
-     * Initalizes buttons, car and setup listeners
-     */
-    private void initButtons() {
-        // Declarations
-        car = findViewById(R.id.car);
-        car_x = findViewById(R.id.x_tv);
-        car_y = findViewById(R.id.y_tv);
-        car_dir = findViewById(R.id.dir_tv);
-        IRButton = findViewById(R.id.IRButton);
-        SPButton = findViewById(R.id.SPBtn);
-        resetButton = findViewById(R.id.resetButton);
-        presetsButton = findViewById(R.id.presetsButton);
-        setButton = findViewById(R.id.setButton);
-        saveButton = findViewById(R.id.saveButton);
-        timerButton = findViewById(R.id.timerButton);
-        statusWindow = findViewById(R.id.statusWindowText);
-
-        // Events
-        IRButton.setOnClickListener(view -> beginIRTask());
-        SPButton.setOnClickListener(view -> beginSPTask());
-        resetButton.setOnClickListener(view -> setResetButton());
-        presetsButton.setOnClickListener(view -> setPresetsButton());
-        setButton.setOnClickListener(view -> toggleSetMode());
-        saveButton.setOnClickListener(view -> sendObstacles());
-        timerButton.setOnClickListener(view -> stopTimerButton());
-
-        // Initialize car to bottom left
-        car.setX(INITIAL_X);
-        car.setY(INITIAL_Y);
-        updateXYDirText();
-    }
-
-    /*
-     * Function to wait for certain amount of time
-     */
-    private void sleepFor(int time) {
-        try {
-            TimeUnit.MILLISECONDS.sleep(time);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-    }
-
-    /*
-     * ======================
-     * For movement commands:
-     * 0 - North
-     * 1 - East
-     * 2 - South
-     * 3 - West
-     * ======================
-     */
-
-    private void forwardButtonCommand(int noOfGrids) {
-        int orientation = (int) car.getRotation();
-        int new_x = (int) car.getX();
-        int new_y = (int) car.getY();
-        ObjectAnimator animator;
-        switch (((orientation / 90) % 4 + 4) % 4) {
-            case 0:
-                new_y = (int) car.getY() - noOfGrids * SNAP_GRID_INTERVAL;
-                car.setY(new_y);
-                animator = ObjectAnimator.ofFloat(car, "y", new_y);
-                animator.setDuration(noOfGrids * ANIMATOR_DURATION);
-                animator.start();
-                updateXYDirText();
-                break;
-            case 1:
-                new_x = (int) car.getX() + noOfGrids * SNAP_GRID_INTERVAL;
-                car.setX(new_x);
-                animator = ObjectAnimator.ofFloat(car, "x", new_x);
-                animator.setDuration(noOfGrids * ANIMATOR_DURATION);
-                animator.start();
-                updateXYDirText();
-                break;
-            case 2:
-                new_y = (int) car.getY() + noOfGrids * SNAP_GRID_INTERVAL;
-                car.setY(new_y);
-                animator = ObjectAnimator.ofFloat(car, "y", new_y);
-                animator.setDuration(noOfGrids * ANIMATOR_DURATION);
-                animator.start();
-                updateXYDirText();
-                break;
-            case 3:
-                new_x = (int) car.getX() - noOfGrids * SNAP_GRID_INTERVAL;
-                car.setX(new_x);
-                animator = ObjectAnimator.ofFloat(car, "x", new_x);
-                animator.setDuration(noOfGrids * ANIMATOR_DURATION);
-                animator.start();
-                updateXYDirText();
-                break;
-            default:
-                // Shouldn't reach this case
-                break;
-        }
-        CanvasGrid canvasGrid = findViewById(R.id.grid);
-        canvasGrid.setCarPosition2(new_x/35 + 1,new_y/35 + 1);
-        Log.d("Forward", "Pressed!" + new_x);
-    }
-
-    private void reverseButtonCommand(int noOfGrids) {
-        int orientation = (int) car.getRotation();
-        int new_x = (int) car.getX();
-        int new_y = (int) car.getY();
-        ObjectAnimator animator;
-        switch (((orientation / 90) % 4 + 4) % 4) {
-            case 0:
-                new_y = (int) car.getY() + noOfGrids * SNAP_GRID_INTERVAL;
-                car.setY(new_y);
-                animator = ObjectAnimator.ofFloat(car, "y", new_y);
-                animator.setDuration(noOfGrids * ANIMATOR_DURATION);
-                animator.start();
-                updateXYDirText();
-                break;
-            case 1:
-                new_x = (int) car.getX() - noOfGrids * SNAP_GRID_INTERVAL;
-                car.setX(new_x);
-                animator = ObjectAnimator.ofFloat(car, "x", new_x);
-                animator.setDuration(noOfGrids * ANIMATOR_DURATION);
-                animator.start();
-                updateXYDirText();
-                break;
-            case 2:
-                new_y = (int) car.getY() - noOfGrids * SNAP_GRID_INTERVAL;
-                car.setY(new_y);
-                animator = ObjectAnimator.ofFloat(car, "y", new_y);
-                animator.setDuration(noOfGrids * ANIMATOR_DURATION);
-                animator.start();
-                updateXYDirText();
-                break;
-            case 3:
-                new_x = (int) car.getX() + noOfGrids * SNAP_GRID_INTERVAL;
-                car.setX(new_x);
-                animator = ObjectAnimator.ofFloat(car, "x", new_x);
-                animator.setDuration(noOfGrids * ANIMATOR_DURATION);
-                animator.start();
-                updateXYDirText();
-                break;
-            default:
-                // Shouldn't reach this case
-                break;
-        }
-        CanvasGrid canvasGrid = findViewById(R.id.grid);
-        canvasGrid.setCarPosition(new_x/35 + 1,new_y/35 + 1);
-    }
-
-    public void leftCommand() {
-        int orientation = (int) car.getRotation();
-        switch (((orientation / 90) % 4 + 4) % 4) {
-            case 0:
-                car.setRotation(270);
-                break;
-            case 1:
-                car.setRotation(0);
-                break;
-            case 2:
-                car.setRotation(90);
-                break;
-            case 3:
-                car.setRotation(180);
-                break;
-            default:
-                // Shouldn't reach this case
-                break;
-        }
-
-        updateXYDirText();
-    };
-
-    private void rightCommand() {
-        int orientation = (int) car.getRotation();
-        switch (((orientation / 90) % 4 + 4) % 4) {
-            case 0:
-                car.setRotation(90);
-                break;
-            case 1:
-                car.setRotation(180);
-                break;
-            case 2:
-                car.setRotation(270);
-                break;
-            case 3:
-                car.setRotation(0);
-                break;
-            default:
-                // Shouldn't reach this case
-                break;
-        }
-
-        updateXYDirText();
-    }
-
-    /*
-     * Slide left - forward
-     */
-    public void leftSlideCommand() {
-        int orientation = (int) car.getRotation();
-        int new_x, new_y;
-        AnimatorSet animatorSet;
-        ObjectAnimator moveStraightAnimator, moveStraightAgainAnimator;
-
-        switch (((orientation / 90) % 4 + 4) % 4) {
-            case 0:
-                new_y = (int) car.getY() - 4 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() - SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 1:
-                new_y = (int) car.getY() - SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() + 4 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 2:
-                new_y = (int) car.getY() + 4 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() + SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 3:
-                new_y = (int) car.getY() + SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() - 4 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            default:
-                // Shouldn't reach this case
-                break;
-        }
-    }
-
-    /*
-     * Slide right - forward
-     */
-    private void rightSlideCommand() {
-        int orientation = (int) car.getRotation();
-        int new_x, new_y;
-        AnimatorSet animatorSet;
-        ObjectAnimator moveStraightAnimator, moveStraightAgainAnimator;
-
-        switch (((orientation / 90) % 4 + 4) % 4) {
-            case 0:
-                new_y = (int) car.getY() - 4 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() + SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 1:
-                new_y = (int) car.getY() + SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() + 4 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 2:
-                new_y = (int) car.getY() + 4 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() - SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 3:
-                new_y = (int) car.getY() - SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() - 4 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            default:
-                // Shouldn't reach this case
-                break;
-        }
-        updateXYDirText();
-    }
-
-    /*
-     * Medium turn left
-     */
-    public void leftMidButtonCommand() {
-        int orientation = (int) car.getRotation();
-        int new_x, new_y;
-        AnimatorSet animatorSet;
-        ObjectAnimator moveStraightAnimator, turnAnimator, moveStraightAgainAnimator;
-
-        switch (((orientation / 90) % 4 + 4) % 4) {
-            case 0:
-                new_y = (int) car.getY() - 2 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() - 3 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                turnAnimator = ObjectAnimator.ofFloat(car, "rotation", -90);
-                turnAnimator.setDuration(500);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, turnAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        car.setRotation(270);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 1:
-                new_y = (int) car.getY() - 3 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() + 2 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                turnAnimator = ObjectAnimator.ofFloat(car, "rotation", 0);
-                turnAnimator.setDuration(500);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, turnAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        car.setRotation(0);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 2:
-                new_y = (int) car.getY() + 2 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() + 3 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                turnAnimator = ObjectAnimator.ofFloat(car, "rotation", 90);
-                turnAnimator.setDuration(500);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, turnAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        car.setRotation(90);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 3:
-                new_y = (int) car.getY() + 3 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() - 2 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                turnAnimator = ObjectAnimator.ofFloat(car, "rotation", 180);
-                turnAnimator.setDuration(500);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, turnAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        car.setRotation(180);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            default:
-                // Shouldn't reach this case
-                break;
-        }
-    }
-
-    /*
-     * Medium turn right
-     */
-    public void rightMidButtonCommand() {
-        int orientation = (int) car.getRotation();
-        int new_x, new_y;
-        AnimatorSet animatorSet;
-        ObjectAnimator moveStraightAnimator, turnAnimator, moveStraightAgainAnimator;
-
-        switch (((orientation / 90) % 4 + 4) % 4) {
-            case 0:
-                new_y = (int) car.getY() - 2 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() + 3 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                turnAnimator = ObjectAnimator.ofFloat(car, "rotation", 90);
-                turnAnimator.setDuration(500);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, turnAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        car.setRotation(90);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 1:
-                new_y = (int) car.getY() + 3 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() + 2 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                turnAnimator = ObjectAnimator.ofFloat(car, "rotation", 180);
-                turnAnimator.setDuration(500);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, turnAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        car.setRotation(180);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 2:
-                new_y = (int) car.getY() + 2 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() - 3 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                turnAnimator = ObjectAnimator.ofFloat(car, "rotation", 270);
-                turnAnimator.setDuration(500);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, turnAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        car.setRotation(270);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 3:
-                new_y = (int) car.getY() - 3 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() - 2 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                turnAnimator = ObjectAnimator.ofFloat(car, "rotation", 360);
-                turnAnimator.setDuration(500);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, turnAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        car.setRotation(0);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            default:
-                // Shouldn't reach this case
-                break;
-        }
-    }
-
-    /*
-     * Slide left - reverse
-     */
-    public void leftSlideReverseCommand() {
-        int orientation = (int) car.getRotation();
-        int new_x, new_y;
-        AnimatorSet animatorSet;
-        ObjectAnimator moveStraightAnimator, moveStraightAgainAnimator;
-
-        switch (((orientation / 90) % 4 + 4) % 4) {
-            case 0:
-                new_y = (int) car.getY() + 4 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() - SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 1:
-                new_y = (int) car.getY() - SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() - 4 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 2:
-                new_y = (int) car.getY() - 4 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() + SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 3:
-                new_y = (int) car.getY() + SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() + 4 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            default:
-                // Shouldn't reach this case
-                break;
-        }
-    }
+            // Function to implement long hold listener that shows Image ID.
+            ImageView obstacle = obstacles.getView(index);
+            setupLongHoldListener(obstacle, String.valueOf(targetId));
+            obstacle.setOnClickListener(view -> {});
+        }
 
     /*
-     * Slide right - reverse
+     * Initializes the arrow buttons
      */
-    private void rightSlideReverseCommand() {
-        int orientation = (int) car.getRotation();
-        int new_x, new_y;
-        AnimatorSet animatorSet;
-        ObjectAnimator moveStraightAnimator, moveStraightAgainAnimator;
-
-        switch (((orientation / 90) % 4 + 4) % 4) {
-            case 0:
-                new_y = (int) car.getY() + 4 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() + SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
+    private void initMovementButtons() {
+        ImageButton forwardButton = (ImageButton) findViewById(R.id.forwardButton);
+        forwardButton.setOnClickListener(v -> {
+            // Log.d(TAG, "forward");
 
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
+            // Bluetooth message
+            if (link.isConnected()) {
+                // byte[] bytes = "STM:w100n".getBytes(Charset.defaultCharset());
+                byte[] bytes = "SF050".getBytes(Charset.defaultCharset());
+                link.write(bytes);
+            }
 
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 1:
-                new_y = (int) car.getY() + SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() - 4 * SNAP_GRID_INTERVAL;
+            // Animation
+            moveRobot(ProtocolMessage.MoveCommand.Type.SF, 1, true);
+        });
 
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
+        ImageButton reverseButton = (ImageButton) findViewById(R.id.reverseButton);
+        reverseButton.setOnClickListener(v -> {
+            // Log.d(TAG, "reverse");
 
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
+            // Bluetooth message
+            if (link.isConnected()) {
+                // byte[] bytes = "STM:s100n".getBytes(Charset.defaultCharset());
+                byte[] bytes = "SB050".getBytes(Charset.defaultCharset());
+                link.write(bytes);
+            }
 
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 2:
-                new_y = (int) car.getY() - 4 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() - SNAP_GRID_INTERVAL;
+            // Animation
+            moveRobot(ProtocolMessage.MoveCommand.Type.SB, 1, true);
+        });
 
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
+        ImageButton leftButton = (ImageButton) findViewById(R.id.leftButton);
+        leftButton.setOnClickListener(v -> {
+            // Log.d(TAG, "left");
 
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
+            if (link.isConnected()) {
+                // byte[] bytes = "STM:ln".getBytes(Charset.defaultCharset());
+                byte[] bytes = "LF090".getBytes(Charset.defaultCharset());
+                link.write(bytes);
+            }
 
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 3:
-                new_y = (int) car.getY() - SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() + 4 * SNAP_GRID_INTERVAL;
+            turnRobot(-1);
+        });
 
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
+        ImageButton rightButton = (ImageButton) findViewById(R.id.rightButton);
+        rightButton.setOnClickListener(v -> {
+            // Log.d(TAG, "right");
 
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
+            if (link.isConnected()) {
+                // byte[] bytes = "STM:rn".getBytes(Charset.defaultCharset());
+                byte[] bytes = "RF090".getBytes(Charset.defaultCharset());
+                link.write(bytes);
+            }
 
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            default:
-                // Shouldn't reach this case
-                break;
-        }
-        updateXYDirText();
+            turnRobot(1);
+        });
     }
 
-    /*
-     * reverse left
+    /**
+     * Initalizes buttons, car and setup listeners
      */
-    public void leftMidReverseButtonCommand() {
-        int orientation = (int) car.getRotation();
-        int new_x, new_y;
-        AnimatorSet animatorSet;
-        ObjectAnimator moveStraightAnimator, turnAnimator, moveStraightAgainAnimator;
-
-        switch (((orientation / 90) % 4 + 4) % 4) {
-            case 0:
-                new_y = (int) car.getY() + 3 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() - 2 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                turnAnimator = ObjectAnimator.ofFloat(car, "rotation", 90);
-                turnAnimator.setDuration(500);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, turnAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        car.setRotation(90);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 1:
-                new_y = (int) car.getY() - 2 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() - 3 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                turnAnimator = ObjectAnimator.ofFloat(car, "rotation", 180);
-                turnAnimator.setDuration(500);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, turnAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        car.setRotation(180);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 2:
-                new_y = (int) car.getY() - 3 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() + 2 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                turnAnimator = ObjectAnimator.ofFloat(car, "rotation", 270);
-                turnAnimator.setDuration(500);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, turnAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        car.setRotation(270);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 3:
-                new_y = (int) car.getY() + 2 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() + 3 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                turnAnimator = ObjectAnimator.ofFloat(car, "rotation", 360);
-                turnAnimator.setDuration(500);
+    private void initButtons() {
+        // Declarations
+        car = findViewById(R.id.car);
+        car_x = findViewById(R.id.x_tv);
+        car_y = findViewById(R.id.y_tv);
+        car_dir = findViewById(R.id.dir_tv);
+        IRButton = findViewById(R.id.IRButton);
+        SPButton = findViewById(R.id.SPBtn);
+        resetButton = findViewById(R.id.resetButton);
+        presetsButton = findViewById(R.id.presetsButton);
+        setButton = findViewById(R.id.setButton);
+        saveButton = findViewById(R.id.saveButton);
+        timerButton = findViewById(R.id.timerButton);
+        statusWindow = findViewById(R.id.statusWindowText);
+        linkMetricsOverlay = findViewById(R.id.linkMetricsOverlay);
 
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
+        // Events
+        IRButton.setOnClickListener(view -> beginIRTask());
+        SPButton.setOnClickListener(view -> beginSPTask());
+        resetButton.setOnClickListener(view -> setResetButton());
+        presetsButton.setOnClickListener(view -> setPresetsButton());
+        setButton.setOnClickListener(view -> toggleSetMode());
+        saveButton.setOnClickListener(view -> sendObstacles());
+        timerButton.setOnClickListener(view -> stopTimerButton());
+    }
 
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, turnAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        car.setRotation(0);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            default:
-                // Shouldn't reach this case
-                break;
+    /*
+     * Function to wait for certain amount of time
+     */
+    private void sleepFor(int time) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(time);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
         }
     }
 
     /*
-     * reverse right
+     * ======================
+     * Movement commands, see MotionModel
+     * The pose comes from ArenaState and is updated as soon as a move arrives,
+     * CommandAnimator catches the car view up with it
+     * ======================
      */
-    public void rightMidReverseButtonCommand() {
-        int orientation = (int) car.getRotation();
-        int new_x, new_y;
-        AnimatorSet animatorSet;
-        ObjectAnimator moveStraightAnimator, turnAnimator, moveStraightAgainAnimator;
-
-        switch (((orientation / 90) % 4 + 4) % 4) {
-            case 0:
-                new_y = (int) car.getY() + 3 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() + 2 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                turnAnimator = ObjectAnimator.ofFloat(car, "rotation", -90);
-                turnAnimator.setDuration(500);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, turnAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        car.setRotation(270);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 1:
-                new_y = (int) car.getY() + 2 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() - 3 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
 
-                turnAnimator = ObjectAnimator.ofFloat(car, "rotation", 0);
-                turnAnimator.setDuration(500);
+    private final MotionModel.Step motionStep = new MotionModel.Step();
 
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, turnAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        car.setRotation(0);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 2:
-                new_y = (int) car.getY() - 3 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() - 2 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                turnAnimator = ObjectAnimator.ofFloat(car, "rotation", 90);
-                turnAnimator.setDuration(500);
-
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
-
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, turnAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        car.setRotation(90);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            case 3:
-                new_y = (int) car.getY() - 2 * SNAP_GRID_INTERVAL;
-                new_x = (int) car.getX() + 3 * SNAP_GRID_INTERVAL;
-
-                moveStraightAnimator = ObjectAnimator.ofFloat(car, "x", new_x);
-                moveStraightAnimator.setDuration(ANIMATOR_DURATION);
-
-                turnAnimator = ObjectAnimator.ofFloat(car, "rotation", 180);
-                turnAnimator.setDuration(500);
+    /*
+     * The buttons refuse a move that leaves the arena or hits an obstacle. A COMMAND is
+     * what the robot already did, so it is shown anyway and only flagged.
+     */
+    private void moveRobot(ProtocolMessage.MoveCommand.Type type, int distanceCells, boolean manual) {
+        int startX = arenaState.getRobotX();
+        int startY = arenaState.getRobotY();
+        int heading = MotionModel.headingOf(arenaState.getRobotDirection());
+        MotionModel.Step step = MotionModel.apply(startX, startY, heading, type, distanceCells, motionStep);
+
+        int collision = collisionChecker.firstCollision(step);
+        if (collision != CollisionChecker.CLEAR) {
+            updateStatusWindow("Collision at " + step.sweptX[collision] + "," + step.sweptY[collision]);
+            if (manual) {
+                return;
+            }
+        }
 
-                moveStraightAgainAnimator = ObjectAnimator.ofFloat(car, "y", new_y);
-                moveStraightAgainAnimator.setDuration(ANIMATOR_DURATION);
+        // Cells the car drives over, the grid has none before layout
+        if (geometry != null) {
+            CanvasGrid canvasGrid = findViewById(R.id.grid);
+            for (int i = 0; i < step.sweptCount; i++) {
+                canvasGrid.setCarPosition(step.sweptX[i], geometry.flipY(step.sweptY[i]));
+            }
+        }
 
-                animatorSet = new AnimatorSet();
-                animatorSet.playSequentially(moveStraightAnimator, turnAnimator, moveStraightAgainAnimator);
-                animatorSet.addListener(new AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(Animator animation) {
-                        car.setY(new_y);
-                        car.setX(new_x);
-                        car.setRotation(180);
-                        updateXYDirText();
-                    }
-                });
-                animatorSet.start();
-                break;
-            default:
-                // Shouldn't reach this case
-                break;
+        // Queued first so renderRobot() leaves the car view to the animation.
+        // Before layout there is nothing to animate, the car is placed once there is.
+        if (commandAnimator != null) {
+            commandAnimator.enqueue(startX, startY, heading, step);
         }
+        arenaState.applyPose(step.x, step.y, MotionModel.directionOf(step.heading));
+    }
+
+    /*
+     * The arrow buttons turn the car on the spot
+     */
+    private void turnRobot(int quarterTurns) {
+        int heading = MotionModel.headingOf(arenaState.getRobotDirection());
+        arenaState.applyPose(arenaState.getRobotX(), arenaState.getRobotY(),
+                MotionModel.directionOf(MotionModel.turn(heading, quarterTurns)));
     }
 
     private void stopTimerButton() {
@@ -2225,15 +616,23 @@ public class Arena extends AppCompatActivity {
         CanvasGrid canvasGrid = findViewById(R.id.grid);
         canvasGrid.clearPositions();
 
-        if (BluetoothService.BluetoothConnectionStatus) {
+        // Held by BluetoothService and sent on reconnect if the link is down right now
+        BluetoothService.LinkState linkState = link.getLinkState();
+        if (linkState.holdsWrites() && link.write(IRstart.getBytes(Charset.defaultCharset()))) {
             //Toast.makeText(this, stringBuilder.toString(), Toast.LENGTH_SHORT).show();
-            byte[] bytes = IRstart.getBytes(Charset.defaultCharset());
-            BluetoothService.write(bytes);
-            Toast.makeText(Arena.this, "Obstacles sent", Toast.LENGTH_SHORT).show();
+            if (link.isConnected()) {
+                Toast.makeText(Arena.this, "Obstacles sent", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(Arena.this, "IR will start on reconnect", Toast.LENGTH_SHORT).show();
+            }
             updateStatusWindow("IR Started");
         } else {
             updateStatusWindow("IR Not Started");
-            Toast.makeText(Arena.this, "Please connect to Bluetooth.", Toast.LENGTH_SHORT).show();
+            if (linkState == BluetoothService.LinkState.FAILED) {
+                Toast.makeText(Arena.this, "Connection failed, please reconnect.", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(Arena.this, "Please connect to Bluetooth.", Toast.LENGTH_SHORT).show();
+            }
             sleepFor(ANIMATOR_DURATION);
             updateStatusWindow("Ready");
             return;
@@ -2249,9 +648,9 @@ public class Arena extends AppCompatActivity {
         CanvasGrid canvasGrid = findViewById(R.id.grid);
         canvasGrid.clearPositions();
 
-        if (BluetoothService.BluetoothConnectionStatus) {
+        if (link.isConnected()) {
             byte[] bytes = "STM:sp".getBytes(Charset.defaultCharset());
-            BluetoothService.write(bytes);
+            link.write(bytes);
             Toast.makeText(Arena.this, "Shortest Path Started.", Toast.LENGTH_SHORT).show();
             updateStatusWindow("SP Started");
         } else {
@@ -2280,70 +679,10 @@ public class Arena extends AppCompatActivity {
         IRTimer.stop();
         updateStatusWindow("Ready");
 
-        // Hard coded
-        obstacle1.setTranslationX(0);
-        obstacle1.setTranslationY(0);
-
-        obstacle2.setTranslationX(0);
-        obstacle2.setTranslationY(0);
-
-        obstacle3.setTranslationX(0);
-        obstacle3.setTranslationY(0);
-
-        obstacle4.setTranslationX(0);
-        obstacle4.setTranslationY(0);
-
-        obstacle5.setTranslationX(0);
-        obstacle5.setTranslationY(0);
-
-        obstacle6.setTranslationX(0);
-        obstacle6.setTranslationY(0);
-
-        obstacle7.setTranslationX(0);
-        obstacle7.setTranslationY(0);
-
-        obstacle8.setTranslationX(0);
-        obstacle8.setTranslationY(0);
-
-        car.setX(INITIAL_X);
-        car.setY(INITIAL_Y);
-        car.setRotation(0);
-        updateXYDirText();
-
-        obstacle1.setImageResource(Helper.resources.get("o1n"));
-        obstacle1.setTag(Helper.resources.get("o1n"));
-        obstacle2.setImageResource(Helper.resources.get("o2n"));
-        obstacle2.setTag(Helper.resources.get("o2n"));
-        obstacle3.setImageResource(Helper.resources.get("o3n"));
-        obstacle3.setTag(Helper.resources.get("o3n"));
-        obstacle4.setImageResource(Helper.resources.get("o4n"));
-        obstacle4.setTag(Helper.resources.get("o4n"));
-        obstacle5.setImageResource(Helper.resources.get("o5n"));
-        obstacle5.setTag(Helper.resources.get("o5n"));
-        obstacle6.setImageResource(Helper.resources.get("o6n"));
-        obstacle6.setTag(Helper.resources.get("o6n"));
-        obstacle7.setImageResource(Helper.resources.get("o7n"));
-        obstacle7.setTag(Helper.resources.get("o7n"));
-        obstacle8.setImageResource(Helper.resources.get("o8n"));
-        obstacle1.setTag(Helper.resources.get("o8n"));
-
-        obstacle1.setRotation(0);
-        obstacle2.setRotation(0);
-        obstacle3.setRotation(0);
-        obstacle4.setRotation(0);
-        obstacle5.setRotation(0);
-        obstacle6.setRotation(0);
-        obstacle7.setRotation(0);
-        obstacle8.setRotation(0);
-
-        obstacle1.setOnLongClickListener(view -> {return false;});
-        obstacle2.setOnLongClickListener(view -> {return false;});
-        obstacle3.setOnLongClickListener(view -> {return false;});
-        obstacle4.setOnLongClickListener(view -> {return false;});
-        obstacle5.setOnLongClickListener(view -> {return false;});
-        obstacle6.setOnLongClickListener(view -> {return false;});
-        obstacle7.setOnLongClickListener(view -> {return false;});
-        obstacle8.setOnLongClickListener(view -> {return false;});
+        // Car back to the start, obstacles back in the tray facing north
+        showingRoute = false;
+        commandAnimator.cancel();
+        arenaState.reset();
 
         initObstacles();
         numberOfObstaclesAdded = 0;
@@ -2365,68 +704,34 @@ public class Arena extends AppCompatActivity {
                 popupMenu.setOnMenuItemClickListener(new PopupMenu.OnMenuItemClickListener() {
                     @Override
                     public boolean onMenuItemClick(MenuItem item) {
-                        SharedPreferences sharedPreferences = getSharedPreferences(SHARED_PREFS, MODE_PRIVATE);
                         switch (item.getItemId()) {
                             case R.id.option1:
                                 updateStatusWindow("Config 1");
-                                currentPreset = "config1_";
+                                currentPreset = "Preset 1";
                                 return true;
                             case R.id.option2:
                                 updateStatusWindow("Config 2");
-                                currentPreset = "config2_";
+                                currentPreset = "Preset 2";
                                 return true;
                             case R.id.option3:
                                 updateStatusWindow("Config 3");
-                                currentPreset = "config3_";
+                                currentPreset = "Preset 3";
                                 return true;
                             case R.id.option4:
                                 updateStatusWindow("Config 4");
-                                currentPreset = "config4_";
+                                currentPreset = "Preset 4";
                                 return true;
                             case R.id.option5:
                                 updateStatusWindow("Config 5");
-                                currentPreset = "config5_";
+                                currentPreset = "Preset 5";
                                 return true;
                             case R.id.saveoption:
                                 if (currentPreset == "blank") {
                                     updateStatusWindow("Choose Preset");
                                     return true;
                                 }
-                                SharedPreferences.Editor editor = sharedPreferences.edit();
-                                
-                                editor.putFloat(currentPreset + "obs1X", findViewById(R.id.obstacle1).getX());
-                                editor.putFloat(currentPreset + "obs1Y", findViewById(R.id.obstacle1).getY());
-                                editor.putFloat(currentPreset + "obs1Rotation", findViewById(R.id.obstacle1).getRotation());
-
-                                editor.putFloat(currentPreset + "obs2X", findViewById(R.id.obstacle2).getX());
-                                editor.putFloat(currentPreset + "obs2Y", findViewById(R.id.obstacle2).getY());
-                                editor.putFloat(currentPreset + "obs2Rotation", findViewById(R.id.obstacle2).getRotation());
-
-                                editor.putFloat(currentPreset + "obs3X", findViewById(R.id.obstacle3).getX());
-                                editor.putFloat(currentPreset + "obs3Y", findViewById(R.id.obstacle3).getY());
-                                editor.putFloat(currentPreset + "obs3Rotation", findViewById(R.id.obstacle3).getRotation());
-
-                                editor.putFloat(currentPreset + "obs4X", findViewById(R.id.obstacle4).getX());
-                                editor.putFloat(currentPreset + "obs4Y", findViewById(R.id.obstacle4).getY());
-                                editor.putFloat(currentPreset + "obs4Rotation", findViewById(R.id.obstacle4).getRotation());
-
-                                editor.putFloat(currentPreset + "obs5X", findViewById(R.id.obstacle5).getX());
-                                editor.putFloat(currentPreset + "obs5Y", findViewById(R.id.obstacle5).getY());
-                                editor.putFloat(currentPreset + "obs5Rotation", findViewById(R.id.obstacle5).getRotation());
-
-                                editor.putFloat(currentPreset + "obs6X", findViewById(R.id.obstacle6).getX());
-                                editor.putFloat(currentPreset + "obs6Y", findViewById(R.id.obstacle6).getY());
-                                editor.putFloat(currentPreset + "obs6Rotation", findViewById(R.id.obstacle6).getRotation());
-
-                                editor.putFloat(currentPreset + "obs7X", findViewById(R.id.obstacle7).getX());
-                                editor.putFloat(currentPreset + "obs7Y", findViewById(R.id.obstacle7).getY());
-                                editor.putFloat(currentPreset + "obs7Rotation", findViewById(R.id.obstacle7).getRotation());
-
-                                editor.putFloat(currentPreset + "obs8X", findViewById(R.id.obstacle8).getX());
-                                editor.putFloat(currentPreset + "obs8Y", findViewById(R.id.obstacle8).getY());
-                                editor.putFloat(currentPreset + "obs8Rotation", findViewById(R.id.obstacle8).getRotation());
-
-                                editor.apply();
+                                layoutStore.save(LayoutStore.Layout.of(currentPreset, arenaState,
+                                        System.currentTimeMillis()));
                                 updateStatusWindow("Saved");
                                 currentPreset = "blank";
                                 return true;
@@ -2435,166 +740,34 @@ public class Arena extends AppCompatActivity {
                                     updateStatusWindow("Choose Preset");
                                     return true;
                                 }
-                                if (sharedPreferences.contains(currentPreset + "obs1X")) {
-                                    obstacle1.setX(sharedPreferences.getFloat(currentPreset + "obs1X", 0.0f));
-                                    obstacle1.setY(sharedPreferences.getFloat(currentPreset + "obs1Y", 0.0f));
-                                    obstacle1.setRotation((sharedPreferences.getFloat(currentPreset + "obs1Rotation", 0.0f)));
-                                    int orientation1 = (int) obstacle1.getRotation();
-                                    switch (((orientation1 / 90) % 4 + 4) % 4) {
-                                        case 0:
-                                            obstacle1.setImageResource(Helper.resources.get("o1n"));
-                                            break;
-                                        case 1:
-                                            obstacle1.setImageResource(Helper.resources.get("o1e"));
-                                            break;
-                                        case 2:
-                                            obstacle1.setImageResource(Helper.resources.get("o1s"));
-                                            break;
-                                        case 3:
-                                            obstacle1.setImageResource(Helper.resources.get("o1w"));
-                                            break;
-                                    }
-                                    obstacle2.setX(sharedPreferences.getFloat(currentPreset + "obs2X", 0.0f));
-                                    obstacle2.setY(sharedPreferences.getFloat(currentPreset + "obs2Y", 0.0f));
-                                    obstacle2.setRotation((sharedPreferences.getFloat(currentPreset + "obs2Rotation", 0.0f)));
-                                    int orientation2 = (int) obstacle2.getRotation();
-                                    switch (((orientation2 / 90) % 4 + 4) % 4) {
-                                        case 0:
-                                            obstacle2.setImageResource(Helper.resources.get("o2n"));
-                                            break;
-                                        case 1:
-                                            obstacle2.setImageResource(Helper.resources.get("o2e"));
-                                            break;
-                                        case 2:
-                                            obstacle2.setImageResource(Helper.resources.get("o2s"));
-                                            break;
-                                        case 3:
-                                            obstacle2.setImageResource(Helper.resources.get("o2w"));
-                                            break;
+                                // Presets keep the obstacles, the car starts over
+                                layoutStore.load(currentPreset, layout -> {
+                                    boolean loaded = layout != null && arenaState.decodeObstacles(layout.obstacles);
+                                    if (loaded) {
+                                        arenaState.applyPose(ArenaState.START_X, ArenaState.START_Y, 0);
                                     }
-                                    obstacle3.setX(sharedPreferences.getFloat(currentPreset + "obs3X", 0.0f));
-                                    obstacle3.setY(sharedPreferences.getFloat(currentPreset + "obs3Y", 0.0f));
-                                    obstacle3.setRotation((sharedPreferences.getFloat(currentPreset + "obs3Rotation", 0.0f)));
-                                    int orientation3 = (int) obstacle3.getRotation();
-                                    switch (((orientation3 / 90) % 4 + 4) % 4) {
-                                        case 0:
-                                            obstacle3.setImageResource(Helper.resources.get("o3n"));
-                                            break;
-                                        case 1:
-                                            obstacle3.setImageResource(Helper.resources.get("o3e"));
-                                            break;
-                                        case 2:
-                                            obstacle3.setImageResource(Helper.resources.get("o3s"));
-                                            break;
-                                        case 3:
-                                            obstacle3.setImageResource(Helper.resources.get("o3w"));
-                                            break;
-                                    }
-                                    obstacle4.setX(sharedPreferences.getFloat(currentPreset + "obs4X", 0.0f));
-                                    obstacle4.setY(sharedPreferences.getFloat(currentPreset + "obs4Y", 0.0f));
-                                    obstacle4.setRotation((sharedPreferences.getFloat(currentPreset + "obs4Rotation", 0.0f)));
-                                    int orientation4 = (int) obstacle4.getRotation();
-                                    switch (((orientation4 / 90) % 4 + 4) % 4) {
-                                        case 0:
-                                            obstacle4.setImageResource(Helper.resources.get("o4n"));
-                                            break;
-                                        case 1:
-                                            obstacle4.setImageResource(Helper.resources.get("o4e"));
-                                            break;
-                                        case 2:
-                                            obstacle4.setImageResource(Helper.resources.get("o4s"));
-                                            break;
-                                        case 3:
-                                            obstacle4.setImageResource(Helper.resources.get("o4w"));
-                                            break;
-                                    }
-                                    obstacle5.setX(sharedPreferences.getFloat(currentPreset + "obs5X", 0.0f));
-                                    obstacle5.setY(sharedPreferences.getFloat(currentPreset + "obs5Y", 0.0f));
-                                    obstacle5.setRotation((sharedPreferences.getFloat(currentPreset + "obs5Rotation", 0.0f)));
-                                    int orientation5 = (int) obstacle5.getRotation();
-                                    switch (((orientation5 / 90) % 4 + 4) % 4) {
-                                        case 0:
-                                            obstacle5.setImageResource(Helper.resources.get("o5n"));
-                                            break;
-                                        case 1:
-                                            obstacle5.setImageResource(Helper.resources.get("o5e"));
-                                            break;
-                                        case 2:
-                                            obstacle5.setImageResource(Helper.resources.get("o5s"));
-                                            break;
-                                        case 3:
-                                            obstacle5.setImageResource(Helper.resources.get("o5w"));
-                                            break;
-                                    }
-                                    obstacle6.setX(sharedPreferences.getFloat(currentPreset + "obs6X", 0.0f));
-                                    obstacle6.setY(sharedPreferences.getFloat(currentPreset + "obs6Y", 0.0f));
-                                    obstacle6.setRotation((sharedPreferences.getFloat(currentPreset + "obs6Rotation", 0.0f)));
-                                    int orientation6 = (int) obstacle6.getRotation();
-                                    switch (((orientation6 / 90) % 4 + 4) % 4) {
-                                        case 0:
-                                            obstacle6.setImageResource(Helper.resources.get("o6n"));
-                                            break;
-                                        case 1:
-                                            obstacle6.setImageResource(Helper.resources.get("o6e"));
-                                            break;
-                                        case 2:
-                                            obstacle6.setImageResource(Helper.resources.get("o6s"));
-                                            break;
-                                        case 3:
-                                            obstacle6.setImageResource(Helper.resources.get("o6w"));
-                                            break;
-                                    }
-                                    obstacle7.setX(sharedPreferences.getFloat(currentPreset + "obs7X", 0.0f));
-                                    obstacle7.setY(sharedPreferences.getFloat(currentPreset + "obs7Y", 0.0f));
-                                    obstacle7.setRotation((sharedPreferences.getFloat(currentPreset + "obs7Rotation", 0.0f)));
-                                    int orientation7 = (int) obstacle7.getRotation();
-                                    switch (((orientation7 / 90) % 4 + 4) % 4) {
-                                        case 0:
-                                            obstacle7.setImageResource(Helper.resources.get("o7n"));
-                                            break;
-                                        case 1:
-                                            obstacle7.setImageResource(Helper.resources.get("o7e"));
-                                            break;
-                                        case 2:
-                                            obstacle7.setImageResource(Helper.resources.get("o7s"));
-                                            break;
-                                        case 3:
-                                            obstacle7.setImageResource(Helper.resources.get("o7w"));
-                                            break;
-                                    }
-                                    obstacle8.setX(sharedPreferences.getFloat(currentPreset + "obs8X", 0.0f));
-                                    obstacle8.setY(sharedPreferences.getFloat(currentPreset + "obs8Y", 0.0f));
-                                    obstacle8.setRotation((sharedPreferences.getFloat(currentPreset + "obs8Rotation", 0.0f)));
-                                    int orientation8 = (int) obstacle8.getRotation();
-                                    switch (((orientation8 / 90) % 4 + 4) % 4) {
-                                        case 0:
-                                            obstacle8.setImageResource(Helper.resources.get("o8n"));
-                                            break;
-                                        case 1:
-                                            obstacle8.setImageResource(Helper.resources.get("o8e"));
-                                            break;
-                                        case 2:
-                                            obstacle8.setImageResource(Helper.resources.get("o8s"));
-                                            break;
-                                        case 3:
-                                            obstacle8.setImageResource(Helper.resources.get("o8w"));
-                                            break;
-                                    }
-                                    car.setX(INITIAL_X);
-                                    car.setY(INITIAL_Y);
-                                    car.setRotation(0);
-                                    updateXYDirText();
-                                    updateStatusWindow("Loaded");
-                                    currentPreset = "blank";
-                                    CanvasGrid canvasGrid = findViewById(R.id.grid);
-                                    canvasGrid.clearPositions();
-                                    canvasGrid.clearHighlight();
-                                    return true;
-                                } else {
-                                    updateStatusWindow("No Saved Data");
-                                    currentPreset = "blank";
-                                    return true;
-                                }
+                                    runOnUiThread(() -> {
+                                        if (loaded) {
+                                            updateStatusWindow("Loaded");
+                                            CanvasGrid canvasGrid = findViewById(R.id.grid);
+                                            canvasGrid.clearPositions();
+                                            canvasGrid.clearHighlight();
+                                        } else {
+                                            updateStatusWindow("No Saved Data");
+                                        }
+                                    });
+                                });
+                                currentPreset = "blank";
+                                return true;
+                            case R.id.routeoption:
+                                previewRoute();
+                                return true;
+                            case R.id.recordoption:
+                                toggleRecording();
+                                return true;
+                            case R.id.replayoption:
+                                replayLastSession();
+                                return true;
                             default:
                                 return false;
                         }
@@ -2604,254 +777,128 @@ public class Arena extends AppCompatActivity {
                 popupMenu.show();
             }
         });
-//
-//        obstacle1.setX(350);
-//        obstacle1.setY(70);
-//        obstacle1.setRotation(180);
-//        obstacle1.setImageResource(Helper.resources.get("o1s"));
-//
-//        obstacle2.setX(595);
-//        obstacle2.setY(70);
-//        obstacle2.setRotation(270);
-//        obstacle2.setImageResource(Helper.resources.get("o2w"));
-//
-//        obstacle3.setX(70);
-//        obstacle3.setY(105);
-//        obstacle3.setRotation(180);
-//        obstacle3.setImageResource(Helper.resources.get("o3s"));
-//
-//        obstacle4.setX(560);
-//        obstacle4.setY(525);
-//        obstacle4.setRotation(180);
-//        obstacle4.setImageResource(Helper.resources.get("o4s"));
-//
-//        obstacle5.setX(455);
-//        obstacle5.setY(630);
-//        obstacle5.setRotation(270);
-//        obstacle5.setImageResource(Helper.resources.get("o5w"));
-//
-//        obstacle6.setX(210);
-//        obstacle6.setY(455);
-//        obstacle6.setRotation(0);
-//        obstacle6.setImageResource(Helper.resources.get("o6n"));
-//
-//        obstacle7.setX(315);
-//        obstacle7.setY(280);
-//        obstacle7.setRotation(270);
-//        obstacle7.setImageResource(Helper.resources.get("o7w"));
-//
-//        obstacle8.setX(105);
-//        obstacle8.setY(560);
-//        obstacle8.setRotation(90);
-//        obstacle8.setImageResource(Helper.resources.get("o8e"));
-//
-//        // Toast.makeText(Arena.this, "Preset 1 Applied", Toast.LENGTH_SHORT).show();
     }
 
     /*
-     * TODO: Figure out what I want to do with this shit
+     * ======================
+     * Route preview, see PathPlanner
+     * ======================
      */
-    public String[][] savedPreset = {};
 
-    private void setPreset2Button() {
-        if (savedPreset.length == 0) {
-            Toast.makeText(this, "No saved preset found", Toast.LENGTH_SHORT).show();
-        } else {
-            String[] obstacle1data = savedPreset[0];
-            obstacle1.setX(Integer.parseInt(obstacle1data[0]));
-            obstacle1.setY(Integer.parseInt(obstacle1data[1]));
-            Log.d(TAG, "Obstacle1 should be at " + obstacle1data[0] + "," + obstacle1data[1]);
-            switch (obstacle1data[2]) {
-                case ("N"):
-                    obstacle1.setRotation(0);
-                    obstacle1.setImageResource(Helper.resources.get("o1n"));
-                    break;
-                case ("E"):
-                    obstacle1.setRotation(90);
-                    obstacle1.setImageResource(Helper.resources.get("o1e"));
-                    break;
-                case ("S"):
-                    obstacle1.setRotation(180);
-                    obstacle1.setImageResource(Helper.resources.get("o1s"));
-                    break;
-                case ("W"):
-                    obstacle1.setRotation(270);
-                    obstacle1.setImageResource(Helper.resources.get("o1w"));
-                    break;
-                default:
-                    break;
-            }
-            String[] obstacle2data = savedPreset[1];
-            obstacle2.setX(Integer.parseInt(obstacle2data[0]));
-            obstacle2.setY(Integer.parseInt(obstacle2data[1]));
-            Log.d(TAG, "obstacle2 should be at " + obstacle2data[0] + "," + obstacle2data[1]);
-            switch (obstacle2data[2]) {
-                case ("N"):
-                    obstacle2.setRotation(0);
-                    obstacle2.setImageResource(Helper.resources.get("o2n"));
-                    break;
-                case ("E"):
-                    obstacle2.setRotation(90);
-                    obstacle2.setImageResource(Helper.resources.get("o2e"));
-                    break;
-                case ("S"):
-                    obstacle2.setRotation(180);
-                    obstacle2.setImageResource(Helper.resources.get("o2s"));
-                    break;
-                case ("W"):
-                    obstacle2.setRotation(270);
-                    obstacle2.setImageResource(Helper.resources.get("o2w"));
-                    break;
-                default:
-                    break;
-            }
-            String[] obstacle3data = savedPreset[2];
-            obstacle3.setX(Integer.parseInt(obstacle3data[0]));
-            obstacle3.setY(Integer.parseInt(obstacle3data[1]));
-            Log.d(TAG, "obstacle3 should be at " + obstacle3data[0] + "," + obstacle3data[1]);
-            switch (obstacle3data[2]) {
-                case ("N"):
-                    obstacle3.setRotation(0);
-                    obstacle3.setImageResource(Helper.resources.get("o3n"));
-                    break;
-                case ("E"):
-                    obstacle3.setRotation(90);
-                    obstacle3.setImageResource(Helper.resources.get("o3e"));
-                    break;
-                case ("S"):
-                    obstacle3.setRotation(180);
-                    obstacle3.setImageResource(Helper.resources.get("o3s"));
-                    break;
-                case ("W"):
-                    obstacle3.setRotation(270);
-                    obstacle3.setImageResource(Helper.resources.get("o3w"));
-                    break;
-                default:
-                    break;
+    // Planning takes a few ms to a few hundred for large layouts, kept off the main thread.
+    // The legs between view poses are searched on one thread per core.
+    private final ExecutorService planExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "PathPlanner"));
+    private final ExecutorService legExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> new Thread(r, "PathPlannerLeg"));
+    private final PathPlanner pathPlanner = new PathPlanner(legExecutor);
+    // Set once a route is shown, moving an obstacle then plans again
+    private boolean showingRoute = false;
+
+    private void previewRoute() {
+        showingRoute = true;
+        updateStatusWindow("Planning...");
+        planExecutor.execute(() -> {
+            PathPlanner.Route route = pathPlanner.plan(arenaState);
+            if (route != null) {
+                runOnUiThread(() -> showRoute(route));
             }
-            String[] obstacle4data = savedPreset[3];
-            obstacle4.setX(Integer.parseInt(obstacle4data[0]));
-            obstacle4.setY(Integer.parseInt(obstacle4data[1]));
-            Log.d(TAG, "obstacle4 should be at " + obstacle4data[0] + "," + obstacle4data[1]);
-            switch (obstacle4data[2]) {
-                case ("N"):
-                    obstacle4.setRotation(0);
-                    obstacle4.setImageResource(Helper.resources.get("o4n"));
-                    break;
-                case ("E"):
-                    obstacle4.setRotation(90);
-                    obstacle4.setImageResource(Helper.resources.get("o4e"));
-                    break;
-                case ("S"):
-                    obstacle4.setRotation(180);
-                    obstacle4.setImageResource(Helper.resources.get("o4s"));
-                    break;
-                case ("W"):
-                    obstacle4.setRotation(270);
-                    obstacle4.setImageResource(Helper.resources.get("o4w"));
-                    break;
-                default:
-                    break;
-            }
-            String[] obstacle5data = savedPreset[4];
-            obstacle5.setX(Integer.parseInt(obstacle5data[0]));
-            obstacle5.setY(Integer.parseInt(obstacle5data[1]));
-            Log.d(TAG, "obstacle5 should be at " + obstacle5data[0] + "," + obstacle5data[1]);
-            switch (obstacle5data[2]) {
-                case ("N"):
-                    obstacle5.setRotation(0);
-                    obstacle5.setImageResource(Helper.resources.get("o5n"));
-                    break;
-                case ("E"):
-                    obstacle5.setRotation(90);
-                    obstacle5.setImageResource(Helper.resources.get("o5e"));
-                    break;
-                case ("S"):
-                    obstacle5.setRotation(180);
-                    obstacle5.setImageResource(Helper.resources.get("o5s"));
-                    break;
-                case ("W"):
-                    obstacle5.setRotation(270);
-                    obstacle5.setImageResource(Helper.resources.get("o5w"));
-                    break;
-                default:
-                    break;
-            }
-            String[] obstacle6data = savedPreset[5];
-            obstacle6.setX(Integer.parseInt(obstacle6data[0]));
-            obstacle6.setY(Integer.parseInt(obstacle6data[1]));
-            Log.d(TAG, "obstacle6 should be at " + obstacle6data[0] + "," + obstacle6data[1]);
-            switch (obstacle6data[2]) {
-                case ("N"):
-                    obstacle6.setRotation(0);
-                    obstacle6.setImageResource(Helper.resources.get("o6n"));
-                    break;
-                case ("E"):
-                    obstacle6.setRotation(90);
-                    obstacle6.setImageResource(Helper.resources.get("o6e"));
-                    break;
-                case ("S"):
-                    obstacle6.setRotation(180);
-                    obstacle6.setImageResource(Helper.resources.get("o6s"));
-                    break;
-                case ("W"):
-                    obstacle6.setRotation(270);
-                    obstacle6.setImageResource(Helper.resources.get("o6w"));
-                    break;
-                default:
-                    break;
-            }
-            String[] obstacle7data = savedPreset[6];
-            obstacle7.setX(Integer.parseInt(obstacle7data[0]));
-            obstacle7.setY(Integer.parseInt(obstacle7data[1]));
-            Log.d(TAG, "obstacle7 should be at " + obstacle7data[0] + "," + obstacle7data[1]);
-            switch (obstacle7data[2]) {
-                case ("N"):
-                    obstacle7.setRotation(0);
-                    obstacle7.setImageResource(Helper.resources.get("o7n"));
-                    break;
-                case ("E"):
-                    obstacle7.setRotation(90);
-                    obstacle7.setImageResource(Helper.resources.get("o7e"));
-                    break;
-                case ("S"):
-                    obstacle7.setRotation(180);
-                    obstacle7.setImageResource(Helper.resources.get("o7s"));
-                    break;
-                case ("W"):
-                    obstacle7.setRotation(270);
-                    obstacle7.setImageResource(Helper.resources.get("o7w"));
-                    break;
-                default:
-                    break;
+        });
+    }
+
+    /*
+     * Marks the cells the route drives over on the grid, the car itself stays where it is
+     */
+    private void showRoute(PathPlanner.Route route) {
+        CanvasGrid canvasGrid = findViewById(R.id.grid);
+        canvasGrid.clearPositions();
+        MotionModel.Step step = new MotionModel.Step();
+        int x = arenaState.getRobotX();
+        int y = arenaState.getRobotY();
+        int heading = MotionModel.headingOf(arenaState.getRobotDirection());
+        for (ProtocolMessage.MoveCommand command : route.commands) {
+            MotionModel.apply(x, y, heading, command, step);
+            for (int i = 0; i < step.sweptCount; i++) {
+                canvasGrid.setCarPosition(step.sweptX[i], geometry.flipY(step.sweptY[i]));
             }
-            String[] obstacle8data = savedPreset[7];
-            obstacle8.setX(Integer.parseInt(obstacle8data[0]));
-            obstacle8.setY(Integer.parseInt(obstacle8data[1]));
-            Log.d(TAG, "obstacle8 should be at " + obstacle8data[0] + "," + obstacle8data[1]);
-            switch (obstacle8data[2]) {
-                case ("N"):
-                    obstacle8.setRotation(0);
-                    obstacle8.setImageResource(Helper.resources.get("o8n"));
-                    break;
-                case ("E"):
-                    obstacle8.setRotation(90);
-                    obstacle8.setImageResource(Helper.resources.get("o8e"));
-                    break;
-                case ("S"):
-                    obstacle8.setRotation(180);
-                    obstacle8.setImageResource(Helper.resources.get("o8s"));
-                    break;
-                case ("W"):
-                    obstacle8.setRotation(270);
-                    obstacle8.setImageResource(Helper.resources.get("o8w"));
-                    break;
-                default:
-                    break;
+            x = step.x;
+            y = step.y;
+            heading = step.heading;
+        }
+        Log.d(TAG, "Planned route: " + route.toCommandString());
+        updateStatusWindow("Route: " + route.order.length + " of " + arenaState.getPlacedCount()
+                + " obstacles, " + route.commands.size() + " moves");
+    }
+
+    /*
+     * ======================
+     * Session recording and replay, see SessionRecorder
+     * ======================
+     */
+
+    // Replays run this much faster than recorded, moves jump to their end meanwhile
+    private static final double REPLAY_SPEED = 10;
+    private Thread replayThread;
+
+    private File sessionDirectory() {
+        File directory = new File(getFilesDir(), "sessions");
+        directory.mkdirs();
+        return directory;
+    }
+
+    private void toggleRecording() {
+        BluetoothLinkService service = link.getService();
+        if (service == null) {
+            updateStatusWindow("Bluetooth service not ready");
+            return;
+        }
+        try {
+            if (service.isRecording()) {
+                File log = service.stopRecording();
+                updateStatusWindow("Recorded " + log.getName());
+            } else {
+                service.startRecording(new File(sessionDirectory(),
+                        "session-" + System.currentTimeMillis() + ".bin"));
+                updateStatusWindow("Recording");
             }
+        } catch (IOException e) {
+            Log.d(TAG, "Recording failed: " + e.getMessage());
+            updateStatusWindow("Recording failed");
+        }
+    }
 
-            Toast.makeText(this, "Preset 2 Applied", Toast.LENGTH_SHORT).show();
+    /*
+     * Plays the newest recording back through the Bluetooth decoding, choosing it again
+     * while it runs stops it
+     */
+    private void replayLastSession() {
+        if (replayThread != null && replayThread.isAlive()) {
+            replayThread.interrupt();
+            return;
+        }
+        BluetoothLinkService service = link.getService();
+        if (service == null) {
+            updateStatusWindow("Bluetooth service not ready");
+            return;
+        }
+        File latest = null;
+        File[] logs = sessionDirectory().listFiles();
+        if (logs != null) {
+            for (File log : logs) {
+                if (latest == null || log.lastModified() > latest.lastModified()) {
+                    latest = log;
+                }
+            }
+        }
+        if (latest == null) {
+            updateStatusWindow("No Recorded Session");
+            return;
         }
+        commandAnimator.setFastForward(REPLAY_SPEED != 1);
+        updateStatusWindow("Replaying");
+        replayThread = service.replaySession(latest, REPLAY_SPEED, stats -> runOnUiThread(() -> {
+            commandAnimator.setFastForward(false);
+            updateStatusWindow(stats == null ? "Replay stopped" : "Replayed " + stats.records + " records");
+        }));
     }
 
     private void toggleSetMode() {
@@ -2868,80 +915,49 @@ public class Arena extends AppCompatActivity {
         numberOfObstaclesAdded = 0;
     }
 
-    private void setObstacles(String[] obstaclesPreset) {
-        if (obstaclesPreset.length == 0) {
+    private void setObstacles(ProtocolMessage.ObstaclePlot plot) {
+        if (plot.size() == 0) {
             Toast.makeText(this, "No saved preset found", Toast.LENGTH_SHORT).show();
         } else {
-            for (int i = 0; i < obstaclesPreset.length; i++) {
-                int obstaclenum = i + 1;
-                String[] obsdata = obstaclesPreset[i].split(",");
-                Log.d(TAG, "Obstacle preset length is " + obstaclesPreset.length);
-                Log.d(TAG, "obstacle " + obstaclenum + " data is " + Arrays.toString(obsdata));
-
-                obstacles.get(obstaclenum).setX(Integer.parseInt(obsdata[0]) * 40);
-                obstacles.get(obstaclenum).setY(Integer.parseInt(obsdata[1]) * 40);
-                switch (obsdata[2]) {
-                    case ("N"):
-                        obstacles.get(obstaclenum).setRotation(0);
-                        obstacles.get(obstaclenum).setImageResource(Helper.resources.get("o" + obstaclenum + "n"));
-                        break;
-                    case ("E"):
-                        obstacles.get(obstaclenum).setRotation(90);
-                        obstacles.get(obstaclenum).setImageResource(Helper.resources.get("o" + obstaclenum + "e"));
-                        break;
-                    case ("S"):
-                        obstacles.get(obstaclenum).setRotation(180);
-                        obstacles.get(obstaclenum).setImageResource(Helper.resources.get("o" + obstaclenum + "s"));
-                        break;
-                    case ("W"):
-                        obstacles.get(obstaclenum).setRotation(270);
-                        obstacles.get(obstaclenum).setImageResource(Helper.resources.get("o" + obstaclenum + "w"));
-                        break;
-                    default:
-                        break;
-                }
-            }
+            // PLOT uses the same bottom-left origin as the obstacles we send
+            arenaState.applyPlot(plot);
         }
     }
 
     private void sendObstacles() {
-        StringBuilder stringBuilder = new StringBuilder();
-        stringBuilder
-                .append("ALG:")
-                .append(getObstacleString(obstacle1) + "0;")
-                .append(getObstacleString(obstacle2) + "1;")
-                .append(getObstacleString(obstacle3) + "2;")
-                .append(getObstacleString(obstacle4) + "3;")
-                .append(getObstacleString(obstacle5) + "4;")
-                .append(getObstacleString(obstacle6) + "5;")
-                .append(getObstacleString(obstacle7) + "6;")
-                .append(getObstacleString(obstacle8) + "7;");
-        Log.d(TAG, stringBuilder.toString());
-
-        if (BluetoothService.BluetoothConnectionStatus) {
-            byte[] bytes = stringBuilder.toString().getBytes(Charset.defaultCharset());
-            BluetoothService.write(bytes);
-            Toast.makeText(Arena.this, "Obstacles sent", Toast.LENGTH_SHORT).show();
+        String obstacleCommand = arenaState.obstacleCommand();
+        numberOfObstaclesAdded = arenaState.getPlacedCount();
+        Log.d(TAG, obstacleCommand);
+
+        // Held by BluetoothService and sent on reconnect if the link is down right now
+        boolean queued = false;
+        BluetoothService.LinkState linkState = link.getLinkState();
+        if (linkState == BluetoothService.LinkState.FAILED) {
+            Toast.makeText(Arena.this, "Connection failed, please reconnect.", Toast.LENGTH_SHORT).show();
+        } else if (linkState.holdsWrites()) {
+            byte[] bytes = obstacleCommand.getBytes(Charset.defaultCharset());
+            queued = link.write(bytes);
+            if (!queued) {
+                Toast.makeText(Arena.this, "Link busy, try again", Toast.LENGTH_SHORT).show();
+            } else if (link.isConnected()) {
+                Toast.makeText(Arena.this, "Obstacles sent", Toast.LENGTH_SHORT).show();
+            } else {
+                Toast.makeText(Arena.this, "Obstacles will be sent on reconnect", Toast.LENGTH_SHORT).show();
+            }
         }
 
         String sendSuccess;
-        if (BluetoothService.BluetoothConnectionStatus) {
+        if (queued) {
             sendSuccess = "SUCCESS";
         } else {
             sendSuccess = "FAIL";
         }
 
         StringBuilder stringBuilder2 = new StringBuilder();
-        stringBuilder2
-                .append("Obstacle 1: " + getObstacleString(obstacle1) + sendSuccess + "\n")
-                .append("Obstacle 2: " + getObstacleString(obstacle2) + sendSuccess + "\n")
-                .append("Obstacle 3: " + getObstacleString(obstacle3) + sendSuccess + "\n")
-                .append("Obstacle 4: " + getObstacleString(obstacle4) + sendSuccess + "\n")
-                .append("Obstacle 5: " + getObstacleString(obstacle5) + sendSuccess + "\n")
-                .append("Obstacle 6: " + getObstacleString(obstacle6) + sendSuccess + "\n")
-                .append("Obstacle 7: " + getObstacleString(obstacle7) + sendSuccess + "\n")
-                .append("Obstacle 8: " + getObstacleString(obstacle8) + sendSuccess + "\n");
-        numberOfObstaclesAdded /= 2;
+        for (int i = 0; i < arenaState.getObstacleCount(); i++) {
+            stringBuilder2.append("Obstacle ").append(i + 1).append(": ");
+            arenaState.appendObstacle(stringBuilder2, i).append(sendSuccess).append("\n");
+        }
         stringBuilder2.append("Number Of Obstacles Added: " + numberOfObstaclesAdded);
         showDialog(stringBuilder2.toString());
     }
@@ -2963,313 +979,245 @@ public class Arena extends AppCompatActivity {
     }
 
 
+    private void updateStatusWindow(String msg) {
+        statusWindow.setText(msg);
+        Log.d(TAG, "Status window: " + msg);
+    }
+
     /*
-     * Returns 2-D array of obstacles in [x, y, direction] format
+     * ======================
+     * Rendering ArenaState
+     * ======================
      */
-    private String[][] savedObstacles() {
-        String[][] savedPreset = { getObstacleLocation(obstacle1).split(","), getObstacleLocation(obstacle2).split(","),
-                getObstacleLocation(obstacle3).split(","),
-                getObstacleLocation(obstacle4).split(","), getObstacleLocation(obstacle5).split(","),
-                getObstacleLocation(obstacle6).split(","),
-                getObstacleLocation(obstacle7).split(","), getObstacleLocation(obstacle8).split(",") };
-        // {1,2,N,2,3,E}
-        Log.d(TAG, "Saved obstacle data: " + savedPreset);
-        return savedPreset;
-    }
 
     /*
-     * Get obstacle location in <x, y, direction> format
+     * State changes may be applied on any thread, the views are only touched on the main thread
      */
-    private String getObstacleLocation(ImageView obstacle) {
-        return (int) obstacle.getX() + "," + (int) obstacle.getY() + "," + getImageOrientation(obstacle);
+    private final ArenaState.Listener arenaListener = new ArenaState.Listener() {
+        @Override
+        public void onRobotChanged(ArenaState state) {
+            runOnUiThread(renderRobotTask);
+        }
+
+        @Override
+        public void onObstacleChanged(ArenaState state, int index) {
+            runOnUiThread(() -> renderObstacle(index));
+        }
+    };
+
+    private final Runnable renderRobotTask = this::renderRobot;
+
+    private void renderArena() {
+        renderRobot();
+        for (int i = 0; i < arenaState.getObstacleCount(); i++) {
+            renderObstacle(i);
+        }
     }
 
     /*
-     * Get obstacle location in <x, y, direction> format
-     * NOTE: 19 because grid is only 20 x 20
+     * The car view covers 3x3 cells around the pose, direction steps are 45 degrees
      */
-    private String getObstacleString(ImageView obstacle) {
-        int x = (int) obstacle.getX() / SNAP_GRID_INTERVAL;
-        int y = (int) obstacle.getY() / SNAP_GRID_INTERVAL;
-        // (0,0) starts from top left hence invert y
-        int new_y = 20 - y - 1;
-        Log.d(TAG, "Obstacle at " + x + "," + new_y);
+    private void renderRobot() {
+        // A queued move is still being shown, the animator renders again once it is done.
+        // Not laid out yet, initGeometry() renders the arena.
+        if (geometry != null && !commandAnimator.isAnimating()) {
+            car.setX(carPxX(arenaState.getRobotX()));
+            car.setY(carPxY(arenaState.getRobotY()));
+            car.setRotation(arenaState.getRobotDirection() * 45);
+        }
+        updateXYDirText();
+    }
+
+    // Top left of the car view for the pose (x, y)
+    private int carPxX(int x) {
+        return geometry.cellToPx(x - 1);
+    }
+
+    // (0,0) is the bottom left for the RPi hence invert y
+    private int carPxY(int y) {
+        return geometry.cellToPx(geometry.flipY(y) - 1);
+    }
 
-        if (x > 19 || new_y > 19) {
-            return "";
+    private void renderObstacle(int index) {
+        if (geometry == null) {
+            return;
+        }
+        ImageView obstacle = obstacles.getView(index);
+        if (!obstacle.isLaidOut()) {
+            // setX() is relative to the tray position, which is only known after layout
+            obstacle.post(() -> renderObstacle(index));
+            return;
+        }
+        if (arenaState.isPlaced(index)) {
+            obstacle.setX(geometry.cellToPx(arenaState.getObstacleX(index)));
+            obstacle.setY(geometry.cellToPx(geometry.flipY(arenaState.getObstacleY(index))));
         } else {
-            numberOfObstaclesAdded++;
-            return x + "," + new_y
-                    + ","
-                    + getImageOrientation(obstacle) + ",";
+            // back to its place in the tray
+            obstacle.setTranslationX(0);
+            obstacle.setTranslationY(0);
         }
-    }
 
-    private String getImageOrientation(ImageView obstacle) {
-        switch (((int) ((obstacle.getRotation() / 90) % 4 + 4) % 4)) {
-            case 0:
-                return "N";
-            case 1:
-                return "E";
-            case 2:
-                return "S";
-            case 3:
-                return "W";
-            default:
-                return "X";
+        int face = arenaState.getObstacleFace(index);
+        obstacle.setRotation(face * 90);
+
+        // Recognised obstacles show the target image, the rest their number
+        int image = 0;
+        int target = arenaState.getObstacleTarget(index);
+        if (target != ArenaState.NO_TARGET) {
+            image = ObstacleRegistry.getTargetImage(target, face);
         }
+        obstacle.setImageResource(image != 0 ? image : obstacles.getNumberImage(index, face));
     }
 
-    private void updateStatusWindow(String msg) {
-        statusWindow.setText(msg);
-        Log.d(TAG, "Status window: " + msg);
+    /*
+     * Obstacle released after a drag, snapped position in px
+     */
+    private void dropObstacle(int index, int snapToX, int snapToY) {
+        // (0,0) starts from top left hence invert y
+        int x = geometry.pxToCell(snapToX);
+        int y = geometry.flipY(geometry.pxToCell(snapToY));
+        if (collisionChecker.isObstacleBlocked(index, x, y, arenaState.getRobotX(), arenaState.getRobotY())) {
+            updateStatusWindow("Cell " + x + "," + y + " is taken");
+        } else {
+            arenaState.placeObstacle(index, x, y);
+        }
+        // dropped outside the arena, back to the tray even if it was never placed,
+        // dropped on a taken cell, back where it was
+        renderObstacle(index);
+        if (showingRoute) {
+            // Only the legs near the old and new cell are searched again
+            previewRoute();
+        }
     }
 
-    private void updateRobotPosition(int x, int y, int direction) {
-        car.setX(x * SNAP_GRID_INTERVAL - SNAP_GRID_INTERVAL);
-        car.setY(y * SNAP_GRID_INTERVAL - SNAP_GRID_INTERVAL);
-        switch (direction) {
-            case 7: // North-west
-                car.setRotation(315);
+    private void updateXYDirText() {
+        car_x.setText(String.valueOf(arenaState.getRobotX()));
+        car_y.setText(String.valueOf(arenaState.getRobotY()));
+
+        switch (arenaState.getRobotDirection()) {
+            case 7:
+                car_dir.setText("North-West");
                 break;
-            case 0: // North
-                car.setRotation(0);
+            case 0:
+                car_dir.setText("North");
                 break;
-            case 1: // North-east
-                car.setRotation(45);
+            case 1:
+                car_dir.setText("North-East");
                 break;
-            case 2: // East
-                car.setRotation(90);
+            case 2:
+                car_dir.setText("East");
                 break;
-            case 3: // South-east
-                car.setRotation(135);
+            case 3:
+                car_dir.setText("South-East");
                 break;
-            case 4: // South
-                car.setRotation(180);
+            case 4:
+                car_dir.setText("South");
                 break;
-            case 5: // South-west
-                car.setRotation(225);
+            case 5:
+                car_dir.setText("South-West");
                 break;
-            case 6: // West
-                car.setRotation(270);
+            case 6:
+                car_dir.setText("West");
                 break;
             default:
-                // Shouldn't reach this case
+                car_dir.setText("None");
                 break;
         }
-        CanvasGrid canvasGrid = findViewById(R.id.grid);
-        canvasGrid.setCarPosition2(x, y);
-        updateXYDirText();
-    }
-
-    private void updateXYDirText() {
-        int x = (int) (car.getX() + SNAP_GRID_INTERVAL) / SNAP_GRID_INTERVAL;
-        int y = (int) (car.getY() + SNAP_GRID_INTERVAL) / SNAP_GRID_INTERVAL;
-        // (0,0) starts from top left hence invert y
-        int new_y = 20 - y - 1;
-        car_x.setText(String.valueOf(x));
-        car_y.setText(String.valueOf(new_y));
-
-        int direction = (int) car.getRotation();
-
-        if (direction == 315)
-            car_dir.setText("North-West");
-        else if (direction == 0)
-            car_dir.setText("North");
-        else if (direction == 45)
-            car_dir.setText("North-East");
-        else if (direction == 90)
-            car_dir.setText("East");
-        else if (direction == 135)
-            car_dir.setText("South-East");
-        else if (direction == 180)
-            car_dir.setText("South");
-        else if (direction == 225)
-            car_dir.setText("South-West");
-        else if (direction == 270)
-            car_dir.setText("West");
-        else
-            car_dir.setText("None");
     }
 
-    // Broadcast Receiver for incoming messages
-    BroadcastReceiver myReceiver = new BroadcastReceiver() {
-        @Override
-        public void onReceive(Context context, Intent intent) {
-            String message = intent.getStringExtra("receivedMessage");
-            String command;
-            Log.d(TAG, "Received message: " + message);
-
-            try {
-                command = message.substring(0, message.indexOf(','));
-            } catch (IndexOutOfBoundsException e) {
-                // Toast.makeText(Arena.this, "Invalid message format!",
-                // Toast.LENGTH_SHORT).show();
-                return;
-            } catch (Exception e) {
-                Log.d(TAG, "Exception: " + e.getMessage());
-                return;
-            }
+    /*
+     * Robot poses are coalesced: the reader thread drops them into the mailbox and at most
+     * one is applied per display frame. Poses overwritten in between only extend the trail.
+     */
+    private final PoseMailbox poseMailbox = new PoseMailbox();
 
-            try {
-                switch (command) {
-                    // move robot
-                    case Helper.ROBOT:
-                        int startingIndex = message.indexOf("<");
-                        int endingIndex = message.indexOf(">");
-                        String x = message.substring(startingIndex + 1, endingIndex);
-
-                        startingIndex = message.indexOf("<", endingIndex + 1);
-                        endingIndex = message.indexOf(">", endingIndex + 1);
-                        String y = message.substring(startingIndex + 1, endingIndex);
-                        int adjusted_y = 19 - Integer.parseInt(y);
-
-                        startingIndex = message.indexOf("<", endingIndex + 1);
-                        endingIndex = message.indexOf(">", endingIndex + 1);
-                        String direction = message.substring(startingIndex + 1, endingIndex);
-
-                        Log.d("ROBOT", "(x: " + x + ") (y: " + adjusted_y + ") (direction: " + direction + ")");
-
-                        int direction_int = 0;
-                        switch (direction) {
-                            case "N":
-                                direction_int = 0;
-                                break;
-                            case "NE":
-                                direction_int = 1;
-                                break;
-                            case "E":
-                                direction_int = 2;
-                                break;
-                            case "SE":
-                                direction_int = 3;
-                                break;
-                            case "S":
-                                direction_int = 4;
-                                break;
-                            case "SW":
-                                direction_int = 5;
-                                break;
-                            case "W":
-                                direction_int = 6;
-                                break;
-                            case "NW":
-                                direction_int = 7;
-                                break;
-                            default:
-                                break;
-                        }
+    // (0,0) is the bottom left for the RPi hence invert y
+    private final PoseMailbox.TrailSink poseTrailSink = (x, y) -> {
+        if (geometry == null) {
+            return;
+        }
+        CanvasGrid canvasGrid = findViewById(R.id.grid);
+        canvasGrid.setCarPosition2(x, geometry.flipY(y));
+    };
 
-                        // updateRobotPosition(Integer.parseInt(x), Integer.parseInt(y), direction_int);
-                        updateRobotPosition(Integer.parseInt(x), adjusted_y, direction_int);
-                        break;
+    private final Choreographer.FrameCallback poseFrameCallback = frameTimeNanos -> {
+        ProtocolMessage.RobotPose pose = poseMailbox.take(poseTrailSink);
+        if (pose == null) {
+            return;
+        }
+        Log.d("ROBOT", "(x: " + pose.x + ") (y: " + pose.y + ") (direction: " + pose.direction
+                + ") (coalesced: " + poseMailbox.getCoalesced() + ")");
+        arenaState.apply(pose);
+        poseTrailSink.onTrailCell(pose.x, pose.y);
+    };
 
-                    // update obstacle ID (format - TARGET,obstacle_number,target_ID)
-                    case Helper.TARGET:
-                        int obstacleNumber = Character.getNumericValue(message.charAt(7));
-                        String solution = message.substring(9);
-                        Log.d(TAG, "Solution value: " + solution);
-                        if (Integer.parseInt(solution) == 0) {
-                            Toast.makeText(Arena.this, "Image not recognized, trying again", Toast.LENGTH_SHORT).show();
-                        } else {
-                            // RMB TO PLUS 1 !!
-                            setObstacleImage(obstacleNumber + 1, solution);
-                            Toast.makeText(Arena.this,
-                                    "Obstacle " + obstacleNumber + " changed to Target ID: " + solution,
-                                    Toast.LENGTH_SHORT).show();
-                        }
-                        break;
+    private final Runnable schedulePoseFrame =
+            () -> Choreographer.getInstance().postFrameCallback(poseFrameCallback);
 
-                    // update status window
-                    case Helper.STATUS:
-                        String msg;
-                        if (message.contains("\n")) {
-                            msg = message.substring(message.indexOf(',') + 1, message.indexOf('\n'));
-                        } else {
-                            msg = message.substring(message.indexOf(',') + 1);
-                        }
-                        if (message.contains("STOPPED")) {
-                            Chronometer IRTimer = (Chronometer) findViewById(R.id.IRTimer);
-                            IRTimer.stop();
-                            updateStatusWindow("IR Completed");
-                        } else {
-                            updateStatusWindow(msg);
-                        }
-                        break;
+    /*
+     * Listeners for messages already decoded on the Bluetooth reader thread. The pose
+     * listener runs on the reader itself, the rest are delivered on the main thread.
+     */
+    MessageBus.Listener<ProtocolMessage.RobotPose> robotPoseListener = pose -> {
+        // Only the first pose of a frame needs to schedule the frame callback
+        if (poseMailbox.post(pose)) {
+            runOnUiThread(schedulePoseFrame);
+        }
+    };
 
-                    // plot obstacles
-                    case Helper.PLOT:
-                        String receivedmsg = message.substring(message.indexOf(",") + 1); // string after PLOT,
-                        String[] obstaclesPreset = receivedmsg.split(";"); // create 2d array for obstacle data\
-                        Log.d(TAG, "Obstacle data is " + Arrays.toString(obstaclesPreset));
-                        setObstacles(obstaclesPreset);
-                        break;
+    // update obstacle ID (format - TARGET,obstacle_number,target_ID), numbered from 0 like ArenaState
+    MessageBus.Listener<ProtocolMessage.TargetUpdate> targetListener = target -> {
+        Log.d(TAG, "Solution value: " + target.targetId);
+        if (target.targetId == 0) {
+            Toast.makeText(Arena.this, "Image not recognized, trying again", Toast.LENGTH_SHORT).show();
+        } else {
+            onTargetRecognised(target.obstacleNumber, target.targetId);
+            Toast.makeText(Arena.this,
+                    "Obstacle " + target.obstacleNumber + " changed to Target ID: " + target.targetId,
+                    Toast.LENGTH_SHORT).show();
+        }
+    };
 
-                    // commands from RPI
-                    case Helper.COMMAND:
-                        String moveCommand = message.substring(message.indexOf(',') + 1); //
-                        // substring after COMMANDS
-                        Log.d(TAG, "Command received: " + moveCommand);
-
-                        String prefix = moveCommand.substring(0, 2);
-                        String distance = moveCommand.substring(2);
-                        int convertedDistance;
-                        Log.d(TAG, prefix + ";" + distance);
-
-                        switch (prefix) {
-                            // forward
-                            case "SF":
-                                convertedDistance = Integer.parseInt(distance) / 10;
-                                Log.d(TAG, prefix + ";" + convertedDistance);
-                                forwardButtonCommand(convertedDistance);
-                                break;
-                            // reverseA
-                            case "SB":
-                                convertedDistance = Integer.parseInt(distance) / 10;
-                                reverseButtonCommand(convertedDistance);
-                                break;
-                            // right forward
-                            case "RF":
-                                rightMidButtonCommand();
-                                break;
-                            // right backward
-                            case "RB":
-                                rightMidReverseButtonCommand();
-                                break;
-                            // left forward
-                            case "LF":
-                                leftMidButtonCommand();
-                                break;
-                            // left backward
-                            case "LB":
-                                leftMidReverseButtonCommand();
-                                break;
-                            // slide right forward
-                            case "JF":
-                                rightSlideCommand();
-                                break;
-                            // slide right backward
-                            case "JB":
-                                rightSlideReverseCommand();
-                                break;
-                            // slide left forward
-                            case "KF":
-                                leftSlideCommand();
-                                break;
-                            // slide left backward
-                            case "KB":
-                                leftSlideReverseCommand();
-                                break;
-                        }
-                    default:
-                        // for out of "ROBOT/TARGET/STATUS/COMMAND" cases
-                        break;
-                }
-            } catch (Exception e) {
-                // TODO: handle exception
-                Log.d(TAG, "Exception: " + e.getMessage());
-                return;
-            }
+    // update status window
+    MessageBus.Listener<ProtocolMessage.StatusUpdate> statusListener = status -> {
+        if (status.stopped) {
+            Chronometer IRTimer = (Chronometer) findViewById(R.id.IRTimer);
+            IRTimer.stop();
+            updateStatusWindow("IR Completed");
+        } else {
+            updateStatusWindow(status.text);
         }
     };
+
+    // plot obstacles
+    MessageBus.Listener<ProtocolMessage.ObstaclePlot> plotListener = plot -> {
+        Log.d(TAG, "Obstacle data is " + plot);
+        setObstacles(plot);
+    };
+
+    // commands from RPI
+    MessageBus.Listener<ProtocolMessage.MoveCommand> commandListener = command -> {
+        Log.d(TAG, "Command received: " + command);
+
+        // SF/SB distances are in cm, the other moves have a fixed shape
+        moveRobot(command.type, command.distance / MotionModel.CM_PER_CELL, false);
+    };
+
+    private void subscribeToMessages() {
+        MessageBus bus = MessageBus.getDefault();
+        bus.subscribe(MessageBus.ROBOT_POSE, MessageBus.Delivery.POSTING, robotPoseListener);
+        bus.subscribe(MessageBus.TARGET_UPDATE, MessageBus.Delivery.MAIN, targetListener);
+        bus.subscribe(MessageBus.STATUS_UPDATE, MessageBus.Delivery.MAIN, statusListener);
+        bus.subscribe(MessageBus.OBSTACLE_PLOT, MessageBus.Delivery.MAIN, plotListener);
+        bus.subscribe(MessageBus.MOVE_COMMAND, MessageBus.Delivery.MAIN, commandListener);
+    }
+
+    private void unsubscribeFromMessages() {
+        MessageBus bus = MessageBus.getDefault();
+        bus.unsubscribe(MessageBus.ROBOT_POSE, robotPoseListener);
+        bus.unsubscribe(MessageBus.TARGET_UPDATE, targetListener);
+        bus.unsubscribe(MessageBus.STATUS_UPDATE, statusListener);
+        bus.unsubscribe(MessageBus.OBSTACLE_PLOT, plotListener);
+        bus.unsubscribe(MessageBus.MOVE_COMMAND, commandListener);
+    }
 }
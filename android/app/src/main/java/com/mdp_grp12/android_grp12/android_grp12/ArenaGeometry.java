@@ -0,0 +1,97 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+/*
+ * Size of the arena in cells and of a cell in pixels, and the conversions between
+ * view pixels, screen cells (0,0 top left) and RPi cells (0,0 bottom left).
+ * CanvasGrid and Arena share one instance so drawing, snapping and the coordinates
+ * sent to the RPi always agree.
+ */
+public class ArenaGeometry {
+    // Axis labels closer than this (in dp) would overlap, so only every n-th cell is labelled
+    private static final float MIN_LABEL_SPACING_DP = 16f;
+
+    private final int cols;
+    private final int rows;
+    private final int cellSize;
+    private final int labelStep;
+
+    public ArenaGeometry(int cols, int rows, int cellSize, float density) {
+        if (cols <= 0 || rows <= 0 || cellSize <= 0) {
+            throw new IllegalArgumentException("Invalid arena " + cols + "x" + rows + " @ " + cellSize + "px");
+        }
+        this.cols = cols;
+        this.rows = rows;
+        this.cellSize = cellSize;
+        this.labelStep = Math.max(1, (int) Math.ceil(MIN_LABEL_SPACING_DP * density / cellSize));
+    }
+
+    /*
+     * Uses the preferred cell size unless the arena would not fit the available space,
+     * in which case cells shrink (to at least 1px) so the whole arena stays visible
+     */
+    public static ArenaGeometry fit(int cols, int rows, float cellSizeDp, float density,
+                                    int availableWidth, int availableHeight) {
+        int preferred = Math.round(cellSizeDp * density);
+        int fitting = Math.min(availableWidth / cols, availableHeight / rows);
+        int cellSize = Math.max(1, Math.min(preferred, fitting));
+        return new ArenaGeometry(cols, rows, cellSize, density);
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public int getWidth() {
+        return cols * cellSize;
+    }
+
+    public int getHeight() {
+        return rows * cellSize;
+    }
+
+    // Label every n-th row/column
+    public int getLabelStep() {
+        return labelStep;
+    }
+
+    public int cellToPx(int cell) {
+        return cell * cellSize;
+    }
+
+    /*
+     * Cell containing the pixel
+     */
+    public int pxToCell(float px) {
+        return (int) Math.floor(px / cellSize);
+    }
+
+    /*
+     * Cell whose top/left edge is closest to the pixel, used to snap dragged views
+     */
+    public int nearestCell(float px) {
+        return (int) Math.floor((px + cellSize / 2f) / cellSize);
+    }
+
+    public int snapPx(float px) {
+        return nearestCell(px) * cellSize;
+    }
+
+    /*
+     * Screen rows count down from the top, the RPi counts up from the bottom
+     */
+    public int flipY(int y) {
+        return rows - 1 - y;
+    }
+
+    public boolean contains(int x, int y) {
+        return x >= 0 && y >= 0 && x < cols && y < rows;
+    }
+}
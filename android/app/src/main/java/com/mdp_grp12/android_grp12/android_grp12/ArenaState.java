@@ -0,0 +1,409 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+ * Headless model of the arena: the robot pose and every obstacle's cell, face and
+ * recognised target, kept in primitive arrays. Everything that changes the arena goes
+ * through the apply methods, which may be called from any thread. Listeners are told
+ * what changed and read the new values back; views only render what they read here.
+ *
+ * Coordinates are RPi cells with (0,0) at the bottom left. An obstacle that is not on
+ * the arena (still in the tray) has x = y = OFF_ARENA.
+ */
+public class ArenaState {
+    public static final int OFF_ARENA = -1;
+    // Same as the RPi's "not recognised" target id
+    public static final int NO_TARGET = 0;
+    // Centre of the 3x3 car when it sits in the bottom left corner
+    public static final int START_X = 1;
+    public static final int START_Y = 1;
+
+    // Obstacle faces, clockwise from north like the view rotation
+    public static final int FACE_N = 0;
+    public static final int FACE_E = 1;
+    public static final int FACE_S = 2;
+    public static final int FACE_W = 3;
+    private static final String FACES = "NESW";
+
+    /*
+     * Called on the thread that applied the change, after the state lock is released.
+     * Listeners that touch views have to hop to the main thread themselves.
+     */
+    public interface Listener {
+        void onRobotChanged(ArenaState state);
+
+        void onObstacleChanged(ArenaState state, int index);
+    }
+
+    private final int cols;
+    private final int rows;
+
+    private int robotX = START_X;
+    private int robotY = START_Y;
+    // 0 - N, 1 - NE, 2 - E ... 7 - NW, as in ProtocolMessage.RobotPose
+    private int robotDirection = 0;
+
+    private final int[] obstacleX;
+    private final int[] obstacleY;
+    private final int[] obstacleFace;
+    private final int[] obstacleTarget;
+
+    // Bumped on every change, lets readers tell whether anything moved since they last looked
+    private long version = 0;
+
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    public ArenaState(int cols, int rows, int obstacleCount) {
+        if (cols <= 0 || rows <= 0 || obstacleCount < 0) {
+            throw new IllegalArgumentException("Invalid arena " + cols + "x" + rows + " with " + obstacleCount);
+        }
+        this.cols = cols;
+        this.rows = rows;
+        obstacleX = new int[obstacleCount];
+        obstacleY = new int[obstacleCount];
+        obstacleFace = new int[obstacleCount];
+        obstacleTarget = new int[obstacleCount];
+        clearObstacles();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /*
+     * ======================
+     * Apply
+     * ======================
+     */
+
+    /*
+     * Applies a message from the RPi. Returns false for messages that do not change the arena.
+     */
+    public boolean apply(ProtocolMessage message) {
+        if (message instanceof ProtocolMessage.RobotPose) {
+            ProtocolMessage.RobotPose pose = (ProtocolMessage.RobotPose) message;
+            applyPose(pose.x, pose.y, pose.direction);
+            return true;
+        } else if (message instanceof ProtocolMessage.TargetUpdate) {
+            ProtocolMessage.TargetUpdate target = (ProtocolMessage.TargetUpdate) message;
+            return setTarget(target.obstacleNumber, target.targetId);
+        } else if (message instanceof ProtocolMessage.ObstaclePlot) {
+            applyPlot((ProtocolMessage.ObstaclePlot) message);
+            return true;
+        }
+        return false;
+    }
+
+    public void applyPose(int x, int y, int direction) {
+        synchronized (this) {
+            int dir = ((direction % 8) + 8) % 8;
+            if (x == robotX && y == robotY && dir == robotDirection) {
+                return;
+            }
+            robotX = x;
+            robotY = y;
+            robotDirection = dir;
+            version++;
+        }
+        notifyRobot();
+    }
+
+    /*
+     * Moves the obstacle onto the cell, or back to the tray if the cell is outside the arena
+     */
+    public void placeObstacle(int index, int x, int y) {
+        synchronized (this) {
+            if (!contains(x, y)) {
+                x = OFF_ARENA;
+                y = OFF_ARENA;
+            }
+            if (obstacleX[index] == x && obstacleY[index] == y) {
+                return;
+            }
+            obstacleX[index] = x;
+            obstacleY[index] = y;
+            version++;
+        }
+        notifyObstacle(index);
+    }
+
+    public void removeObstacle(int index) {
+        placeObstacle(index, OFF_ARENA, OFF_ARENA);
+    }
+
+    public void setObstacleFace(int index, int face) {
+        synchronized (this) {
+            face &= 3;
+            if (obstacleFace[index] == face) {
+                return;
+            }
+            obstacleFace[index] = face;
+            version++;
+        }
+        notifyObstacle(index);
+    }
+
+    // Quarter turn clockwise, the tap-to-rotate gesture
+    public void rotateObstacle(int index) {
+        synchronized (this) {
+            obstacleFace[index] = (obstacleFace[index] + 1) & 3;
+            version++;
+        }
+        notifyObstacle(index);
+    }
+
+    /*
+     * Records the recognised image on an obstacle. The obstacle number comes from the RPi,
+     * so unknown obstacles are ignored instead of throwing.
+     */
+    public boolean setTarget(int index, int targetId) {
+        synchronized (this) {
+            if (index < 0 || index >= obstacleTarget.length) {
+                return false;
+            }
+            if (obstacleTarget[index] == targetId) {
+                return true;
+            }
+            obstacleTarget[index] = targetId;
+            version++;
+        }
+        notifyObstacle(index);
+        return true;
+    }
+
+    /*
+     * PLOT lists obstacles in order, obstacles beyond the ones we have are dropped
+     */
+    public void applyPlot(ProtocolMessage.ObstaclePlot plot) {
+        int count;
+        synchronized (this) {
+            count = Math.min(plot.size(), obstacleX.length);
+            for (int i = 0; i < count; i++) {
+                int x = plot.getX(i);
+                int y = plot.getY(i);
+                boolean inside = contains(x, y);
+                obstacleX[i] = inside ? x : OFF_ARENA;
+                obstacleY[i] = inside ? y : OFF_ARENA;
+                int face = faceOf(plot.getDirection(i));
+                if (face >= 0) {
+                    obstacleFace[i] = face;
+                }
+            }
+            version++;
+        }
+        for (int i = 0; i < count; i++) {
+            notifyObstacle(i);
+        }
+    }
+
+    /*
+     * Car back to the start, every obstacle back in the tray facing north with no target
+     */
+    public void reset() {
+        synchronized (this) {
+            robotX = START_X;
+            robotY = START_Y;
+            robotDirection = 0;
+            clearObstacles();
+            version++;
+        }
+        notifyRobot();
+        for (int i = 0; i < obstacleX.length; i++) {
+            notifyObstacle(i);
+        }
+    }
+
+    private void clearObstacles() {
+        for (int i = 0; i < obstacleX.length; i++) {
+            obstacleX[i] = OFF_ARENA;
+            obstacleY[i] = OFF_ARENA;
+            obstacleFace[i] = FACE_N;
+            obstacleTarget[i] = NO_TARGET;
+        }
+    }
+
+    private void notifyRobot() {
+        for (Listener listener : listeners) {
+            listener.onRobotChanged(this);
+        }
+    }
+
+    private void notifyObstacle(int index) {
+        for (Listener listener : listeners) {
+            listener.onObstacleChanged(this, index);
+        }
+    }
+
+    /*
+     * ======================
+     * Read
+     * ======================
+     */
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public boolean contains(int x, int y) {
+        return x >= 0 && y >= 0 && x < cols && y < rows;
+    }
+
+    public synchronized int getRobotX() {
+        return robotX;
+    }
+
+    public synchronized int getRobotY() {
+        return robotY;
+    }
+
+    public synchronized int getRobotDirection() {
+        return robotDirection;
+    }
+
+    public int getObstacleCount() {
+        return obstacleX.length;
+    }
+
+    public synchronized boolean isPlaced(int index) {
+        return obstacleX[index] != OFF_ARENA;
+    }
+
+    public synchronized int getObstacleX(int index) {
+        return obstacleX[index];
+    }
+
+    public synchronized int getObstacleY(int index) {
+        return obstacleY[index];
+    }
+
+    public synchronized int getObstacleFace(int index) {
+        return obstacleFace[index];
+    }
+
+    public synchronized int getObstacleTarget(int index) {
+        return obstacleTarget[index];
+    }
+
+    public synchronized int getPlacedCount() {
+        int placed = 0;
+        for (int x : obstacleX) {
+            if (x != OFF_ARENA) {
+                placed++;
+            }
+        }
+        return placed;
+    }
+
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    /*
+     * <x>,<y>,<N|E|S|W>, for a placed obstacle, nothing for one in the tray
+     */
+    public synchronized StringBuilder appendObstacle(StringBuilder out, int index) {
+        if (obstacleX[index] != OFF_ARENA) {
+            out.append(obstacleX[index]).append(',')
+                    .append(obstacleY[index]).append(',')
+                    .append(faceChar(obstacleFace[index])).append(',');
+        }
+        return out;
+    }
+
+    /*
+     * ALG:<obstacle>0;<obstacle>1;... as the algorithm expects it, see appendObstacle()
+     */
+    public synchronized String obstacleCommand() {
+        StringBuilder out = new StringBuilder(16 + 12 * obstacleX.length).append("ALG:");
+        for (int i = 0; i < obstacleX.length; i++) {
+            appendObstacle(out, i).append(i).append(';');
+        }
+        return out.toString();
+    }
+
+    /*
+     * ======================
+     * Persistence
+     * ======================
+     */
+
+    /*
+     * Every obstacle as <x>,<y>,<N|E|S|W>; in index order, tray obstacles at -1,-1.
+     * A whole layout is one string instead of a preference per obstacle and field.
+     */
+    public synchronized String encodeObstacles() {
+        StringBuilder out = new StringBuilder(10 * obstacleX.length);
+        for (int i = 0; i < obstacleX.length; i++) {
+            out.append(obstacleX[i]).append(',')
+                    .append(obstacleY[i]).append(',')
+                    .append(faceChar(obstacleFace[i])).append(';');
+        }
+        return out.toString();
+    }
+
+    /*
+     * Restores what encodeObstacles() wrote, for any obstacle count. Obstacles missing from
+     * it go back to the tray and extra entries are dropped. Targets are cleared.
+     * Malformed input leaves the state untouched and returns false.
+     */
+    public boolean decodeObstacles(String encoded) {
+        int count = obstacleX.length;
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        int[] faces = new int[count];
+        int decoded = 0;
+        try {
+            for (String entry : encoded.split(";")) {
+                if (entry.isEmpty()) {
+                    continue;
+                }
+                if (decoded == count) {
+                    break;
+                }
+                String[] fields = entry.split(",");
+                if (fields.length != 3 || fields[2].length() != 1 || faceOf(fields[2].charAt(0)) < 0) {
+                    return false;
+                }
+                xs[decoded] = Integer.parseInt(fields[0].trim());
+                ys[decoded] = Integer.parseInt(fields[1].trim());
+                faces[decoded] = faceOf(fields[2].charAt(0));
+                decoded++;
+            }
+        } catch (NumberFormatException e) {
+            return false;
+        }
+
+        synchronized (this) {
+            clearObstacles();
+            for (int i = 0; i < decoded; i++) {
+                boolean inside = contains(xs[i], ys[i]);
+                obstacleX[i] = inside ? xs[i] : OFF_ARENA;
+                obstacleY[i] = inside ? ys[i] : OFF_ARENA;
+                obstacleFace[i] = faces[i];
+            }
+            version++;
+        }
+        for (int i = 0; i < count; i++) {
+            notifyObstacle(i);
+        }
+        return true;
+    }
+
+    public static char faceChar(int face) {
+        return FACES.charAt(face & 3);
+    }
+
+    // -1 for anything but N, E, S or W
+    public static int faceOf(char direction) {
+        return FACES.indexOf(direction);
+    }
+}
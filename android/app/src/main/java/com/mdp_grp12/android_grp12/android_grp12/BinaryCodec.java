@@ -0,0 +1,344 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Compact binary encoding of the RPi protocol, used once both sides have agreed on it.
+ *
+ * Negotiation happens over the ASCII link: the tablet sends NEGOTIATION_REQUEST and
+ * firmware that understands binary answers with NEGOTIATION_ACK, after which both
+ * directions switch to FrameDecoder.Mode.LENGTH_PREFIXED frames carrying:
+ *
+ *   [opcode: 1 byte][fields: varints][crc: 2 bytes, CRC-16/CCITT over opcode + fields]
+ *
+ * Older firmware never acknowledges, so the link simply stays on ASCII.
+ */
+public class BinaryCodec {
+    public static final String NEGOTIATION_REQUEST = "PROTO:BIN";
+    public static final String NEGOTIATION_ACK = "PROTO,BIN";
+
+    public static final byte OP_ROBOT = 0x01;
+    public static final byte OP_TARGET = 0x02;
+    public static final byte OP_STATUS = 0x03;
+    public static final byte OP_PLOT = 0x04;
+    public static final byte OP_COMMAND = 0x05;
+    // Any other ASCII message (e.g. "ALG:..."), carried verbatim
+    public static final byte OP_TEXT = 0x10;
+
+    public static final int CRC_SIZE = 2;
+    private static final byte[] ACK_BYTES = NEGOTIATION_ACK.getBytes(StandardCharsets.US_ASCII);
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+            CRC_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    // Decodes OP_TEXT payloads, which are plain ASCII protocol messages
+    private final ProtocolCodec textCodec = new ProtocolCodec();
+    private long crcFailures = 0;
+    private long malformedFrames = 0;
+
+    // Read cursor shared by the varint helpers while decoding one frame
+    private int pos;
+
+    public long getCrcFailures() {
+        return crcFailures;
+    }
+
+    public long getMalformedFrames() {
+        return malformedFrames;
+    }
+
+    public static boolean isNegotiationAck(byte[] buf, int offset, int length) {
+        if (length != ACK_BYTES.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buf[offset + i] != ACK_BYTES[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /*
+     * ======================
+     * Encoding
+     * ======================
+     */
+
+    /*
+     * Upper bound of the encoded size of any message except long STATUS/TEXT/PLOT ones
+     */
+    public static final int MAX_SMALL_MESSAGE = 1 + 3 * 5 + CRC_SIZE;
+
+    /*
+     * Encodes the message into out starting at offset and returns the number of bytes
+     * written. The caller provides a large enough buffer (see encodedSizeBound()).
+     */
+    public static int encode(ProtocolMessage message, byte[] out, int offset) {
+        int p = offset;
+        if (message instanceof ProtocolMessage.RobotPose) {
+            ProtocolMessage.RobotPose pose = (ProtocolMessage.RobotPose) message;
+            out[p++] = OP_ROBOT;
+            p = writeSigned(out, p, pose.x);
+            p = writeSigned(out, p, pose.y);
+            out[p++] = (byte) pose.direction;
+        } else if (message instanceof ProtocolMessage.TargetUpdate) {
+            ProtocolMessage.TargetUpdate target = (ProtocolMessage.TargetUpdate) message;
+            out[p++] = OP_TARGET;
+            p = writeSigned(out, p, target.obstacleNumber);
+            p = writeSigned(out, p, target.targetId);
+        } else if (message instanceof ProtocolMessage.StatusUpdate) {
+            ProtocolMessage.StatusUpdate status = (ProtocolMessage.StatusUpdate) message;
+            byte[] text = status.text.getBytes(StandardCharsets.UTF_8);
+            out[p++] = OP_STATUS;
+            out[p++] = (byte) (status.stopped ? 1 : 0);
+            p = writeUnsigned(out, p, text.length);
+            System.arraycopy(text, 0, out, p, text.length);
+            p += text.length;
+        } else if (message instanceof ProtocolMessage.ObstaclePlot) {
+            ProtocolMessage.ObstaclePlot plot = (ProtocolMessage.ObstaclePlot) message;
+            out[p++] = OP_PLOT;
+            p = writeUnsigned(out, p, plot.size());
+            for (int i = 0; i < plot.size(); i++) {
+                p = writeSigned(out, p, plot.getX(i));
+                p = writeSigned(out, p, plot.getY(i));
+                out[p++] = (byte) plot.getDirection(i);
+            }
+        } else if (message instanceof ProtocolMessage.MoveCommand) {
+            ProtocolMessage.MoveCommand command = (ProtocolMessage.MoveCommand) message;
+            out[p++] = OP_COMMAND;
+            out[p++] = (byte) command.type.ordinal();
+            p = writeUnsigned(out, p, command.distance);
+        } else {
+            throw new IllegalArgumentException("Cannot encode " + message);
+        }
+        return appendCrc(out, offset, p) - offset;
+    }
+
+    public static int encodedSizeBound(ProtocolMessage message) {
+        if (message instanceof ProtocolMessage.StatusUpdate) {
+            // UTF-8 worst case is 3 bytes per char
+            return 2 + 5 + 3 * ((ProtocolMessage.StatusUpdate) message).text.length() + CRC_SIZE;
+        }
+        if (message instanceof ProtocolMessage.ObstaclePlot) {
+            return 1 + 5 + 11 * ((ProtocolMessage.ObstaclePlot) message).size() + CRC_SIZE;
+        }
+        return MAX_SMALL_MESSAGE;
+    }
+
+    /*
+     * Encodes one outbound ASCII command. Move commands such as "SF050" become OP_COMMAND,
+     * anything else is sent as OP_TEXT. Returns a complete length-prefixed frame.
+     */
+    public static byte[] encodeOutbound(byte[] ascii, int offset, int length) {
+        byte[] payload;
+        ProtocolMessage.MoveCommand.Type type = length >= 2
+                ? ProtocolMessage.MoveCommand.Type.fromBytes(ascii[offset], ascii[offset + 1]) : null;
+        int distance = type == null ? -1 : parseDistance(ascii, offset + 2, offset + length);
+
+        if (type != null && distance >= 0) {
+            payload = new byte[MAX_SMALL_MESSAGE];
+            int n = encode(new ProtocolMessage.MoveCommand(type, distance), payload, 0);
+            return frame(payload, n);
+        }
+
+        payload = new byte[1 + length + CRC_SIZE];
+        payload[0] = OP_TEXT;
+        System.arraycopy(ascii, offset, payload, 1, length);
+        int n = appendCrc(payload, 0, 1 + length);
+        return frame(payload, n);
+    }
+
+    private static int parseDistance(byte[] ascii, int from, int to) {
+        if (from == to) {
+            return 0;
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = ascii[i] - '0';
+            if (digit < 0 || digit > 9 || value > 100000) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static byte[] frame(byte[] payload, int length) {
+        byte[] framed = new byte[length + 2];
+        framed[0] = (byte) (length >> 8);
+        framed[1] = (byte) length;
+        System.arraycopy(payload, 0, framed, 2, length);
+        return framed;
+    }
+
+    private static int appendCrc(byte[] out, int from, int to) {
+        int crc = crc16(out, from, to - from);
+        out[to] = (byte) (crc >> 8);
+        out[to + 1] = (byte) crc;
+        return to + CRC_SIZE;
+    }
+
+    static int writeUnsigned(byte[] out, int p, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[p++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[p++] = (byte) value;
+        return p;
+    }
+
+    static int writeSigned(byte[] out, int p, int value) {
+        // ZigZag so small negative numbers stay one byte
+        return writeUnsigned(out, p, (value << 1) ^ (value >> 31));
+    }
+
+    /*
+     * ======================
+     * Decoding
+     * ======================
+     */
+
+    /*
+     * True for an intact OP_TEXT frame. Its ASCII message sits between the opcode and the
+     * CRC and goes through the ASCII path as is, see InboundDecoder.
+     */
+    public static boolean isText(byte[] buf, int offset, int length) {
+        if (length < 1 + CRC_SIZE || buf[offset] != OP_TEXT) {
+            return false;
+        }
+        int end = offset + length - CRC_SIZE;
+        int expected = ((buf[end] & 0xFF) << 8) | (buf[end + 1] & 0xFF);
+        return crc16(buf, offset, end - offset) == expected;
+    }
+
+    /*
+     * Decodes one frame payload (without the length prefix). Returns null if the CRC
+     * does not match or the frame is malformed.
+     */
+    public ProtocolMessage decode(byte[] buf, int offset, int length) {
+        if (length < 1 + CRC_SIZE) {
+            malformedFrames++;
+            return null;
+        }
+        int end = offset + length - CRC_SIZE;
+        int expected = ((buf[end] & 0xFF) << 8) | (buf[end + 1] & 0xFF);
+        if (crc16(buf, offset, end - offset) != expected) {
+            crcFailures++;
+            return null;
+        }
+
+        pos = offset + 1;
+        try {
+            ProtocolMessage message = decodeBody(buf[offset], buf, end);
+            if (message == null || pos != end) {
+                malformedFrames++;
+                return null;
+            }
+            return message;
+        } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+            malformedFrames++;
+            return null;
+        }
+    }
+
+    private ProtocolMessage decodeBody(byte opcode, byte[] buf, int end) {
+        switch (opcode) {
+            case OP_ROBOT: {
+                int x = readSigned(buf, end);
+                int y = readSigned(buf, end);
+                int direction = readByte(buf, end);
+                if (direction > 7) {
+                    return null;
+                }
+                return new ProtocolMessage.RobotPose(x, y, direction);
+            }
+            case OP_TARGET: {
+                int obstacle = readSigned(buf, end);
+                int target = readSigned(buf, end);
+                return new ProtocolMessage.TargetUpdate(obstacle, target);
+            }
+            case OP_STATUS: {
+                boolean stopped = readByte(buf, end) != 0;
+                int textLength = readUnsigned(buf, end);
+                if (textLength < 0 || pos + textLength > end) {
+                    return null;
+                }
+                String text = new String(buf, pos, textLength, StandardCharsets.UTF_8);
+                pos += textLength;
+                return new ProtocolMessage.StatusUpdate(text, stopped);
+            }
+            case OP_PLOT: {
+                int count = readUnsigned(buf, end);
+                if (count < 0 || count > end - pos) {
+                    return null;
+                }
+                int[] xs = new int[count];
+                int[] ys = new int[count];
+                char[] dirs = new char[count];
+                for (int i = 0; i < count; i++) {
+                    xs[i] = readSigned(buf, end);
+                    ys[i] = readSigned(buf, end);
+                    dirs[i] = (char) readByte(buf, end);
+                }
+                return new ProtocolMessage.ObstaclePlot(xs, ys, dirs);
+            }
+            case OP_COMMAND: {
+                int ordinal = readByte(buf, end);
+                ProtocolMessage.MoveCommand.Type[] types = ProtocolMessage.MoveCommand.Type.values();
+                if (ordinal >= types.length) {
+                    return null;
+                }
+                int distance = readUnsigned(buf, end);
+                return new ProtocolMessage.MoveCommand(types[ordinal], distance);
+            }
+            case OP_TEXT: {
+                int start = pos;
+                pos = end;
+                return textCodec.decode(buf, start, end - start);
+            }
+            default:
+                return null;
+        }
+    }
+
+    private int readByte(byte[] buf, int end) {
+        if (pos >= end) {
+            throw new IllegalArgumentException("Truncated frame");
+        }
+        return buf[pos++] & 0xFF;
+    }
+
+    private int readUnsigned(byte[] buf, int end) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readByte(buf, end);
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    private int readSigned(byte[] buf, int end) {
+        int raw = readUnsigned(buf, end);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    public static int crc16(byte[] buf, int offset, int length) {
+        int crc = 0xFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc = ((crc << 8) ^ CRC_TABLE[((crc >> 8) ^ buf[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+}
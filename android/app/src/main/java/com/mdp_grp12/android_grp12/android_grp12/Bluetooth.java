@@ -19,7 +19,6 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.SharedPreferences;
 import android.os.Build;
-import android.os.Handler;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.View;
@@ -54,7 +53,6 @@ public class Bluetooth extends AppCompatActivity {
 
     private ActivityResultLauncher<String[]> requestPermissionLauncher;
 
-    boolean retryConnection = false;
     TextView connStatusTextView;
     ListView otherDevicesListView;
     ListView pairedDevicesListView;
@@ -65,29 +63,53 @@ public class Bluetooth extends AppCompatActivity {
     SharedPreferences.Editor editor;
 
     BluetoothAdapter myBluetoothAdapter;
-    BluetoothService mBluetoothConnection;
-
-    Handler reconnectionHandler = new Handler();
-    Runnable reconnectionRunnable = new Runnable() {
-        @Override
-        public void run() {
-            try {
-                if (BluetoothService.BluetoothConnectionStatus == false) {
-                    Log.d(TAG, "Reconnecting...");
-                    startBTConnection(myBluetoothDevice, myUUID);
-                    Toast.makeText(Bluetooth.this, "Reconnection success!", Toast.LENGTH_SHORT).show();
-                }
-                reconnectionHandler.removeCallbacks(reconnectionRunnable);
-                retryConnection = false;
-            } catch (Exception e) {
-                Log.d(TAG, "Reconnecting failed...");
-                e.printStackTrace();
-                Toast.makeText(Bluetooth.this, "Failed to reconnect, trying again in 5 second", Toast.LENGTH_SHORT)
-                        .show();
-            }
+    // The link itself lives in BluetoothLinkService so it survives leaving this screen
+    LinkClient link = new LinkClient(this);
+    ProgressDialog connectingDialog;
+
+    // myDialog stays up while the service retries, and only says the link is gone once it gives up
+    MessageBus.Listener<BluetoothService.LinkState> linkStateListener = state -> {
+        if (state != BluetoothService.LinkState.CONNECTING && connectingDialog != null) {
+            connectingDialog.dismiss();
+            connectingDialog = null;
+        }
+        switch (state) {
+            case BACKOFF:
+                myDialog.setMessage("Waiting for other device to reconnect...");
+                myDialog.show();
+                break;
+            case FAILED:
+                myDialog.setMessage("Disconnected, please connect again.");
+                myDialog.show();
+                break;
+            case CONNECTED:
+            case IDLE:
+                myDialog.dismiss();
+                break;
+            default:
+                // CONNECTING between retries keeps whichever dialog is showing
+                break;
         }
     };
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        link.bind();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        link.unbind();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        MessageBus.getDefault().unsubscribe(MessageBus.LINK_STATE, linkStateListener);
+    }
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -101,6 +123,7 @@ public class Bluetooth extends AppCompatActivity {
         Log.d(TAG, "width: " + width + ", height: " + height);
 
         myBluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+        MessageBus.getDefault().subscribe(MessageBus.LINK_STATE, MessageBus.Delivery.MAIN, linkStateListener);
 
         requestPermissionLauncher = registerForActivityResult(
                 new RequestMultiplePermissions(),
@@ -163,7 +186,6 @@ public class Bluetooth extends AppCompatActivity {
                 if (Build.VERSION.SDK_INT > Build.VERSION_CODES.JELLY_BEAN_MR2) {
                     Log.d(TAG, "onItemClick: Initiating pairing with " + deviceName);
                     boolean success = myNewBluetoothDevices.get(i).createBond();
-                    mBluetoothConnection = new BluetoothService(Bluetooth.this);
                     myBluetoothDevice = myNewBluetoothDevices.get(i);
                 }
             }
@@ -181,9 +203,7 @@ public class Bluetooth extends AppCompatActivity {
                 Log.d(TAG, "onItemClick: A device is selected.");
                 Log.d(TAG, "onItemClick: DEVICE NAME: " + deviceName);
                 Log.d(TAG, "onItemClick: DEVICE ADDRESS: " + deviceAddress);
-                BluetoothService.myBluetoothDevice = myPairedBTDevices.get(i);
                 Toast.makeText(Bluetooth.this, deviceName, Toast.LENGTH_SHORT).show();
-                mBluetoothConnection = new BluetoothService(Bluetooth.this);
                 myBluetoothDevice = myPairedBTDevices.get(i);
             }
         });
@@ -278,6 +298,10 @@ public class Bluetooth extends AppCompatActivity {
         myDialog.setButton(DialogInterface.BUTTON_NEGATIVE, "Cancel", new DialogInterface.OnClickListener() {
             @Override
             public void onClick(DialogInterface dialog, int which) {
+                // stop the service from retrying
+                if (link.getService() != null) {
+                    link.getService().disconnect();
+                }
                 dialog.dismiss();
             }
         });
@@ -482,10 +506,10 @@ public class Bluetooth extends AppCompatActivity {
                 connStatusTextView.setText("Connected to " + myDevice.getName());
                 connStatusTextView.setTextColor(Color.parseColor("#6BDE42"));
                 // connStatusTextView.setTextColor(Color.parseColor("#FFA500"));
-            } else if (status.equals("disconnected") && retryConnection == false) {
+            } else if (status.equals("disconnected")) {
+                // BluetoothService reconnects by itself, only reflect it here
                 Log.d(TAG, "mBroadcastReceiver5: Disconnected from " + myDevice.getName());
                 Toast.makeText(Bluetooth.this, "Disconnected from " + myDevice.getName(), Toast.LENGTH_SHORT).show();
-                mBluetoothConnection = new BluetoothService(Bluetooth.this);
                 sharedPreferences = getApplicationContext().getSharedPreferences("Shared Preferences",
                         Context.MODE_PRIVATE);
                 editor = sharedPreferences.edit();
@@ -494,20 +518,7 @@ public class Bluetooth extends AppCompatActivity {
                 connStatusTextView.setText("Disconnected");
                 connStatusTextView.setTextColor(Color.parseColor("#b00020"));
                 editor.commit();
-
-                try {
-                    try {
-                        if (myDialog != null)
-                            myDialog.show();
-                    } catch (Exception e) {
-                        Log.d(TAG, "Local dialog failure");
-                    }
-                } catch (Exception e) {
-                    Log.d(TAG, "Bluetooth: mBroadcastReceiver5 Dialog show failure");
-                }
-                retryConnection = true;
-                reconnectionHandler.postDelayed(reconnectionRunnable, 5000);
-
+                // myDialog follows the link state, see linkStateListener
             }
 
             if (status.equals("disconnected"))
@@ -518,13 +529,19 @@ public class Bluetooth extends AppCompatActivity {
 
     // establish connection wrapper function
     public void startConnection() {
-        startBTConnection(myBluetoothDevice, myUUID);
+        startBTConnection(myBluetoothDevice);
     }
 
     // establish connection main function
-    public void startBTConnection(BluetoothDevice device, UUID uuid) {
+    public void startBTConnection(BluetoothDevice device) {
+        BluetoothLinkService service = link.getService();
+        if (service == null) {
+            Toast.makeText(Bluetooth.this, "Bluetooth service not ready, try again", Toast.LENGTH_SHORT).show();
+            return;
+        }
         Log.d(TAG, "startBTConnection: Initializing RFCOM Bluetooth Connection");
-        mBluetoothConnection.startClientThread(device, uuid);
+        connectingDialog = ProgressDialog.show(Bluetooth.this, "Connecting Bluetooth", "Please Wait...", true);
+        service.connect(device);
     }
 
     @Override
@@ -0,0 +1,201 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import android.annotation.SuppressLint;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.bluetooth.BluetoothDevice;
+import android.content.Intent;
+import android.os.Binder;
+import android.os.Build;
+import android.os.IBinder;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.content.ContextCompat;
+
+import com.mdp_grp12.android_grp12.R;
+
+/*
+ * Owns the RFCOMM link for the whole app. The socket, reader/writer threads and the
+ * reconnect supervisor of BluetoothService live as long as this service, not as long as
+ * whichever activity started them, and the service runs in the foreground while a link
+ * is requested so it is not killed when the user moves between screens.
+ *
+ * Activities bind to it through LinkClient.
+ */
+public class BluetoothLinkService extends Service {
+    private static final String TAG = "BluetoothLinkService";
+    private static final String CHANNEL_ID = "bluetooth_link";
+    private static final int NOTIFICATION_ID = 12;
+
+    public class LocalBinder extends Binder {
+        public BluetoothLinkService getService() {
+            return BluetoothLinkService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private BluetoothService link;
+    private boolean foreground = false;
+
+    private final MessageBus.Listener<BluetoothService.LinkState> linkStateListener = state -> {
+        if (state == BluetoothService.LinkState.IDLE) {
+            leaveForeground();
+        } else if (foreground) {
+            NotificationManager manager = (NotificationManager) getSystemService(NOTIFICATION_SERVICE);
+            manager.notify(NOTIFICATION_ID, buildNotification(state));
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        link = new BluetoothService(this);
+        createNotificationChannel();
+        MessageBus.getDefault().subscribe(MessageBus.LINK_STATE, MessageBus.Delivery.MAIN, linkStateListener);
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        // Only started by connect(), which wants the link kept alive in the foreground
+        startForeground(NOTIFICATION_ID, buildNotification(link.getLinkState()));
+        foreground = true;
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onDestroy() {
+        MessageBus.getDefault().unsubscribe(MessageBus.LINK_STATE, linkStateListener);
+        link.close();
+        super.onDestroy();
+    }
+
+    /*
+     * ======================
+     * API for bound activities
+     * ======================
+     */
+
+    public void connect(BluetoothDevice device) {
+        Log.d(TAG, "connect: Initializing RFCOM Bluetooth Connection");
+        ContextCompat.startForegroundService(this, new Intent(this, BluetoothLinkService.class));
+        link.startClientThread(device, BluetoothService.myUUID);
+    }
+
+    public void disconnect() {
+        link.disconnect();
+        leaveForeground();
+    }
+
+    /*
+     * See BluetoothService.write(), held and replayed while the link is down
+     */
+    public boolean write(byte[] bytes) {
+        return link.write(bytes);
+    }
+
+    public boolean sendMessage(String message) {
+        return link.sendMessage(message);
+    }
+
+    public boolean isConnected() {
+        return link.isConnected();
+    }
+
+    public BluetoothService.LinkState getLinkState() {
+        return link.getLinkState();
+    }
+
+    public BluetoothDevice getDevice() {
+        return link.getDevice();
+    }
+
+    public LinkMetrics getMetrics() {
+        return link.getMetrics();
+    }
+
+    public int getQueueDepth() {
+        return link.getQueueDepth();
+    }
+
+    /*
+     * See BluetoothService.startRecording(), the recording outlives the activity that
+     * started it like the link does
+     */
+    public void startRecording(File file) throws IOException {
+        link.startRecording(file);
+    }
+
+    public File stopRecording() throws IOException {
+        return link.stopRecording();
+    }
+
+    public boolean isRecording() {
+        return link.isRecording();
+    }
+
+    public Thread replaySession(File log, double speed, BluetoothService.ReplayListener listener) {
+        return link.replaySession(log, speed, listener);
+    }
+
+    private void leaveForeground() {
+        if (foreground) {
+            foreground = false;
+            stopForeground(true);
+            // Stays around while activities are still bound
+            stopSelf();
+        }
+    }
+
+    private void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Bluetooth link",
+                    NotificationManager.IMPORTANCE_LOW);
+            NotificationManager manager = getSystemService(NotificationManager.class);
+            manager.createNotificationChannel(channel);
+        }
+    }
+
+    @SuppressLint("MissingPermission")
+    private android.app.Notification buildNotification(BluetoothService.LinkState state) {
+        BluetoothDevice device = link.getDevice();
+        String name = device == null ? "robot" : device.getName();
+        String text;
+        switch (state) {
+            case CONNECTED:
+                text = "Connected to " + name;
+                break;
+            case CONNECTING:
+            case BACKOFF:
+                text = "Reconnecting to " + name + "...";
+                break;
+            case FAILED:
+                text = "Could not reach " + name;
+                break;
+            default:
+                text = "Disconnected";
+                break;
+        }
+
+        Intent open = new Intent(this, Arena.class);
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0, open,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE);
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.drawable.bluetooth_icon)
+                .setContentTitle("Bluetooth link")
+                .setContentText(text)
+                .setContentIntent(contentIntent)
+                .setOngoing(true)
+                .build();
+    }
+}
@@ -1,114 +1,305 @@
 package com.mdp_grp12.android_grp12.android_grp12;
 
 
-import android.annotation.SuppressLint;
-import android.app.ProgressDialog;
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
-import android.bluetooth.BluetoothSocket;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 import android.widget.Toast;
 import android.util.Log;
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.charset.Charset;
+import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 public class BluetoothService {
+    public enum LinkState {
+        // Nothing requested, or the user cancelled
+        IDLE,
+        // An RFCOMM connect is in flight
+        CONNECTING,
+        CONNECTED,
+        // Waiting before the next attempt
+        BACKOFF,
+        // Gave up after MAX_ATTEMPTS, needs a new connect from the user
+        FAILED;
+
+        // The link is up or on its way, so writes are held until it is
+        public boolean holdsWrites() {
+            return this == CONNECTING || this == CONNECTED || this == BACKOFF;
+        }
+    }
+
     public static final UUID myUUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
     private static final String TAG = "BluetoothServ";
-    public static boolean BluetoothConnectionStatus = false;
-    private static ConnectedThread myConnectedThread;
-    private final BluetoothAdapter myBluetoothAdapter;
-    public static BluetoothDevice myBluetoothDevice;
-    private ConnectThread myConnectThread;
-    private BluetoothDevice myDevice;
-    private UUID deviceUUID;
+    // RPi messages are split on '\n', with what is left delivered once the link goes quiet.
+    // LENGTH_PREFIXED is for firmware that frames explicitly.
+    public static FrameDecoder.Mode frameMode = FrameDecoder.Mode.NEWLINE;
+    // Ask the RPi for the binary protocol on connect, firmware without support stays on ASCII
+    public static boolean preferBinaryProtocol = false;
+    // Wrap writes as "SEQ,<n>,..." and keep them until the RPi sends "ACK,<n>"
+    public static boolean sequenceOutbound = false;
+    // Send "PING,<id>" this often while connected and time the "PONG,<id>", 0 to disable
+    public static long pingIntervalMs = 0;
+    private static final int OUTBOUND_QUEUE_CAPACITY = 64;
+    // Leaves room in the queue for link control messages when the whole buffer is replayed
+    private static final int REPLAY_CAPACITY = OUTBOUND_QUEUE_CAPACITY - 8;
 
+    /*
+     * The link itself, one per BluetoothLinkService. The settings above apply from the
+     * next connect().
+     */
+    private final BluetoothAdapter myBluetoothAdapter;
+    private final ConnectionSupervisor supervisor = new ConnectionSupervisor();
+    private final OutboundLink outbound = new OutboundLink(OUTBOUND_QUEUE_CAPACITY, REPLAY_CAPACITY);
+    private final LinkMetrics metrics = new LinkMetrics();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private volatile BluetoothDevice myDevice;
+    private volatile ConnectedThread myConnectedThread;
+    private volatile boolean connected = false;
+    private volatile boolean binaryProtocol = false;
+    private WriterThread myWriterThread;
+    private ScheduledFuture<?> pingTask;
+    // Set while a session is recorded, see startRecording()
+    private volatile SessionRecorder recorder;
+
+    // Application context, the link is owned by BluetoothLinkService, not by an activity
     Context myContext;
-    ProgressDialog myProgressDialog;
     Intent connectionStatus;
 
     public BluetoothService(Context context) {
         this.myBluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
-        this.myContext = context;
+        this.myContext = context.getApplicationContext();
     }
 
     /*
-     * Class that initiates the bluetooth socket connection
+     * Owns (re)connection of the link. Attempts run on one background thread, a dropped
+     * link is retried straight away and then with jittered exponential backoff, no matter
+     * which activity is in the foreground. Every connect()/disconnect() starts a new
+     * generation so attempts and read loops from an older one are ignored.
      */
-    private class ConnectThread extends Thread {
-        private BluetoothSocket mySocket;
-
-        public ConnectThread(BluetoothDevice device, UUID u) {
-            myDevice = device;
-            deviceUUID = u;
+    private class ConnectionSupervisor {
+        private static final long INITIAL_BACKOFF_MS = 100;
+        private static final long MAX_BACKOFF_MS = 5000;
+        private static final int MAX_ATTEMPTS = 12;
+
+        private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "BluetoothSupervisor");
+            t.setDaemon(true);
+            return t;
+        });
+        private final Random random = new Random();
+
+        private LinkState state = LinkState.IDLE;
+        private Transport.Factory factory;
+        // Of the last transport made, for logs
+        private String peer = "";
+        private int attempt = 0;
+        private int generation = 0;
+        private Transport pendingTransport;
+        private ScheduledFuture<?> pendingAttempt;
+
+        synchronized void connect(Transport.Factory factory) {
+            cancelPending();
+            generation++;
+            this.factory = factory;
+            attempt = 0;
+            schedule(0);
         }
 
-        @SuppressLint("MissingPermission")
-        public void run() {
-            BluetoothSocket tmp = null;
+        synchronized void disconnect() {
+            cancelPending();
+            generation++;
+            setState(LinkState.IDLE);
+        }
 
-            try {
-                tmp = myDevice.createRfcommSocketToServiceRecord(deviceUUID);
-            } catch (IOException ignored) {
+        /*
+         * Called by the read loop when the socket dies. The first retry goes out immediately.
+         */
+        synchronized void onConnectionLost(int gen) {
+            if (gen != generation || state != LinkState.CONNECTED) {
+                return;
             }
+            Log.d(TAG, "Link lost, reconnecting to " + peer);
+            attempt = 0;
+            schedule(0);
+        }
 
-            mySocket = tmp;
-            myBluetoothAdapter.cancelDiscovery();
+        synchronized LinkState getState() {
+            return state;
+        }
 
-            try {
-                mySocket.connect();
-                connected(mySocket, myDevice);
-            } catch (IOException e) {
-                try {
-                    mySocket.close();
-                } catch (IOException e1) {
-                    e1.printStackTrace();
-                }
+        void shutdown() {
+            executor.shutdownNow();
+        }
+
+        ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long periodMs) {
+            return executor.scheduleAtFixedRate(task, periodMs, periodMs, TimeUnit.MILLISECONDS);
+        }
 
+        private void schedule(long delayMs) {
+            final int gen = generation;
+            setState(delayMs == 0 ? LinkState.CONNECTING : LinkState.BACKOFF);
+            pendingAttempt = executor.schedule(() -> attempt(gen), delayMs, TimeUnit.MILLISECONDS);
+        }
+
+        private void attempt(int gen) {
+            Transport transport;
+            synchronized (this) {
+                if (gen != generation) {
+                    return;
+                }
+                setState(LinkState.CONNECTING);
+                attempt++;
                 try {
-                    Bluetooth mBluetoothActivity = (Bluetooth) myContext;
-                    mBluetoothActivity.runOnUiThread(() -> Toast
-                            .makeText(myContext, "Failed to connect to the device.", Toast.LENGTH_SHORT).show());
-                } catch (Exception z) {
-                    z.printStackTrace();
+                    transport = factory.create();
+                } catch (IOException e) {
+                    onAttemptFailed(gen, e);
+                    return;
                 }
+                peer = transport.describe();
+                pendingTransport = transport;
             }
 
             try {
-                myProgressDialog.dismiss();
-            } catch (NullPointerException e) {
-                e.printStackTrace();
+                // Blocks until connected or failed, cancelPending() closes the transport to abort it
+                transport.connect();
+            } catch (IOException e) {
+                closeQuietly(transport);
+                onAttemptFailed(gen, e);
+                return;
+            }
+
+            synchronized (this) {
+                pendingTransport = null;
+                if (gen != generation) {
+                    closeQuietly(transport);
+                    return;
+                }
+                attempt = 0;
+                setState(LinkState.CONNECTED);
+                connected(transport, gen);
             }
         }
 
-        public void cancel() {
-            try {
-                mySocket.close();
-            } catch (IOException ignored) {
+        private synchronized void onAttemptFailed(int gen, IOException e) {
+            if (gen != generation) {
+                return;
+            }
+            pendingTransport = null;
+            if (attempt >= MAX_ATTEMPTS) {
+                Log.d(TAG, "Giving up after " + attempt + " attempts: " + e.getMessage());
+                // Before FAILED is published, a connect made on seeing it starts afresh
+                outbound.abandon();
+                setState(LinkState.FAILED);
+                onConnectFailed();
+                return;
+            }
+            long delay = backoffMillis(attempt);
+            Log.d(TAG, "Attempt " + attempt + " failed, retrying in " + delay + "ms");
+            schedule(delay);
+        }
+
+        /*
+         * 100ms, 200ms, 400ms ... capped at MAX_BACKOFF_MS, each randomised to 50-100%
+         * so the tablet does not retry in lockstep with the RPi restarting its server.
+         */
+        private long backoffMillis(int failures) {
+            long ceiling = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << Math.min(failures - 1, 16));
+            return ceiling / 2 + (long) (random.nextDouble() * (ceiling / 2));
+        }
+
+        private void cancelPending() {
+            if (pendingAttempt != null) {
+                pendingAttempt.cancel(false);
+                pendingAttempt = null;
+            }
+            if (pendingTransport != null) {
+                closeQuietly(pendingTransport);
+                pendingTransport = null;
             }
         }
+
+        private void setState(LinkState newState) {
+            if (state != newState) {
+                state = newState;
+                MessageBus.getDefault().publish(MessageBus.LINK_STATE, newState);
+            }
+        }
+    }
+
+    private static void closeQuietly(Transport transport) {
+        try {
+            transport.close();
+        } catch (IOException ignored) {
+        }
     }
 
     /*
      * Starts the bluetooth connection with client
      */
     public void startClientThread(BluetoothDevice device, UUID uuid) {
-        try {
-            myBluetoothDevice = device;
-            myProgressDialog = ProgressDialog.show(myContext, "Connecting Bluetooth", "Please Wait...", true);
-        } catch (Exception e) {
-            Log.d(TAG, "Failed to connect!");
-            e.printStackTrace();
+        // What was held for another device is not for this one
+        if (myDevice != null && !myDevice.equals(device)) {
+            outbound.abandon();
         }
+        myDevice = device;
+        outbound.setSequenced(sequenceOutbound);
+        outbound.hold();
+        supervisor.connect(() -> new RfcommTransport(myBluetoothAdapter, device, uuid));
+    }
 
-        myConnectThread = new ConnectThread(device, uuid);
-        myConnectThread.start();
+    /*
+     * Drops the link and cancels any attempt in flight or pending backoff
+     */
+    public void disconnect() {
+        supervisor.disconnect();
+        if (pingTask != null) {
+            pingTask.cancel(false);
+        }
+        // Nothing held for a link the user gave up on
+        outbound.abandon();
+        if (myConnectedThread != null) {
+            myConnectedThread.cancel();
+        }
+    }
+
+    /*
+     * Disconnects for good, when BluetoothLinkService is destroyed
+     */
+    public void close() {
+        disconnect();
+        supervisor.shutdown();
+    }
+
+    public LinkState getLinkState() {
+        return supervisor.getState();
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    // Of the last connect(), null before the first
+    public BluetoothDevice getDevice() {
+        return myDevice;
+    }
+
+    private void onConnectFailed() {
+        mainHandler.post(() -> Toast
+                .makeText(myContext, "Failed to connect to the device.", Toast.LENGTH_SHORT).show());
     }
 
     /*
@@ -121,22 +312,28 @@ public class BluetoothService {
      */
 
     private class ConnectedThread extends Thread {
+        private final Transport transport;
+        private final int generation;
         private final InputStream inStream;
         private final OutputStream outStream;
+        private final InboundDecoder inbound;
 
-        public ConnectedThread(BluetoothSocket socket) {
+        public ConnectedThread(Transport transport, int generation) {
+            this.transport = transport;
+            this.generation = generation;
+            inbound = new InboundDecoder(MessageBus.getDefault(), metrics, frameMode, liveControl);
             connectionStatus = new Intent("ConnectionStatus");
             connectionStatus.putExtra("Status", "connected");
             connectionStatus.putExtra("Device", myDevice);
             LocalBroadcastManager.getInstance(myContext).sendBroadcast(connectionStatus);
-            BluetoothConnectionStatus = true;
+            connected = true;
 
             InputStream tmpIn = null;
             OutputStream tmpOut = null;
 
             try {
-                tmpIn = socket.getInputStream();
-                tmpOut = socket.getOutputStream();
+                tmpIn = transport.getInputStream();
+                tmpOut = transport.getOutputStream();
             } catch (IOException e) {
                 e.printStackTrace();
             }
@@ -146,56 +343,309 @@ public class BluetoothService {
         }
 
         public void run() {
-            byte[] buffer = new byte[1024];
-            int bytes;
+            try {
+                new LinkReader(inStream, inbound, () -> recorder).run();
+            } catch (IOException e) {
+                outbound.onConnectionLost();
+                if (myWriterThread != null) {
+                    myWriterThread.cancel();
+                }
+                connectionStatus = new Intent("ConnectionStatus");
+                connectionStatus.putExtra("Status", "disconnected");
+                connectionStatus.putExtra("Device", myDevice);
+                LocalBroadcastManager.getInstance(myContext).sendBroadcast(connectionStatus);
+                connected = false;
+                closeQuietly(transport);
+                supervisor.onConnectionLost(generation);
+            }
+        }
 
-            while (true) {
-                try {
-                    bytes = inStream.read(buffer);
-                    String incomingmessage = new String(buffer, 0, bytes);
+        public void cancel() {
+            closeQuietly(transport);
+        }
+    }
+
+    /*
+     * Owns the output stream. Drains the outbound queue in batches so that
+     * everything queued while a write was in flight goes out with a single flush.
+     */
+    private class WriterThread extends Thread {
+        private static final int MAX_BATCH = 16;
+        private final OutputStream outStream;
+
+        public WriterThread(OutputStream out) {
+            super("BluetoothWriter");
+            outStream = new BufferedOutputStream(out, 1024);
+        }
 
-                    Intent incomingMessageIntent = new Intent("incomingMessage");
-                    incomingMessageIntent.putExtra("receivedMessage", incomingmessage);
+        public void run() {
+            byte[][] batch = new byte[MAX_BATCH][];
 
-                    LocalBroadcastManager.getInstance(myContext).sendBroadcast(incomingMessageIntent);
+            while (!isInterrupted()) {
+                try {
+                    int n = outbound.getQueue().takeBatch(batch);
+                    if (n < 0) {
+                        break;
+                    }
+
+                    long start = System.nanoTime();
+                    long written = 0;
+                    SessionRecorder sessionRecorder = recorder;
+                    for (int i = 0; i < n; i++) {
+                        byte[] frame = binaryProtocol
+                                ? BinaryCodec.encodeOutbound(batch[i], 0, batch[i].length) : batch[i];
+                        outStream.write(frame);
+                        written += frame.length;
+                        if (sessionRecorder != null) {
+                            sessionRecorder.recordOutbound(frame, 0, frame.length);
+                        }
+                    }
+                    outStream.flush();
+                    metrics.onFlush(n, written, System.nanoTime() - start);
+
+                    for (int i = 0; i < n; i++) {
+                        outbound.onFlushed(batch[i]);
+                        batch[i] = null;
+                    }
+                } catch (InterruptedException e) {
+                    break;
                 } catch (IOException e) {
-                    connectionStatus = new Intent("ConnectionStatus");
-                    connectionStatus.putExtra("Status", "disconnected");
-                    connectionStatus.putExtra("Device", myDevice);
-                    LocalBroadcastManager.getInstance(myContext).sendBroadcast(connectionStatus);
-                    BluetoothConnectionStatus = false;
+                    Log.d(TAG, "Writer stopped: " + e.getMessage());
                     break;
                 }
             }
         }
 
-        public void write(byte[] bytes) {
-            try {
-                outStream.write(bytes);
-                Log.d(TAG, "I'm sending out messages");
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+        public void cancel() {
+            interrupt();
         }
     }
 
-    private void connected(BluetoothSocket mySocket, BluetoothDevice device) {
-        myDevice = device;
-        myConnectedThread = new ConnectedThread(mySocket);
+    private void connected(Transport transport, int generation) {
+        binaryProtocol = false;
+        myConnectedThread = new ConnectedThread(transport, generation);
         myConnectedThread.start();
+
+        if (myWriterThread != null) {
+            myWriterThread.cancel();
+        }
+        myWriterThread = new WriterThread(myConnectedThread.outStream);
+        myWriterThread.start();
+
+        if (preferBinaryProtocol) {
+            requestBinaryProtocol();
+        }
+        int replayed = outbound.onConnected();
+        if (replayed > 0) {
+            Log.d(TAG, "Replaying " + replayed + " outbound messages");
+        }
+
+        if (pingTask != null) {
+            pingTask.cancel(false);
+        }
+        if (pingIntervalMs > 0) {
+            pingTask = supervisor.scheduleAtFixedRate(this::ping, pingIntervalMs);
+        }
+    }
+
+    /*
+     * Sends a PING for round trip measurement, see LinkMetrics.onPong()
+     */
+    public boolean ping() {
+        if (!connected) {
+            return false;
+        }
+        int id = metrics.onPingSent(System.nanoTime());
+        // Link control, bypasses the replay buffer
+        return outbound.writeControl(("PING," + id).getBytes(Charset.defaultCharset()));
+    }
+
+    private final InboundDecoder.LinkControl liveControl = new InboundDecoder.LinkControl() {
+        @Override
+        public void onBinaryProtocol() {
+            Log.d(TAG, "RPi accepted the binary protocol");
+            binaryProtocol = true;
+        }
+
+        @Override
+        public void onLinkControl(ProtocolMessage message) {
+            if (message instanceof ProtocolMessage.Ack) {
+                outbound.onAck(((ProtocolMessage.Ack) message).sequence);
+            } else if (message instanceof ProtocolMessage.Pong) {
+                metrics.onPong(((ProtocolMessage.Pong) message).id, System.nanoTime());
+            }
+        }
+    };
+
+    /*
+     * Offers the binary protocol to the RPi. The link switches over only once the
+     * RPi answers with BinaryCodec.NEGOTIATION_ACK.
+     */
+    public boolean requestBinaryProtocol() {
+        // Link control, only meaningful on the current connection so it is not buffered
+        return outbound.writeControl(BinaryCodec.NEGOTIATION_REQUEST.getBytes(Charset.defaultCharset()));
     }
 
-    public static void write(byte[] out) {
-        myConnectedThread.write(out);
+    public boolean isBinaryProtocol() {
+        return binaryProtocol;
     }
 
-    public static boolean sendMessage(String message) {
-        if (BluetoothConnectionStatus == true) {
-            byte[] bytes = message.getBytes(Charset.defaultCharset());
-            BluetoothService.write(bytes);
-            return true;
+    /*
+     * See OutboundLink.write(), held and replayed while the link is down. Returns false
+     * if there is no link to send it on (IDLE or FAILED) or it is not keeping up.
+     */
+    public boolean write(byte[] out) {
+        if (!outbound.write(out)) {
+            Log.d(TAG, "Dropped " + out.length + " outbound bytes in " + getLinkState());
+            return false;
         }
-        return false;
+        return true;
+    }
+
+    public boolean sendMessage(String message) {
+        byte[] bytes = message.getBytes(Charset.defaultCharset());
+        return write(bytes);
+    }
+
+    public int getPendingReplay() {
+        return outbound.getPendingReplay();
+    }
+
+    public int getQueueDepth() {
+        return outbound.getQueueDepth();
+    }
+
+    public int getMaxQueueDepth() {
+        return outbound.getMaxQueueDepth();
+    }
+
+    public long getRejectedWrites() {
+        return outbound.getRejectedWrites();
+    }
+
+    public long getSocketFlushes() {
+        return metrics.getSocketFlushes();
+    }
+
+    public long getMessagesWritten() {
+        return metrics.getMessagesWritten();
+    }
+
+    public long getLastWriteLatencyNanos() {
+        return metrics.getLastWriteLatencyNanos();
+    }
+
+    public long getMaxWriteLatencyNanos() {
+        return metrics.getMaxWriteLatencyNanos();
+    }
+
+    public long getAverageWriteLatencyNanos() {
+        return metrics.getAverageWriteLatencyNanos();
+    }
+
+    public LinkMetrics getMetrics() {
+        return metrics;
+    }
+
+    /*
+     * ======================
+     * Session recording and replay
+     * ======================
+     */
+
+    /*
+     * Logs everything read from and written to the RPi from now on, see SessionRecorder.
+     * A recording already running is stopped first.
+     */
+    public void startRecording(File file) throws IOException {
+        // The replay has to start decoding the way the live link does now
+        ConnectedThread connection = myConnectedThread;
+        InboundDecoder live = connection != null ? connection.inbound : null;
+        SessionRecorder started = live != null
+                ? new SessionRecorder(file, live.getMode(), live.isBinary())
+                : new SessionRecorder(file, frameMode, false);
+        SessionRecorder previous;
+        synchronized (this) {
+            previous = recorder;
+            recorder = started;
+        }
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    // The finished log, null if nothing was being recorded
+    public File stopRecording() throws IOException {
+        SessionRecorder stopped;
+        synchronized (this) {
+            stopped = recorder;
+            recorder = null;
+        }
+        if (stopped == null) {
+            return null;
+        }
+        stopped.close();
+        return stopped.getFile();
+    }
+
+    public boolean isRecording() {
+        return recorder != null;
+    }
+
+    public interface ReplayListener {
+        // Called on the replay thread, stats is null if the log could not be read or the
+        // replay was interrupted
+        void onReplayFinished(SessionReplayer.Stats stats);
+    }
+
+    /*
+     * Feeds the bytes the RPi sent in a recorded session through the same decoding as the
+     * live link, so subscribers see the run again. speed as for SessionReplayer.replay(),
+     * interrupt the returned thread to stop. Outbound frames are not sent again.
+     */
+    public Thread replaySession(File log, double speed, ReplayListener listener) {
+        Thread replay = new Thread(() -> {
+            // Its own metrics, the live ones have the reader thread as their only writer
+            LinkMetrics replayMetrics = new LinkMetrics();
+            InboundDecoder[] inbound = new InboundDecoder[1];
+            SessionReplayer.Stats stats = null;
+            try {
+                stats = SessionReplayer.replay(log, speed, new SessionReplayer.Sink() {
+                    @Override
+                    public void onMode(FrameDecoder.Mode mode, boolean binary) {
+                        // No link control, ACKs and PONGs answer what the recorded link sent
+                        inbound[0] = new InboundDecoder(MessageBus.getDefault(), replayMetrics, mode, null);
+                        if (binary) {
+                            inbound[0].startBinary();
+                        }
+                    }
+
+                    @Override
+                    public void onInbound(byte[] data, int offset, int length) {
+                        inbound[0].feed(data, offset, length);
+                    }
+
+                    @Override
+                    public void onOutbound(byte[] data, int offset, int length) {
+                    }
+
+                    @Override
+                    public void onIdle() {
+                        inbound[0].onIdle();
+                    }
+                });
+                Log.d(TAG, "Replayed " + stats.records + " records of " + stats.recordedNanos / 1000000
+                        + " ms in " + stats.elapsedNanos / 1000000 + " ms, " + replayMetrics.getFramesDecoded()
+                        + " frames, " + replayMetrics.getParseFailures() + " unparsed");
+            } catch (IOException e) {
+                Log.d(TAG, "Replay failed: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Log.d(TAG, "Replay stopped");
+            }
+            listener.onReplayFinished(stats);
+        }, "SessionReplay");
+        replay.start();
+        return replay;
     }
 }
 
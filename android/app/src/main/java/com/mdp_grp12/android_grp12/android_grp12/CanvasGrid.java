@@ -1,23 +1,33 @@
 package com.mdp_grp12.android_grp12.android_grp12;
 
 import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.util.AttributeSet;
-import android.util.Log;
-import android.util.Pair;
 import android.view.View;
 
-import java.util.ArrayList;
-import java.util.List;
+import com.mdp_grp12.android_grp12.R;
 
 public class CanvasGrid extends View {
-    private static final int noOfCols = 20;
-    private static final int noOfRows = 20;
-    private static final int cellWidth = 35;
-    private static final int cellHeight = 35;
+    /*
+     * Told the cell size once the view has been laid out, and again if its size changes
+     */
+    public interface OnGeometryListener {
+        void onGeometryChanged(ArenaGeometry geometry);
+    }
+
+    private final int noOfCols;
+    private final int noOfRows;
+    private final float cellSizeDp;
+    // Null until onSizeChanged(), cells shrink to fit the view
+    private ArenaGeometry geometry;
+    private int cellWidth;
+    private int cellHeight;
+    private OnGeometryListener geometryListener;
 
     private static final Paint greenPaint = new Paint();
     private static final Paint blackPaint = new Paint();
@@ -31,12 +41,30 @@ public class CanvasGrid extends View {
     private int carX = -1;
     private int carY = -1;
     private int highlightRadius = 0; // Set the default radius to 1
-    private static List<Pair<Integer, Integer>> highlightPositions = new ArrayList<>();
+    // Cells the car has passed through, kept across Arena instances like the old position list
+    private static VisitedTrail trail;
+
+    // Background, grid lines and axis labels never change, they are drawn once into this bitmap
+    private Bitmap staticLayer;
+    // Visited cells, each painted in once when the car first reaches it, see paintVisited()
+    private Bitmap trailLayer;
+    private Canvas trailCanvas;
+    // Preallocated so onDraw and paintVisited() do not allocate
+    private final Rect highlightRect = new Rect();
 
 
     public CanvasGrid(Context context, AttributeSet attributeSet) {
         super(context, attributeSet);
 
+        // Arena size comes from res/values/arena.xml, the cell size from the view's size
+        Resources res = context.getResources();
+        noOfCols = res.getInteger(R.integer.arena_columns);
+        noOfRows = res.getInteger(R.integer.arena_rows);
+        cellSizeDp = res.getDimension(R.dimen.arena_cell_size) / res.getDisplayMetrics().density;
+        if (trail == null || trail.getCols() != noOfCols || trail.getRows() != noOfRows) {
+            trail = new VisitedTrail(noOfCols, noOfRows);
+        }
+
         String backgroundColor = "#000000";
         String gridColor = "#03BFB5";
 
@@ -50,9 +78,13 @@ public class CanvasGrid extends View {
     }
 
     public void highlightCell(int row, int col) {
+        if (row == highlightedRow && col == highlightedCol) {
+            return;
+        }
         highlightedRow = row;
         highlightedCol = col;
-        invalidate(); // Request a redraw to update the highlighting
+        // Two bitmaps and two strips, cheap to redraw whole
+        invalidate();
     }
 
     public void clearHighlight() {
@@ -70,6 +102,7 @@ public class CanvasGrid extends View {
     public void setCarPosition(int x, int y) {
         carX = x;
         carY = y;
+        boolean changed = false;
 
         // Add the car's position and surrounding positions to highlight
         for (int i = -highlightRadius; i <= highlightRadius; i++) {
@@ -77,14 +110,15 @@ public class CanvasGrid extends View {
                 int highlightX = carX + i;
                 int highlightY = carY + j;
                 if (highlightX >= 0 && highlightY >= 0 && highlightX < noOfCols && highlightY < noOfRows) {
-                    highlightPositions.add(new Pair<>(highlightX, highlightY));
-                    Log.d("Debug -> GridHighlight", "Highlight position: X = " + highlightX + ", Y = " + highlightY);
-
+                    changed |= paintVisited(highlightX, highlightY);
                 }
             }
         }
 
-        invalidate(); // Request a redraw to update the car's position
+        // Only redraw if the car reached a new cell
+        if (changed) {
+            invalidate();
+        }
     }
 
     public void setCarPosition2(int x, int y) {
@@ -93,6 +127,7 @@ public class CanvasGrid extends View {
 
         carX = x;
         carY = y;
+        boolean changed = false;
 
         // Add the car's position and surrounding positions to highlight
         for (int i = -highlightRadius; i <= highlightRadius; i++) {
@@ -103,29 +138,26 @@ public class CanvasGrid extends View {
                     // Highlight the path from the previous position to the new position
                     if (prevX == -1 && prevY == -1) {
                         prevX = 1;
-                        prevY = 18;
+                        prevY = noOfRows - 2;
                     }
                         // Highlight rows in the path
                         for (int k = Math.min(prevX, highlightX) + 1; k < Math.max(prevX, highlightX); k++) {
-                            highlightPositions.add(new Pair<>(k, prevY));
-                            Log.d("Debug -> GridHighlight", "Highlight position: X = " + k + ", Y = " + prevY);
+                            changed |= paintVisited(k, prevY);
                         }
                         // Highlight columns in the path
                         for (int k = Math.min(prevY, highlightY) + 1; k < Math.max(prevY, highlightY); k++) {
-                            highlightPositions.add(new Pair<>(highlightX, k));
-                            Log.d("Debug -> GridHighlight", "Highlight position: X = " + highlightX + ", Y = " + k);
-
+                            changed |= paintVisited(highlightX, k);
                         }
 
                     // Add the highlight position
-                    highlightPositions.add(new Pair<>(highlightX, highlightY));
-                    Log.d("Debug -> GridHighlight", "Highlight position: X = " + highlightX + ", Y = " + highlightY);
+                    changed |= paintVisited(highlightX, highlightY);
                 }
             }
         }
 
-        // Call invalidate here to update the UI with the new highlight positions
-        invalidate();
+        if (changed) {
+            invalidate();
+        }
     }
 
     public void setHighlightRadius (int rad) {
@@ -133,18 +165,86 @@ public class CanvasGrid extends View {
     }
 
     public void clearPositions() {
-        highlightPositions.clear();
+        trail.clear();
+        if (trailLayer != null) {
+            trailLayer.eraseColor(Color.TRANSPARENT);
+        }
+        invalidate();
+    }
+
+    public static VisitedTrail getTrail() {
+        return trail;
+    }
+
+    public int getCols() {
+        return noOfCols;
+    }
+
+    public int getRows() {
+        return noOfRows;
+    }
+
+    /*
+     * Null until the view has been laid out
+     */
+    public ArenaGeometry getGeometry() {
+        return geometry;
+    }
+
+    /*
+     * Called straight away if the view has already been laid out
+     */
+    public void setOnGeometryListener(OnGeometryListener listener) {
+        geometryListener = listener;
+        if (listener != null && geometry != null) {
+            listener.onGeometryChanged(geometry);
+        }
     }
 
     @Override
-    public void onDraw(Canvas canvas) {
-        // Background
-        for (int i = 0; i < noOfCols; i++) {
-            for (int j = 0; j < noOfRows; j++) {
-                canvas.drawRect(i * cellWidth, j * cellHeight, (i + 1) * cellWidth, (j + 1) * cellHeight,
-                        canvasBackground);
-            }
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (w == 0 || h == 0) {
+            return;
+        }
+        ArenaGeometry fitted = ArenaGeometry.fit(noOfCols, noOfRows, cellSizeDp,
+                getResources().getDisplayMetrics().density, w, h);
+        if (geometry != null && geometry.getCellSize() == fitted.getCellSize()) {
+            return;
+        }
+        geometry = fitted;
+        cellWidth = geometry.getCellSize();
+        cellHeight = geometry.getCellSize();
+        // Both layers are rebuilt at the new size on the next draw
+        recycleLayers();
+        if (geometryListener != null) {
+            geometryListener.onGeometryChanged(geometry);
         }
+    }
+
+    /*
+     * Marks the cell visited and paints it into the trail layer, once. False if it already was.
+     */
+    private boolean paintVisited(int x, int y) {
+        if (!trail.visit(x, y)) {
+            return false;
+        }
+        if (trailCanvas != null) {
+            highlightRect.set(x * cellWidth, y * cellHeight, (x + 1) * cellWidth, (y + 1) * cellHeight);
+            trailCanvas.drawRect(highlightRect, highlightPaint);
+        }
+        return true;
+    }
+
+    /*
+     * Renders the layers that never change: background, grid lines and axis labels
+     */
+    private Bitmap buildStaticLayer() {
+        Bitmap bitmap = Bitmap.createBitmap(noOfCols * cellWidth, noOfRows * cellHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+
+        // Background
+        canvas.drawRect(0, 0, noOfCols * cellWidth, noOfRows * cellHeight, canvasBackground);
 
         // Vertical lines
         for (int i = 1; i < noOfCols; i++) {
@@ -152,47 +252,96 @@ public class CanvasGrid extends View {
         }
 
         // Horizontal lines
-        for (int i = 1; i < noOfCols; i++) {
+        for (int i = 1; i < noOfRows; i++) {
             canvas.drawLine(0, i * cellHeight, noOfCols * cellWidth, i * cellHeight, greenPaint);
         }
 
+        // Labels are thinned out on large arenas so they do not overlap
+        int labelStep = geometry.getLabelStep();
+        int labelOffset = Math.min(15, cellHeight);
+
+        // Vertical grid axis
+        for (int i = noOfRows - 1; i >= 0; i--) {
+            if (i % labelStep == 0) {
+                canvas.drawText(String.valueOf(i), 0, cellHeight * (noOfRows - i - 1) + labelOffset, greenPaint);
+            }
+        }
+
+        // Horizontal grid axis
+        for (int i = 1; i < noOfCols; i++) {
+            if (i % labelStep == 0) {
+                canvas.drawText(String.valueOf(i), cellWidth * i + 5, cellHeight * (noOfRows / 2) + labelOffset,
+                        greenPaint);
+            }
+        }
+        return bitmap;
+    }
+
+    /*
+     * Transparent layer with every cell of the trail so far, later cells are added by
+     * paintVisited(). The trail outlives this view, so it may already be long.
+     */
+    private void buildTrailLayer() {
+        trailLayer = Bitmap.createBitmap(noOfCols * cellWidth, noOfRows * cellHeight, Bitmap.Config.ARGB_8888);
+        trailCanvas = new Canvas(trailLayer);
+        for (int cell = trail.nextVisited(0); cell >= 0; cell = trail.nextVisited(cell + 1)) {
+            int x = trail.cellX(cell);
+            int y = trail.cellY(cell);
+            highlightRect.set(x * cellWidth, y * cellHeight, (x + 1) * cellWidth, (y + 1) * cellHeight);
+            trailCanvas.drawRect(highlightRect, highlightPaint);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        recycleLayers();
+    }
+
+    private void recycleLayers() {
+        if (staticLayer != null) {
+            staticLayer.recycle();
+            staticLayer = null;
+        }
+        if (trailLayer != null) {
+            trailCanvas = null;
+            trailLayer.recycle();
+            trailLayer = null;
+        }
+    }
+
+    @Override
+    public void onDraw(Canvas canvas) {
+        if (geometry == null) {
+            return;
+        }
+        if (staticLayer == null) {
+            staticLayer = buildStaticLayer();
+        }
+        canvas.drawBitmap(staticLayer, 0, 0, null);
+        if (trailLayer == null) {
+            buildTrailLayer();
+        }
+
         // Highlight the respective row and column
         if (highlightedRow >= 0) {
             int highlightTop = highlightedRow * cellHeight;
             int highlightBottom = (highlightedRow + 1) * cellHeight;
 
-            canvas.drawRect(new Rect(0, highlightTop, noOfCols * cellWidth, highlightBottom), highlightPaint); // Highlight row
+            highlightRect.set(0, highlightTop, noOfCols * cellWidth, highlightBottom);
+            canvas.drawRect(highlightRect, highlightPaint); // Highlight row
         }
 
         if (highlightedCol >= 0) {
             int highlightLeft = highlightedCol * cellWidth;
             int highlightRight = (highlightedCol + 1) * cellWidth;
 
-            canvas.drawRect(new Rect(highlightLeft, 0, highlightRight, noOfRows * cellHeight), highlightPaint); // Highlight column
+            highlightRect.set(highlightLeft, 0, highlightRight, noOfRows * cellHeight);
+            canvas.drawRect(highlightRect, highlightPaint); // Highlight column
         }
 
-        // Vertical grid axis
-        for (int i = noOfRows - 1; i >= 0; i--) {
-            canvas.drawText(String.valueOf(i), 0, cellHeight * (noOfRows - i - 1) + 15, greenPaint);
-        }
-
-        // Horizontal grid axis
-        for (int i = 1; i < noOfCols; i++) {
-            canvas.drawText(String.valueOf(i), cellWidth * i + 5, cellHeight * 10 + 15, greenPaint);
-        }
-
-        // Highlight positions stored in the list
-        for (Pair<Integer, Integer> position : highlightPositions) {
-            int highlightX = position.first;
-            int highlightY = position.second;
-            int highlightLeft = highlightX * cellWidth;
-            int highlightTop = highlightY * cellHeight;
-            int highlightRight = (highlightX + 1) * cellWidth;
-            int highlightBottom = (highlightY + 1) * cellHeight;
-
-            canvas.drawRect(new Rect(highlightLeft, highlightTop, highlightRight, highlightBottom), highlightPaint);
-            Log.d("Draw", highlightLeft + ", " + highlightTop + ", " + highlightRight + ", " + highlightBottom);
-        }
+        // Visited cells, however many there are
+        canvas.drawBitmap(trailLayer, 0, 0, null);
     }
 
 }
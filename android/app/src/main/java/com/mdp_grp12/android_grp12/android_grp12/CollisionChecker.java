@@ -0,0 +1,115 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+/*
+ * Occupancy grid of the arena for checking robot moves and obstacle drops in O(1) per cell.
+ *
+ * Besides which cells hold an obstacle, every cell keeps how many obstacles lie within the
+ * 3x3 robot footprint centred on it, updated by +-1 on nine cells when an obstacle moves.
+ * Whether the robot fits at a pose is then a single lookup, and a move is checked by
+ * looking up each centre cell MotionModel sweeps, the corner of the turn included.
+ *
+ * Follows ArenaState as a listener. Cells are RPi cells, robot poses the centre of the car.
+ */
+public class CollisionChecker implements ArenaState.Listener {
+    // firstCollision() result for a move that stays clear
+    public static final int CLEAR = -1;
+
+    private final int cols;
+    private final int rows;
+    // Obstacles on each cell, index y * cols + x
+    private final byte[] occupied;
+    // Obstacles within the robot footprint centred on each cell
+    private final byte[] nearby;
+    // Where each obstacle was when last seen, OFF_ARENA in the tray
+    private final int[] seenX;
+    private final int[] seenY;
+
+    public CollisionChecker(int cols, int rows, int obstacleCount) {
+        this.cols = cols;
+        this.rows = rows;
+        occupied = new byte[cols * rows];
+        nearby = new byte[cols * rows];
+        seenX = new int[obstacleCount];
+        seenY = new int[obstacleCount];
+        for (int i = 0; i < obstacleCount; i++) {
+            seenX[i] = ArenaState.OFF_ARENA;
+            seenY[i] = ArenaState.OFF_ARENA;
+        }
+    }
+
+    @Override
+    public void onRobotChanged(ArenaState state) {
+    }
+
+    @Override
+    public synchronized void onObstacleChanged(ArenaState state, int index) {
+        int x = state.getObstacleX(index);
+        int y = state.getObstacleY(index);
+        if (x == seenX[index] && y == seenY[index]) {
+            return;
+        }
+        mark(seenX[index], seenY[index], -1);
+        mark(x, y, 1);
+        seenX[index] = x;
+        seenY[index] = y;
+    }
+
+    private void mark(int x, int y, int delta) {
+        if (!inside(x, y)) {
+            return;
+        }
+        occupied[y * cols + x] += delta;
+        for (int cy = Math.max(0, y - 1); cy <= Math.min(rows - 1, y + 1); cy++) {
+            for (int cx = Math.max(0, x - 1); cx <= Math.min(cols - 1, x + 1); cx++) {
+                nearby[cy * cols + cx] += delta;
+            }
+        }
+    }
+
+    /*
+     * ======================
+     * Checks
+     * ======================
+     */
+
+    /*
+     * The whole 3x3 car fits on the arena at (x, y) without touching an obstacle
+     */
+    public synchronized boolean isRobotFree(int x, int y) {
+        return x >= 1 && y >= 1 && x < cols - 1 && y < rows - 1 && nearby[y * cols + x] == 0;
+    }
+
+    /*
+     * Index into step.sweptX/sweptY of the first cell where the car would leave the arena
+     * or hit an obstacle, CLEAR if the whole move is fine
+     */
+    public synchronized int firstCollision(MotionModel.Step step) {
+        for (int i = 0; i < step.sweptCount; i++) {
+            if (!isRobotFree(step.sweptX[i], step.sweptY[i])) {
+                return i;
+            }
+        }
+        return CLEAR;
+    }
+
+    /*
+     * Dropping the obstacle on (x, y) would put it on another obstacle or under the car
+     * at (robotX, robotY). Cells off the arena are never blocked, the obstacle just goes
+     * back to the tray.
+     */
+    public synchronized boolean isObstacleBlocked(int index, int x, int y, int robotX, int robotY) {
+        if (!inside(x, y)) {
+            return false;
+        }
+        if (Math.abs(x - robotX) <= 1 && Math.abs(y - robotY) <= 1) {
+            return true;
+        }
+        // The obstacle itself does not block the cell it is lifted from
+        int others = occupied[y * cols + x] - (x == seenX[index] && y == seenY[index] ? 1 : 0);
+        return others > 0;
+    }
+
+    private boolean inside(int x, int y) {
+        return x >= 0 && y >= 0 && x < cols && y < rows;
+    }
+}
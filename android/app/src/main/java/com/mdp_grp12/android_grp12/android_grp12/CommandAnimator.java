@@ -0,0 +1,143 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import android.animation.Animator;
+import android.animation.AnimatorListenerAdapter;
+import android.animation.AnimatorSet;
+import android.animation.ObjectAnimator;
+import android.animation.PropertyValuesHolder;
+import android.view.View;
+
+/*
+ * Plays the car's moves one after another on the main thread.
+ *
+ * Moves are queued with the pose they start from, worked out from ArenaState and
+ * MotionModel by the caller, so no target is ever derived from where the view happens to
+ * be mid-animation. Straight moves merge in MoveQueue, and once MoveQueue holds
+ * FAST_FORWARD_BACKLOG moves the oldest ones are jumped to their end pose until it
+ * catches up.
+ */
+public class CommandAnimator {
+    private static final long CELL_MS = 100;
+    private static final long TURN_MS = 500;
+    // Moves still waiting behind the current one before the car stops animating them
+    public static final int FAST_FORWARD_BACKLOG = 4;
+
+    private final View car;
+    private final ArenaGeometry geometry;
+    // Called on the main thread once the last queued move has been shown
+    private final Runnable onIdle;
+
+    private final MoveQueue queue = new MoveQueue(16);
+    private final MoveQueue.Move move = new MoveQueue.Move();
+    private AnimatorSet running;
+    // Rotation the car ends at after the moves played so far, kept here instead of read back
+    private float rotation;
+    private boolean fastForward = false;
+
+    public CommandAnimator(View car, ArenaGeometry geometry, Runnable onIdle) {
+        this.car = car;
+        this.geometry = geometry;
+        this.onIdle = onIdle;
+    }
+
+    /*
+     * Queues the move MotionModel computed from (startX, startY, startHeading)
+     */
+    public void enqueue(int startX, int startY, int startHeading, MotionModel.Step step) {
+        boolean idle = running == null;
+        if (idle) {
+            // The car is at rest, so its rotation is the last rendered one
+            rotation = car.getRotation();
+        }
+        queue.add(startX, startY, startHeading, step);
+        if (idle) {
+            playNext();
+        }
+    }
+
+    // True while the car view belongs to the animator rather than ArenaState
+    public boolean isAnimating() {
+        return running != null;
+    }
+
+    public int getBacklog() {
+        return queue.size();
+    }
+
+    /*
+     * Jump every move to its end instead of animating it, e.g. for replays
+     */
+    public void setFastForward(boolean fastForward) {
+        this.fastForward = fastForward;
+    }
+
+    /*
+     * Drops the queued moves and stops the current one where it is
+     */
+    public void cancel() {
+        queue.clear();
+        AnimatorSet stopped = running;
+        running = null;
+        if (stopped != null) {
+            stopped.cancel();
+            onIdle.run();
+        }
+    }
+
+    private void playNext() {
+        while (queue.poll(move)) {
+            rotation += move.quarterTurns * 90;
+            if (fastForward || queue.size() >= FAST_FORWARD_BACKLOG) {
+                car.setX(carPxX(move.endX));
+                car.setY(carPxY(move.endY));
+                car.setRotation(rotation);
+                continue;
+            }
+            running = animate(move);
+            running.start();
+            return;
+        }
+        running = null;
+        onIdle.run();
+    }
+
+    /*
+     * Straight leg, turn, sideways leg
+     */
+    private AnimatorSet animate(MoveQueue.Move move) {
+        ObjectAnimator straight = ObjectAnimator.ofPropertyValuesHolder(car,
+                PropertyValuesHolder.ofFloat("x", carPxX(move.cornerX)),
+                PropertyValuesHolder.ofFloat("y", carPxY(move.cornerY)));
+        straight.setDuration(move.straightCells * CELL_MS);
+
+        ObjectAnimator turn = ObjectAnimator.ofFloat(car, "rotation", rotation);
+        turn.setDuration(move.quarterTurns == 0 ? 0 : TURN_MS);
+
+        ObjectAnimator sideways = ObjectAnimator.ofPropertyValuesHolder(car,
+                PropertyValuesHolder.ofFloat("x", carPxX(move.endX)),
+                PropertyValuesHolder.ofFloat("y", carPxY(move.endY)));
+        sideways.setDuration(move.sidewaysCells * CELL_MS);
+
+        AnimatorSet animatorSet = new AnimatorSet();
+        animatorSet.playSequentially(straight, turn, sideways);
+        animatorSet.addListener(new AnimatorListenerAdapter() {
+            @Override
+            public void onAnimationEnd(Animator animation) {
+                // Cancelled sets end too, only the current one moves the queue on
+                if (animation == running) {
+                    playNext();
+                }
+            }
+        });
+        return animatorSet;
+    }
+
+    // Top left of the 3x3 car view for the pose (x, y), y inverted for the view
+    private int carPxX(int x) {
+        return geometry.cellToPx(x - 1);
+    }
+
+    private int carPxY(int y) {
+        return geometry.cellToPx(geometry.flipY(y) - 1);
+    }
+}
@@ -0,0 +1,278 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+/*
+ * Reassembles the raw RFCOMM byte stream into complete frames.
+ * A single read() can hold half a message or several glued together, so bytes are
+ * accumulated in one reusable buffer and only whole frames are handed to the listener.
+ *
+ * NEWLINE: frames end with '\n' (a trailing '\r' is stripped, empty lines are skipped).
+ *          Not every RPi message is terminated, so the reader calls flush() when the
+ *          next message starts or the stream goes quiet, and the unterminated rest is
+ *          delivered as a frame.
+ * LENGTH_PREFIXED: every frame starts with a 2-byte big-endian payload length
+ */
+public class FrameDecoder {
+    public enum Mode {
+        NEWLINE,
+        LENGTH_PREFIXED
+    }
+
+    public interface FrameListener {
+        /*
+         * The frame bytes are only valid for the duration of the call,
+         * the backing array is reused for the next frame.
+         */
+        void onFrame(byte[] frame, int offset, int length);
+    }
+
+    public static final int DEFAULT_MAX_FRAME_LENGTH = 4096;
+    private static final int LENGTH_HEADER_SIZE = 2;
+
+    private FrameListener listener;
+    private final int maxFrameLength;
+    private Mode mode;
+
+    private byte[] buffer;
+    private int count = 0;
+    // Position up to which the buffer has already been searched for a delimiter
+    private int scanned = 0;
+    // Set after an oversized line was dropped, the rest of it is skipped up to the next '\n'
+    private boolean skipping = false;
+    // Mode requested from inside a listener callback, applied right after that frame
+    private Mode switchTo = null;
+    private boolean draining = false;
+
+    private long framesDecoded = 0;
+    private long bytesDiscarded = 0;
+
+    public FrameDecoder(Mode mode, FrameListener listener) {
+        this(mode, listener, DEFAULT_MAX_FRAME_LENGTH);
+    }
+
+    public FrameDecoder(Mode mode, FrameListener listener, int maxFrameLength) {
+        this.mode = mode;
+        this.listener = listener;
+        this.maxFrameLength = maxFrameLength;
+        this.buffer = new byte[Math.min(1024, maxFrameLength + LENGTH_HEADER_SIZE)];
+    }
+
+    public void setListener(FrameListener listener) {
+        this.listener = listener;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /*
+     * Switching modes drops any partially received frame. When called from onFrame()
+     * (e.g. on a protocol negotiation reply) the bytes following that frame are kept
+     * and decoded in the new mode.
+     */
+    public void setMode(Mode mode) {
+        if (draining) {
+            switchTo = mode;
+        } else if (this.mode != mode) {
+            this.mode = mode;
+            reset();
+        }
+    }
+
+    public void reset() {
+        bytesDiscarded += count;
+        count = 0;
+        scanned = 0;
+        skipping = false;
+    }
+
+    public long getFramesDecoded() {
+        return framesDecoded;
+    }
+
+    public long getBytesDiscarded() {
+        return bytesDiscarded;
+    }
+
+    public int getPendingBytes() {
+        return count;
+    }
+
+    /*
+     * Feeds one chunk from the input stream. Every complete frame contained in the
+     * chunk (plus whatever was pending) is delivered before this returns.
+     */
+    public void feed(byte[] data, int offset, int length) {
+        while (length > 0) {
+            int n = Math.min(length, ensureSpace(length));
+            System.arraycopy(data, offset, buffer, count, n);
+            count += n;
+            offset += n;
+            length -= n;
+
+            draining = true;
+            try {
+                drain();
+            } finally {
+                draining = false;
+            }
+        }
+    }
+
+    /*
+     * NEWLINE: hands over the pending bytes as a frame although their '\n' has not come,
+     * the rest of an oversized line is dropped. Nothing to do in LENGTH_PREFIXED mode,
+     * where a partial frame always has more to come.
+     */
+    public void flush() {
+        if (mode != Mode.NEWLINE || count == 0) {
+            return;
+        }
+        draining = true;
+        try {
+            int end = count;
+            if (buffer[end - 1] == '\r') {
+                end--;
+            }
+            if (skipping) {
+                bytesDiscarded += count;
+                skipping = false;
+            } else if (end > 0) {
+                framesDecoded++;
+                listener.onFrame(buffer, 0, end);
+            }
+            if (!applySwitch(count)) {
+                count = 0;
+                scanned = 0;
+            }
+        } finally {
+            draining = false;
+        }
+    }
+
+    private void drain() {
+        if (mode == Mode.NEWLINE) {
+            drainNewline();
+        } else {
+            drainLengthPrefixed();
+        }
+    }
+
+    /*
+     * Applies a mode switch requested by the listener, returns true if the
+     * remaining bytes have been drained in the new mode
+     */
+    private boolean applySwitch(int consumed) {
+        if (switchTo == null) {
+            return false;
+        }
+        compact(consumed);
+        mode = switchTo;
+        switchTo = null;
+        scanned = 0;
+        skipping = false;
+        drain();
+        return true;
+    }
+
+    private void drainNewline() {
+        int start = 0;
+        for (int i = scanned; i < count; i++) {
+            if (buffer[i] != '\n') {
+                continue;
+            }
+            int end = i;
+            if (end > start && buffer[end - 1] == '\r') {
+                end--;
+            }
+            if (skipping) {
+                skipping = false;
+            } else if (end > start) {
+                framesDecoded++;
+                listener.onFrame(buffer, start, end - start);
+            }
+            start = i + 1;
+            if (applySwitch(start)) {
+                return;
+            }
+        }
+        compact(start);
+        scanned = count;
+
+        // A frame that never terminates would otherwise grow the buffer forever
+        if (count > maxFrameLength) {
+            bytesDiscarded += count;
+            count = 0;
+            scanned = 0;
+            skipping = true;
+        }
+    }
+
+    private void drainLengthPrefixed() {
+        int start = 0;
+        while (count - start >= LENGTH_HEADER_SIZE) {
+            int frameLength = ((buffer[start] & 0xFF) << 8) | (buffer[start + 1] & 0xFF);
+            if (frameLength > maxFrameLength) {
+                // Lost sync with the sender, nothing in the buffer can be trusted
+                bytesDiscarded += count;
+                count = 0;
+                scanned = 0;
+                return;
+            }
+            if (count - start - LENGTH_HEADER_SIZE < frameLength) {
+                break;
+            }
+            framesDecoded++;
+            listener.onFrame(buffer, start + LENGTH_HEADER_SIZE, frameLength);
+            start += LENGTH_HEADER_SIZE + frameLength;
+            if (applySwitch(start)) {
+                return;
+            }
+        }
+        compact(start);
+    }
+
+    /*
+     * Moves the unconsumed tail to the front of the buffer
+     */
+    private void compact(int consumed) {
+        if (consumed == 0) {
+            return;
+        }
+        count -= consumed;
+        if (count > 0) {
+            System.arraycopy(buffer, consumed, buffer, 0, count);
+        }
+    }
+
+    /*
+     * Returns how many bytes can be appended, growing the buffer up to the frame limit
+     */
+    private int ensureSpace(int wanted) {
+        int limit = maxFrameLength + LENGTH_HEADER_SIZE + 1;
+        if (buffer.length - count < wanted && buffer.length < limit) {
+            int newSize = Math.min(limit, Math.max(buffer.length * 2, count + wanted));
+            byte[] grown = new byte[newSize];
+            System.arraycopy(buffer, 0, grown, 0, count);
+            buffer = grown;
+        }
+        if (buffer.length == count) {
+            // Full buffer without a complete frame, only possible on a corrupt stream
+            bytesDiscarded += count;
+            count = 0;
+            scanned = 0;
+            skipping = mode == Mode.NEWLINE;
+        }
+        return buffer.length - count;
+    }
+
+    /*
+     * Helper for the sending side of LENGTH_PREFIXED mode
+     */
+    public static byte[] lengthPrefix(byte[] payload) {
+        byte[] framed = new byte[payload.length + LENGTH_HEADER_SIZE];
+        framed[0] = (byte) (payload.length >> 8);
+        framed[1] = (byte) payload.length;
+        System.arraycopy(payload, 0, framed, LENGTH_HEADER_SIZE, payload.length);
+        return framed;
+    }
+}
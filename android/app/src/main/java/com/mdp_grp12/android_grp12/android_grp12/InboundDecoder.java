@@ -0,0 +1,145 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+/*
+ * Bytes from the RPi to messages on the bus: framing, the switch to the binary protocol,
+ * decoding and metrics. Decoding happens on the feeding thread, straight from the frame
+ * buffer, and only complete frames are published.
+ *
+ * BluetoothService feeds one per connection, a session replay or a JVM test its own.
+ */
+public class InboundDecoder implements FrameDecoder.FrameListener {
+    /*
+     * What only the link the bytes came in on can act on
+     */
+    public interface LinkControl {
+        // The RPi accepted the binary protocol, it frames with a length prefix from now on
+        void onBinaryProtocol();
+
+        // ACK and PONG, answers to what this link sent
+        void onLinkControl(ProtocolMessage message);
+    }
+
+    private final MessageBus bus;
+    private final LinkMetrics metrics;
+    // Null to drop link control, e.g. for a replay
+    private final LinkControl control;
+    private final ProtocolCodec codec = new ProtocolCodec();
+    private final BinaryCodec binaryCodec = new BinaryCodec();
+    private final FrameDecoder decoder;
+    // Also read by BluetoothService.startRecording() on another thread
+    private volatile boolean binary;
+    private long discarded;
+
+    public InboundDecoder(MessageBus bus, LinkMetrics metrics, FrameDecoder.Mode mode, LinkControl control) {
+        this.bus = bus;
+        this.metrics = metrics;
+        this.control = control;
+        decoder = new FrameDecoder(mode, this);
+    }
+
+    public void feed(byte[] data, int offset, int length) {
+        metrics.onBytesRead(length);
+        // A new message right behind an unterminated one, don't glue the two together
+        if (hasPartialMessage() && ProtocolCodec.startsMessage(data, offset, length)) {
+            decoder.flush();
+        }
+        decoder.feed(data, offset, length);
+        if (decoder.getBytesDiscarded() != discarded) {
+            metrics.onBytesDiscarded(decoder.getBytesDiscarded() - discarded);
+            discarded = decoder.getBytesDiscarded();
+        }
+    }
+
+    /*
+     * Nothing more is waiting to be read, an unterminated message is not held back
+     */
+    public void onIdle() {
+        decoder.flush();
+    }
+
+    /*
+     * Carries on a link that switched to the binary protocol before this decoder, e.g. in
+     * a replay recorded after the switch
+     */
+    public void startBinary() {
+        binary = true;
+        decoder.setMode(FrameDecoder.Mode.LENGTH_PREFIXED);
+    }
+
+    // A NEWLINE message is waiting for its '\n', see onIdle()
+    public boolean hasPartialMessage() {
+        return decoder.getMode() == FrameDecoder.Mode.NEWLINE && decoder.getPendingBytes() > 0;
+    }
+
+    public boolean isBinary() {
+        return binary;
+    }
+
+    public FrameDecoder.Mode getMode() {
+        return binary ? FrameDecoder.Mode.LENGTH_PREFIXED : decoder.getMode();
+    }
+
+    @Override
+    public void onFrame(byte[] frame, int offset, int length) {
+        metrics.onFrameDecoded();
+        if (binary) {
+            if (BinaryCodec.isText(frame, offset, length)) {
+                // Same handling as on the ASCII link, including free text for the Message screen
+                onText(frame, offset + 1, length - 1 - BinaryCodec.CRC_SIZE);
+                return;
+            }
+            long crcFailures = binaryCodec.getCrcFailures();
+            ProtocolMessage decoded = binaryCodec.decode(frame, offset, length);
+            if (decoded == null) {
+                if (binaryCodec.getCrcFailures() != crcFailures) {
+                    metrics.onCrcFailure();
+                } else {
+                    metrics.onParseFailure();
+                }
+            } else {
+                dispatch(decoded);
+                if (bus.hasSubscribers(MessageBus.INCOMING_MESSAGE)) {
+                    bus.publish(MessageBus.INCOMING_MESSAGE, ProtocolCodec.toAscii(decoded));
+                }
+            }
+            return;
+        }
+
+        if (BinaryCodec.isNegotiationAck(frame, offset, length)) {
+            binary = true;
+            decoder.setMode(FrameDecoder.Mode.LENGTH_PREFIXED);
+            if (control != null) {
+                control.onBinaryProtocol();
+            }
+            return;
+        }
+        onText(frame, offset, length);
+    }
+
+    /*
+     * One ASCII message. Text that is not a protocol message is not a failure, it is shown
+     * on the Message screen like everything else.
+     */
+    private void onText(byte[] frame, int offset, int length) {
+        long parseFailures = codec.getParseFailures();
+        ProtocolMessage decoded = codec.decode(frame, offset, length);
+        if (decoded != null) {
+            dispatch(decoded);
+        } else if (codec.getParseFailures() != parseFailures) {
+            metrics.onParseFailure();
+        }
+        if (bus.hasSubscribers(MessageBus.INCOMING_MESSAGE)) {
+            bus.publish(MessageBus.INCOMING_MESSAGE, new String(frame, offset, length));
+        }
+    }
+
+    private void dispatch(ProtocolMessage decoded) {
+        if (decoded instanceof ProtocolMessage.Ack || decoded instanceof ProtocolMessage.Pong) {
+            if (control != null) {
+                control.onLinkControl(decoded);
+            }
+            return;
+        }
+        bus.publish(decoded);
+    }
+}
@@ -0,0 +1,465 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/*
+ * Saved arena layouts, one small binary file per layout in a private directory plus an
+ * index of names and save times, so listing hundreds of layouts reads one file.
+ *
+ * Every file is written to a temporary file, synced and renamed over the old one, so a
+ * crash leaves either the old or the new version, never half of one. Records and the
+ * index end with a CRC32; a bad index is rebuilt from the records, a bad record loads
+ * as null.
+ *
+ * All file access happens in order on one background thread. Saving takes the snapshot
+ * on the caller's thread and returns straight away.
+ */
+public class LayoutStore {
+    private static final int RECORD_MAGIC = 0x4C59524F; // "LYRO"
+    private static final int INDEX_MAGIC = 0x4C59494E; // "LYIN"
+    private static final int VERSION = 1;
+    private static final String INDEX_FILE = "index.bin";
+    private static final String RECORD_PREFIX = "layout-";
+    private static final String RECORD_SUFFIX = ".bin";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // Cell size the app used before the arena was scaled to the screen
+    private static final float PREFERENCES_CELL_PX = 35f;
+
+    /*
+     * Index entry, what is listed without opening the layout itself
+     */
+    public static final class Entry {
+        public final String name;
+        // System.currentTimeMillis() of the last save
+        public final long savedAt;
+        final int id;
+
+        Entry(String name, long savedAt, int id) {
+            this.name = name;
+            this.savedAt = savedAt;
+            this.id = id;
+        }
+    }
+
+    /*
+     * One saved arena: the car pose and the obstacles as ArenaState.encodeObstacles() has them
+     */
+    public static final class Layout {
+        public final String name;
+        public final long savedAt;
+        public final int cols;
+        public final int rows;
+        public final int robotX;
+        public final int robotY;
+        public final int robotDirection;
+        public final String obstacles;
+
+        public Layout(String name, long savedAt, int cols, int rows, int robotX, int robotY,
+                      int robotDirection, String obstacles) {
+            this.name = name;
+            this.savedAt = savedAt;
+            this.cols = cols;
+            this.rows = rows;
+            this.robotX = robotX;
+            this.robotY = robotY;
+            this.robotDirection = robotDirection;
+            this.obstacles = obstacles;
+        }
+
+        public static Layout of(String name, ArenaState state, long savedAt) {
+            return new Layout(name, savedAt, state.getCols(), state.getRows(), state.getRobotX(),
+                    state.getRobotY(), state.getRobotDirection(), state.encodeObstacles());
+        }
+
+        /*
+         * A preset as SharedPreferences kept it before LayoutStore: <prefix>obs<N>X and Y are
+         * the obstacle view's position in 35px cells from the top left of the arena,
+         * <prefix>obs<N>Rotation its rotation in degrees. The car was not part of a preset.
+         * Null if there is no such preset.
+         */
+        public static Layout fromPreferences(String name, long savedAt, int cols, int rows, int obstacleCount,
+                                             Map<String, ?> preferences, String prefix) {
+            if (!(preferences.get(prefix + "obs1X") instanceof Float)) {
+                return null;
+            }
+            ArenaState state = new ArenaState(cols, rows, obstacleCount);
+            for (int index = 0; index < obstacleCount; index++) {
+                String key = prefix + "obs" + (index + 1);
+                Object x = preferences.get(key + "X");
+                Object y = preferences.get(key + "Y");
+                Object rotation = preferences.get(key + "Rotation");
+                if (!(x instanceof Float) || !(y instanceof Float)) {
+                    continue;
+                }
+                // Obstacles left in the tray land outside the arena and stay off it
+                int cellX = (int) Math.floor((Float) x / PREFERENCES_CELL_PX + 0.5f);
+                int cellY = (int) Math.floor((Float) y / PREFERENCES_CELL_PX + 0.5f);
+                state.placeObstacle(index, cellX, rows - 1 - cellY);
+                if (rotation instanceof Float) {
+                    state.setObstacleFace(index, Math.round((Float) rotation / 90f));
+                }
+            }
+            return of(name, state, savedAt);
+        }
+
+        /*
+         * Puts the obstacles and car back. Returns false, changing nothing, if the obstacles
+         * do not decode.
+         */
+        public boolean applyTo(ArenaState state) {
+            if (!state.decodeObstacles(obstacles)) {
+                return false;
+            }
+            state.applyPose(robotX, robotY, robotDirection);
+            return true;
+        }
+    }
+
+    public interface LoadCallback {
+        // Called on the store's thread, layout is null if missing or unreadable
+        void onLoaded(Layout layout);
+    }
+
+    /*
+     * Layouts kept somewhere else by an older version of the app, see migrateOnce()
+     */
+    public interface Migration {
+        // Called on the store's thread
+        List<Layout> layouts();
+
+        // Called on the store's thread once every layout is on disk, the old copies can go
+        void onMigrated();
+    }
+
+    private final File directory;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "LayoutStore"));
+
+    // Guarded by this, read from any thread, written on the store's thread
+    private final TreeMap<String, Entry> index = new TreeMap<>();
+    private int nextId = 1;
+
+    public LayoutStore(File directory) {
+        this.directory = directory;
+        executor.execute(this::openIndex);
+    }
+
+    /*
+     * ======================
+     * Public API
+     * ======================
+     */
+
+    public Future<?> save(Layout layout) {
+        return executor.submit(() -> {
+            writeRecord(layout);
+            return null;
+        });
+    }
+
+    public void load(String name, LoadCallback callback) {
+        executor.execute(() -> callback.onLoaded(readLayout(name)));
+    }
+
+    public Future<Boolean> delete(String name) {
+        return executor.submit(() -> {
+            Entry removed;
+            synchronized (this) {
+                removed = index.remove(name);
+            }
+            if (removed == null) {
+                return false;
+            }
+            writeIndex();
+            return recordFile(removed.id).delete();
+        });
+    }
+
+    public synchronized boolean contains(String name) {
+        return index.containsKey(name);
+    }
+
+    /*
+     * Index snapshots. Entries saved but not yet written show up once the write is done.
+     */
+    public synchronized List<Entry> byName() {
+        return new ArrayList<>(index.values());
+    }
+
+    // Newest first
+    public List<Entry> byTime() {
+        List<Entry> entries = byName();
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Long.compare(b.savedAt, a.savedAt);
+            }
+        });
+        return entries;
+    }
+
+    /*
+     * Imports the migration's layouts unless a layout of that name exists already. The
+     * marker file records that it is done, so the old storage is only ever read until it
+     * has been imported. A failed write keeps the old storage, to try again next time.
+     */
+    public void migrateOnce(String marker, Migration migration) {
+        executor.execute(() -> {
+            File done = new File(directory, marker);
+            if (done.exists()) {
+                return;
+            }
+            try {
+                for (Layout layout : migration.layouts()) {
+                    if (!contains(layout.name)) {
+                        writeRecord(layout);
+                    }
+                }
+                migration.onMigrated();
+                done.createNewFile();
+            } catch (IOException e) {
+                // Tried again next time
+            }
+        });
+    }
+
+    /*
+     * Waits for everything queued so far to be on disk
+     */
+    public void flush() throws InterruptedException {
+        try {
+            executor.submit(() -> null).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /*
+     * Finishes the queued writes in the background and takes no more
+     */
+    public void close() {
+        executor.shutdown();
+    }
+
+    /*
+     * ======================
+     * Records
+     * ======================
+     */
+
+    private void writeRecord(Layout layout) throws IOException {
+        int id;
+        synchronized (this) {
+            Entry existing = index.get(layout.name);
+            id = existing != null ? existing.id : nextId++;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + layout.obstacles.length());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(RECORD_MAGIC);
+        out.writeByte(VERSION);
+        out.writeUTF(layout.name);
+        out.writeLong(layout.savedAt);
+        out.writeShort(layout.cols);
+        out.writeShort(layout.rows);
+        out.writeShort(layout.robotX);
+        out.writeShort(layout.robotY);
+        out.writeByte(layout.robotDirection);
+        out.writeUTF(layout.obstacles);
+        writeAtomically(recordFile(id), bytes);
+
+        synchronized (this) {
+            index.put(layout.name, new Entry(layout.name, layout.savedAt, id));
+        }
+        writeIndex();
+    }
+
+    private Layout readLayout(String name) {
+        Entry entry;
+        synchronized (this) {
+            entry = index.get(name);
+        }
+        if (entry == null) {
+            return null;
+        }
+        try {
+            DataInputStream in = readVerified(recordFile(entry.id), RECORD_MAGIC);
+            return in == null ? null : readRecord(in);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Layout readRecord(DataInputStream in) throws IOException {
+        String name = in.readUTF();
+        long savedAt = in.readLong();
+        int cols = in.readShort();
+        int rows = in.readShort();
+        int robotX = in.readShort();
+        int robotY = in.readShort();
+        int robotDirection = in.readByte();
+        String obstacles = in.readUTF();
+        return new Layout(name, savedAt, cols, rows, robotX, robotY, robotDirection, obstacles);
+    }
+
+    private File recordFile(int id) {
+        return new File(directory, RECORD_PREFIX + id + RECORD_SUFFIX);
+    }
+
+    /*
+     * ======================
+     * Index
+     * ======================
+     */
+
+    private void openIndex() {
+        directory.mkdirs();
+        try {
+            DataInputStream in = readVerified(new File(directory, INDEX_FILE), INDEX_MAGIC);
+            if (in != null) {
+                int count = in.readInt();
+                synchronized (this) {
+                    for (int i = 0; i < count; i++) {
+                        Entry entry = new Entry(in.readUTF(), in.readLong(), in.readInt());
+                        index.put(entry.name, entry);
+                        nextId = Math.max(nextId, entry.id + 1);
+                    }
+                }
+                return;
+            }
+        } catch (IOException e) {
+            // Rebuilt below
+        }
+        rebuildIndex();
+    }
+
+    /*
+     * Reads every record for its name and time, after a crash during the first index write
+     * or if the index was lost
+     */
+    private void rebuildIndex() {
+        File[] files = directory.listFiles();
+        synchronized (this) {
+            index.clear();
+            if (files != null) {
+                for (File file : files) {
+                    String fileName = file.getName();
+                    if (!fileName.startsWith(RECORD_PREFIX) || !fileName.endsWith(RECORD_SUFFIX)) {
+                        continue;
+                    }
+                    try {
+                        int id = Integer.parseInt(fileName.substring(RECORD_PREFIX.length(),
+                                fileName.length() - RECORD_SUFFIX.length()));
+                        DataInputStream in = readVerified(file, RECORD_MAGIC);
+                        if (in == null) {
+                            continue;
+                        }
+                        Layout layout = readRecord(in);
+                        Entry existing = index.get(layout.name);
+                        if (existing == null || existing.savedAt < layout.savedAt) {
+                            index.put(layout.name, new Entry(layout.name, layout.savedAt, id));
+                        }
+                        nextId = Math.max(nextId, id + 1);
+                    } catch (NumberFormatException | IOException e) {
+                        // Not a record we can use, left alone
+                    }
+                }
+            }
+        }
+        try {
+            writeIndex();
+        } catch (IOException e) {
+            // Rebuilt again next time
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(INDEX_MAGIC);
+        out.writeByte(VERSION);
+        synchronized (this) {
+            out.writeInt(index.size());
+            for (Entry entry : index.values()) {
+                out.writeUTF(entry.name);
+                out.writeLong(entry.savedAt);
+                out.writeInt(entry.id);
+            }
+        }
+        writeAtomically(new File(directory, INDEX_FILE), bytes);
+    }
+
+    /*
+     * ======================
+     * Files
+     * ======================
+     */
+
+    /*
+     * Appends the CRC32 of the content, then temporary file, fsync and rename.
+     * Also used by StateCheckpointer for its snapshot.
+     */
+    static void writeAtomically(File file, ByteArrayOutputStream content) throws IOException {
+        CRC32 crc = new CRC32();
+        byte[] body = content.toByteArray();
+        crc.update(body, 0, body.length);
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(body);
+            DataOutputStream trailer = new DataOutputStream(out);
+            trailer.writeInt((int) crc.getValue());
+            trailer.flush();
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not replace " + file);
+        }
+    }
+
+    /*
+     * Stream positioned after the magic and version, null if the file is missing,
+     * truncated, corrupt or from another format version
+     */
+    static DataInputStream readVerified(File file, int magic) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        byte[] data = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(data);
+        }
+        if (data.length < 9) {
+            return null;
+        }
+        int bodyLength = data.length - 4;
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, bodyLength);
+        int stored = ((data[bodyLength] & 0xFF) << 24) | ((data[bodyLength + 1] & 0xFF) << 16)
+                | ((data[bodyLength + 2] & 0xFF) << 8) | (data[bodyLength + 3] & 0xFF);
+        if (stored != (int) crc.getValue()) {
+            return null;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, bodyLength));
+        if (in.readInt() != magic || in.readByte() != VERSION) {
+            return null;
+        }
+        return in;
+    }
+}
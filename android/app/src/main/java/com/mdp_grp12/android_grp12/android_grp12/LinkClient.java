@@ -0,0 +1,72 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.IBinder;
+
+/*
+ * Binding to BluetoothLinkService for an activity. Bind in onStart, unbind in onStop;
+ * until the binding completes the link calls simply report "not connected".
+ */
+public class LinkClient implements ServiceConnection {
+    private final Context context;
+    private BluetoothLinkService service;
+    private boolean bound = false;
+
+    public LinkClient(Context context) {
+        this.context = context;
+    }
+
+    public void bind() {
+        if (!bound) {
+            Intent intent = new Intent(context, BluetoothLinkService.class);
+            bound = context.bindService(intent, this, Context.BIND_AUTO_CREATE);
+        }
+    }
+
+    public void unbind() {
+        if (bound) {
+            context.unbindService(this);
+            bound = false;
+            service = null;
+        }
+    }
+
+    @Override
+    public void onServiceConnected(ComponentName name, IBinder binder) {
+        service = ((BluetoothLinkService.LocalBinder) binder).getService();
+    }
+
+    @Override
+    public void onServiceDisconnected(ComponentName name) {
+        service = null;
+    }
+
+    // null until bound
+    public BluetoothLinkService getService() {
+        return service;
+    }
+
+    public boolean isConnected() {
+        return service != null && service.isConnected();
+    }
+
+    public boolean write(byte[] bytes) {
+        return service != null && service.write(bytes);
+    }
+
+    public BluetoothService.LinkState getLinkState() {
+        return service == null ? BluetoothService.LinkState.IDLE : service.getLinkState();
+    }
+
+    // null until bound
+    public LinkMetrics getMetrics() {
+        return service == null ? null : service.getMetrics();
+    }
+
+    public int getQueueDepth() {
+        return service == null ? 0 : service.getQueueDepth();
+    }
+}
@@ -0,0 +1,281 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Link-quality counters for the RFCOMM link. Each counter has a single writer (the reader
+ * thread for inbound, the writer thread for outbound), so updates are plain volatile
+ * stores and never allocate. Readers such as the Arena overlay may see slightly stale
+ * values, which is fine for a once-a-second display.
+ */
+public class LinkMetrics {
+    // Bucket i counts write latencies in [2^i, 2^(i+1)) microseconds, the last one is open ended
+    public static final int LATENCY_BUCKETS = 20;
+    // Outstanding pings are matched by id modulo this
+    private static final int PING_SLOTS = 16;
+
+    // Inbound, reader thread
+    private volatile long bytesIn = 0;
+    private volatile long framesDecoded = 0;
+    private volatile long parseFailures = 0;
+    private volatile long crcFailures = 0;
+    private volatile long bytesDiscarded = 0;
+
+    // Outbound, writer thread
+    private volatile long bytesOut = 0;
+    private volatile long socketFlushes = 0;
+    private volatile long messagesWritten = 0;
+    private volatile long lastWriteLatencyNanos = 0;
+    private volatile long maxWriteLatencyNanos = 0;
+    private volatile long totalWriteLatencyNanos = 0;
+    private final AtomicLongArray writeLatencyHistogram = new AtomicLongArray(LATENCY_BUCKETS);
+
+    // PING/PONG round trips
+    private final long[] pingSentNanos = new long[PING_SLOTS];
+    private final int[] pingIds = new int[PING_SLOTS];
+    private int nextPingId = 1;
+    private volatile long pingsSent = 0;
+    private volatile long pongsReceived = 0;
+    private volatile long lastRttNanos = -1;
+    private volatile long minRttNanos = Long.MAX_VALUE;
+    private volatile long maxRttNanos = 0;
+    private volatile long totalRttNanos = 0;
+
+    // Rate sampling, only touched by the thread calling sample()
+    private long sampleNanos = 0;
+    private long sampleBytesIn = 0;
+    private long sampleBytesOut = 0;
+    private volatile double bytesInPerSecond = 0;
+    private volatile double bytesOutPerSecond = 0;
+
+    /*
+     * ======================
+     * Recording
+     * ======================
+     */
+
+    public void onBytesRead(int bytes) {
+        bytesIn += bytes;
+    }
+
+    public void onFrameDecoded() {
+        framesDecoded++;
+    }
+
+    public void onParseFailure() {
+        parseFailures++;
+    }
+
+    public void onCrcFailure() {
+        crcFailures++;
+    }
+
+    public void onBytesDiscarded(long bytes) {
+        bytesDiscarded += bytes;
+    }
+
+    public void onFlush(int messages, long bytes, long latencyNanos) {
+        socketFlushes++;
+        messagesWritten += messages;
+        bytesOut += bytes;
+        lastWriteLatencyNanos = latencyNanos;
+        totalWriteLatencyNanos += latencyNanos;
+        if (latencyNanos > maxWriteLatencyNanos) {
+            maxWriteLatencyNanos = latencyNanos;
+        }
+        writeLatencyHistogram.incrementAndGet(latencyBucket(latencyNanos));
+    }
+
+    /*
+     * Reserves an id for an outgoing PING and remembers when it was sent
+     */
+    public synchronized int onPingSent(long nowNanos) {
+        int id = nextPingId++;
+        int slot = id & (PING_SLOTS - 1);
+        pingIds[slot] = id;
+        pingSentNanos[slot] = nowNanos;
+        pingsSent++;
+        return id;
+    }
+
+    /*
+     * Matches a PONG to its PING. Returns the round trip, or -1 if the id is unknown
+     * or so old its slot has been reused.
+     */
+    public synchronized long onPong(int id, long nowNanos) {
+        int slot = id & (PING_SLOTS - 1);
+        if (pingIds[slot] != id) {
+            return -1;
+        }
+        pingIds[slot] = 0;
+        long rtt = nowNanos - pingSentNanos[slot];
+        pongsReceived++;
+        lastRttNanos = rtt;
+        totalRttNanos += rtt;
+        if (rtt < minRttNanos) {
+            minRttNanos = rtt;
+        }
+        if (rtt > maxRttNanos) {
+            maxRttNanos = rtt;
+        }
+        return rtt;
+    }
+
+    /*
+     * Updates the per-second rates from the byte counters. Call periodically from one thread.
+     */
+    public void sample(long nowNanos) {
+        long in = bytesIn;
+        long out = bytesOut;
+        if (sampleNanos != 0 && nowNanos > sampleNanos) {
+            double seconds = (nowNanos - sampleNanos) / 1e9;
+            bytesInPerSecond = (in - sampleBytesIn) / seconds;
+            bytesOutPerSecond = (out - sampleBytesOut) / seconds;
+        }
+        sampleNanos = nowNanos;
+        sampleBytesIn = in;
+        sampleBytesOut = out;
+    }
+
+    static int latencyBucket(long latencyNanos) {
+        long micros = latencyNanos / 1000;
+        if (micros <= 0) {
+            return 0;
+        }
+        int bucket = 63 - Long.numberOfLeadingZeros(micros);
+        return Math.min(bucket, LATENCY_BUCKETS - 1);
+    }
+
+    /*
+     * ======================
+     * Queries
+     * ======================
+     */
+
+    public long getBytesIn() {
+        return bytesIn;
+    }
+
+    public long getBytesOut() {
+        return bytesOut;
+    }
+
+    public double getBytesInPerSecond() {
+        return bytesInPerSecond;
+    }
+
+    public double getBytesOutPerSecond() {
+        return bytesOutPerSecond;
+    }
+
+    public long getFramesDecoded() {
+        return framesDecoded;
+    }
+
+    public long getParseFailures() {
+        return parseFailures;
+    }
+
+    public long getCrcFailures() {
+        return crcFailures;
+    }
+
+    public long getBytesDiscarded() {
+        return bytesDiscarded;
+    }
+
+    public long getSocketFlushes() {
+        return socketFlushes;
+    }
+
+    public long getMessagesWritten() {
+        return messagesWritten;
+    }
+
+    public long getLastWriteLatencyNanos() {
+        return lastWriteLatencyNanos;
+    }
+
+    public long getMaxWriteLatencyNanos() {
+        return maxWriteLatencyNanos;
+    }
+
+    public long getAverageWriteLatencyNanos() {
+        long flushes = socketFlushes;
+        return flushes == 0 ? 0 : totalWriteLatencyNanos / flushes;
+    }
+
+    public long getWriteLatencyCount(int bucket) {
+        return writeLatencyHistogram.get(bucket);
+    }
+
+    /*
+     * Upper bound in microseconds of the bucket holding the given percentile (0-100),
+     * 0 if nothing has been written yet
+     */
+    public long getWriteLatencyPercentileMicros(double percentile) {
+        long total = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            total += writeLatencyHistogram.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            seen += writeLatencyHistogram.get(i);
+            if (seen >= rank) {
+                return 1L << (i + 1);
+            }
+        }
+        return 1L << LATENCY_BUCKETS;
+    }
+
+    public long getPingsSent() {
+        return pingsSent;
+    }
+
+    public long getPongsReceived() {
+        return pongsReceived;
+    }
+
+    // -1 until the first PONG
+    public long getLastRttNanos() {
+        return lastRttNanos;
+    }
+
+    public long getMinRttNanos() {
+        return pongsReceived == 0 ? -1 : minRttNanos;
+    }
+
+    public long getMaxRttNanos() {
+        return maxRttNanos;
+    }
+
+    public long getAverageRttNanos() {
+        long pongs = pongsReceived;
+        return pongs == 0 ? -1 : totalRttNanos / pongs;
+    }
+
+    /*
+     * Two-line summary for the Arena overlay
+     */
+    public void appendSummary(StringBuilder sb) {
+        long rtt = lastRttNanos;
+        sb.append("RTT ");
+        if (rtt < 0) {
+            sb.append('-');
+        } else {
+            sb.append(rtt / 1_000_000).append("ms");
+        }
+        sb.append("  in ").append((long) bytesInPerSecond).append("B/s")
+                .append("  out ").append((long) bytesOutPerSecond).append("B/s")
+                .append('\n')
+                .append("frames ").append(framesDecoded)
+                .append("  err ").append(parseFailures + crcFailures)
+                .append("  lost ").append(bytesDiscarded).append('B')
+                .append("  write p50 ").append(getWriteLatencyPercentileMicros(50)).append("us")
+                .append(" p99 ").append(getWriteLatencyPercentileMicros(99)).append("us");
+    }
+}
@@ -0,0 +1,82 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/*
+ * The read side of one connection: whatever the transport delivers goes to an
+ * InboundDecoder, and into the session being recorded if there is one. Plain Java, so
+ * BluetoothService and the JVM tests over LoopbackTransport run the same loop.
+ */
+public class LinkReader {
+    private static final int BUFFER_SIZE = 1024;
+    // How long an unterminated message waits for more bytes before it is taken as whole.
+    // Only the last of a burst waits, InboundDecoder ends one as soon as the next starts.
+    // Catching up with the sender mid-message must not cut it in two.
+    private static final long QUIET_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long QUIET_POLL_MS = 2;
+
+    private final InputStream in;
+    private final InboundDecoder inbound;
+    // Asked on every read, recordings start and stop while the link is up
+    private final Supplier<SessionRecorder> recorder;
+
+    public LinkReader(InputStream in, InboundDecoder inbound, Supplier<SessionRecorder> recorder) {
+        this.in = in;
+        this.inbound = inbound;
+        this.recorder = recorder;
+    }
+
+    /*
+     * Reads until the stream ends or fails, both end in an IOException
+     */
+    public void run() throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+
+        // A recording that outlives the last connection is told this one decodes afresh
+        SessionRecorder running = recorder.get();
+        if (running != null) {
+            running.recordMode(inbound.getMode(), inbound.isBinary());
+        }
+        while (true) {
+            int bytes = in.read(buffer);
+            if (bytes < 0) {
+                throw new IOException("Input stream closed");
+            }
+            SessionRecorder sessionRecorder = recorder.get();
+            if (sessionRecorder != null) {
+                sessionRecorder.recordInbound(buffer, 0, bytes);
+            }
+            inbound.feed(buffer, 0, bytes);
+            // The RPi does not end every message with '\n', see FrameDecoder.flush()
+            if (inbound.hasPartialMessage() && staysQuiet()) {
+                if (sessionRecorder != null) {
+                    sessionRecorder.recordIdle();
+                }
+                inbound.onIdle();
+            }
+        }
+    }
+
+    /*
+     * True if nothing arrives for QUIET_NANOS
+     */
+    private boolean staysQuiet() throws IOException {
+        long deadline = System.nanoTime() + QUIET_NANOS;
+        do {
+            if (in.available() > 0) {
+                return false;
+            }
+            try {
+                Thread.sleep(QUIET_POLL_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        } while (System.nanoTime() < deadline);
+        return in.available() == 0;
+    }
+}
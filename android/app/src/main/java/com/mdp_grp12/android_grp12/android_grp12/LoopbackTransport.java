@@ -0,0 +1,179 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+
+/*
+ * In-memory transport, the two ends from pair() are connected back to back through a
+ * bounded buffer each way. Writes block while the other end is not reading, like a
+ * socket, and closing either end ends the stream for both. A write that fits in the
+ * buffer is never read in pieces.
+ */
+public class LoopbackTransport implements Transport {
+    public static final int DEFAULT_BUFFER = 16 * 1024;
+
+    private final String name;
+    private final Pipe in;
+    private final Pipe out;
+    private final InputStream inStream;
+    private final OutputStream outStream;
+
+    private LoopbackTransport(String name, Pipe in, Pipe out) {
+        this.name = name;
+        this.in = in;
+        this.out = out;
+        inStream = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return LoopbackTransport.this.in.read(b, off, len);
+            }
+
+            @Override
+            public int available() {
+                return LoopbackTransport.this.in.available();
+            }
+        };
+        outStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                LoopbackTransport.this.out.write(b, off, len);
+            }
+        };
+    }
+
+    /*
+     * {tablet end, RPi end}
+     */
+    public static LoopbackTransport[] pair() {
+        return pair(DEFAULT_BUFFER);
+    }
+
+    public static LoopbackTransport[] pair(int bufferSize) {
+        Pipe toRpi = new Pipe(bufferSize);
+        Pipe toTablet = new Pipe(bufferSize);
+        return new LoopbackTransport[]{
+                new LoopbackTransport("loopback-tablet", toTablet, toRpi),
+                new LoopbackTransport("loopback-rpi", toRpi, toTablet)
+        };
+    }
+
+    @Override
+    public void connect() throws IOException {
+        if (in.isClosed()) {
+            throw new IOException("Loopback closed");
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return inStream;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return outStream;
+    }
+
+    @Override
+    public String describe() {
+        return name;
+    }
+
+    @Override
+    public void close() {
+        in.close();
+        out.close();
+    }
+
+    /*
+     * Ring buffer for one direction
+     */
+    private static final class Pipe {
+        private final byte[] ring;
+        private int head;
+        private int count;
+        private boolean closed;
+
+        Pipe(int size) {
+            ring = new byte[size];
+        }
+
+        synchronized int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            try {
+                while (count == 0 && !closed) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            if (count == 0) {
+                return -1;
+            }
+            int n = Math.min(len, count);
+            int first = Math.min(n, ring.length - head);
+            System.arraycopy(ring, head, b, off, first);
+            System.arraycopy(ring, 0, b, off + first, n - first);
+            head = (head + n) % ring.length;
+            count -= n;
+            notifyAll();
+            return n;
+        }
+
+        synchronized void write(byte[] b, int off, int len) throws IOException {
+            // What fits goes in whole, larger writes as space frees up
+            int atOnce = len <= ring.length ? len : 1;
+            while (len > 0) {
+                try {
+                    while (ring.length - count < Math.min(atOnce, len) && !closed) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+                if (closed) {
+                    throw new IOException("Loopback closed");
+                }
+                int n = Math.min(len, ring.length - count);
+                int tail = (head + count) % ring.length;
+                int first = Math.min(n, ring.length - tail);
+                System.arraycopy(b, off, ring, tail, first);
+                System.arraycopy(b, off + first, ring, 0, n - first);
+                count += n;
+                off += n;
+                len -= n;
+                notifyAll();
+            }
+        }
+
+        synchronized int available() {
+            return count;
+        }
+
+        synchronized boolean isClosed() {
+            return closed;
+        }
+
+        synchronized void close() {
+            closed = true;
+            notifyAll();
+        }
+    }
+}
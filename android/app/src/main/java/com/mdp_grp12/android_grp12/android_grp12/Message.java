@@ -1,8 +1,5 @@
 package com.mdp_grp12.android_grp12.android_grp12;
 
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
 import android.content.IntentFilter;
 import android.os.Bundle;
 import android.util.Log;
@@ -13,7 +10,6 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
 import com.mdp_grp12.android_grp12.R;
 
@@ -22,10 +18,10 @@ import java.nio.charset.Charset;
 public class Message extends AppCompatActivity {
     private static final String TAG = "Message Portal->DEBUG";
     TextView showReceived;
-    BroadcastReceiver messageReceiver = new BroadcastReceiver() {
+    LinkClient link = new LinkClient(this);
+    MessageBus.Listener<String> messageReceiver = new MessageBus.Listener<String>() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            String message = intent.getStringExtra("receivedMessage");
+        public void onMessage(String message) {
             String old = showReceived.getText().toString();
             showReceived.setText(old + "\n[ROBOT]:  " + message);
         }
@@ -38,7 +34,7 @@ public class Message extends AppCompatActivity {
         Log.d(TAG, "I'm created!");
 
         Button sendButton = (Button) this.findViewById(R.id.send_message_btn);
-        LocalBroadcastManager.getInstance(this).registerReceiver(messageReceiver, new IntentFilter("incomingMessage"));
+        MessageBus.getDefault().subscribe(MessageBus.INCOMING_MESSAGE, MessageBus.Delivery.MAIN, messageReceiver);
 
         sendButton.setOnClickListener(new View.OnClickListener() {
             public void onClick(View v) {
@@ -46,9 +42,9 @@ public class Message extends AppCompatActivity {
                 String message = msgToSend.getText().toString();
                 Log.d(TAG, message);
 
-                if (BluetoothService.BluetoothConnectionStatus) {
+                if (link.isConnected()) {
                     byte[] bytes = message.getBytes(Charset.defaultCharset());
-                    BluetoothService.write(bytes);
+                    link.write(bytes);
                     String old = showReceived.getText().toString();
                     showReceived.setText(old + "\n[TABLET]:  " + message);
                 } else {
@@ -60,14 +56,22 @@ public class Message extends AppCompatActivity {
     }
 
 
+    @Override
+    protected void onStart() {
+        super.onStart();
+        link.bind();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        link.unbind();
+    }
+
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        try {
-            LocalBroadcastManager.getInstance(this).unregisterReceiver(messageReceiver);
-        } catch (IllegalArgumentException e) {
-            e.printStackTrace();
-        }
+        MessageBus.getDefault().unsubscribe(MessageBus.INCOMING_MESSAGE, messageReceiver);
     }
 
     @Override
@@ -0,0 +1,162 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * In-process replacement for the LocalBroadcastManager fan-out of incoming messages.
+ * Publishers hand over the message object itself, no Intent or extras are built,
+ * and every subscriber picks the thread it wants to be called on.
+ */
+public class MessageBus {
+    public enum Delivery {
+        // Posted to the main looper, for listeners that touch views
+        MAIN,
+        // Run on the shared bus worker thread, in publish order
+        BACKGROUND,
+        // Called directly on the publishing thread, e.g. the Bluetooth reader
+        POSTING
+    }
+
+    public interface Listener<T> {
+        void onMessage(T message);
+    }
+
+    public static final class Topic<T> {
+        private final String name;
+
+        public Topic(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    // Raw text frames from the RPi, same payload the "incomingMessage" broadcast used to carry
+    public static final Topic<String> INCOMING_MESSAGE = new Topic<>("incomingMessage");
+
+    // Decoded messages, see ProtocolCodec
+    public static final Topic<ProtocolMessage.RobotPose> ROBOT_POSE = new Topic<>("robotPose");
+    public static final Topic<ProtocolMessage.TargetUpdate> TARGET_UPDATE = new Topic<>("targetUpdate");
+    public static final Topic<ProtocolMessage.StatusUpdate> STATUS_UPDATE = new Topic<>("statusUpdate");
+    public static final Topic<ProtocolMessage.ObstaclePlot> OBSTACLE_PLOT = new Topic<>("obstaclePlot");
+    public static final Topic<ProtocolMessage.MoveCommand> MOVE_COMMAND = new Topic<>("moveCommand");
+
+    // Connection supervisor state changes, see BluetoothService.LinkState
+    public static final Topic<BluetoothService.LinkState> LINK_STATE = new Topic<>("linkState");
+
+    private static MessageBus defaultBus;
+
+    private final Executor mainExecutor;
+    private final Executor backgroundExecutor;
+    private final ConcurrentHashMap<Topic<?>, CopyOnWriteArrayList<Subscription<?>>> subscriptions =
+            new ConcurrentHashMap<>();
+
+    private static final class Subscription<T> {
+        final Listener<T> listener;
+        final Delivery delivery;
+
+        Subscription(Listener<T> listener, Delivery delivery) {
+            this.listener = listener;
+            this.delivery = delivery;
+        }
+    }
+
+    public MessageBus(Executor mainExecutor, Executor backgroundExecutor) {
+        this.mainExecutor = mainExecutor;
+        this.backgroundExecutor = backgroundExecutor;
+    }
+
+    public static synchronized MessageBus getDefault() {
+        if (defaultBus == null) {
+            Handler mainHandler = new Handler(Looper.getMainLooper());
+            ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "MessageBus");
+                t.setDaemon(true);
+                return t;
+            });
+            defaultBus = new MessageBus(mainHandler::post, worker);
+        }
+        return defaultBus;
+    }
+
+    public <T> void subscribe(Topic<T> topic, Delivery delivery, Listener<T> listener) {
+        List<Subscription<?>> list = subscriptions.get(topic);
+        if (list == null) {
+            subscriptions.putIfAbsent(topic, new CopyOnWriteArrayList<>());
+            list = subscriptions.get(topic);
+        }
+        list.add(new Subscription<>(listener, delivery));
+    }
+
+    public <T> void unsubscribe(Topic<T> topic, Listener<T> listener) {
+        List<Subscription<?>> list = subscriptions.get(topic);
+        if (list == null) {
+            return;
+        }
+        for (Subscription<?> subscription : list) {
+            if (subscription.listener == listener) {
+                list.remove(subscription);
+            }
+        }
+    }
+
+    public boolean hasSubscribers(Topic<?> topic) {
+        List<Subscription<?>> list = subscriptions.get(topic);
+        return list != null && !list.isEmpty();
+    }
+
+    /*
+     * Publishes a decoded message on the topic matching its type, see ProtocolCodec
+     */
+    public void publish(ProtocolMessage message) {
+        if (message instanceof ProtocolMessage.RobotPose) {
+            publish(ROBOT_POSE, (ProtocolMessage.RobotPose) message);
+        } else if (message instanceof ProtocolMessage.TargetUpdate) {
+            publish(TARGET_UPDATE, (ProtocolMessage.TargetUpdate) message);
+        } else if (message instanceof ProtocolMessage.StatusUpdate) {
+            publish(STATUS_UPDATE, (ProtocolMessage.StatusUpdate) message);
+        } else if (message instanceof ProtocolMessage.ObstaclePlot) {
+            publish(OBSTACLE_PLOT, (ProtocolMessage.ObstaclePlot) message);
+        } else if (message instanceof ProtocolMessage.MoveCommand) {
+            publish(MOVE_COMMAND, (ProtocolMessage.MoveCommand) message);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> void publish(Topic<T> topic, T message) {
+        List<Subscription<?>> list = subscriptions.get(topic);
+        if (list == null) {
+            return;
+        }
+        for (Subscription<?> s : list) {
+            Subscription<T> subscription = (Subscription<T>) s;
+            switch (subscription.delivery) {
+                case MAIN:
+                    mainExecutor.execute(() -> subscription.listener.onMessage(message));
+                    break;
+                case BACKGROUND:
+                    backgroundExecutor.execute(() -> subscription.listener.onMessage(message));
+                    break;
+                case POSTING:
+                default:
+                    subscription.listener.onMessage(message);
+                    break;
+            }
+        }
+    }
+}
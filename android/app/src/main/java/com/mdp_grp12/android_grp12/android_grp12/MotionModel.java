@@ -0,0 +1,130 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import com.mdp_grp12.android_grp12.android_grp12.ProtocolMessage.MoveCommand;
+
+/*
+ * Where each STM move command takes the robot, independent of any view or animation.
+ *
+ * Every command is an L-shaped move relative to the robot's heading: a leg straight
+ * forward or back, then a leg sideways, then a quarter turn left, right or none. The legs
+ * come from the tables below, measured on the robot, so the four headings need no code of
+ * their own.
+ *
+ * Poses are RPi cells ((0,0) bottom left) of the centre of the 3x3 robot. Headings are
+ * 0 - N, 1 - E, 2 - S, 3 - W; ArenaState directions (0..7, diagonals included) convert
+ * with headingOf()/directionOf().
+ */
+public final class MotionModel {
+    // SF/SB distances are sent in cm
+    public static final int CM_PER_CELL = 10;
+
+    // Unit vectors per heading
+    private static final int[] DX = {0, 1, 0, -1};
+    private static final int[] DY = {1, 0, -1, 0};
+
+    /*
+     * Per command, indexed by MoveCommand.Type ordinal:
+     *   SF, SB, RF, RB, LF, LB, JF, JB, KF, KB
+     * Forward leg in cells (times the distance for SF/SB), sideways leg in cells
+     * (positive to the right) and the quarter turns at the end (positive clockwise).
+     */
+    private static final int[] FORWARD = {1, -1, 2, -3, 2, -3, 4, -4, 4, -4};
+    private static final int[] SIDEWAYS = {0, 0, 3, 2, -3, -2, 1, 1, -1, -1};
+    private static final int[] TURN = {0, 0, 1, -1, -1, 1, 0, 0, 0, 0};
+    private static final boolean[] SCALED = {true, true, false, false, false, false, false, false, false, false};
+
+    /*
+     * Result of one move. Reused between calls so simulating a run does not allocate.
+     */
+    public static final class Step {
+        public int x;
+        public int y;
+        public int heading;
+        // End of the forward leg, where the robot starts moving sideways
+        public int cornerX;
+        public int cornerY;
+        // Cells the robot centre passes through in order, the end cell included, the start not
+        public int[] sweptX = new int[16];
+        public int[] sweptY = new int[16];
+        public int sweptCount;
+
+        private void sweep(int x, int y) {
+            if (sweptCount == sweptX.length) {
+                int[] grownX = new int[sweptCount * 2];
+                int[] grownY = new int[sweptCount * 2];
+                System.arraycopy(sweptX, 0, grownX, 0, sweptCount);
+                System.arraycopy(sweptY, 0, grownY, 0, sweptCount);
+                sweptX = grownX;
+                sweptY = grownY;
+            }
+            sweptX[sweptCount] = x;
+            sweptY[sweptCount] = y;
+            sweptCount++;
+        }
+    }
+
+    private MotionModel() {
+    }
+
+    /*
+     * Moves the robot from (x, y, heading). distanceCells is only used by SF/SB.
+     */
+    public static Step apply(int x, int y, int heading, MoveCommand.Type type, int distanceCells, Step out) {
+        int command = type.ordinal();
+        int forward = SCALED[command] ? FORWARD[command] * distanceCells : FORWARD[command];
+        int sideways = SIDEWAYS[command];
+        return move(x, y, heading, forward, sideways, TURN[command], out);
+    }
+
+    /*
+     * A command as received from the RPi, SF/SB distances in cm
+     */
+    public static Step apply(int x, int y, int heading, MoveCommand command, Step out) {
+        return apply(x, y, heading, command.type, command.distance / CM_PER_CELL, out);
+    }
+
+    /*
+     * Any L-shaped move: forward cells (negative reverses), then sideways cells (positive
+     * to the right of the original heading), then quarter turns (positive clockwise)
+     */
+    public static Step move(int x, int y, int heading, int forward, int sideways, int quarterTurns, Step out) {
+        heading &= 3;
+        int fx = DX[heading];
+        int fy = DY[heading];
+        int rx = DX[(heading + 1) & 3];
+        int ry = DY[(heading + 1) & 3];
+
+        out.sweptCount = 0;
+        int step = forward < 0 ? -1 : 1;
+        for (int i = step; i != forward + step; i += step) {
+            out.sweep(x + i * fx, y + i * fy);
+        }
+        out.cornerX = x + forward * fx;
+        out.cornerY = y + forward * fy;
+
+        step = sideways < 0 ? -1 : 1;
+        for (int i = step; i != sideways + step; i += step) {
+            out.sweep(out.cornerX + i * rx, out.cornerY + i * ry);
+        }
+        out.x = out.cornerX + sideways * rx;
+        out.y = out.cornerY + sideways * ry;
+        out.heading = (heading + quarterTurns) & 3;
+        return out;
+    }
+
+    /*
+     * In-place quarter turns, what the arrow buttons show
+     */
+    public static int turn(int heading, int quarterTurns) {
+        return (heading + quarterTurns) & 3;
+    }
+
+    // Diagonal directions count as the heading they were turned from, as the car rotation did
+    public static int headingOf(int direction) {
+        return (direction >> 1) & 3;
+    }
+
+    public static int directionOf(int heading) {
+        return (heading & 3) << 1;
+    }
+}
@@ -0,0 +1,140 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+/*
+ * Moves waiting to be animated, oldest first, in one int array (STRIDE ints per move).
+ * A straight move that continues the last queued straight move in the same direction is
+ * merged into it, so a burst of SF commands plays as one leg instead of many.
+ *
+ * Cells are RPi cells like MotionModel. Not thread-safe, used from the main thread only.
+ */
+public class MoveQueue {
+    private static final int CORNER_X = 0;
+    private static final int CORNER_Y = 1;
+    private static final int END_X = 2;
+    private static final int END_Y = 3;
+    // -1 left, 0 none, 1 right, 2 about turn
+    private static final int TURNS = 4;
+    private static final int STRAIGHT_CELLS = 5;
+    private static final int SIDEWAYS_CELLS = 6;
+    // Unit vector of the straight leg, used to decide whether moves can merge
+    private static final int DIR_X = 7;
+    private static final int DIR_Y = 8;
+    private static final int STRIDE = 9;
+
+    /*
+     * One queued move, filled in by poll()
+     */
+    public static final class Move {
+        public int cornerX;
+        public int cornerY;
+        public int endX;
+        public int endY;
+        public int quarterTurns;
+        public int straightCells;
+        public int sidewaysCells;
+    }
+
+    private int[] entries;
+    private int head = 0;
+    private int size = 0;
+    private int merged = 0;
+
+    public MoveQueue(int initialCapacity) {
+        entries = new int[Math.max(1, initialCapacity) * STRIDE];
+    }
+
+    /*
+     * Queues the move MotionModel computed from (startX, startY, startHeading)
+     */
+    public void add(int startX, int startY, int startHeading, MotionModel.Step step) {
+        int turns = MotionModel.turn(step.heading, -startHeading);
+        if (turns == 3) {
+            turns = -1;
+        }
+        int straightCells = Math.abs(step.cornerX - startX) + Math.abs(step.cornerY - startY);
+        int sidewaysCells = Math.abs(step.x - step.cornerX) + Math.abs(step.y - step.cornerY);
+        int dirX = Integer.signum(step.cornerX - startX);
+        int dirY = Integer.signum(step.cornerY - startY);
+
+        if (size > 0 && sidewaysCells == 0 && turns == 0) {
+            int last = slot(size - 1);
+            if (entries[last + SIDEWAYS_CELLS] == 0 && entries[last + TURNS] == 0
+                    && entries[last + END_X] == startX && entries[last + END_Y] == startY
+                    && entries[last + DIR_X] == dirX && entries[last + DIR_Y] == dirY) {
+                entries[last + CORNER_X] = step.cornerX;
+                entries[last + CORNER_Y] = step.cornerY;
+                entries[last + END_X] = step.x;
+                entries[last + END_Y] = step.y;
+                entries[last + STRAIGHT_CELLS] += straightCells;
+                merged++;
+                return;
+            }
+        }
+
+        if (size * STRIDE == entries.length) {
+            grow();
+        }
+        int at = slot(size);
+        entries[at + CORNER_X] = step.cornerX;
+        entries[at + CORNER_Y] = step.cornerY;
+        entries[at + END_X] = step.x;
+        entries[at + END_Y] = step.y;
+        entries[at + TURNS] = turns;
+        entries[at + STRAIGHT_CELLS] = straightCells;
+        entries[at + SIDEWAYS_CELLS] = sidewaysCells;
+        entries[at + DIR_X] = dirX;
+        entries[at + DIR_Y] = dirY;
+        size++;
+    }
+
+    /*
+     * Takes the oldest move. Returns false if there is none.
+     */
+    public boolean poll(Move out) {
+        if (size == 0) {
+            return false;
+        }
+        int at = slot(0);
+        out.cornerX = entries[at + CORNER_X];
+        out.cornerY = entries[at + CORNER_Y];
+        out.endX = entries[at + END_X];
+        out.endY = entries[at + END_Y];
+        out.quarterTurns = entries[at + TURNS];
+        out.straightCells = entries[at + STRAIGHT_CELLS];
+        out.sidewaysCells = entries[at + SIDEWAYS_CELLS];
+        head = (head + 1) % capacity();
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Moves folded into an earlier one since creation
+    public int getMerged() {
+        return merged;
+    }
+
+    private int capacity() {
+        return entries.length / STRIDE;
+    }
+
+    private int slot(int offset) {
+        return ((head + offset) % capacity()) * STRIDE;
+    }
+
+    private void grow() {
+        int[] grown = new int[entries.length * 2];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(entries, slot(i), grown, i * STRIDE, STRIDE);
+        }
+        entries = grown;
+        head = 0;
+    }
+}
@@ -0,0 +1,108 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import android.app.Activity;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+
+import androidx.constraintlayout.widget.ConstraintLayout;
+
+import com.mdp_grp12.android_grp12.R;
+
+/*
+ * The obstacle views, indexed by obstacle number (0-based, as sent to the RPi).
+ * The first ones are the tray views from the layout, obstacles past those are created
+ * here and stacked on the last tray slot. Each view carries its index as its tag, so the
+ * shared touch and click handlers find their obstacle without searching.
+ */
+public class ObstacleRegistry {
+    public static final int MIN_OBSTACLES = 1;
+    public static final int MAX_OBSTACLES = 64;
+
+    private static final int[] TRAY_IDS = {R.id.obstacle1, R.id.obstacle2, R.id.obstacle3, R.id.obstacle4,
+            R.id.obstacle5, R.id.obstacle6, R.id.obstacle7, R.id.obstacle8};
+    private static final String FACE_SUFFIXES = "nesw";
+
+    private final ImageView[] views;
+    // Numbered drawable of each obstacle per face, [index * 4 + face]
+    private final int[] numberImages;
+
+    public ObstacleRegistry(Activity activity, int count) {
+        count = Math.max(MIN_OBSTACLES, Math.min(MAX_OBSTACLES, count));
+        views = new ImageView[count];
+        numberImages = new int[count * 4];
+
+        ImageView last = null;
+        for (int i = 0; i < count; i++) {
+            ImageView view;
+            if (i < TRAY_IDS.length) {
+                view = activity.findViewById(TRAY_IDS[i]);
+            } else {
+                view = new ImageView(activity);
+                view.setLayoutParams(new ConstraintLayout.LayoutParams(
+                        (ConstraintLayout.LayoutParams) last.getLayoutParams()));
+                ((ViewGroup) last.getParent()).addView(view);
+            }
+            view.setTag(i);
+            views[i] = view;
+            last = view;
+
+            // Only eight numbered drawables exist, obstacles past those reuse them in turn
+            int drawable = i % TRAY_IDS.length + 1;
+            for (int face = 0; face < 4; face++) {
+                numberImages[i * 4 + face] = Helper.resources.get("o" + drawable + FACE_SUFFIXES.charAt(face));
+            }
+        }
+        // Views left over in the tray when fewer obstacles are configured
+        for (int i = count; i < TRAY_IDS.length; i++) {
+            activity.findViewById(TRAY_IDS[i]).setVisibility(View.GONE);
+        }
+    }
+
+    /*
+     * One cell square, known once the arena has been laid out
+     */
+    public void setCellSize(int cellSize) {
+        for (ImageView view : views) {
+            ViewGroup.LayoutParams params = view.getLayoutParams();
+            params.width = cellSize;
+            params.height = cellSize;
+            view.setLayoutParams(params);
+        }
+    }
+
+    public int size() {
+        return views.length;
+    }
+
+    public ImageView getView(int index) {
+        return views[index];
+    }
+
+    // -1 for views that are not obstacles
+    public static int indexOf(View view) {
+        Object tag = view.getTag();
+        return tag instanceof Integer ? (Integer) tag : -1;
+    }
+
+    public int getNumberImage(int index, int face) {
+        return numberImages[index * 4 + (face & 3)];
+    }
+
+    /*
+     * Drawable for a recognised target facing the given way, 0 if there is none
+     */
+    public static int getTargetImage(int targetId, int face) {
+        Integer image = Helper.resources.get(targetId + String.valueOf(FACE_SUFFIXES.charAt(face & 3)));
+        return image == null ? 0 : image;
+    }
+
+    public void setListeners(View.OnClickListener clickListener, View.OnTouchListener touchListener) {
+        for (ImageView view : views) {
+            view.setOnClickListener(clickListener);
+            view.setOnTouchListener(touchListener);
+            view.setOnLongClickListener(null);
+            view.setLongClickable(false);
+        }
+    }
+}
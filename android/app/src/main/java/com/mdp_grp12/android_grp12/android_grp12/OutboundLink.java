@@ -0,0 +1,145 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+/*
+ * The write side of the link across reconnects. Every write is logged in a ReplayBuffer
+ * and, while a connection is up, queued for its writer thread. A new connection first gets
+ * what is still unconfirmed, oldest first, then the writes made from then on.
+ *
+ * Writes are only held while the link is up or on its way back. Once the user disconnects
+ * or reconnection gives up, abandon() drops them, so a later connect does not send
+ * minutes old commands, possibly to another device.
+ */
+public class OutboundLink {
+    private final OutboundQueue queue;
+    private final ReplayBuffer replayBuffer;
+    // Guards holding and up, so writes and the replay after a reconnect reach the queue in order
+    private final Object lock = new Object();
+    // Between hold() and abandon(): CONNECTING, CONNECTED or BACKOFF
+    private boolean holding = false;
+    // A writer thread is draining the queue
+    private boolean up = false;
+    // Wrap writes as "SEQ,<n>,..." and keep them until the RPi sends "ACK,<n>"
+    private volatile boolean sequenced = false;
+
+    public OutboundLink(int queueCapacity, int replayCapacity) {
+        queue = new OutboundQueue(queueCapacity);
+        replayBuffer = new ReplayBuffer(replayCapacity);
+    }
+
+    public void setSequenced(boolean sequenced) {
+        this.sequenced = sequenced;
+    }
+
+    /*
+     * A connection was asked for, writes are held from now on
+     */
+    public void hold() {
+        synchronized (lock) {
+            holding = true;
+        }
+    }
+
+    /*
+     * The link is not coming back without the user, nothing is held for it
+     */
+    public void abandon() {
+        synchronized (lock) {
+            holding = false;
+            up = false;
+            queue.clear();
+            replayBuffer.clear();
+        }
+    }
+
+    /*
+     * Hands everything still in the replay buffer to the new writer, oldest first,
+     * before any write made from now on
+     */
+    public int onConnected() {
+        synchronized (lock) {
+            int replayed = replayBuffer.size();
+            replayBuffer.forEach((sequence, payload) -> queue.offer(wireFormat(sequence, payload)));
+            up = true;
+            return replayed;
+        }
+    }
+
+    /*
+     * Whatever is still queued gets replayed from the buffer after the reconnect
+     */
+    public void onConnectionLost() {
+        synchronized (lock) {
+            up = false;
+            queue.clear();
+        }
+    }
+
+    /*
+     * Queues the bytes for the writer thread and returns immediately. While the link is
+     * down the message is held in the replay buffer and sent once it reconnects.
+     * Returns false if there is no link to send it on, or if the buffer or queue is full,
+     * i.e. the link is not keeping up.
+     */
+    public boolean write(byte[] out) {
+        synchronized (lock) {
+            if (!holding) {
+                return false;
+            }
+            int sequence = replayBuffer.append(out);
+            if (sequence < 0) {
+                return false;
+            }
+            if (up && !queue.offer(wireFormat(sequence, out))) {
+                replayBuffer.removeNewest(sequence);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /*
+     * Link control such as PING, only meaningful on the current connection so not held
+     */
+    public boolean writeControl(byte[] out) {
+        return queue.offer(out);
+    }
+
+    /*
+     * Called by the writer once the bytes taken from the queue are flushed
+     */
+    public void onFlushed(byte[] frame) {
+        // Without ACKs a flushed message is as delivered as it gets
+        if (!sequenced) {
+            replayBuffer.releaseIfOldest(frame);
+        }
+    }
+
+    public void onAck(int sequence) {
+        replayBuffer.acknowledge(sequence);
+    }
+
+    private byte[] wireFormat(int sequence, byte[] payload) {
+        return sequenced ? ReplayBuffer.envelope(sequence, payload) : payload;
+    }
+
+    // Taken from by the writer thread
+    public OutboundQueue getQueue() {
+        return queue;
+    }
+
+    public int getPendingReplay() {
+        return replayBuffer.size();
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int getMaxQueueDepth() {
+        return queue.getMaxDepth();
+    }
+
+    public long getRejectedWrites() {
+        return queue.getRejected();
+    }
+}
@@ -0,0 +1,178 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Bounded ring buffer of outbound messages between the callers of
+ * OutboundLink.write() and the writer thread that owns the socket.
+ * Producers never touch the socket, so a stalled link can only fill the queue,
+ * it can no longer block the UI thread.
+ */
+public class OutboundQueue {
+    private final byte[][] ring;
+    private int head = 0;
+    private int size = 0;
+    private boolean closed = false;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    private int maxDepth = 0;
+    private long enqueued = 0;
+    private long rejected = 0;
+
+    public OutboundQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        ring = new byte[capacity][];
+    }
+
+    /*
+     * Non-blocking enqueue for the UI thread, returns false when the queue is full
+     */
+    public boolean offer(byte[] message) {
+        lock.lock();
+        try {
+            if (closed || size == ring.length) {
+                rejected++;
+                return false;
+            }
+            enqueueLocked(message);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /*
+     * Enqueue that waits up to timeoutMs for space, for background producers
+     * that can afford to be slowed down by a congested link
+     */
+    public boolean offer(byte[] message, long timeoutMs) throws InterruptedException {
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        lock.lockInterruptibly();
+        try {
+            while (!closed && size == ring.length) {
+                if (remaining <= 0) {
+                    rejected++;
+                    return false;
+                }
+                remaining = notFull.awaitNanos(remaining);
+            }
+            if (closed) {
+                rejected++;
+                return false;
+            }
+            enqueueLocked(message);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueueLocked(byte[] message) {
+        ring[(head + size) % ring.length] = message;
+        size++;
+        enqueued++;
+        if (size > maxDepth) {
+            maxDepth = size;
+        }
+        notEmpty.signal();
+    }
+
+    /*
+     * Blocks until at least one message is queued, then moves as many as fit into batch.
+     * Returns the number of messages taken, or -1 once the queue is closed and empty.
+     */
+    public int takeBatch(byte[][] batch) throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (size == 0) {
+                if (closed) {
+                    return -1;
+                }
+                notEmpty.await();
+            }
+            int n = Math.min(size, batch.length);
+            for (int i = 0; i < n; i++) {
+                batch[i] = ring[head];
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+            }
+            size -= n;
+            notFull.signalAll();
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                ring[(head + i) % ring.length] = null;
+            }
+            head = 0;
+            size = 0;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int capacity() {
+        return ring.length;
+    }
+
+    public int getMaxDepth() {
+        lock.lock();
+        try {
+            return maxDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getEnqueued() {
+        lock.lock();
+        try {
+            return enqueued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejected() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,660 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import com.mdp_grp12.android_grp12.android_grp12.ProtocolMessage.MoveCommand;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Plans the image recognition run on the tablet, without the RPi or the backend.
+ *
+ * Every placed obstacle is seen from a view pose in front of its image, facing it, as in
+ * backend/algo: by default the one VIEW_DISTANCE cells out, with setCandidateViews() any
+ * of the backend's candidates, each with its own extra cost. Legs between poses are found
+ * with A* over (x, y, heading) using the STM commands themselves as edges (SF/SB one cell
+ * at a time, turns and slides as MotionModel shapes them), each checked against the
+ * occupancy grid. Which pose to use per obstacle and the visit order come from Held-Karp
+ * over obstacles, or nearest first for layouts too big for it.
+ *
+ * Legs are cached between plans together with the obstacle cells their search could see,
+ * so after an obstacle is moved only the legs near its old or new cell are searched again.
+ * Given an executor, the legs from each pose are searched in parallel.
+ *
+ * Cells are RPi cells. Run one plan per instance at a time.
+ */
+public class PathPlanner {
+    // Robot centre distance from the image, 3 as in the backend's view positions
+    public static final int VIEW_DISTANCE = 3;
+    // Held-Karp is O(2^n m^2) for n obstacles and m poses, larger layouts are ordered nearest first
+    public static final int MAX_EXACT_OBSTACLES = 12;
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+    // Cached legs kept between plans before the cache starts over
+    static final int MAX_CACHED_SEGMENTS = 20000;
+
+    // Each cell swept costs STEP_COST, turns and slides add MANOEUVRE_COST on top
+    static final int STEP_COST = 10;
+    static final int MANOEUVRE_COST = 20;
+
+    /*
+     * View poses relative to the image: cells out from the face, cells to the right of the
+     * robot, extra cost. The candidates are the backend's, whose penalties are in cells.
+     */
+    private static final int[][] FRONT_VIEW = {{VIEW_DISTANCE, 0, 0}};
+    private static final int[][] CANDIDATE_VIEWS = {
+            {VIEW_DISTANCE + 1, 0, 0},
+            {VIEW_DISTANCE, 0, 5 * STEP_COST},
+            {VIEW_DISTANCE + 1, 1, 50 * STEP_COST},
+            {VIEW_DISTANCE + 1, -1, 50 * STEP_COST},
+    };
+
+    private static final MoveCommand.Type[] MOVES = MoveCommand.Type.values();
+
+    /*
+     * Planned run: commands for the STM and the obstacles in the order they are seen
+     */
+    public static final class Route {
+        public final List<MoveCommand> commands;
+        // Obstacle indices in visit order, obstacles that cannot be reached are left out
+        public final int[] order;
+        // commands.size() when the robot faces order[k], i.e. where to take the picture
+        public final int[] arrivals;
+        // Driving cost plus the cost of the view poses chosen
+        public final int cost;
+
+        Route(List<MoveCommand> commands, int[] order, int[] arrivals, int cost) {
+            this.commands = commands;
+            this.order = order;
+            this.arrivals = arrivals;
+            this.cost = cost;
+        }
+
+        /*
+         * SF030,RF000,... with the distance in cm as the STM commands carry it
+         */
+        public String toCommandString() {
+            StringBuilder out = new StringBuilder(6 * commands.size());
+            for (int i = 0; i < commands.size(); i++) {
+                MoveCommand command = commands.get(i);
+                if (i > 0) {
+                    out.append(',');
+                }
+                out.append(command.type.name());
+                int distance = command.distance;
+                if (distance < 100) {
+                    out.append('0');
+                }
+                if (distance < 10) {
+                    out.append('0');
+                }
+                out.append(distance);
+            }
+            return out.toString();
+        }
+    }
+
+    // Runs the legs from each pose in parallel, null plans on the calling thread
+    private final ExecutorService executor;
+    private boolean candidateViews = false;
+
+    // Legs by (from state << 32 | to state), for an arena of cachedCols x cachedRows
+    private final ConcurrentHashMap<Long, Segment> segments = new ConcurrentHashMap<>();
+    private int cachedCols = -1;
+    private int cachedRows = -1;
+    private final AtomicInteger searches = new AtomicInteger();
+    private final AtomicInteger cacheHits = new AtomicInteger();
+
+    public PathPlanner() {
+        this(null);
+    }
+
+    public PathPlanner(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /*
+     * Choose among several view poses per obstacle instead of only the one in front
+     */
+    public void setCandidateViews(boolean candidateViews) {
+        this.candidateViews = candidateViews;
+    }
+
+    // A* searches run since creation, the rest came from the cache
+    public int getSearchCount() {
+        return searches.get();
+    }
+
+    public int getCacheHits() {
+        return cacheHits.get();
+    }
+
+    /*
+     * ======================
+     * Planning
+     * ======================
+     */
+
+    /*
+     * Returns null if the thread is interrupted while the legs are searched
+     */
+    public Route plan(ArenaState state) {
+        if (!state.contains(state.getRobotX(), state.getRobotY())) {
+            // Nothing to plan from until the RPi reports a pose on the arena
+            return new Route(new ArrayList<>(), new int[0], new int[0], 0);
+        }
+        Layout layout = new Layout(state);
+        if (layout.cols != cachedCols || layout.rows != cachedRows || segments.size() > MAX_CACHED_SEGMENTS) {
+            segments.clear();
+            cachedCols = layout.cols;
+            cachedRows = layout.rows;
+        }
+
+        // Node 0 is the start pose, the others view poses. group[k] is the slot of the
+        // obstacle node k looks at, obstacles[slot] its index.
+        int count = state.getObstacleCount();
+        int[][] views = candidateViews ? CANDIDATE_VIEWS : FRONT_VIEW;
+        int[] pose = new int[1 + count * views.length];
+        int[] group = new int[pose.length];
+        int[] penalty = new int[pose.length];
+        int[] obstacles = new int[count];
+        pose[0] = layout.state(state.getRobotX(), state.getRobotY(),
+                MotionModel.headingOf(state.getRobotDirection()));
+        MotionModel.Step view = new MotionModel.Step();
+        int nodes = 1;
+        int groups = 0;
+        for (int i = 0; i < count; i++) {
+            if (!layout.obstacles.isPlaced(i)) {
+                continue;
+            }
+            int first = nodes;
+            for (int[] offset : views) {
+                // Out from the image along its face, then turned around to look at it
+                MotionModel.move(layout.obstacles.getObstacleX(i), layout.obstacles.getObstacleY(i),
+                        layout.obstacles.getObstacleFace(i), offset[0], -offset[1], 2, view);
+                if (!layout.isFree(view.x, view.y)) {
+                    continue;
+                }
+                pose[nodes] = layout.state(view.x, view.y, view.heading);
+                group[nodes] = groups;
+                penalty[nodes] = offset[2];
+                nodes++;
+            }
+            if (nodes > first) {
+                obstacles[groups++] = i;
+            }
+        }
+        pose = Arrays.copyOf(pose, nodes);
+        group = Arrays.copyOf(group, nodes);
+        penalty = Arrays.copyOf(penalty, nodes);
+
+        int[][] cost = costMatrix(layout, pose, group);
+        if (cost == null) {
+            return null;
+        }
+        int[] tour = groups <= MAX_EXACT_OBSTACLES ? heldKarp(cost, group, penalty, groups) : null;
+        if (tour == null) {
+            tour = nearestFirst(cost, group, penalty, groups);
+        }
+
+        List<MoveCommand> commands = new ArrayList<>();
+        int[] order = new int[tour.length];
+        int[] arrivals = new int[tour.length];
+        Search search = new Search(layout);
+        int total = 0;
+        int at = 0;
+        for (int k = 0; k < tour.length; k++) {
+            int to = tour[k];
+            Segment leg = segment(search, layout, pose[at], pose[to]);
+            total += leg.cost + penalty[to];
+            appendCommands(leg.moves, commands);
+            order[k] = obstacles[group[to]];
+            arrivals[k] = commands.size();
+            at = to;
+        }
+        return new Route(commands, order, arrivals, total);
+    }
+
+    /*
+     * cost[from][to] between all poses, UNREACHABLE between poses of the same obstacle
+     * and into the start pose. One task per from pose when there is an executor.
+     */
+    private int[][] costMatrix(Layout layout, int[] pose, int[] group) {
+        int nodes = pose.length;
+        int[][] cost = new int[nodes][nodes];
+        List<Callable<Void>> rows = new ArrayList<>(nodes);
+        for (int from = 0; from < nodes; from++) {
+            int row = from;
+            rows.add(() -> {
+                Search search = new Search(layout);
+                cost[row][0] = UNREACHABLE;
+                for (int to = 1; to < nodes; to++) {
+                    boolean sameObstacle = row > 0 && group[row] == group[to];
+                    cost[row][to] = sameObstacle ? UNREACHABLE : segment(search, layout, pose[row], pose[to]).cost;
+                }
+                return null;
+            });
+        }
+
+        try {
+            if (executor == null || nodes < 2) {
+                for (Callable<Void> row : rows) {
+                    row.call();
+                }
+            } else {
+                for (Future<Void> row : executor.invokeAll(rows)) {
+                    row.get();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Planning failed", e.getCause());
+        } catch (Exception e) {
+            throw new IllegalStateException("Planning failed", e);
+        }
+        return cost;
+    }
+
+    private Segment segment(Search search, Layout layout, int from, int to) {
+        Long key = ((long) from << 32) | to;
+        Segment cached = segments.get(key);
+        if (cached != null && cached.isValidFor(layout)) {
+            cacheHits.incrementAndGet();
+            return cached;
+        }
+        searches.incrementAndGet();
+        Segment found = search.find(from, to);
+        segments.put(key, found);
+        return found;
+    }
+
+    /*
+     * Cheapest open tour from node 0 through exactly one node of every group, null if no
+     * tour reaches them all. Entering node k costs cost[..][k] + penalty[k].
+     */
+    static int[] heldKarp(int[][] cost, int[] group, int[] penalty, int groups) {
+        int nodes = cost.length;
+        if (groups == 0) {
+            return new int[0];
+        }
+        int full = (1 << groups) - 1;
+        // best[mask * nodes + j]: cheapest way from node 0 through the groups in mask, ending at node j
+        int[] best = new int[(full + 1) * nodes];
+        int[] previous = new int[(full + 1) * nodes];
+        Arrays.fill(best, UNREACHABLE);
+        for (int k = 1; k < nodes; k++) {
+            if (cost[0][k] != UNREACHABLE) {
+                best[(1 << group[k]) * nodes + k] = cost[0][k] + penalty[k];
+                previous[(1 << group[k]) * nodes + k] = 0;
+            }
+        }
+        for (int mask = 1; mask <= full; mask++) {
+            for (int j = 1; j < nodes; j++) {
+                int here = best[mask * nodes + j];
+                if (here == UNREACHABLE) {
+                    continue;
+                }
+                for (int k = 1; k < nodes; k++) {
+                    if ((mask & (1 << group[k])) != 0 || cost[j][k] == UNREACHABLE) {
+                        continue;
+                    }
+                    int next = mask | (1 << group[k]);
+                    int candidate = here + cost[j][k] + penalty[k];
+                    if (candidate < best[next * nodes + k]) {
+                        best[next * nodes + k] = candidate;
+                        previous[next * nodes + k] = j;
+                    }
+                }
+            }
+        }
+
+        int last = -1;
+        for (int j = 1; j < nodes; j++) {
+            if (best[full * nodes + j] != UNREACHABLE
+                    && (last < 0 || best[full * nodes + j] < best[full * nodes + last])) {
+                last = j;
+            }
+        }
+        if (last < 0) {
+            return null;
+        }
+        int[] tour = new int[groups];
+        int mask = full;
+        for (int k = groups - 1; k >= 0; k--) {
+            tour[k] = last;
+            int before = previous[mask * nodes + last];
+            mask &= ~(1 << group[last]);
+            last = before;
+        }
+        return tour;
+    }
+
+    /*
+     * Cheapest next node of a group not seen yet, until none is reachable
+     */
+    static int[] nearestFirst(int[][] cost, int[] group, int[] penalty, int groups) {
+        boolean[] visited = new boolean[groups];
+        int[] tour = new int[groups];
+        int length = 0;
+        int at = 0;
+        while (true) {
+            int next = -1;
+            long nextCost = 0;
+            for (int to = 1; to < cost.length; to++) {
+                if (visited[group[to]] || cost[at][to] == UNREACHABLE) {
+                    continue;
+                }
+                long toCost = (long) cost[at][to] + penalty[to];
+                if (next < 0 || toCost < nextCost) {
+                    next = to;
+                    nextCost = toCost;
+                }
+            }
+            if (next < 0) {
+                break;
+            }
+            visited[group[next]] = true;
+            tour[length++] = next;
+            at = next;
+        }
+        return Arrays.copyOf(tour, length);
+    }
+
+    /*
+     * Consecutive one cell SF or SB moves become one command, distances in cm
+     */
+    private static void appendCommands(byte[] moves, List<MoveCommand> out) {
+        for (int i = 0; i < moves.length; ) {
+            MoveCommand.Type type = MOVES[moves[i]];
+            int run = 1;
+            if (type == MoveCommand.Type.SF || type == MoveCommand.Type.SB) {
+                while (i + run < moves.length && moves[i + run] == moves[i]) {
+                    run++;
+                }
+                out.add(new MoveCommand(type, run * MotionModel.CM_PER_CELL));
+            } else {
+                out.add(new MoveCommand(type, 0));
+            }
+            i += run;
+        }
+    }
+
+    /*
+     * ======================
+     * Layout and legs
+     * ======================
+     */
+
+    /*
+     * Read-only snapshot of the obstacles for one plan, shared by the search threads
+     */
+    static final class Layout {
+        final int cols;
+        final int rows;
+        final ArenaState obstacles;
+        // Cells the robot centre may be on, see CollisionChecker.isRobotFree()
+        private final boolean[] free;
+        // One bit per cell holding an obstacle, index y * cols + x
+        private final long[] occupied;
+
+        Layout(ArenaState state) {
+            cols = state.getCols();
+            rows = state.getRows();
+            int count = state.getObstacleCount();
+            // encodeObstacles() is one consistent snapshot even while obstacles are being dragged
+            obstacles = new ArenaState(cols, rows, count);
+            CollisionChecker checker = new CollisionChecker(cols, rows, count);
+            obstacles.addListener(checker);
+            obstacles.decodeObstacles(state.encodeObstacles());
+
+            free = new boolean[cols * rows];
+            for (int y = 0; y < rows; y++) {
+                for (int x = 0; x < cols; x++) {
+                    free[y * cols + x] = checker.isRobotFree(x, y);
+                }
+            }
+            occupied = new long[(cols * rows + 63) >>> 6];
+            for (int i = 0; i < count; i++) {
+                if (obstacles.isPlaced(i)) {
+                    int cell = obstacles.getObstacleY(i) * cols + obstacles.getObstacleX(i);
+                    occupied[cell >>> 6] |= 1L << cell;
+                }
+            }
+        }
+
+        boolean isFree(int x, int y) {
+            return x >= 0 && y >= 0 && x < cols && y < rows && free[y * cols + x];
+        }
+
+        int state(int x, int y, int heading) {
+            return ((y * cols + x) << 2) | (heading & 3);
+        }
+    }
+
+    /*
+     * One leg. footprint holds the cells whose obstacles could change what the search
+     * found, seen the obstacle cells among them at the time.
+     */
+    static final class Segment {
+        final int cost;
+        final byte[] moves;
+        private final long[] footprint;
+        private final long[] seen;
+
+        Segment(int cost, byte[] moves, long[] footprint, long[] seen) {
+            this.cost = cost;
+            this.moves = moves;
+            this.footprint = footprint;
+            this.seen = seen;
+        }
+
+        boolean isValidFor(Layout layout) {
+            for (int w = 0; w < footprint.length; w++) {
+                if ((footprint[w] & layout.occupied[w]) != seen[w]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /*
+     * ======================
+     * A* over (x, y, heading)
+     * ======================
+     */
+
+    /*
+     * Search workspace for one layout and thread, reused between searches.
+     * State s = (y * cols + x) * 4 + heading.
+     */
+    static final class Search {
+        private final Layout layout;
+        private final int cols;
+        private final MotionModel.Step step = new MotionModel.Step();
+
+        private final int[] g;
+        private final int[] parent;
+        private final byte[] via;
+        // A state's g/parent/via are only valid if its stamp is the current search's,
+        // so nothing is cleared between searches
+        private final int[] seen;
+        private final int[] closed;
+        private int generation = 0;
+        // Robot centre cells the current search checked, one bit per cell
+        private final long[] checked;
+
+        // Binary min-heap of (f << 32 | state), stale entries are skipped when popped
+        private long[] heap = new long[256];
+        private int heapSize;
+
+        Search(Layout layout) {
+            this.layout = layout;
+            this.cols = layout.cols;
+            int states = layout.cols * layout.rows * 4;
+            g = new int[states];
+            parent = new int[states];
+            via = new byte[states];
+            seen = new int[states];
+            closed = new int[states];
+            checked = new long[layout.occupied.length];
+        }
+
+        /*
+         * Cheapest leg between the two states, cost UNREACHABLE and no moves if there is none
+         */
+        Segment find(int from, int to) {
+            generation++;
+            heapSize = 0;
+            Arrays.fill(checked, 0L);
+            int toX = (to >> 2) % cols;
+            int toY = (to >> 2) / cols;
+            g[from] = 0;
+            seen[from] = generation;
+            push(estimate(from, toX, toY), from);
+
+            while (heapSize > 0) {
+                int current = (int) pop();
+                if (closed[current] == generation) {
+                    continue;
+                }
+                closed[current] = generation;
+                if (current == to) {
+                    return segment(from, to, g[current]);
+                }
+                int cell = current >> 2;
+                int x = cell % cols;
+                int y = cell / cols;
+                int heading = current & 3;
+                for (MoveCommand.Type type : MOVES) {
+                    MotionModel.apply(x, y, heading, type, 1, step);
+                    if (!isClear(step)) {
+                        continue;
+                    }
+                    int next = layout.state(step.x, step.y, step.heading);
+                    if (closed[next] == generation) {
+                        continue;
+                    }
+                    int manoeuvre = type == MoveCommand.Type.SF || type == MoveCommand.Type.SB ? 0 : MANOEUVRE_COST;
+                    int cost = g[current] + step.sweptCount * STEP_COST + manoeuvre;
+                    if (seen[next] != generation || cost < g[next]) {
+                        seen[next] = generation;
+                        g[next] = cost;
+                        parent[next] = current;
+                        via[next] = (byte) type.ordinal();
+                        push(cost + estimate(next, toX, toY), next);
+                    }
+                }
+            }
+            return segment(from, to, UNREACHABLE);
+        }
+
+        /*
+         * Same answer as CollisionChecker.firstCollision(), recording the cells looked at.
+         * Cells off the arena never change, so they are not recorded.
+         */
+        private boolean isClear(MotionModel.Step step) {
+            for (int i = 0; i < step.sweptCount; i++) {
+                int x = step.sweptX[i];
+                int y = step.sweptY[i];
+                if (x < 0 || y < 0 || x >= cols || y >= layout.rows) {
+                    return false;
+                }
+                int cell = y * cols + x;
+                checked[cell >>> 6] |= 1L << cell;
+                if (!layout.free[cell]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Segment segment(int from, int to, int cost) {
+            int length = 0;
+            if (cost != UNREACHABLE) {
+                for (int s = to; s != from; s = parent[s]) {
+                    length++;
+                }
+            }
+            byte[] moves = new byte[length];
+            for (int s = to, i = length - 1; i >= 0; s = parent[s], i--) {
+                moves[i] = via[s];
+            }
+
+            // Any obstacle within one cell of a checked centre could change a check
+            long[] footprint = new long[checked.length];
+            int rows = layout.rows;
+            for (int w = 0; w < checked.length; w++) {
+                for (long bits = checked[w]; bits != 0; bits &= bits - 1) {
+                    int cell = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    int x = cell % cols;
+                    int y = cell / cols;
+                    for (int ny = Math.max(0, y - 1); ny <= Math.min(rows - 1, y + 1); ny++) {
+                        for (int nx = Math.max(0, x - 1); nx <= Math.min(cols - 1, x + 1); nx++) {
+                            int near = ny * cols + nx;
+                            footprint[near >>> 6] |= 1L << near;
+                        }
+                    }
+                }
+            }
+            long[] seenObstacles = new long[footprint.length];
+            for (int w = 0; w < footprint.length; w++) {
+                seenObstacles[w] = footprint[w] & layout.occupied[w];
+            }
+            return new Segment(cost, moves, footprint, seenObstacles);
+        }
+
+        // Every move displaces the robot at most as many cells as it sweeps, so this never overestimates
+        private int estimate(int state, int toX, int toY) {
+            int cell = state >> 2;
+            return (Math.abs(toX - cell % cols) + Math.abs(toY - cell / cols)) * STEP_COST;
+        }
+
+        private void push(int f, int state) {
+            if (heapSize == heap.length) {
+                heap = Arrays.copyOf(heap, heapSize * 2);
+            }
+            long entry = ((long) f << 32) | state;
+            int i = heapSize++;
+            while (i > 0) {
+                int up = (i - 1) >> 1;
+                if (heap[up] <= entry) {
+                    break;
+                }
+                heap[i] = heap[up];
+                i = up;
+            }
+            heap[i] = entry;
+        }
+
+        // Returns the state of the entry with the lowest f
+        private long pop() {
+            long top = heap[0];
+            long last = heap[--heapSize];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= heapSize) {
+                    break;
+                }
+                if (child + 1 < heapSize && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[child] >= last) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = last;
+            return top & 0xffffffffL;
+        }
+    }
+}
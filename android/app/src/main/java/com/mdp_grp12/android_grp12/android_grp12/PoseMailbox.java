@@ -0,0 +1,101 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+/*
+ * Latest-value-wins hand-off of robot poses from the Bluetooth reader to the UI.
+ * The RPi can stream ROBOT updates much faster than the display refreshes, so only the
+ * newest pose is applied per frame. Poses overwritten before a frame are not thrown
+ * away: their cells are queued as trail so the path drawn on the grid stays complete.
+ */
+public class PoseMailbox {
+    public interface TrailSink {
+        void onTrailCell(int x, int y);
+    }
+
+    private ProtocolMessage.RobotPose latest = null;
+
+    // Trail of superseded poses, swapped with the drain buffers on every take()
+    private int[] trailX = new int[64];
+    private int[] trailY = new int[64];
+    private int trailSize = 0;
+    private int[] drainX = new int[64];
+    private int[] drainY = new int[64];
+
+    private long posted = 0;
+    private long applied = 0;
+    private long coalesced = 0;
+
+    /*
+     * Called from any thread. Returns true if the mailbox was empty, i.e. the caller
+     * has to schedule a frame to consume it.
+     */
+    public synchronized boolean post(ProtocolMessage.RobotPose pose) {
+        posted++;
+        boolean wasEmpty = latest == null;
+        if (!wasEmpty) {
+            coalesced++;
+            appendTrail(latest.x, latest.y);
+        }
+        latest = pose;
+        return wasEmpty;
+    }
+
+    /*
+     * Called once per frame on the UI thread. Superseded poses are passed to the sink
+     * in arrival order, then the newest pose is returned (null if nothing was posted).
+     */
+    public ProtocolMessage.RobotPose take(TrailSink sink) {
+        ProtocolMessage.RobotPose pose;
+        int size;
+        synchronized (this) {
+            pose = latest;
+            latest = null;
+            if (pose != null) {
+                applied++;
+            }
+
+            size = trailSize;
+            int[] x = drainX;
+            int[] y = drainY;
+            drainX = trailX;
+            drainY = trailY;
+            trailX = x;
+            trailY = y;
+            trailSize = 0;
+        }
+
+        // The drain buffers are only touched by the UI thread outside the lock
+        for (int i = 0; i < size; i++) {
+            sink.onTrailCell(drainX[i], drainY[i]);
+        }
+        return pose;
+    }
+
+    private void appendTrail(int x, int y) {
+        if (trailSize == trailX.length) {
+            int[] newX = new int[trailX.length * 2];
+            int[] newY = new int[trailY.length * 2];
+            System.arraycopy(trailX, 0, newX, 0, trailSize);
+            System.arraycopy(trailY, 0, newY, 0, trailSize);
+            trailX = newX;
+            trailY = newY;
+        }
+        trailX[trailSize] = x;
+        trailY[trailSize] = y;
+        trailSize++;
+    }
+
+    public synchronized long getPosted() {
+        return posted;
+    }
+
+    public synchronized long getApplied() {
+        return applied;
+    }
+
+    /*
+     * Poses that never reached the screen because a newer one arrived in the same frame
+     */
+    public synchronized long getCoalesced() {
+        return coalesced;
+    }
+}
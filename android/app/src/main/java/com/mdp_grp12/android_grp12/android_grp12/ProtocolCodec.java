@@ -0,0 +1,400 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import java.util.Locale;
+
+/*
+ * Parses the ASCII RPi protocol (see the Helper.ROBOT/TARGET/STATUS/PLOT/COMMAND headers,
+ * plus ACK and PONG for link control) straight out of the frame buffer. Numbers and
+ * keywords are read byte by byte, so apart from the resulting ProtocolMessage only STATUS
+ * text and PLOT arrays allocate.
+ *
+ * Not thread safe, each reader thread keeps its own instance.
+ */
+public class ProtocolCodec {
+    private static final byte[] ROBOT = ascii("ROBOT");
+    private static final byte[] TARGET = ascii("TARGET");
+    private static final byte[] STATUS = ascii("STATUS");
+    private static final byte[] PLOT = ascii("PLOT");
+    private static final byte[] COMMAND = ascii("COMMAND");
+    private static final byte[] ACK = ascii("ACK");
+    private static final byte[] PONG = ascii("PONG");
+    private static final byte[] STOPPED = ascii("STOPPED");
+    private static final byte[][] TAGS = {ROBOT, TARGET, STATUS, PLOT, COMMAND, ACK, PONG};
+    private static final int MAX_TAG_LENGTH = COMMAND.length;
+    // Indexed by the 0..7 direction parseDirection() returns
+    private static final String[] DIRECTIONS = {"N", "NE", "E", "SE", "S", "SW", "W", "NW"};
+
+    private static final int INVALID = Integer.MIN_VALUE;
+    private static final int MAX_PLOT_OBSTACLES = 64;
+
+    // Scratch space for PLOT, copied into the immutable message once parsed
+    private final int[] plotX = new int[MAX_PLOT_OBSTACLES];
+    private final int[] plotY = new int[MAX_PLOT_OBSTACLES];
+    private final char[] plotDir = new char[MAX_PLOT_OBSTACLES];
+
+    private long messagesDecoded = 0;
+    private long parseFailures = 0;
+    private long unknownMessages = 0;
+
+    public long getMessagesDecoded() {
+        return messagesDecoded;
+    }
+
+    public long getParseFailures() {
+        return parseFailures;
+    }
+
+    public long getUnknownMessages() {
+        return unknownMessages;
+    }
+
+    /*
+     * Returns the parsed message, or null if the frame is not a known message
+     * or is malformed. Malformed frames are counted as parse failures.
+     */
+    public ProtocolMessage decode(byte[] buf, int offset, int length) {
+        int end = offset + length;
+        int comma = indexOf(buf, offset, end, (byte) ',');
+        if (comma < 0) {
+            unknownMessages++;
+            return null;
+        }
+
+        ProtocolMessage message;
+        if (matches(buf, offset, comma, ROBOT)) {
+            message = decodeRobot(buf, comma + 1, end);
+        } else if (matches(buf, offset, comma, TARGET)) {
+            message = decodeTarget(buf, comma + 1, end);
+        } else if (matches(buf, offset, comma, STATUS)) {
+            message = decodeStatus(buf, comma + 1, end);
+        } else if (matches(buf, offset, comma, PLOT)) {
+            message = decodePlot(buf, comma + 1, end);
+        } else if (matches(buf, offset, comma, COMMAND)) {
+            message = decodeCommand(buf, comma + 1, end);
+        } else if (matches(buf, offset, comma, ACK)) {
+            int sequence = parseInt(buf, comma + 1, end);
+            message = sequence == INVALID ? null : new ProtocolMessage.Ack(sequence);
+        } else if (matches(buf, offset, comma, PONG)) {
+            int id = parseInt(buf, comma + 1, end);
+            message = id == INVALID ? null : new ProtocolMessage.Pong(id);
+        } else {
+            unknownMessages++;
+            return null;
+        }
+
+        if (message == null) {
+            parseFailures++;
+        } else {
+            messagesDecoded++;
+        }
+        return message;
+    }
+
+    /*
+     * True if the bytes begin with a known message tag and its comma, e.g. "ROBOT,". The
+     * RPi does not always end a message with '\n', so a read starting like this also ends
+     * the message before it.
+     */
+    public static boolean startsMessage(byte[] buf, int offset, int length) {
+        int comma = indexOf(buf, offset, offset + Math.min(length, MAX_TAG_LENGTH + 1), (byte) ',');
+        if (comma < 0) {
+            return false;
+        }
+        for (byte[] tag : TAGS) {
+            if (matches(buf, offset, comma, tag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+     * The ASCII form of a message, for showing what arrived in binary the way it reads
+     * on an ASCII link
+     */
+    public static String toAscii(ProtocolMessage message) {
+        if (message instanceof ProtocolMessage.RobotPose) {
+            ProtocolMessage.RobotPose pose = (ProtocolMessage.RobotPose) message;
+            return "ROBOT," + pose.x + "," + pose.y + "," + DIRECTIONS[pose.direction];
+        }
+        if (message instanceof ProtocolMessage.TargetUpdate) {
+            ProtocolMessage.TargetUpdate target = (ProtocolMessage.TargetUpdate) message;
+            return "TARGET," + target.obstacleNumber + "," + target.targetId;
+        }
+        if (message instanceof ProtocolMessage.StatusUpdate) {
+            return "STATUS," + ((ProtocolMessage.StatusUpdate) message).text;
+        }
+        if (message instanceof ProtocolMessage.ObstaclePlot) {
+            ProtocolMessage.ObstaclePlot plot = (ProtocolMessage.ObstaclePlot) message;
+            StringBuilder text = new StringBuilder("PLOT,");
+            for (int i = 0; i < plot.size(); i++) {
+                if (i > 0) {
+                    text.append(';');
+                }
+                text.append(plot.getX(i)).append(',').append(plot.getY(i)).append(',').append(plot.getDirection(i));
+            }
+            return text.toString();
+        }
+        if (message instanceof ProtocolMessage.MoveCommand) {
+            ProtocolMessage.MoveCommand command = (ProtocolMessage.MoveCommand) message;
+            return command.distance == 0 ? "COMMAND," + command.type
+                    : String.format(Locale.US, "COMMAND,%s%03d", command.type, command.distance);
+        }
+        if (message instanceof ProtocolMessage.Ack) {
+            return "ACK," + ((ProtocolMessage.Ack) message).sequence;
+        }
+        if (message instanceof ProtocolMessage.Pong) {
+            return "PONG," + ((ProtocolMessage.Pong) message).id;
+        }
+        throw new IllegalArgumentException("Cannot format " + message);
+    }
+
+    private ProtocolMessage decodeRobot(byte[] buf, int from, int end) {
+        int c1 = indexOf(buf, from, end, (byte) ',');
+        int c2 = c1 < 0 ? -1 : indexOf(buf, c1 + 1, end, (byte) ',');
+        if (c2 < 0) {
+            return null;
+        }
+        int x = parseInt(buf, from, c1);
+        int y = parseInt(buf, c1 + 1, c2);
+        int direction = parseDirection(buf, c2 + 1, end);
+        if (x == INVALID || y == INVALID || direction < 0) {
+            return null;
+        }
+        return new ProtocolMessage.RobotPose(x, y, direction);
+    }
+
+    private ProtocolMessage decodeTarget(byte[] buf, int from, int end) {
+        int c1 = indexOf(buf, from, end, (byte) ',');
+        if (c1 < 0) {
+            return null;
+        }
+        int obstacle = parseInt(buf, from, c1);
+        int target = parseInt(buf, c1 + 1, end);
+        if (obstacle == INVALID || target == INVALID) {
+            return null;
+        }
+        return new ProtocolMessage.TargetUpdate(obstacle, target);
+    }
+
+    private ProtocolMessage decodeStatus(byte[] buf, int from, int end) {
+        int newline = indexOf(buf, from, end, (byte) '\n');
+        int textEnd = newline < 0 ? end : newline;
+        String text = new String(buf, from, textEnd - from);
+        boolean stopped = indexOf(buf, from, end, STOPPED) >= 0;
+        return new ProtocolMessage.StatusUpdate(text, stopped);
+    }
+
+    private ProtocolMessage decodePlot(byte[] buf, int from, int end) {
+        int count = 0;
+        int start = from;
+        while (start < end) {
+            int semi = indexOf(buf, start, end, (byte) ';');
+            int entryEnd = semi < 0 ? end : semi;
+            if (entryEnd > start) {
+                if (count == MAX_PLOT_OBSTACLES) {
+                    return null;
+                }
+                int c1 = indexOf(buf, start, entryEnd, (byte) ',');
+                int c2 = c1 < 0 ? -1 : indexOf(buf, c1 + 1, entryEnd, (byte) ',');
+                if (c2 < 0) {
+                    return null;
+                }
+                int x = parseInt(buf, start, c1);
+                int y = parseInt(buf, c1 + 1, c2);
+                char dir = parseSide(buf, c2 + 1, entryEnd);
+                if (x == INVALID || y == INVALID || dir == 0) {
+                    return null;
+                }
+                plotX[count] = x;
+                plotY[count] = y;
+                plotDir[count] = dir;
+                count++;
+            }
+            start = entryEnd + 1;
+        }
+
+        int[] xs = new int[count];
+        int[] ys = new int[count];
+        char[] dirs = new char[count];
+        System.arraycopy(plotX, 0, xs, 0, count);
+        System.arraycopy(plotY, 0, ys, 0, count);
+        System.arraycopy(plotDir, 0, dirs, 0, count);
+        return new ProtocolMessage.ObstaclePlot(xs, ys, dirs);
+    }
+
+    private ProtocolMessage decodeCommand(byte[] buf, int from, int end) {
+        from = skipSpaces(buf, from, end);
+        if (end - from < 2) {
+            return null;
+        }
+        ProtocolMessage.MoveCommand.Type type =
+                ProtocolMessage.MoveCommand.Type.fromBytes(buf[from], buf[from + 1]);
+        if (type == null) {
+            return null;
+        }
+        int distance = 0;
+        if (skipSpaces(buf, from + 2, end) < trimEnd(buf, from + 2, end)) {
+            distance = parseInt(buf, from + 2, end);
+            if (distance == INVALID) {
+                return null;
+            }
+        }
+        return new ProtocolMessage.MoveCommand(type, distance);
+    }
+
+    /*
+     * N, NE, E, SE, S, SW, W, NW -> 0..7, -1 if not a direction
+     */
+    private static int parseDirection(byte[] buf, int from, int to) {
+        from = skipDecoration(buf, from, to);
+        to = trimDecoration(buf, from, to);
+        if (to - from == 1) {
+            switch (buf[from]) {
+                case 'N':
+                    return 0;
+                case 'E':
+                    return 2;
+                case 'S':
+                    return 4;
+                case 'W':
+                    return 6;
+                default:
+                    return -1;
+            }
+        }
+        if (to - from == 2) {
+            byte a = buf[from];
+            byte b = buf[from + 1];
+            if (a == 'N' && b == 'E') return 1;
+            if (a == 'S' && b == 'E') return 3;
+            if (a == 'S' && b == 'W') return 5;
+            if (a == 'N' && b == 'W') return 7;
+        }
+        return -1;
+    }
+
+    /*
+     * Obstacle face, one of N/E/S/W, 0 if invalid
+     */
+    private static char parseSide(byte[] buf, int from, int to) {
+        from = skipDecoration(buf, from, to);
+        to = trimDecoration(buf, from, to);
+        if (to - from != 1) {
+            return 0;
+        }
+        switch (buf[from]) {
+            case 'N':
+            case 'E':
+            case 'S':
+            case 'W':
+                return (char) buf[from];
+            default:
+                return 0;
+        }
+    }
+
+    /*
+     * Parses a decimal int between from and to, ignoring the <> the RPi wraps
+     * ROBOT fields in and surrounding whitespace. Returns INVALID on bad input.
+     */
+    static int parseInt(byte[] buf, int from, int to) {
+        from = skipDecoration(buf, from, to);
+        to = trimDecoration(buf, from, to);
+        if (from >= to) {
+            return INVALID;
+        }
+        boolean negative = false;
+        if (buf[from] == '-') {
+            negative = true;
+            from++;
+            if (from == to) {
+                return INVALID;
+            }
+        }
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buf[i] - '0';
+            if (digit < 0 || digit > 9 || value > (Integer.MAX_VALUE - digit) / 10) {
+                return INVALID;
+            }
+            value = value * 10 + digit;
+        }
+        return negative ? -value : value;
+    }
+
+    private static boolean isDecoration(byte b) {
+        return b == '<' || b == '>' || b == ' ' || b == '\r' || b == '\n' || b == '\t';
+    }
+
+    private static int skipDecoration(byte[] buf, int from, int to) {
+        while (from < to && isDecoration(buf[from])) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimDecoration(byte[] buf, int from, int to) {
+        while (to > from && isDecoration(buf[to - 1])) {
+            to--;
+        }
+        return to;
+    }
+
+    private static int skipSpaces(byte[] buf, int from, int to) {
+        while (from < to && (buf[from] == ' ' || buf[from] == '\r' || buf[from] == '\n')) {
+            from++;
+        }
+        return from;
+    }
+
+    private static int trimEnd(byte[] buf, int from, int to) {
+        while (to > from && (buf[to - 1] == ' ' || buf[to - 1] == '\r' || buf[to - 1] == '\n')) {
+            to--;
+        }
+        return to;
+    }
+
+    private static int indexOf(byte[] buf, int from, int to, byte b) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] buf, int from, int to, byte[] needle) {
+        outer:
+        for (int i = from; i <= to - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (buf[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static boolean matches(byte[] buf, int from, int to, byte[] keyword) {
+        from = skipSpaces(buf, from, to);
+        if (to - from != keyword.length) {
+            return false;
+        }
+        for (int i = 0; i < keyword.length; i++) {
+            if (buf[from + i] != keyword[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] ascii(String s) {
+        byte[] bytes = new byte[s.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) s.charAt(i);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,176 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+/*
+ * Immutable, already-parsed forms of the messages the RPi sends.
+ * ProtocolCodec builds these on the Bluetooth reader thread so the UI only applies them.
+ */
+public abstract class ProtocolMessage {
+
+    /*
+     * ROBOT,<x>,<y>,<direction>
+     * x/y are grid cells with (0,0) at the bottom left, as sent by the RPi.
+     * direction: 0 - N, 1 - NE, 2 - E, 3 - SE, 4 - S, 5 - SW, 6 - W, 7 - NW
+     */
+    public static final class RobotPose extends ProtocolMessage {
+        public final int x;
+        public final int y;
+        public final int direction;
+
+        public RobotPose(int x, int y, int direction) {
+            this.x = x;
+            this.y = y;
+            this.direction = direction;
+        }
+
+        @Override
+        public String toString() {
+            return "RobotPose(" + x + "," + y + "," + direction + ")";
+        }
+    }
+
+    /*
+     * TARGET,<obstacle number>,<target id>
+     * Obstacle numbers are 0-based, a target id of 0 means the image was not recognised
+     */
+    public static final class TargetUpdate extends ProtocolMessage {
+        public final int obstacleNumber;
+        public final int targetId;
+
+        public TargetUpdate(int obstacleNumber, int targetId) {
+            this.obstacleNumber = obstacleNumber;
+            this.targetId = targetId;
+        }
+
+        @Override
+        public String toString() {
+            return "TargetUpdate(" + obstacleNumber + "," + targetId + ")";
+        }
+    }
+
+    /*
+     * STATUS,<free text>
+     */
+    public static final class StatusUpdate extends ProtocolMessage {
+        public final String text;
+        public final boolean stopped;
+
+        public StatusUpdate(String text, boolean stopped) {
+            this.text = text;
+            this.stopped = stopped;
+        }
+
+        @Override
+        public String toString() {
+            return "StatusUpdate(" + text + ")";
+        }
+    }
+
+    /*
+     * PLOT,<x>,<y>,<N|E|S|W>;<x>,<y>,<N|E|S|W>;...
+     */
+    public static final class ObstaclePlot extends ProtocolMessage {
+        private final int[] xs;
+        private final int[] ys;
+        private final char[] directions;
+
+        public ObstaclePlot(int[] xs, int[] ys, char[] directions) {
+            this.xs = xs.clone();
+            this.ys = ys.clone();
+            this.directions = directions.clone();
+        }
+
+        public int size() {
+            return xs.length;
+        }
+
+        public int getX(int i) {
+            return xs[i];
+        }
+
+        public int getY(int i) {
+            return ys[i];
+        }
+
+        public char getDirection(int i) {
+            return directions[i];
+        }
+
+        @Override
+        public String toString() {
+            return "ObstaclePlot(" + xs.length + " obstacles)";
+        }
+    }
+
+    /*
+     * COMMAND,<type><distance>, e.g. COMMAND,SF050
+     */
+    public static final class MoveCommand extends ProtocolMessage {
+        public enum Type {
+            SF, SB, RF, RB, LF, LB, JF, JB, KF, KB;
+
+            private static final Type[] VALUES = values();
+
+            /*
+             * Looks the type up from its two ASCII characters without building a String
+             */
+            public static Type fromBytes(byte first, byte second) {
+                for (Type type : VALUES) {
+                    String name = type.name();
+                    if (name.charAt(0) == first && name.charAt(1) == second) {
+                        return type;
+                    }
+                }
+                return null;
+            }
+        }
+
+        public final Type type;
+        // Distance as sent (e.g. 50 for "SF050"), 0 for moves that do not take one
+        public final int distance;
+
+        public MoveCommand(Type type, int distance) {
+            this.type = type;
+            this.distance = distance;
+        }
+
+        @Override
+        public String toString() {
+            return "MoveCommand(" + type + "," + distance + ")";
+        }
+    }
+
+    /*
+     * ACK,<sequence number>
+     * Cumulative: everything up to and including the sequence number reached the RPi,
+     * see ReplayBuffer
+     */
+    public static final class Ack extends ProtocolMessage {
+        public final int sequence;
+
+        public Ack(int sequence) {
+            this.sequence = sequence;
+        }
+
+        @Override
+        public String toString() {
+            return "Ack(" + sequence + ")";
+        }
+    }
+
+    /*
+     * PONG,<id>
+     * Answer to a "PING,<id>" from the tablet, used to measure round trip time
+     */
+    public static final class Pong extends ProtocolMessage {
+        public final int id;
+
+        public Pong(int id) {
+            this.id = id;
+        }
+
+        @Override
+        public String toString() {
+            return "Pong(" + id + ")";
+        }
+    }
+}
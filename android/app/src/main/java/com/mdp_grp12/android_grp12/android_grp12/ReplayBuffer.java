@@ -0,0 +1,143 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Bounded, sequence-numbered log of outbound messages that have not been confirmed yet.
+ * OutboundLink appends every write here and replays what is left, oldest first, after
+ * the link comes back, so commands issued while the socket was down are not lost.
+ *
+ * An entry is released either when the writer has flushed it (RPi without ACK support),
+ * or when the RPi acknowledges its sequence number. In the sequenced mode every message
+ * goes out as "SEQ,<n>,<payload>" so the RPi can drop replays it already executed.
+ */
+public class ReplayBuffer {
+    public interface EntryVisitor {
+        void visit(int sequence, byte[] payload);
+    }
+
+    private static final byte[] SEQ_PREFIX = "SEQ,".getBytes(StandardCharsets.US_ASCII);
+
+    private final int[] sequences;
+    private final byte[][] payloads;
+    private int head = 0;
+    private int size = 0;
+    private int nextSequence = 1;
+
+    private long acknowledged = 0;
+    private long rejected = 0;
+
+    public ReplayBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        sequences = new int[capacity];
+        payloads = new byte[capacity][];
+    }
+
+    /*
+     * Returns the sequence number given to the payload, or -1 if the buffer is full
+     */
+    public synchronized int append(byte[] payload) {
+        if (size == payloads.length) {
+            rejected++;
+            return -1;
+        }
+        int tail = (head + size) % payloads.length;
+        int sequence = nextSequence++;
+        sequences[tail] = sequence;
+        payloads[tail] = payload;
+        size++;
+        return sequence;
+    }
+
+    /*
+     * Undoes append() when the message could not be handed to the link after all
+     */
+    public synchronized void removeNewest(int sequence) {
+        if (size == 0) {
+            return;
+        }
+        int tail = (head + size - 1) % payloads.length;
+        if (sequences[tail] == sequence) {
+            payloads[tail] = null;
+            size--;
+        }
+    }
+
+    /*
+     * Releases the oldest entry if it is this exact payload instance. Used after a flush
+     * when the RPi does not acknowledge; anything else in the write stream is ignored.
+     */
+    public synchronized boolean releaseIfOldest(byte[] payload) {
+        if (size == 0 || payloads[head] != payload) {
+            return false;
+        }
+        dropOldest();
+        return true;
+    }
+
+    /*
+     * Releases every entry up to and including sequence. Returns how many were released.
+     */
+    public synchronized int acknowledge(int sequence) {
+        int released = 0;
+        while (size > 0 && sequences[head] - sequence <= 0) {
+            dropOldest();
+            released++;
+        }
+        acknowledged += released;
+        return released;
+    }
+
+    /*
+     * Visits the unreleased entries, oldest first
+     */
+    public synchronized void forEach(EntryVisitor visitor) {
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % payloads.length;
+            visitor.visit(sequences[index], payloads[index]);
+        }
+    }
+
+    public synchronized void clear() {
+        while (size > 0) {
+            dropOldest();
+        }
+    }
+
+    private void dropOldest() {
+        payloads[head] = null;
+        head = (head + 1) % payloads.length;
+        size--;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return payloads.length;
+    }
+
+    public synchronized long getAcknowledged() {
+        return acknowledged;
+    }
+
+    public synchronized long getRejected() {
+        return rejected;
+    }
+
+    /*
+     * SEQ,<sequence>,<payload>
+     */
+    public static byte[] envelope(int sequence, byte[] payload) {
+        byte[] digits = Integer.toString(sequence).getBytes(StandardCharsets.US_ASCII);
+        byte[] out = new byte[SEQ_PREFIX.length + digits.length + 1 + payload.length];
+        System.arraycopy(SEQ_PREFIX, 0, out, 0, SEQ_PREFIX.length);
+        System.arraycopy(digits, 0, out, SEQ_PREFIX.length, digits.length);
+        out[SEQ_PREFIX.length + digits.length] = ',';
+        System.arraycopy(payload, 0, out, SEQ_PREFIX.length + digits.length + 1, payload.length);
+        return out;
+    }
+}
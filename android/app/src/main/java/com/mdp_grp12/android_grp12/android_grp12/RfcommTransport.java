@@ -0,0 +1,55 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import android.annotation.SuppressLint;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.bluetooth.BluetoothSocket;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.UUID;
+
+/*
+ * The RPi over a Bluetooth RFCOMM socket, the transport the app uses
+ */
+public class RfcommTransport implements Transport {
+    private final BluetoothAdapter adapter;
+    private final BluetoothDevice device;
+    private final BluetoothSocket socket;
+
+    @SuppressLint("MissingPermission")
+    public RfcommTransport(BluetoothAdapter adapter, BluetoothDevice device, UUID uuid) throws IOException {
+        this.adapter = adapter;
+        this.device = device;
+        socket = device.createRfcommSocketToServiceRecord(uuid);
+    }
+
+    @SuppressLint("MissingPermission")
+    @Override
+    public void connect() throws IOException {
+        // Discovery slows the connect down a lot
+        adapter.cancelDiscovery();
+        socket.connect();
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return socket.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        return socket.getOutputStream();
+    }
+
+    @Override
+    public String describe() {
+        return device.getAddress();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,126 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/*
+ * Appends every chunk read from and frame written to the RPi link to a log file, so a
+ * run can be looked at and replayed later, see SessionReplayer.
+ *
+ * The file starts with MAGIC, VERSION, the wall clock time of the start and the state the
+ * inbound bytes are decoded in: the FrameDecoder.Mode ordinal and whether the binary
+ * protocol is on. Every record is its type, the System.nanoTime() since the previous
+ * record and the length, the last two as unsigned varints, then the bytes as they were
+ * on the wire. Writes go through a 64 KB buffer, the reader and writer threads may
+ * record concurrently.
+ */
+public class SessionRecorder implements Closeable {
+    static final int MAGIC = 0x4D445053; // "MDPS"
+    static final int VERSION = 2;
+    static final int HEADER_LENGTH = 15;
+    // Record types
+    public static final int INBOUND = 1;
+    public static final int OUTBOUND = 2;
+    // No bytes, the reader found nothing more waiting, see InboundDecoder.onIdle()
+    public static final int IDLE = 3;
+    // A new connection's decoder, the mode ordinal and binary flag as in the header
+    public static final int MODE = 4;
+
+    private static final byte[] NO_BYTES = new byte[0];
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private final DataOutputStream out;
+    private long lastNanos;
+    private long records;
+    private boolean closed;
+
+    /*
+     * mode and binary are what the link decodes in right now, a replay starts out the same
+     */
+    public SessionRecorder(File file, FrameDecoder.Mode mode, boolean binary) throws IOException {
+        this.file = file;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(System.currentTimeMillis());
+        out.writeByte(mode.ordinal());
+        out.writeBoolean(binary);
+        lastNanos = System.nanoTime();
+    }
+
+    public void recordInbound(byte[] data, int offset, int length) {
+        record(INBOUND, System.nanoTime(), data, offset, length);
+    }
+
+    public void recordOutbound(byte[] data, int offset, int length) {
+        record(OUTBOUND, System.nanoTime(), data, offset, length);
+    }
+
+    public void recordIdle() {
+        record(IDLE, System.nanoTime(), NO_BYTES, 0, 0);
+    }
+
+    // A connection made while recording starts decoding afresh
+    public void recordMode(FrameDecoder.Mode mode, boolean binary) {
+        byte[] state = {(byte) mode.ordinal(), (byte) (binary ? 1 : 0)};
+        record(MODE, System.nanoTime(), state, 0, state.length);
+    }
+
+    /*
+     * Records taken out of order by the two threads keep a delta of 0. A failed write
+     * stops the recording, the link carries on.
+     */
+    synchronized void record(int type, long nanos, byte[] data, int offset, int length) {
+        if (closed) {
+            return;
+        }
+        try {
+            out.writeByte(type);
+            writeVarint(out, Math.max(0, nanos - lastNanos));
+            writeVarint(out, length);
+            out.write(data, offset, length);
+            lastNanos = Math.max(lastNanos, nanos);
+            records++;
+        } catch (IOException e) {
+            closeQuietly();
+        }
+    }
+
+    public synchronized long getRecords() {
+        return records;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            out.close();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            // Already failing
+        }
+    }
+
+    static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+}
@@ -0,0 +1,163 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Plays a SessionRecorder log back into a Sink with the recorded timing, sped up by a
+ * factor, or with no pauses at all for AS_FAST_AS_POSSIBLE. The file is memory mapped
+ * and every record handed over from one reused buffer, so the replay itself costs next
+ * to nothing next to the decoding and rendering it drives.
+ *
+ * Runs on the calling thread, an interrupt stops it between records.
+ */
+public class SessionReplayer {
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+
+    public interface Sink {
+        // How the inbound bytes that follow were decoded: from the header before the first
+        // record, then again for every connection made during the recording
+        void onMode(FrameDecoder.Mode mode, boolean binary);
+
+        // Bytes as they were read from the RPi, offset is always 0
+        void onInbound(byte[] data, int offset, int length);
+
+        // A frame as it was written to the RPi
+        void onOutbound(byte[] data, int offset, int length);
+
+        // Nothing more was waiting on the link at this point
+        void onIdle();
+    }
+
+    public static final class Stats {
+        public final long records;
+        public final long inboundBytes;
+        // Length of the recorded session and of the replay
+        public final long recordedNanos;
+        public final long elapsedNanos;
+        // False if the log ends in a record cut short
+        public final boolean complete;
+
+        Stats(long records, long inboundBytes, long recordedNanos, long elapsedNanos, boolean complete) {
+            this.records = records;
+            this.inboundBytes = inboundBytes;
+            this.recordedNanos = recordedNanos;
+            this.elapsedNanos = elapsedNanos;
+            this.complete = complete;
+        }
+    }
+
+    /*
+     * Speed 1 is real time, 10 ten times as fast. Throws IOException if the file is not a
+     * session log, InterruptedException if the thread was interrupted during the replay.
+     */
+    public static Stats replay(File log, double speed, Sink sink) throws IOException, InterruptedException {
+        if (speed < 0) {
+            throw new IllegalArgumentException("Negative speed " + speed);
+        }
+        ByteBuffer data;
+        try (RandomAccessFile file = new RandomAccessFile(log, "r"); FileChannel channel = file.getChannel()) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (data.remaining() < SessionRecorder.HEADER_LENGTH || data.getInt() != SessionRecorder.MAGIC
+                || data.get() != SessionRecorder.VERSION) {
+            throw new IOException("Not a session log: " + log);
+        }
+        data.getLong();
+        FrameDecoder.Mode mode = modeOf(data.get());
+        boolean binary = data.get() != 0;
+        if (mode == null) {
+            throw new IOException("Unknown frame mode in " + log);
+        }
+        sink.onMode(mode, binary);
+
+        byte[] buffer = new byte[1024];
+        long records = 0;
+        long inboundBytes = 0;
+        long recordedNanos = 0;
+        long start = System.nanoTime();
+        boolean complete = true;
+        while (data.hasRemaining()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            int type;
+            int length;
+            try {
+                type = data.get();
+                recordedNanos += readVarint(data);
+                length = (int) readVarint(data);
+                if (length < 0 || length > data.remaining()) {
+                    complete = false;
+                    break;
+                }
+            } catch (BufferUnderflowException e) {
+                complete = false;
+                break;
+            }
+            if (length > buffer.length) {
+                buffer = new byte[Math.max(length, 2 * buffer.length)];
+            }
+            data.get(buffer, 0, length);
+
+            if (speed != AS_FAST_AS_POSSIBLE) {
+                waitUntil(start + (long) (recordedNanos / speed));
+            }
+            switch (type) {
+                case SessionRecorder.INBOUND:
+                    sink.onInbound(buffer, 0, length);
+                    inboundBytes += length;
+                    break;
+                case SessionRecorder.OUTBOUND:
+                    sink.onOutbound(buffer, 0, length);
+                    break;
+                case SessionRecorder.IDLE:
+                    sink.onIdle();
+                    break;
+                case SessionRecorder.MODE:
+                    mode = length == 2 ? modeOf(buffer[0]) : null;
+                    if (mode != null) {
+                        sink.onMode(mode, buffer[1] != 0);
+                    }
+                    break;
+                default:
+                    // Written by a newer recorder, skipped
+                    break;
+            }
+            records++;
+        }
+        return new Stats(records, inboundBytes, recordedNanos, System.nanoTime() - start, complete);
+    }
+
+    private static void waitUntil(long deadline) throws InterruptedException {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private static FrameDecoder.Mode modeOf(byte ordinal) {
+        FrameDecoder.Mode[] modes = FrameDecoder.Mode.values();
+        return ordinal >= 0 && ordinal < modes.length ? modes[ordinal] : null;
+    }
+
+    static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new BufferUnderflowException();
+    }
+}
@@ -0,0 +1,413 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/*
+ * Keeps the car pose and obstacles on disk while the arena is used, so the arena comes
+ * back as it was left, after a crash too.
+ *
+ * Follows ArenaState as a listener and only marks what changed. The changes are written
+ * DEBOUNCE_MS after the first of them, on a background thread, as one batch of records
+ * appended to a journal and synced. Only fields that differ from what was last written
+ * make it into a batch. Once the journal holds COMPACT_AFTER records the whole state is
+ * written as a snapshot and the journal starts over.
+ *
+ * Restoring reads the snapshot and replays the journal batches written after it. A batch
+ * cut short by a crash fails its CRC32 and is dropped along with anything after it.
+ * Targets are not kept, they come from the RPi again.
+ */
+public class StateCheckpointer implements ArenaState.Listener {
+    public static final long DEBOUNCE_MS = 250;
+    static final int COMPACT_AFTER = 512;
+
+    private static final int SNAPSHOT_MAGIC = 0x434B534E; // "CKSN"
+    private static final int BATCH_MAGIC = 0x434B4A42; // "CKJB"
+    private static final int VERSION = 1;
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String JOURNAL_FILE = "journal.bin";
+    private static final int ROBOT_RECORD = 1;
+    private static final int OBSTACLE_RECORD = 2;
+
+    private final File directory;
+    private final long debounceMs;
+    private final ScheduledExecutorService executor =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "StateCheckpointer"));
+
+    private ArenaState state;
+
+    // What changed since the last batch, guarded by this
+    private boolean robotDirty;
+    private boolean[] obstacleDirty;
+    private ScheduledFuture<?> pending;
+
+    // What is on disk, only touched on the background thread
+    private int robotX;
+    private int robotY;
+    private int robotDirection;
+    private int[] obstacleX;
+    private int[] obstacleY;
+    private int[] obstacleFace;
+    private long sequence;
+    private int journalRecords;
+    // The journal may end in a torn batch, the next changes go into a snapshot instead
+    private boolean snapshotDue;
+    private FileOutputStream journal;
+    private int recordCount;
+
+    public StateCheckpointer(File directory) {
+        this(directory, DEBOUNCE_MS);
+    }
+
+    StateCheckpointer(File directory, long debounceMs) {
+        this.directory = directory;
+        this.debounceMs = debounceMs;
+    }
+
+    /*
+     * ======================
+     * Public API
+     * ======================
+     */
+
+    /*
+     * Restores the saved arena into the state in the background, then follows it. Changes
+     * made before the restore is done are overwritten by it.
+     */
+    public Future<?> attach(ArenaState state) {
+        this.state = state;
+        synchronized (this) {
+            obstacleDirty = new boolean[state.getObstacleCount()];
+        }
+        return executor.submit(() -> {
+            restore();
+            state.addListener(this);
+            return null;
+        });
+    }
+
+    /*
+     * Writes what changed now instead of after the debounce, without waiting for it
+     */
+    public Future<?> flush() {
+        return executor.submit(() -> {
+            writeChanges();
+            return null;
+        });
+    }
+
+    /*
+     * Stops following the state. What changed is still written, then the thread ends.
+     */
+    public void close() {
+        if (state != null) {
+            state.removeListener(this);
+        }
+        flush();
+        executor.execute(this::closeJournal);
+        executor.shutdown();
+    }
+
+    // Records written to the journal so far, for tests
+    synchronized int getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public synchronized void onRobotChanged(ArenaState state) {
+        robotDirty = true;
+        schedule();
+    }
+
+    @Override
+    public synchronized void onObstacleChanged(ArenaState state, int index) {
+        obstacleDirty[index] = true;
+        schedule();
+    }
+
+    // Guarded by this
+    private void schedule() {
+        if (pending == null && !executor.isShutdown()) {
+            pending = executor.schedule(this::writeChanges, debounceMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /*
+     * ======================
+     * Journal
+     * ======================
+     */
+
+    private void writeChanges() {
+        boolean robot;
+        boolean[] obstacles;
+        synchronized (this) {
+            if (pending != null) {
+                pending.cancel(false);
+                pending = null;
+            }
+            robot = robotDirty;
+            robotDirty = false;
+            obstacles = obstacleDirty.clone();
+            Arrays.fill(obstacleDirty, false);
+        }
+
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(payload);
+        int records = 0;
+        try {
+            if (robot) {
+                int x = state.getRobotX();
+                int y = state.getRobotY();
+                int direction = state.getRobotDirection();
+                if (x != robotX || y != robotY || direction != robotDirection) {
+                    out.writeByte(ROBOT_RECORD);
+                    out.writeShort(x);
+                    out.writeShort(y);
+                    out.writeByte(direction);
+                    robotX = x;
+                    robotY = y;
+                    robotDirection = direction;
+                    records++;
+                }
+            }
+            for (int i = 0; i < obstacles.length; i++) {
+                if (!obstacles[i]) {
+                    continue;
+                }
+                int x = state.getObstacleX(i);
+                int y = state.getObstacleY(i);
+                int face = state.getObstacleFace(i);
+                if (x == obstacleX[i] && y == obstacleY[i] && face == obstacleFace[i]) {
+                    continue;
+                }
+                out.writeByte(OBSTACLE_RECORD);
+                out.writeShort(i);
+                out.writeShort(x);
+                out.writeShort(y);
+                out.writeByte(face);
+                obstacleX[i] = x;
+                obstacleY[i] = y;
+                obstacleFace[i] = face;
+                records++;
+            }
+            if (records == 0) {
+                return;
+            }
+            if (snapshotDue || journalRecords + records >= COMPACT_AFTER) {
+                // The snapshot holds these changes already
+                writeSnapshot();
+            } else {
+                appendBatch(payload.toByteArray());
+                journalRecords += records;
+            }
+            synchronized (this) {
+                recordCount += records;
+            }
+        } catch (IOException e) {
+            snapshotDue = true;
+        }
+    }
+
+    private void appendBatch(byte[] payload) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(payload.length + 24);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(BATCH_MAGIC);
+        out.writeLong(++sequence);
+        out.writeInt(payload.length);
+        out.write(payload);
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray(), 0, bytes.size());
+        out.writeInt((int) crc.getValue());
+
+        if (journal == null) {
+            journal = new FileOutputStream(new File(directory, JOURNAL_FILE), true);
+        }
+        bytes.writeTo(journal);
+        journal.getFD().sync();
+    }
+
+    private void closeJournal() {
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                // Everything written was synced already
+            }
+            journal = null;
+        }
+    }
+
+    /*
+     * ======================
+     * Snapshot
+     * ======================
+     */
+
+    /*
+     * Writes everything last written as a snapshot, then empties the journal. Batches the
+     * journal still holds after a crash in between are older than the snapshot and skipped.
+     */
+    private void writeSnapshot() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + 8 * obstacleX.length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(++sequence);
+        out.writeShort(robotX);
+        out.writeShort(robotY);
+        out.writeByte(robotDirection);
+        out.writeShort(obstacleX.length);
+        for (int i = 0; i < obstacleX.length; i++) {
+            out.writeShort(obstacleX[i]);
+            out.writeShort(obstacleY[i]);
+            out.writeByte(obstacleFace[i]);
+        }
+        LayoutStore.writeAtomically(new File(directory, SNAPSHOT_FILE), bytes);
+
+        closeJournal();
+        journal = new FileOutputStream(new File(directory, JOURNAL_FILE), false);
+        journal.getFD().sync();
+        journalRecords = 0;
+        snapshotDue = false;
+    }
+
+    /*
+     * Snapshot plus journal into the state, or the state as it is if nothing was saved.
+     * Ends with a fresh snapshot so the journal never carries a torn tail forward.
+     */
+    private void restore() {
+        directory.mkdirs();
+        int count = state.getObstacleCount();
+        robotX = state.getRobotX();
+        robotY = state.getRobotY();
+        robotDirection = state.getRobotDirection();
+        obstacleX = new int[count];
+        obstacleY = new int[count];
+        obstacleFace = new int[count];
+        for (int i = 0; i < count; i++) {
+            obstacleX[i] = state.getObstacleX(i);
+            obstacleY[i] = state.getObstacleY(i);
+            obstacleFace[i] = state.getObstacleFace(i);
+        }
+
+        try {
+            long snapshotSequence = readSnapshot();
+            sequence = snapshotSequence;
+            replayJournal(snapshotSequence);
+        } catch (IOException e) {
+            // Whatever was read before the damage is kept
+        }
+
+        for (int i = 0; i < count; i++) {
+            state.placeObstacle(i, obstacleX[i], obstacleY[i]);
+            state.setObstacleFace(i, obstacleFace[i]);
+            // Off the arena comes back as OFF_ARENA whatever was saved
+            obstacleX[i] = state.getObstacleX(i);
+            obstacleY[i] = state.getObstacleY(i);
+        }
+        state.applyPose(robotX, robotY, robotDirection);
+        robotDirection = state.getRobotDirection();
+        try {
+            writeSnapshot();
+        } catch (IOException e) {
+            snapshotDue = true;
+        }
+    }
+
+    // Sequence of the snapshot, 0 if there is none
+    private long readSnapshot() throws IOException {
+        DataInputStream in = LayoutStore.readVerified(new File(directory, SNAPSHOT_FILE), SNAPSHOT_MAGIC);
+        if (in == null) {
+            return 0;
+        }
+        long snapshotSequence = in.readLong();
+        robotX = in.readShort();
+        robotY = in.readShort();
+        robotDirection = in.readByte();
+        int saved = in.readShort();
+        for (int i = 0; i < saved; i++) {
+            int x = in.readShort();
+            int y = in.readShort();
+            int face = in.readByte();
+            // Extra obstacles from a bigger arena are dropped
+            if (i < obstacleX.length) {
+                obstacleX[i] = x;
+                obstacleY[i] = y;
+                obstacleFace[i] = face;
+            }
+        }
+        return snapshotSequence;
+    }
+
+    private void replayJournal(long after) throws IOException {
+        File file = new File(directory, JOURNAL_FILE);
+        if (!file.isFile()) {
+            return;
+        }
+        byte[] data = new byte[(int) file.length()];
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            in.readFully(data);
+        }
+        int offset = 0;
+        // Magic, sequence, length and CRC around each payload
+        while (data.length - offset >= 20) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, offset, data.length - offset));
+            if (in.readInt() != BATCH_MAGIC) {
+                return;
+            }
+            long batchSequence = in.readLong();
+            int length = in.readInt();
+            if (length < 0 || length > data.length - offset - 20) {
+                return;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data, offset, 16 + length);
+            in.skipBytes(length);
+            if (in.readInt() != (int) crc.getValue()) {
+                return;
+            }
+            if (batchSequence > after) {
+                applyBatch(new DataInputStream(new ByteArrayInputStream(data, offset + 16, length)));
+                sequence = Math.max(sequence, batchSequence);
+            }
+            offset += 20 + length;
+        }
+    }
+
+    private void applyBatch(DataInputStream in) throws IOException {
+        while (in.available() > 0) {
+            int type = in.readByte();
+            if (type == ROBOT_RECORD) {
+                robotX = in.readShort();
+                robotY = in.readShort();
+                robotDirection = in.readByte();
+            } else if (type == OBSTACLE_RECORD) {
+                int index = in.readShort();
+                int x = in.readShort();
+                int y = in.readShort();
+                int face = in.readByte();
+                if (index >= 0 && index < obstacleX.length) {
+                    obstacleX[index] = x;
+                    obstacleY[index] = y;
+                    obstacleFace[index] = face;
+                }
+            } else {
+                throw new IOException("Unknown record " + type);
+            }
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/*
+ * A byte stream link to the RPi. BluetoothService only sees this, so its read loop,
+ * LinkReader, runs the same over RFCOMM on the tablet and over LoopbackTransport in a
+ * JVM test.
+ */
+public interface Transport extends Closeable {
+    /*
+     * Makes a new, not yet connected transport for every connection attempt
+     */
+    interface Factory {
+        Transport create() throws IOException;
+    }
+
+    // Blocks until connected or failed. close() from another thread aborts it.
+    void connect() throws IOException;
+
+    InputStream getInputStream() throws IOException;
+
+    OutputStream getOutputStream() throws IOException;
+
+    // Who is on the other end, for logs
+    String describe();
+}
@@ -0,0 +1,144 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import java.util.Arrays;
+
+/*
+ * Cells the robot has passed through, one bit per cell. Inserting is O(1) and visiting
+ * a cell twice costs nothing, so the trail stays the size of the arena however long the
+ * run is. Drawing walks the set bits only.
+ *
+ * Optionally keeps the ordered path (consecutive duplicates dropped) for replaying a run.
+ */
+public class VisitedTrail {
+    private final int cols;
+    private final int rows;
+    private final long[] bits;
+    private int visitedCount = 0;
+
+    private boolean pathLogging = false;
+    // Cell index (y * cols + x) of each step, grown on demand
+    private int[] path = new int[0];
+    private int pathLength = 0;
+
+    public VisitedTrail(int cols, int rows) {
+        this.cols = cols;
+        this.rows = rows;
+        this.bits = new long[(cols * rows + 63) >>> 6];
+    }
+
+    /*
+     * Marks the cell as visited. Returns true if it was not visited before.
+     * Cells outside the arena are ignored.
+     */
+    public boolean visit(int x, int y) {
+        if (x < 0 || y < 0 || x >= cols || y >= rows) {
+            return false;
+        }
+        int cell = y * cols + x;
+        if (pathLogging && (pathLength == 0 || path[pathLength - 1] != cell)) {
+            appendPath(cell);
+        }
+
+        long mask = 1L << cell;
+        int word = cell >>> 6;
+        if ((bits[word] & mask) != 0) {
+            return false;
+        }
+        bits[word] |= mask;
+        visitedCount++;
+        return true;
+    }
+
+    public boolean isVisited(int x, int y) {
+        if (x < 0 || y < 0 || x >= cols || y >= rows) {
+            return false;
+        }
+        int cell = y * cols + x;
+        return (bits[cell >>> 6] & (1L << cell)) != 0;
+    }
+
+    /*
+     * Index of the first visited cell at or after fromCell, -1 if there is none.
+     * Walk the trail with:
+     *   for (int c = trail.nextVisited(0); c >= 0; c = trail.nextVisited(c + 1))
+     */
+    public int nextVisited(int fromCell) {
+        int total = cols * rows;
+        if (fromCell >= total) {
+            return -1;
+        }
+        int word = fromCell >>> 6;
+        long current = bits[word] & (-1L << fromCell);
+        while (true) {
+            if (current != 0) {
+                int cell = (word << 6) + Long.numberOfTrailingZeros(current);
+                return cell < total ? cell : -1;
+            }
+            if (++word == bits.length) {
+                return -1;
+            }
+            current = bits[word];
+        }
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int cellX(int cell) {
+        return cell % cols;
+    }
+
+    public int cellY(int cell) {
+        return cell / cols;
+    }
+
+    public int getVisitedCount() {
+        return visitedCount;
+    }
+
+    public void clear() {
+        Arrays.fill(bits, 0L);
+        visitedCount = 0;
+        pathLength = 0;
+    }
+
+    /*
+     * ======================
+     * Ordered path log
+     * ======================
+     */
+
+    public void setPathLogging(boolean enabled) {
+        pathLogging = enabled;
+    }
+
+    public boolean isPathLogging() {
+        return pathLogging;
+    }
+
+    public int getPathLength() {
+        return pathLength;
+    }
+
+    public int getPathX(int step) {
+        return path[step] % cols;
+    }
+
+    public int getPathY(int step) {
+        return path[step] / cols;
+    }
+
+    private void appendPath(int cell) {
+        if (pathLength == path.length) {
+            int[] grown = new int[Math.max(64, path.length * 2)];
+            System.arraycopy(path, 0, grown, 0, pathLength);
+            path = grown;
+        }
+        path[pathLength++] = cell;
+    }
+}
@@ -0,0 +1,122 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Apply/notify behaviour and obstacle serialisation of the headless arena model.
+ */
+public class ArenaStateTest {
+
+    private static class Recorder implements ArenaState.Listener {
+        int robotChanges = 0;
+        final List<Integer> obstacleChanges = new ArrayList<>();
+
+        @Override
+        public void onRobotChanged(ArenaState state) {
+            robotChanges++;
+        }
+
+        @Override
+        public void onObstacleChanged(ArenaState state, int index) {
+            obstacleChanges.add(index);
+        }
+    }
+
+    @Test
+    public void pose_notifiesOnlyOnChange() {
+        ArenaState state = new ArenaState(20, 20, 8);
+        Recorder recorder = new Recorder();
+        state.addListener(recorder);
+
+        state.applyPose(ArenaState.START_X, ArenaState.START_Y, 0);
+        assertEquals(0, recorder.robotChanges);
+
+        assertTrue(state.apply(new ProtocolMessage.RobotPose(5, 7, 10)));
+        assertEquals(1, recorder.robotChanges);
+        assertEquals(5, state.getRobotX());
+        assertEquals(7, state.getRobotY());
+        assertEquals(2, state.getRobotDirection());
+    }
+
+    @Test
+    public void obstacle_outsideArenaGoesBackToTray() {
+        ArenaState state = new ArenaState(20, 20, 8);
+        Recorder recorder = new Recorder();
+        state.addListener(recorder);
+
+        state.placeObstacle(3, 4, 19);
+        assertTrue(state.isPlaced(3));
+        assertEquals(1, state.getPlacedCount());
+
+        state.placeObstacle(3, 20, 5);
+        assertFalse(state.isPlaced(3));
+        assertEquals(ArenaState.OFF_ARENA, state.getObstacleX(3));
+        assertEquals(0, state.getPlacedCount());
+        assertEquals(2, recorder.obstacleChanges.size());
+    }
+
+    @Test
+    public void obstacleCommand_keepsAlgorithmFormat() {
+        ArenaState state = new ArenaState(20, 20, 3);
+        state.placeObstacle(0, 2, 3);
+        state.placeObstacle(2, 10, 11);
+        state.rotateObstacle(2);
+        state.rotateObstacle(2);
+
+        assertEquals("ALG:2,3,N,0;1;10,11,S,2;", state.obstacleCommand());
+    }
+
+    @Test
+    public void plotAndTarget_areApplied() {
+        ArenaState state = new ArenaState(20, 20, 2);
+        ProtocolMessage.ObstaclePlot plot = new ProtocolMessage.ObstaclePlot(
+                new int[]{1, 6, 9}, new int[]{2, 7, 9}, new char[]{'E', 'W', 'N'});
+        state.apply(plot);
+
+        assertEquals(1, state.getObstacleX(0));
+        assertEquals(ArenaState.FACE_E, state.getObstacleFace(0));
+        assertEquals(ArenaState.FACE_W, state.getObstacleFace(1));
+
+        assertTrue(state.apply(new ProtocolMessage.TargetUpdate(1, 23)));
+        assertEquals(23, state.getObstacleTarget(1));
+        // Obstacle numbers come from the RPi and may be out of range
+        assertFalse(state.setTarget(5, 11));
+
+        state.reset();
+        assertEquals(0, state.getPlacedCount());
+        assertEquals(ArenaState.NO_TARGET, state.getObstacleTarget(1));
+    }
+
+    @Test
+    public void encodedObstacles_roundTripAcrossCounts() {
+        ArenaState dense = new ArenaState(20, 20, 64);
+        for (int i = 0; i < 64; i++) {
+            dense.placeObstacle(i, i % 20, i / 20);
+            dense.setObstacleFace(i, i);
+        }
+        String encoded = dense.encodeObstacles();
+
+        ArenaState copy = new ArenaState(20, 20, 64);
+        assertTrue(copy.decodeObstacles(encoded));
+        assertEquals(encoded, copy.encodeObstacles());
+        assertEquals(64, copy.getPlacedCount());
+
+        // Fewer obstacles keep the first entries, more obstacles put the rest in the tray
+        ArenaState small = new ArenaState(20, 20, 8);
+        assertTrue(small.decodeObstacles(encoded));
+        assertEquals(7, small.getObstacleX(7));
+        assertEquals(ArenaState.FACE_W, small.getObstacleFace(7));
+        ArenaState large = new ArenaState(20, 20, 64);
+        assertTrue(large.decodeObstacles(small.encodeObstacles()));
+        assertEquals(8, large.getPlacedCount());
+
+        assertFalse(large.decodeObstacles("1,2,Q;"));
+        assertFalse(large.decodeObstacles("1,x,N;"));
+        assertEquals(8, large.getPlacedCount());
+    }
+}
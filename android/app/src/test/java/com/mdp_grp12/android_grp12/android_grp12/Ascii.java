@@ -0,0 +1,19 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Protocol text to bytes and back, for the tests of the write path.
+ */
+final class Ascii {
+    private Ascii() {
+    }
+
+    static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,147 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round-trip and frame size checks for the binary wire protocol against the ASCII one.
+ */
+public class BinaryCodecTest {
+
+    private static ProtocolMessage roundTrip(ProtocolMessage message) {
+        byte[] buf = new byte[BinaryCodec.encodedSizeBound(message)];
+        int n = BinaryCodec.encode(message, buf, 0);
+        return new BinaryCodec().decode(buf, 0, n);
+    }
+
+    @Test
+    public void robotPose_roundTrips() {
+        ProtocolMessage.RobotPose pose = (ProtocolMessage.RobotPose) roundTrip(
+                new ProtocolMessage.RobotPose(19, -3, 7));
+        assertEquals(19, pose.x);
+        assertEquals(-3, pose.y);
+        assertEquals(7, pose.direction);
+    }
+
+    @Test
+    public void targetAndCommand_roundTrip() {
+        ProtocolMessage.TargetUpdate target = (ProtocolMessage.TargetUpdate) roundTrip(
+                new ProtocolMessage.TargetUpdate(4, 38));
+        assertEquals(4, target.obstacleNumber);
+        assertEquals(38, target.targetId);
+
+        ProtocolMessage.MoveCommand command = (ProtocolMessage.MoveCommand) roundTrip(
+                new ProtocolMessage.MoveCommand(ProtocolMessage.MoveCommand.Type.KB, 1200));
+        assertEquals(ProtocolMessage.MoveCommand.Type.KB, command.type);
+        assertEquals(1200, command.distance);
+    }
+
+    @Test
+    public void statusAndPlot_roundTrip() {
+        ProtocolMessage.StatusUpdate status = (ProtocolMessage.StatusUpdate) roundTrip(
+                new ProtocolMessage.StatusUpdate("Looking for target", true));
+        assertEquals("Looking for target", status.text);
+        assertTrue(status.stopped);
+
+        ProtocolMessage.ObstaclePlot plot = (ProtocolMessage.ObstaclePlot) roundTrip(
+                new ProtocolMessage.ObstaclePlot(new int[] {1, 15}, new int[] {18, 0}, new char[] {'N', 'W'}));
+        assertEquals(2, plot.size());
+        assertEquals(15, plot.getX(1));
+        assertEquals(18, plot.getY(0));
+        assertEquals('W', plot.getDirection(1));
+    }
+
+    @Test
+    public void corruptedFrame_isRejected() {
+        byte[] buf = new byte[BinaryCodec.MAX_SMALL_MESSAGE];
+        int n = BinaryCodec.encode(new ProtocolMessage.RobotPose(5, 5, 0), buf, 0);
+        buf[1] ^= 0x04;
+
+        BinaryCodec codec = new BinaryCodec();
+        assertNull(codec.decode(buf, 0, n));
+        assertEquals(1, codec.getCrcFailures());
+    }
+
+    @Test
+    public void outboundAscii_isCarriedThroughFrameDecoder() {
+        List<ProtocolMessage> received = new ArrayList<>();
+        BinaryCodec codec = new BinaryCodec();
+        FrameDecoder decoder = new FrameDecoder(FrameDecoder.Mode.LENGTH_PREFIXED,
+                (frame, offset, length) -> received.add(codec.decode(frame, offset, length)));
+
+        byte[] move = BinaryCodec.encodeOutbound("SF050".getBytes(StandardCharsets.US_ASCII), 0, 5);
+        byte[] text = "STATUS,ready".getBytes(StandardCharsets.US_ASCII);
+        byte[] textFrame = BinaryCodec.encodeOutbound(text, 0, text.length);
+        decoder.feed(move, 0, move.length);
+        decoder.feed(textFrame, 0, textFrame.length);
+
+        assertEquals(2, received.size());
+        ProtocolMessage.MoveCommand command = (ProtocolMessage.MoveCommand) received.get(0);
+        assertEquals(ProtocolMessage.MoveCommand.Type.SF, command.type);
+        assertEquals(50, command.distance);
+        assertEquals("ready", ((ProtocolMessage.StatusUpdate) received.get(1)).text);
+    }
+
+    @Test
+    public void binaryLink_showsTheSameTextAsAnAsciiOne() {
+        MessageBus bus = new MessageBus(Runnable::run, Runnable::run);
+        List<String> shown = new ArrayList<>();
+        List<ProtocolMessage.StatusUpdate> statuses = new ArrayList<>();
+        bus.subscribe(MessageBus.INCOMING_MESSAGE, MessageBus.Delivery.POSTING, shown::add);
+        bus.subscribe(MessageBus.STATUS_UPDATE, MessageBus.Delivery.POSTING, statuses::add);
+        LinkMetrics metrics = new LinkMetrics();
+        InboundDecoder inbound = new InboundDecoder(bus, metrics, FrameDecoder.Mode.NEWLINE, null);
+        inbound.startBinary();
+
+        byte[] pose = new byte[BinaryCodec.MAX_SMALL_MESSAGE];
+        int n = BinaryCodec.encode(new ProtocolMessage.RobotPose(3, 4, 1), pose, 0);
+        byte[] poseFrame = FrameDecoder.lengthPrefix(Arrays.copyOf(pose, n));
+        inbound.feed(poseFrame, 0, poseFrame.length);
+        for (String text : new String[]{"Hello from the RPi", "STATUS,ready"}) {
+            byte[] ascii = text.getBytes(StandardCharsets.US_ASCII);
+            byte[] frame = BinaryCodec.encodeOutbound(ascii, 0, ascii.length);
+            inbound.feed(frame, 0, frame.length);
+        }
+
+        // Free text is not a failure, and every message reads as it would on the wire
+        assertEquals("[ROBOT,3,4,NE, Hello from the RPi, STATUS,ready]", shown.toString());
+        assertEquals("ready", statuses.get(0).text);
+        assertEquals(0, metrics.getParseFailures());
+        assertEquals(0, metrics.getCrcFailures());
+    }
+
+    @Test
+    public void robotPoseStream_binaryFramesAreAtMostHalfTheAsciiSize() {
+        byte[] binary = new byte[BinaryCodec.MAX_SMALL_MESSAGE];
+        ProtocolCodec asciiCodec = new ProtocolCodec();
+        BinaryCodec binaryCodec = new BinaryCodec();
+        long asciiBytes = 0;
+        long binaryBytes = 0;
+        int poses = 0;
+
+        // Every cell, the speed of each codec is compared in BinaryCodecBenchmark
+        for (int x = 0; x < 20; x++) {
+            for (int y = 0; y < 20; y++) {
+                byte[] ascii = ("ROBOT,<" + x + ">,<" + y + ">,<N>").getBytes(StandardCharsets.US_ASCII);
+                asciiBytes += ascii.length + 1; // newline delimiter
+                assertEquals(x, ((ProtocolMessage.RobotPose) asciiCodec.decode(ascii, 0, ascii.length)).x);
+
+                int n = BinaryCodec.encode(new ProtocolMessage.RobotPose(x, y, 0), binary, 0);
+                binaryBytes += n + 2; // length prefix
+                assertEquals(y, ((ProtocolMessage.RobotPose) binaryCodec.decode(binary, 0, n)).y);
+                poses++;
+            }
+        }
+        assertEquals(0, binaryCodec.getCrcFailures());
+
+        // On a fixed RFCOMM bandwidth the pose rate is bounded by bytes per pose
+        assertTrue(binaryBytes + " vs " + asciiBytes + " bytes for " + poses + " poses",
+                binaryBytes * 2 <= asciiBytes);
+    }
+}
@@ -0,0 +1,75 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import com.mdp_grp12.android_grp12.android_grp12.ProtocolMessage.MoveCommand;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Robot footprint, move sweeps and obstacle drops against the occupancy grid.
+ */
+public class CollisionCheckerTest {
+    private static final int N = 0;
+
+    private final ArenaState state = new ArenaState(20, 20, 8);
+    private final CollisionChecker checker = new CollisionChecker(20, 20, 8);
+    private final MotionModel.Step step = new MotionModel.Step();
+
+    {
+        state.addListener(checker);
+    }
+
+    @Test
+    public void footprint_mustStayOnTheArena() {
+        assertTrue(checker.isRobotFree(ArenaState.START_X, ArenaState.START_Y));
+        assertTrue(checker.isRobotFree(18, 18));
+        assertFalse(checker.isRobotFree(0, 5));
+        assertFalse(checker.isRobotFree(5, 19));
+
+        MotionModel.apply(1, 1, N, MoveCommand.Type.SB, 1, step);
+        assertEquals(0, checker.firstCollision(step));
+        MotionModel.apply(1, 1, N, MoveCommand.Type.SF, 17, step);
+        assertEquals(CollisionChecker.CLEAR, checker.firstCollision(step));
+        MotionModel.apply(1, 1, N, MoveCommand.Type.SF, 18, step);
+        assertEquals(17, checker.firstCollision(step));
+    }
+
+    @Test
+    public void obstacles_blockTheFootprintAroundThem() {
+        state.placeObstacle(0, 5, 5);
+        assertFalse(checker.isRobotFree(4, 4));
+        assertFalse(checker.isRobotFree(6, 6));
+        assertTrue(checker.isRobotFree(7, 5));
+
+        // The right turn's sideways leg from (3,1) passes (5,3) to (6,3), clear of the obstacle
+        MotionModel.apply(3, 1, N, MoveCommand.Type.RF, 0, step);
+        assertEquals(CollisionChecker.CLEAR, checker.firstCollision(step));
+        // Straight up column 5 hits the obstacle's footprint at (5,4)
+        MotionModel.apply(5, 1, N, MoveCommand.Type.SF, 5, step);
+        assertEquals(2, checker.firstCollision(step));
+
+        // Moving or removing the obstacle frees the cells again
+        state.placeObstacle(0, 15, 15);
+        assertTrue(checker.isRobotFree(4, 4));
+        state.reset();
+        assertTrue(checker.isRobotFree(14, 14));
+    }
+
+    @Test
+    public void obstacleDrops_avoidTheCarAndOtherObstacles() {
+        state.placeObstacle(0, 8, 8);
+        state.placeObstacle(1, 8, 8);
+
+        assertTrue(checker.isObstacleBlocked(2, 8, 8, 1, 1));
+        // Stacked obstacles still block each other
+        assertTrue(checker.isObstacleBlocked(0, 8, 8, 1, 1));
+        state.removeObstacle(1);
+        assertFalse(checker.isObstacleBlocked(0, 8, 8, 1, 1));
+
+        assertTrue(checker.isObstacleBlocked(2, 2, 0, 1, 1));
+        assertFalse(checker.isObstacleBlocked(2, 3, 0, 1, 1));
+        // Off the arena is the tray, never blocked
+        assertFalse(checker.isObstacleBlocked(2, -1, 4, 1, 1));
+    }
+}
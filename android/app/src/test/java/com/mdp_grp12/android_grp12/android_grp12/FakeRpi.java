@@ -0,0 +1,107 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stand-in for the RPi on the far end of a transport. Plays a script of ASCII protocol
+ * lines, keeps what the tablet sends and answers its PINGs.
+ */
+class FakeRpi {
+    private final Transport transport;
+    private final ByteArrayOutputStream script = new ByteArrayOutputStream();
+    private int scriptMessages;
+    private final List<String> received = Collections.synchronizedList(new ArrayList<>());
+    private Thread listener;
+
+    FakeRpi(Transport transport) {
+        this.transport = transport;
+    }
+
+    FakeRpi robot(int x, int y, String direction) {
+        return line("ROBOT," + x + "," + y + "," + direction);
+    }
+
+    FakeRpi target(int obstacle, int targetId) {
+        return line("TARGET," + obstacle + "," + targetId);
+    }
+
+    FakeRpi status(String text) {
+        return line("STATUS," + text);
+    }
+
+    FakeRpi command(String command) {
+        return line("COMMAND," + command);
+    }
+
+    FakeRpi line(String message) {
+        byte[] bytes = (message + "\n").getBytes(StandardCharsets.US_ASCII);
+        script.write(bytes, 0, bytes.length);
+        scriptMessages++;
+        return this;
+    }
+
+    int getScriptMessages() {
+        return scriptMessages;
+    }
+
+    /**
+     * Writes the script the given number of times from the calling thread, as fast as the
+     * tablet end reads it
+     */
+    void play(int times) throws IOException {
+        byte[] bytes = script.toByteArray();
+        OutputStream out = transport.getOutputStream();
+        for (int i = 0; i < times; i++) {
+            out.write(bytes);
+        }
+        out.flush();
+    }
+
+    /**
+     * Reads what the tablet sends on a background thread until the transport closes
+     */
+    void listen() {
+        listener = new Thread(() -> {
+            byte[] buffer = new byte[1024];
+            try {
+                InputStream in = transport.getInputStream();
+                OutputStream out = transport.getOutputStream();
+                int n;
+                while ((n = in.read(buffer)) >= 0) {
+                    String message = new String(buffer, 0, n, StandardCharsets.US_ASCII);
+                    received.add(message);
+                    if (message.startsWith("PING,")) {
+                        out.write(("PONG," + message.substring(5).trim() + "\n").getBytes(StandardCharsets.US_ASCII));
+                    }
+                }
+            } catch (IOException e) {
+                // Closed
+            }
+        }, "FakeRpi");
+        listener.start();
+    }
+
+    List<String> getReceived() {
+        synchronized (received) {
+            return new ArrayList<>(received);
+        }
+    }
+
+    void close() throws InterruptedException {
+        try {
+            transport.close();
+        } catch (IOException e) {
+            // Nothing left to do with it
+        }
+        if (listener != null) {
+            listener.join();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Reassembly of frames from reads that split and glue messages.
+ */
+public class FrameDecoderTest {
+    private final List<String> frames = new ArrayList<>();
+
+    private FrameDecoder decoder(FrameDecoder.Mode mode, int maxFrameLength) {
+        return new FrameDecoder(mode,
+                (frame, offset, length) -> frames.add(new String(frame, offset, length, StandardCharsets.US_ASCII)),
+                maxFrameLength);
+    }
+
+    private static void feed(FrameDecoder decoder, String chunk) {
+        byte[] bytes = chunk.getBytes(StandardCharsets.US_ASCII);
+        decoder.feed(bytes, 0, bytes.length);
+    }
+
+    @Test
+    public void splitAndCoalescedReads_giveWholeFrames() {
+        FrameDecoder decoder = decoder(FrameDecoder.Mode.NEWLINE, 64);
+        feed(decoder, "ROBOT,1,");
+        assertTrue(frames.isEmpty());
+        feed(decoder, "2,N\nTARGET,3,11\nSTA");
+        feed(decoder, "TUS,ok\r\n\n");
+        assertEquals(3, frames.size());
+        assertEquals("ROBOT,1,2,N", frames.get(0));
+        assertEquals("TARGET,3,11", frames.get(1));
+        // '\r' stripped, the empty line skipped
+        assertEquals("STATUS,ok", frames.get(2));
+        assertEquals(0, decoder.getPendingBytes());
+    }
+
+    @Test
+    public void unterminatedMessage_isDeliveredOnFlush() {
+        FrameDecoder decoder = decoder(FrameDecoder.Mode.NEWLINE, 64);
+        feed(decoder, "STATUS,Looking for target");
+        assertTrue(frames.isEmpty());
+        decoder.flush();
+        assertEquals(1, frames.size());
+        assertEquals("STATUS,Looking for target", frames.get(0));
+        // Nothing pending, nothing delivered
+        decoder.flush();
+        assertEquals(1, frames.size());
+    }
+
+    @Test
+    public void oversizedLine_isSkippedUpToItsEnd() {
+        FrameDecoder decoder = decoder(FrameDecoder.Mode.NEWLINE, 8);
+        feed(decoder, "0123456789");
+        feed(decoder, "ABCDEF\nOK\n");
+        assertEquals(1, frames.size());
+        assertEquals("OK", frames.get(0));
+        assertEquals(10, decoder.getBytesDiscarded());
+    }
+
+    @Test
+    public void lengthPrefixedFrames_waitForTheirLength() {
+        FrameDecoder decoder = decoder(FrameDecoder.Mode.LENGTH_PREFIXED, 64);
+        byte[] framed = FrameDecoder.lengthPrefix("PONG,7".getBytes(StandardCharsets.US_ASCII));
+        decoder.feed(framed, 0, 3);
+        decoder.flush();
+        assertTrue(frames.isEmpty());
+        decoder.feed(framed, 3, framed.length - 3);
+        assertEquals("PONG,7", frames.get(0));
+    }
+
+    @Test
+    public void modeSwitchInsideACallback_decodesTheRestInTheNewMode() {
+        byte[] binary = FrameDecoder.lengthPrefix("BIN".getBytes(StandardCharsets.US_ASCII));
+        byte[] ack = "PROTO,BIN\n".getBytes(StandardCharsets.US_ASCII);
+        byte[] chunk = new byte[ack.length + binary.length];
+        System.arraycopy(ack, 0, chunk, 0, ack.length);
+        System.arraycopy(binary, 0, chunk, ack.length, binary.length);
+
+        FrameDecoder[] decoder = new FrameDecoder[1];
+        decoder[0] = new FrameDecoder(FrameDecoder.Mode.NEWLINE, (frame, offset, length) -> {
+            String text = new String(frame, offset, length, StandardCharsets.US_ASCII);
+            frames.add(text);
+            if (text.equals("PROTO,BIN")) {
+                decoder[0].setMode(FrameDecoder.Mode.LENGTH_PREFIXED);
+            }
+        });
+        decoder[0].feed(chunk, 0, chunk.length);
+        assertEquals(FrameDecoder.Mode.LENGTH_PREFIXED, decoder[0].getMode());
+        assertEquals(2, frames.size());
+        assertEquals("BIN", frames.get(1));
+        assertEquals(0, decoder[0].getBytesDiscarded());
+    }
+}
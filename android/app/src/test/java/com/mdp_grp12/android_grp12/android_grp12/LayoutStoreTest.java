@@ -0,0 +1,202 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Saving, indexing and recovering layouts on disk.
+ */
+public class LayoutStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static LayoutStore.Layout layout(String name, long savedAt, int obstacleX) {
+        ArenaState state = new ArenaState(20, 20, 8);
+        state.placeObstacle(0, obstacleX, 4);
+        state.setObstacleFace(0, ArenaState.FACE_W);
+        state.applyPose(5, 6, 2);
+        return LayoutStore.Layout.of(name, state, savedAt);
+    }
+
+    private static LayoutStore.Layout loadNow(LayoutStore store, String name) throws InterruptedException {
+        AtomicReference<LayoutStore.Layout> loaded = new AtomicReference<>();
+        store.load(name, loaded::set);
+        store.flush();
+        return loaded.get();
+    }
+
+    @Test
+    public void savedLayouts_surviveReopening() throws Exception {
+        File dir = folder.newFolder("layouts");
+        LayoutStore store = new LayoutStore(dir);
+        for (int i = 0; i < 200; i++) {
+            store.save(layout("Field " + i, 1000 + i, i % 20));
+        }
+        store.save(layout("Field 7", 5000, 3));
+        store.flush();
+        store.close();
+
+        LayoutStore reopened = new LayoutStore(dir);
+        reopened.flush();
+        List<LayoutStore.Entry> byName = reopened.byName();
+        assertEquals(200, byName.size());
+        assertEquals("Field 0", byName.get(0).name);
+        assertEquals("Field 7", reopened.byTime().get(0).name);
+
+        LayoutStore.Layout loaded = loadNow(reopened, "Field 7");
+        assertEquals(5000, loaded.savedAt);
+        ArenaState state = new ArenaState(20, 20, 8);
+        assertTrue(loaded.applyTo(state));
+        assertEquals(3, state.getObstacleX(0));
+        assertEquals(ArenaState.FACE_W, state.getObstacleFace(0));
+        assertEquals(5, state.getRobotX());
+        assertEquals(2, state.getRobotDirection());
+
+        assertNull(loadNow(reopened, "Field 999"));
+        assertTrue(reopened.delete("Field 7").get());
+        assertFalse(reopened.contains("Field 7"));
+        reopened.close();
+    }
+
+    @Test
+    public void lostIndex_isRebuiltFromTheRecords() throws Exception {
+        File dir = folder.newFolder("layouts");
+        LayoutStore store = new LayoutStore(dir);
+        store.save(layout("A", 1, 1));
+        store.save(layout("B", 2, 2));
+        store.flush();
+        store.close();
+
+        assertTrue(new File(dir, "index.bin").delete());
+        LayoutStore reopened = new LayoutStore(dir);
+        reopened.flush();
+        assertEquals(2, reopened.byName().size());
+        assertEquals(2, loadNow(reopened, "B").savedAt);
+        reopened.close();
+    }
+
+    @Test
+    public void damagedRecord_loadsAsNull() throws Exception {
+        File dir = folder.newFolder("layouts");
+        LayoutStore store = new LayoutStore(dir);
+        store.save(layout("A", 1, 1));
+        store.flush();
+
+        File record = new File(dir, "layout-1.bin");
+        try (RandomAccessFile file = new RandomAccessFile(record, "rw")) {
+            file.seek(10);
+            file.write(0x55);
+        }
+        assertNull(loadNow(store, "A"));
+
+        // Saving again replaces it whole
+        store.save(layout("A", 2, 1));
+        assertEquals(2, loadNow(store, "A").savedAt);
+        assertFalse(new File(dir, "layout-1.bin.tmp").exists());
+        store.close();
+    }
+
+    @Test
+    public void preferencesPreset_becomesCells() {
+        Map<String, Object> preferences = new HashMap<>();
+        // Top left cell facing north, and (4,10) from the top left turned twice
+        preferences.put("config2_obs1X", 0f);
+        preferences.put("config2_obs1Y", 0f);
+        preferences.put("config2_obs1Rotation", 0f);
+        preferences.put("config2_obs2X", 140f);
+        preferences.put("config2_obs2Y", 350f);
+        preferences.put("config2_obs2Rotation", 540f);
+        // Still in the tray, below the arena
+        preferences.put("config2_obs3X", 70f);
+        preferences.put("config2_obs3Y", 800f);
+        preferences.put("config2_obs3Rotation", -90f);
+        preferences.put("x_tv", "1");
+
+        assertNull(LayoutStore.Layout.fromPreferences("Preset 1", 1, 20, 20, 8, preferences, "config1_"));
+        LayoutStore.Layout layout = LayoutStore.Layout.fromPreferences("Preset 2", 1, 20, 20, 8,
+                preferences, "config2_");
+        ArenaState state = new ArenaState(20, 20, 8);
+        assertTrue(layout.applyTo(state));
+        assertEquals(0, state.getObstacleX(0));
+        assertEquals(19, state.getObstacleY(0));
+        assertEquals(ArenaState.FACE_N, state.getObstacleFace(0));
+        assertEquals(4, state.getObstacleX(1));
+        assertEquals(9, state.getObstacleY(1));
+        assertEquals(ArenaState.FACE_S, state.getObstacleFace(1));
+        assertFalse(state.isPlaced(2));
+        assertEquals(ArenaState.FACE_W, state.getObstacleFace(2));
+        assertFalse(state.isPlaced(3));
+        assertEquals(ArenaState.START_X, state.getRobotX());
+    }
+
+    /*
+     * Counts what the store asks of it, the layouts stand in for the old SharedPreferences
+     */
+    private static final class CountingMigration implements LayoutStore.Migration {
+        final List<LayoutStore.Layout> layouts;
+        int reads;
+        int migrated;
+
+        CountingMigration(LayoutStore.Layout... layouts) {
+            this.layouts = Arrays.asList(layouts);
+        }
+
+        @Override
+        public List<LayoutStore.Layout> layouts() {
+            reads++;
+            return layouts;
+        }
+
+        @Override
+        public void onMigrated() {
+            migrated++;
+        }
+    }
+
+    @Test
+    public void migration_runsOnceAndKeepsNewerLayouts() throws Exception {
+        File dir = folder.newFolder("layouts");
+        LayoutStore store = new LayoutStore(dir);
+        store.save(layout("Preset 2", 9000, 7));
+        CountingMigration migration = new CountingMigration(layout("Preset 1", 1, 1), layout("Preset 2", 1, 2));
+        store.migrateOnce("old.migrated", migration);
+        store.flush();
+        assertEquals(1, migration.migrated);
+        assertEquals(1, loadNow(store, "Preset 1").savedAt);
+        // Saved in LayoutStore already, the old copy does not win
+        assertEquals(9000, loadNow(store, "Preset 2").savedAt);
+        store.close();
+
+        LayoutStore reopened = new LayoutStore(dir);
+        reopened.migrateOnce("old.migrated", migration);
+        reopened.flush();
+        // Not even read again
+        assertEquals(1, migration.reads);
+        reopened.close();
+    }
+
+    @Test
+    public void failedMigration_keepsTheOldCopy() throws Exception {
+        File dir = folder.newFolder("layouts");
+        // Where the first record would go, so writing it fails
+        assertTrue(new File(dir, "layout-1.bin").mkdirs());
+        LayoutStore store = new LayoutStore(dir);
+        CountingMigration migration = new CountingMigration(layout("Preset 1", 1, 1));
+        store.migrateOnce("old.migrated", migration);
+        store.flush();
+        assertEquals(0, migration.migrated);
+        assertFalse(new File(dir, "old.migrated").exists());
+        store.close();
+    }
+}
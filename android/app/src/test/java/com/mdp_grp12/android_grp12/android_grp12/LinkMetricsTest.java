@@ -0,0 +1,57 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Counter, histogram and round-trip bookkeeping of the link metrics.
+ */
+public class LinkMetricsTest {
+
+    @Test
+    public void writeLatency_landsInLog2Buckets() {
+        LinkMetrics metrics = new LinkMetrics();
+        metrics.onFlush(1, 10, 500);          // < 1us
+        metrics.onFlush(2, 20, 3_000);        // 3us
+        metrics.onFlush(1, 10, 3_000_000);    // 3ms
+
+        assertEquals(1, metrics.getWriteLatencyCount(0));
+        assertEquals(1, metrics.getWriteLatencyCount(1));
+        assertEquals(1, metrics.getWriteLatencyCount(11));
+        assertEquals(4, metrics.getMessagesWritten());
+        assertEquals(40, metrics.getBytesOut());
+        assertEquals(4, metrics.getWriteLatencyPercentileMicros(50));
+        assertEquals(4096, metrics.getWriteLatencyPercentileMicros(99));
+    }
+
+    @Test
+    public void pong_isMatchedToItsPing() {
+        LinkMetrics metrics = new LinkMetrics();
+        int first = metrics.onPingSent(1_000_000);
+        int second = metrics.onPingSent(2_000_000);
+
+        assertEquals(5_000_000, metrics.onPong(second, 7_000_000));
+        assertEquals(9_000_000, metrics.onPong(first, 10_000_000));
+        // Duplicate or unknown pongs are ignored
+        assertEquals(-1, metrics.onPong(first, 11_000_000));
+        assertEquals(-1, metrics.onPong(99, 11_000_000));
+
+        assertEquals(2, metrics.getPongsReceived());
+        assertEquals(5_000_000, metrics.getMinRttNanos());
+        assertEquals(9_000_000, metrics.getMaxRttNanos());
+        assertEquals(7_000_000, metrics.getAverageRttNanos());
+    }
+
+    @Test
+    public void sample_computesRatesPerSecond() {
+        LinkMetrics metrics = new LinkMetrics();
+        metrics.sample(1_000_000_000L);
+        metrics.onBytesRead(300);
+        metrics.onFlush(1, 50, 1_000);
+        metrics.sample(1_500_000_000L);
+
+        assertEquals(600.0, metrics.getBytesInPerSecond(), 0.001);
+        assertEquals(100.0, metrics.getBytesOutPerSecond(), 0.001);
+    }
+}
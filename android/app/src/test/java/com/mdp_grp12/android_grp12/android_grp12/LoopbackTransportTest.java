@@ -0,0 +1,206 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * The RPi messaging path without Bluetooth: LinkReader, the read loop BluetoothService runs
+ * per connection, from the transport through the decoder and bus to the arena state.
+ */
+public class LoopbackTransportTest {
+
+    /*
+     * Runs the tablet end's LinkReader until the transport closes
+     */
+    private static Thread reader(Transport transport, InboundDecoder decoder) {
+        Thread thread = new Thread(() -> {
+            try {
+                new LinkReader(transport.getInputStream(), decoder, () -> null).run();
+            } catch (IOException e) {
+                // Closed
+            }
+        }, "TabletReader");
+        thread.start();
+        return thread;
+    }
+
+    @Test
+    public void bytes_crossInBothDirections() throws Exception {
+        LoopbackTransport[] ends = LoopbackTransport.pair(8);
+        ends[0].connect();
+        byte[] sent = "ROBOT,1,2,N\nROBOT,3,4,E\n".getBytes(StandardCharsets.US_ASCII);
+        // Bigger than the buffer, the writer waits for the reader
+        AtomicReference<IOException> writeFailure = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                ends[1].getOutputStream().write(sent);
+                ends[1].close();
+            } catch (IOException e) {
+                writeFailure.set(e);
+            }
+        });
+        writer.start();
+        byte[] read = new byte[sent.length];
+        int total = 0;
+        int n;
+        while ((n = ends[0].getInputStream().read(read, total, read.length - total)) > 0) {
+            total += n;
+        }
+        writer.join();
+        assertNull(writeFailure.get());
+        assertArrayEquals(sent, read);
+        assertEquals(-1, ends[0].getInputStream().read());
+        try {
+            ends[0].getOutputStream().write(1);
+            fail("wrote to a closed loopback");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void fakeRpiTraffic_reachesTheArenaState() throws Exception {
+        LoopbackTransport[] ends = LoopbackTransport.pair();
+        MessageBus bus = new MessageBus(Runnable::run, Runnable::run);
+        ArenaState state = new ArenaState(20, 20, 8);
+        AtomicInteger statuses = new AtomicInteger();
+        AtomicInteger commands = new AtomicInteger();
+        bus.subscribe(MessageBus.ROBOT_POSE, MessageBus.Delivery.POSTING, state::apply);
+        bus.subscribe(MessageBus.TARGET_UPDATE, MessageBus.Delivery.POSTING, state::apply);
+        bus.subscribe(MessageBus.STATUS_UPDATE, MessageBus.Delivery.POSTING, status -> statuses.incrementAndGet());
+        bus.subscribe(MessageBus.MOVE_COMMAND, MessageBus.Delivery.POSTING, command -> commands.incrementAndGet());
+
+        LinkMetrics metrics = new LinkMetrics();
+        Thread tablet = reader(ends[0], new InboundDecoder(bus, metrics, FrameDecoder.Mode.NEWLINE, null));
+        FakeRpi rpi = new FakeRpi(ends[1])
+                .robot(5, 6, "E")
+                .target(3, 21)
+                .status("Looking for target")
+                .command("SF030")
+                .robot(7, 6, "S");
+
+        // Throughput is measured by LoopbackTransportBenchmark
+        int rounds = 10_000;
+        rpi.play(rounds);
+        rpi.close();
+        tablet.join();
+
+        assertEquals((long) rounds * rpi.getScriptMessages(), metrics.getFramesDecoded());
+        assertEquals(0, metrics.getParseFailures());
+        assertEquals(rounds, statuses.get());
+        assertEquals(rounds, commands.get());
+        assertEquals(7, state.getRobotX());
+        assertEquals(4, state.getRobotDirection());
+        assertEquals(21, state.getObstacleTarget(3));
+    }
+
+    @Test
+    public void unterminatedMessage_arrivesOnceTheLinkGoesQuiet() throws Exception {
+        LoopbackTransport[] ends = LoopbackTransport.pair();
+        MessageBus bus = new MessageBus(Runnable::run, Runnable::run);
+        List<ProtocolMessage.StatusUpdate> statuses = new CopyOnWriteArrayList<>();
+        bus.subscribe(MessageBus.STATUS_UPDATE, MessageBus.Delivery.POSTING, statuses::add);
+        Thread tablet = reader(ends[0], new InboundDecoder(bus, new LinkMetrics(), FrameDecoder.Mode.NEWLINE, null));
+
+        ends[1].getOutputStream().write("STATUS,Looking for target".getBytes(StandardCharsets.US_ASCII));
+        for (int i = 0; i < 500 && statuses.isEmpty(); i++) {
+            Thread.sleep(5);
+        }
+        ends[1].close();
+        tablet.join();
+        assertEquals(1, statuses.size());
+        assertEquals("Looking for target", statuses.get(0).text);
+    }
+
+    @Test
+    public void backToBackUnterminatedMessages_stayApart() throws Exception {
+        LoopbackTransport[] ends = LoopbackTransport.pair();
+        MessageBus bus = new MessageBus(Runnable::run, Runnable::run);
+        List<ProtocolMessage.RobotPose> poses = new CopyOnWriteArrayList<>();
+        bus.subscribe(MessageBus.ROBOT_POSE, MessageBus.Delivery.POSTING, poses::add);
+        LinkMetrics metrics = new LinkMetrics();
+        Thread tablet = reader(ends[0], new InboundDecoder(bus, metrics, FrameDecoder.Mode.NEWLINE, null));
+
+        ends[1].getOutputStream().write("ROBOT,1,2,N".getBytes(StandardCharsets.US_ASCII));
+        // Taken by the reader, which is now waiting for the link to go quiet
+        for (int i = 0; i < 500 && ends[0].getInputStream().available() > 0; i++) {
+            Thread.sleep(1);
+        }
+        ends[1].getOutputStream().write("ROBOT,3,4,E".getBytes(StandardCharsets.US_ASCII));
+        for (int i = 0; i < 500 && poses.size() < 2; i++) {
+            Thread.sleep(5);
+        }
+        ends[1].close();
+        tablet.join();
+
+        assertEquals(2, poses.size());
+        assertEquals(1, poses.get(0).x);
+        assertEquals(3, poses.get(1).x);
+        assertEquals(0, metrics.getParseFailures());
+    }
+
+    @Test
+    public void nextMessage_endsTheUnterminatedOneWithoutWaiting() {
+        MessageBus bus = new MessageBus(Runnable::run, Runnable::run);
+        List<ProtocolMessage.RobotPose> poses = new CopyOnWriteArrayList<>();
+        List<ProtocolMessage.StatusUpdate> statuses = new CopyOnWriteArrayList<>();
+        bus.subscribe(MessageBus.ROBOT_POSE, MessageBus.Delivery.POSTING, poses::add);
+        bus.subscribe(MessageBus.STATUS_UPDATE, MessageBus.Delivery.POSTING, statuses::add);
+        InboundDecoder decoder = new InboundDecoder(bus, new LinkMetrics(), FrameDecoder.Mode.NEWLINE, null);
+
+        for (String chunk : new String[]{"ROBOT,1,2,N", "STATUS,Looking", " for target", "ROBOT,3,4,E"}) {
+            byte[] bytes = chunk.getBytes(StandardCharsets.US_ASCII);
+            decoder.feed(bytes, 0, bytes.length);
+        }
+        // Each tag ended the message before it, " for target" carried one on
+        assertEquals(1, poses.size());
+        assertEquals(1, poses.get(0).x);
+        assertEquals(1, statuses.size());
+        assertEquals("Looking for target", statuses.get(0).text);
+
+        // The last one still waits for the link to go quiet
+        assertTrue(decoder.hasPartialMessage());
+        decoder.onIdle();
+        assertEquals(3, poses.get(1).x);
+    }
+
+    @Test
+    public void pings_areAnsweredOverTheLoopback() throws Exception {
+        LoopbackTransport[] ends = LoopbackTransport.pair();
+        FakeRpi rpi = new FakeRpi(ends[1]);
+        rpi.listen();
+        LinkMetrics metrics = new LinkMetrics();
+        AtomicLong rtt = new AtomicLong(-1);
+        InboundDecoder decoder = new InboundDecoder(new MessageBus(Runnable::run, Runnable::run), metrics,
+                FrameDecoder.Mode.NEWLINE, new InboundDecoder.LinkControl() {
+            @Override
+            public void onBinaryProtocol() {
+            }
+
+            @Override
+            public void onLinkControl(ProtocolMessage message) {
+                rtt.set(metrics.onPong(((ProtocolMessage.Pong) message).id, System.nanoTime()));
+            }
+        });
+        Thread tablet = reader(ends[0], decoder);
+
+        int id = metrics.onPingSent(System.nanoTime());
+        ends[0].getOutputStream().write(("PING," + id).getBytes(StandardCharsets.US_ASCII));
+        for (int i = 0; i < 500 && rtt.get() < 0; i++) {
+            Thread.sleep(5);
+        }
+        assertTrue(rtt.get() >= 0);
+        assertEquals("PING," + id, rpi.getReceived().get(0));
+
+        rpi.close();
+        tablet.join();
+    }
+}
@@ -0,0 +1,73 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import com.mdp_grp12.android_grp12.android_grp12.ProtocolMessage.MoveCommand;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * End poses and swept cells of the move commands, matching what the car animations did.
+ */
+public class MotionModelTest {
+    private static final int N = 0, E = 1, S = 2, W = 3;
+
+    private final MotionModel.Step step = new MotionModel.Step();
+
+    private void assertPose(int x, int y, int heading) {
+        assertEquals("x", x, step.x);
+        assertEquals("y", y, step.y);
+        assertEquals("heading", heading, step.heading);
+    }
+
+    @Test
+    public void straightMoves_scaleWithDistance() {
+        MotionModel.apply(1, 1, N, new MoveCommand(MoveCommand.Type.SF, 30), step);
+        assertPose(1, 4, N);
+        assertEquals(3, step.sweptCount);
+        assertEquals(2, step.sweptY[0]);
+        assertEquals(4, step.sweptY[2]);
+
+        MotionModel.apply(10, 10, E, MoveCommand.Type.SB, 2, step);
+        assertPose(8, 10, E);
+        assertEquals(9, step.sweptX[0]);
+    }
+
+    @Test
+    public void turns_areTheSameShapeForEveryHeading() {
+        // 2 forward, 3 to the left, then facing left
+        MotionModel.apply(10, 10, N, MoveCommand.Type.LF, 0, step);
+        assertPose(7, 12, W);
+        MotionModel.apply(10, 10, E, MoveCommand.Type.LF, 0, step);
+        assertPose(12, 13, N);
+        MotionModel.apply(10, 10, S, MoveCommand.Type.LF, 0, step);
+        assertPose(13, 8, E);
+        MotionModel.apply(10, 10, W, MoveCommand.Type.LF, 0, step);
+        assertPose(8, 7, S);
+
+        // 3 back, 2 to the right, then facing left
+        MotionModel.apply(10, 10, N, MoveCommand.Type.RB, 0, step);
+        assertPose(12, 7, W);
+        assertEquals(5, step.sweptCount);
+        assertEquals(10, step.cornerX);
+        assertEquals(7, step.cornerY);
+    }
+
+    @Test
+    public void slides_keepTheHeading() {
+        MotionModel.apply(10, 10, N, MoveCommand.Type.JF, 0, step);
+        assertPose(11, 14, N);
+        MotionModel.apply(10, 10, S, MoveCommand.Type.KB, 0, step);
+        assertPose(11, 14, S);
+        MotionModel.apply(10, 10, E, MoveCommand.Type.KF, 0, step);
+        assertPose(14, 11, E);
+    }
+
+    @Test
+    public void directions_mapToHeadings() {
+        assertEquals(N, MotionModel.headingOf(1));
+        assertEquals(W, MotionModel.headingOf(7));
+        assertEquals(4, MotionModel.directionOf(S));
+        assertEquals(W, MotionModel.turn(N, -1));
+    }
+}
@@ -0,0 +1,77 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import com.mdp_grp12.android_grp12.android_grp12.ProtocolMessage.MoveCommand;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ordering and merging of the moves waiting for the car animation.
+ */
+public class MoveQueueTest {
+    private static final int N = 0, E = 1;
+
+    private final MoveQueue queue = new MoveQueue(2);
+    private final MotionModel.Step step = new MotionModel.Step();
+    private final MoveQueue.Move move = new MoveQueue.Move();
+
+    // Queues the command from the pose and returns the end pose as {x, y, heading}
+    private int[] add(int x, int y, int heading, MoveCommand.Type type, int cells) {
+        MotionModel.apply(x, y, heading, type, cells, step);
+        queue.add(x, y, heading, step);
+        return new int[]{step.x, step.y, step.heading};
+    }
+
+    @Test
+    public void straightMovesInOneDirection_mergeIntoOneLeg() {
+        int[] pose = add(1, 1, N, MoveCommand.Type.SF, 2);
+        pose = add(pose[0], pose[1], pose[2], MoveCommand.Type.SF, 3);
+        add(pose[0], pose[1], pose[2], MoveCommand.Type.SF, 1);
+
+        assertEquals(1, queue.size());
+        assertEquals(2, queue.getMerged());
+        assertTrue(queue.poll(move));
+        assertEquals(1, move.endX);
+        assertEquals(7, move.endY);
+        assertEquals(6, move.straightCells);
+        assertEquals(0, move.quarterTurns);
+        assertFalse(queue.poll(move));
+    }
+
+    @Test
+    public void reversingOrTurning_startsANewMove() {
+        int[] pose = add(5, 5, N, MoveCommand.Type.SF, 2);
+        pose = add(pose[0], pose[1], pose[2], MoveCommand.Type.SB, 1);
+        pose = add(pose[0], pose[1], pose[2], MoveCommand.Type.LF, 0);
+        add(pose[0], pose[1], pose[2], MoveCommand.Type.SF, 1);
+        assertEquals(4, queue.size());
+
+        queue.poll(move);
+        assertEquals(7, move.endY);
+        queue.poll(move);
+        assertEquals(6, move.endY);
+        queue.poll(move);
+        assertEquals(-1, move.quarterTurns);
+        assertEquals(3, move.sidewaysCells);
+        queue.poll(move);
+        assertEquals(1, move.straightCells);
+    }
+
+    @Test
+    public void queue_growsAndKeepsOrderAcrossWrap() {
+        add(1, 1, N, MoveCommand.Type.SF, 1);
+        queue.poll(move);
+        // Alternating turns never merge
+        for (int i = 0; i < 10; i++) {
+            add(10, 10, i % 2 == 0 ? N : E, MoveCommand.Type.RF, 0);
+        }
+        assertEquals(10, queue.size());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(queue.poll(move));
+            assertEquals(1, move.quarterTurns);
+            assertEquals(i % 2 == 0 ? 13 : 12, move.endX);
+        }
+        assertEquals(0, queue.size());
+    }
+}
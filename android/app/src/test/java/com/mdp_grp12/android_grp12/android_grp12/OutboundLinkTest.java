@@ -0,0 +1,82 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * What BluetoothService holds for the RPi while the link is down, and when it lets go.
+ */
+public class OutboundLinkTest {
+
+    private static boolean write(OutboundLink link, String command) {
+        return link.write(Ascii.bytes(command));
+    }
+
+    // What the writer thread would send next
+    private static List<String> sent(OutboundLink link) throws InterruptedException {
+        List<String> sent = new ArrayList<>();
+        byte[][] batch = new byte[16][];
+        while (link.getQueueDepth() > 0) {
+            int n = link.getQueue().takeBatch(batch);
+            for (int i = 0; i < n; i++) {
+                sent.add(Ascii.text(batch[i]));
+                link.onFlushed(batch[i]);
+            }
+        }
+        return sent;
+    }
+
+    @Test
+    public void writesWhileConnecting_goOutFirstOnceConnected() throws Exception {
+        OutboundLink link = new OutboundLink(8, 6);
+        link.hold();
+        assertTrue(write(link, "ALG:START"));
+        assertTrue(write(link, "SF050"));
+        assertEquals(0, link.getQueueDepth());
+
+        assertEquals(2, link.onConnected());
+        assertTrue(write(link, "RF090"));
+        assertEquals("[ALG:START, SF050, RF090]", sent(link).toString());
+        assertEquals(0, link.getPendingReplay());
+    }
+
+    @Test
+    public void droppedLink_resendsWhatWasNotFlushed() throws Exception {
+        OutboundLink link = new OutboundLink(8, 6);
+        link.hold();
+        link.onConnected();
+        assertTrue(write(link, "SF050"));
+        assertEquals("[SF050]", sent(link).toString());
+        assertTrue(write(link, "RF090"));
+
+        // Queued but never written, then the socket dies. BACKOFF still takes writes.
+        link.onConnectionLost();
+        assertTrue(write(link, "SB010"));
+        assertEquals(2, link.onConnected());
+        assertEquals("[RF090, SB010]", sent(link).toString());
+    }
+
+    @Test
+    public void failedLink_holdsNothingForTheNextConnect() throws Exception {
+        OutboundLink link = new OutboundLink(8, 6);
+        assertFalse("nothing to hold before a connect", write(link, "SF050"));
+
+        link.hold();
+        assertTrue(write(link, "ALG:START"));
+        assertTrue(write(link, "SF050"));
+        // Reconnection gave up, BluetoothService abandons before publishing FAILED
+        link.abandon();
+        assertEquals(0, link.getPendingReplay());
+        assertFalse(write(link, "RF090"));
+
+        // The user connects again, maybe to another RPi
+        link.hold();
+        assertEquals(0, link.onConnected());
+        assertTrue(write(link, "SB010"));
+        assertEquals("[SB010]", sent(link).toString());
+    }
+}
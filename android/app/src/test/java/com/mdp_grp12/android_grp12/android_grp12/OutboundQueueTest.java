@@ -0,0 +1,92 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Ordering, batching and back-pressure of the queue in front of the writer thread.
+ */
+public class OutboundQueueTest {
+
+    private static List<String> take(OutboundQueue queue, int max) throws InterruptedException {
+        byte[][] batch = new byte[max][];
+        int n = queue.takeBatch(batch);
+        List<String> taken = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            taken.add(Ascii.text(batch[i]));
+        }
+        return taken;
+    }
+
+    @Test
+    public void batches_takeWhatIsQueuedInOrder() throws Exception {
+        OutboundQueue queue = new OutboundQueue(4);
+        assertTrue(queue.offer(Ascii.bytes("a")));
+        assertTrue(queue.offer(Ascii.bytes("b")));
+        assertTrue(queue.offer(Ascii.bytes("c")));
+        assertEquals("[a, b]", take(queue, 2).toString());
+
+        // Topped up to capacity while the writer was busy, one batch takes it all
+        assertTrue(queue.offer(Ascii.bytes("d")));
+        assertTrue(queue.offer(Ascii.bytes("e")));
+        assertTrue(queue.offer(Ascii.bytes("f")));
+        assertEquals(4, queue.size());
+        assertEquals("[c, d, e, f]", take(queue, 16).toString());
+        assertEquals(0, queue.size());
+        assertEquals(4, queue.getMaxDepth());
+        assertEquals(6, queue.getEnqueued());
+    }
+
+    @Test
+    public void fullQueue_rejectsInsteadOfBlocking() throws Exception {
+        OutboundQueue queue = new OutboundQueue(2);
+        assertTrue(queue.offer(Ascii.bytes("a")));
+        assertTrue(queue.offer(Ascii.bytes("b")));
+        assertFalse(queue.offer(Ascii.bytes("c")));
+        assertFalse(queue.offer(Ascii.bytes("c"), 10));
+        assertEquals(2, queue.getRejected());
+        assertEquals("[a, b]", take(queue, 2).toString());
+
+        // Cleared, the space is free again
+        assertTrue(queue.offer(Ascii.bytes("d")));
+        queue.clear();
+        assertEquals(0, queue.size());
+        assertTrue(queue.offer(Ascii.bytes("e")));
+        assertTrue(queue.offer(Ascii.bytes("f")));
+        assertEquals("[e, f]", take(queue, 2).toString());
+    }
+
+    @Test
+    public void timedOffer_getsInOnceTheWriterTakes() throws Exception {
+        OutboundQueue queue = new OutboundQueue(1);
+        assertTrue(queue.offer(Ascii.bytes("a")));
+        AtomicBoolean accepted = new AtomicBoolean();
+        Thread producer = new Thread(() -> {
+            try {
+                accepted.set(queue.offer(Ascii.bytes("b"), 5_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        producer.start();
+        assertEquals("[a]", take(queue, 1).toString());
+        producer.join();
+        assertTrue(accepted.get());
+        assertEquals("[b]", take(queue, 1).toString());
+    }
+
+    @Test
+    public void closedQueue_drainsThenEnds() throws Exception {
+        OutboundQueue queue = new OutboundQueue(4);
+        assertTrue(queue.offer(Ascii.bytes("a")));
+        queue.close();
+        assertFalse(queue.offer(Ascii.bytes("b")));
+        assertEquals("[a]", take(queue, 4).toString());
+        assertEquals(-1, queue.takeBatch(new byte[4][]));
+    }
+}
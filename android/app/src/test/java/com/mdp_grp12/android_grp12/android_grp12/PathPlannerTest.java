@@ -0,0 +1,209 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import com.mdp_grp12.android_grp12.android_grp12.ProtocolMessage.MoveCommand;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Planned routes drive the robot in front of every reachable image without collisions.
+ */
+public class PathPlannerTest {
+    private final PathPlanner planner = new PathPlanner();
+
+    /*
+     * Drives the route with MotionModel from the state's pose, checking every move, and
+     * returns the pose after each arrival as {x, y, heading}
+     */
+    private int[][] drive(ArenaState state, PathPlanner.Route route) {
+        CollisionChecker checker = new CollisionChecker(state.getCols(), state.getRows(), state.getObstacleCount());
+        for (int i = 0; i < state.getObstacleCount(); i++) {
+            checker.onObstacleChanged(state, i);
+        }
+        MotionModel.Step step = new MotionModel.Step();
+        int x = state.getRobotX();
+        int y = state.getRobotY();
+        int heading = MotionModel.headingOf(state.getRobotDirection());
+        int[][] arrivals = new int[route.order.length][];
+        int k = 0;
+        for (int i = 0; i <= route.commands.size(); i++) {
+            while (k < route.arrivals.length && route.arrivals[k] == i) {
+                arrivals[k++] = new int[]{x, y, heading};
+            }
+            if (i == route.commands.size()) {
+                break;
+            }
+            MotionModel.apply(x, y, heading, route.commands.get(i), step);
+            assertEquals("collision on command " + i, CollisionChecker.CLEAR, checker.firstCollision(step));
+            x = step.x;
+            y = step.y;
+            heading = step.heading;
+        }
+        return arrivals;
+    }
+
+    @Test
+    public void route_endsInFrontOfTheImage() {
+        ArenaState state = new ArenaState(20, 20, 8);
+        state.placeObstacle(0, 10, 10);
+        state.setObstacleFace(0, ArenaState.FACE_E);
+
+        PathPlanner.Route route = planner.plan(state);
+        assertArrayEquals(new int[]{0}, route.order);
+        int[][] arrivals = drive(state, route);
+        assertArrayEquals(new int[]{13, 10, 3}, arrivals[0]);
+        assertTrue(route.toCommandString().matches("([A-Z]{2}\\d{3},)*[A-Z]{2}\\d{3}"));
+    }
+
+    @Test
+    public void straightLegs_areOneCommand() {
+        ArenaState state = new ArenaState(20, 20, 1);
+        // Seen from (1, 11) facing north, straight up from the start
+        state.placeObstacle(0, 1, 14);
+        state.setObstacleFace(0, ArenaState.FACE_S);
+
+        PathPlanner.Route route = planner.plan(state);
+        assertEquals(1, route.commands.size());
+        assertEquals(MoveCommand.Type.SF, route.commands.get(0).type);
+        assertEquals(100, route.commands.get(0).distance);
+        assertEquals("SF100", route.toCommandString());
+        assertEquals(10 * PathPlanner.STEP_COST, route.cost);
+    }
+
+    @Test
+    public void everyReachableObstacleIsVisitedWithoutCollision() {
+        ArenaState state = scatteredLayout();
+
+        PathPlanner.Route route = planner.plan(state);
+        assertEquals(6, route.order.length);
+        int[][] arrivals = drive(state, route);
+        for (int k = 0; k < route.order.length; k++) {
+            int obstacle = route.order[k];
+            MotionModel.Step view = MotionModel.move(state.getObstacleX(obstacle), state.getObstacleY(obstacle),
+                    state.getObstacleFace(obstacle), PathPlanner.VIEW_DISTANCE, 0, 2, new MotionModel.Step());
+            assertArrayEquals(new int[]{view.x, view.y, view.heading}, arrivals[k]);
+        }
+    }
+
+    @Test
+    public void imageFacingTheWall_isLeftOut() {
+        ArenaState state = new ArenaState(20, 20, 2);
+        state.placeObstacle(0, 19, 10);
+        state.setObstacleFace(0, ArenaState.FACE_E);
+        state.placeObstacle(1, 10, 10);
+
+        PathPlanner.Route route = planner.plan(state);
+        assertArrayEquals(new int[]{1}, route.order);
+    }
+
+    @Test
+    public void heldKarp_findsTheCheapestOrder() {
+        int x = PathPlanner.UNREACHABLE;
+        // Going 0 -> 2 -> 1 -> 3 costs 1 + 1 + 1, every other order is dearer
+        int[][] cost = {
+                {0, 5, 1, 9},
+                {0, 0, 9, 1},
+                {0, 1, 0, 9},
+                {0, 9, x, 0},
+        };
+        int[] group = {-1, 0, 1, 2};
+        int[] penalty = new int[4];
+        assertArrayEquals(new int[]{2, 1, 3}, PathPlanner.heldKarp(cost, group, penalty, 3));
+        assertArrayEquals(new int[]{2, 1, 3}, PathPlanner.nearestFirst(cost, group, penalty, 3));
+
+        cost[0][2] = x;
+        cost[1][2] = x;
+        cost[3][2] = x;
+        assertNull(PathPlanner.heldKarp(cost, group, penalty, 3));
+        assertArrayEquals(new int[]{1, 3}, PathPlanner.nearestFirst(cost, group, penalty, 3));
+    }
+
+    @Test
+    public void heldKarp_picksOnePosePerObstacle() {
+        int x = PathPlanner.UNREACHABLE;
+        // Nodes 1 and 2 see obstacle 0, node 3 sees obstacle 1. Node 2 is nearer but dearer to use.
+        int[][] cost = {
+                {0, 4, 1, 6},
+                {0, 0, x, 2},
+                {0, x, 0, 2},
+                {0, 5, 5, 0},
+        };
+        int[] group = {-1, 0, 0, 1};
+        int[] penalty = {0, 0, 10, 0};
+        assertArrayEquals(new int[]{1, 3}, PathPlanner.heldKarp(cost, group, penalty, 2));
+        penalty[2] = 1;
+        assertArrayEquals(new int[]{2, 3}, PathPlanner.heldKarp(cost, group, penalty, 2));
+    }
+
+    private static ArenaState scatteredLayout() {
+        ArenaState state = new ArenaState(20, 20, 6);
+        int[][] layout = {{5, 9, 0}, {15, 15, 3}, {10, 4, 1}, {16, 2, 0}, {2, 17, 2}, {12, 12, 2}};
+        for (int i = 0; i < layout.length; i++) {
+            state.placeObstacle(i, layout[i][0], layout[i][1]);
+            state.setObstacleFace(i, layout[i][2]);
+        }
+        return state;
+    }
+
+    @Test
+    public void candidateViews_neverCostMoreThanTheFrontView() {
+        ArenaState state = scatteredLayout();
+        PathPlanner.Route front = planner.plan(state);
+
+        PathPlanner candidates = new PathPlanner();
+        candidates.setCandidateViews(true);
+        PathPlanner.Route route = candidates.plan(state);
+        assertEquals(6, route.order.length);
+        drive(state, route);
+        // The front view is among the candidates, at 5 cells extra
+        assertTrue(route.cost <= front.cost + 6 * 5 * PathPlanner.STEP_COST);
+    }
+
+    @Test
+    public void movingOneObstacle_onlySearchesTheLegsNearIt() {
+        ArenaState state = scatteredLayout();
+        PathPlanner cached = new PathPlanner();
+        cached.setCandidateViews(true);
+        cached.plan(state);
+        int firstSearches = cached.getSearchCount();
+
+        // Same layout again, everything comes from the cache
+        cached.plan(state);
+        assertEquals(firstSearches, cached.getSearchCount());
+
+        state.placeObstacle(3, 17, 3);
+        PathPlanner.Route route = cached.plan(state);
+        int again = cached.getSearchCount() - firstSearches;
+        assertTrue("searched " + again + " of " + firstSearches, again > 0 && again < firstSearches);
+
+        PathPlanner fresh = new PathPlanner();
+        fresh.setCandidateViews(true);
+        PathPlanner.Route expected = fresh.plan(state);
+        assertEquals(expected.cost, route.cost);
+        assertEquals(expected.toCommandString(), route.toCommandString());
+    }
+
+    @Test
+    public void parallelPlanning_matchesSequential() throws InterruptedException {
+        ArenaState state = scatteredLayout();
+        PathPlanner sequential = new PathPlanner();
+        sequential.setCandidateViews(true);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            PathPlanner parallel = new PathPlanner(executor);
+            parallel.setCandidateViews(true);
+            PathPlanner.Route expected = sequential.plan(state);
+            PathPlanner.Route route = parallel.plan(state);
+            assertEquals(expected.cost, route.cost);
+            assertEquals(expected.toCommandString(), route.toCommandString());
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * What is kept for a resend after a reconnect, and what an ACK or a flush releases.
+ */
+public class ReplayBufferTest {
+
+    // "<sequence>:<payload>" per entry, in resend order
+    private static List<String> resend(ReplayBuffer buffer) {
+        List<String> entries = new ArrayList<>();
+        buffer.forEach((sequence, payload) ->
+                entries.add(sequence + ":" + Ascii.text(payload)));
+        return entries;
+    }
+
+    @Test
+    public void sequences_keepCountingWhenEntriesAreReleased() {
+        ReplayBuffer buffer = new ReplayBuffer(3);
+        assertEquals(1, buffer.append(Ascii.bytes("SF050")));
+        assertEquals(2, buffer.append(Ascii.bytes("RF090")));
+        assertEquals(1, buffer.acknowledge(1));
+
+        // The RPi matches ACKs by number, a released one is never handed out again
+        assertEquals(3, buffer.append(Ascii.bytes("SB010")));
+        assertEquals(4, buffer.append(Ascii.bytes("LF090")));
+        assertEquals("[2:RF090, 3:SB010, 4:LF090]", resend(buffer).toString());
+    }
+
+    @Test
+    public void fullBuffer_rejectsWithoutTakingASequence() {
+        ReplayBuffer buffer = new ReplayBuffer(2);
+        buffer.append(Ascii.bytes("a"));
+        buffer.append(Ascii.bytes("b"));
+        assertEquals(-1, buffer.append(Ascii.bytes("c")));
+        assertEquals(1, buffer.getRejected());
+        assertEquals(2, buffer.size());
+
+        buffer.acknowledge(2);
+        assertEquals(3, buffer.append(Ascii.bytes("c")));
+        assertEquals("[3:c]", resend(buffer).toString());
+    }
+
+    @Test
+    public void acknowledge_releasesEverythingUpToTheSequence() {
+        ReplayBuffer buffer = new ReplayBuffer(8);
+        for (String s : new String[]{"a", "b", "c", "d"}) {
+            buffer.append(Ascii.bytes(s));
+        }
+        assertEquals(3, buffer.acknowledge(3));
+        assertEquals(0, buffer.acknowledge(2));
+        assertEquals("[4:d]", resend(buffer).toString());
+        assertEquals(1, buffer.acknowledge(10));
+        assertEquals(0, buffer.size());
+        assertEquals(4, buffer.getAcknowledged());
+    }
+
+    @Test
+    public void releaseIfOldest_onlyMatchesTheOldestInstance() {
+        ReplayBuffer buffer = new ReplayBuffer(4);
+        byte[] a = Ascii.bytes("a");
+        byte[] b = Ascii.bytes("b");
+        buffer.append(a);
+        buffer.append(b);
+
+        assertFalse(buffer.releaseIfOldest(b));
+        // Equal contents are not the same write
+        assertFalse(buffer.releaseIfOldest(Ascii.bytes("a")));
+        assertTrue(buffer.releaseIfOldest(a));
+        assertTrue(buffer.releaseIfOldest(b));
+        assertFalse(buffer.releaseIfOldest(b));
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void removeNewest_undoesOnlyTheLastAppend() {
+        ReplayBuffer buffer = new ReplayBuffer(4);
+        buffer.append(Ascii.bytes("a"));
+        int b = buffer.append(Ascii.bytes("b"));
+        buffer.removeNewest(1);
+        assertEquals(2, buffer.size());
+        buffer.removeNewest(b);
+        assertEquals("[1:a]", resend(buffer).toString());
+
+        buffer.clear();
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void envelope_prefixesTheSequence() {
+        assertEquals("SEQ,12,ROBOT,1,2,N", Ascii.text(ReplayBuffer.envelope(12, Ascii.bytes("ROBOT,1,2,N"))));
+    }
+
+    @Test
+    public void sequencedLink_keepsWritesUntilTheRpiAcks() throws Exception {
+        OutboundLink link = new OutboundLink(8, 6);
+        link.setSequenced(true);
+        link.hold();
+        link.onConnected();
+
+        // The writer thread of a connection, flushing as it goes
+        BlockingQueue<String> sent = new LinkedBlockingQueue<>();
+        Thread writer = new Thread(() -> {
+            byte[][] batch = new byte[4][];
+            try {
+                int n;
+                while ((n = link.getQueue().takeBatch(batch)) >= 0) {
+                    for (int i = 0; i < n; i++) {
+                        link.onFlushed(batch[i]);
+                        sent.add(Ascii.text(batch[i]));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        writer.start();
+        try {
+            assertTrue(link.write(Ascii.bytes("SF050")));
+            assertTrue(link.write(Ascii.bytes("RF090")));
+            assertEquals("SEQ,1,SF050", sent.poll(5, TimeUnit.SECONDS));
+            assertEquals("SEQ,2,RF090", sent.poll(5, TimeUnit.SECONDS));
+            // Flushed is not delivered on a sequenced link
+            assertEquals(2, link.getPendingReplay());
+
+            link.onAck(1);
+            assertEquals(1, link.getPendingReplay());
+
+            // Lost before the RPi got to RF090, it goes again under the same number
+            link.onConnectionLost();
+            assertEquals(1, link.onConnected());
+            assertEquals("SEQ,2,RF090", sent.poll(5, TimeUnit.SECONDS));
+            assertTrue(link.write(Ascii.bytes("SB010")));
+            assertEquals("SEQ,3,SB010", sent.poll(5, TimeUnit.SECONDS));
+
+            link.onAck(3);
+            assertEquals(0, link.getPendingReplay());
+        } finally {
+            link.getQueue().close();
+            writer.join(5_000);
+        }
+        assertFalse(writer.isAlive());
+    }
+
+    @Test
+    public void zeroCapacity_isRejected() {
+        try {
+            new ReplayBuffer(0);
+            fail("made a buffer that can hold nothing");
+        } catch (IllegalArgumentException expected) {
+            // capacity must be positive
+        }
+    }
+}
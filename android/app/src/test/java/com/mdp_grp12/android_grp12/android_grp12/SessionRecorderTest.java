@@ -0,0 +1,197 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Recorded sessions replay byte for byte, with their timing, through the decode path.
+ */
+public class SessionRecorderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final long MS = 1_000_000L;
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /*
+     * Chunks split mid-frame like RFCOMM reads, 20 ms apart, with a command in between
+     */
+    private File recordRun() throws IOException {
+        File log = folder.newFile("session.bin");
+        SessionRecorder recorder = new SessionRecorder(log, FrameDecoder.Mode.NEWLINE, false);
+        long t = System.nanoTime();
+        byte[] first = ascii("ROBOT,2,3,N\nROBOT,2,");
+        byte[] second = ascii("4,E\nTARGET,1,11\n");
+        byte[] command = ascii("SF010");
+        recorder.record(SessionRecorder.INBOUND, t + 20 * MS, first, 0, first.length);
+        recorder.record(SessionRecorder.OUTBOUND, t + 30 * MS, command, 0, command.length);
+        recorder.record(SessionRecorder.INBOUND, t + 40 * MS, second, 0, second.length);
+        recorder.close();
+        assertEquals(3, recorder.getRecords());
+        return log;
+    }
+
+    @Test
+    public void replay_feedsTheDecoderTheSameMessages() throws Exception {
+        File log = recordRun();
+        ArenaState state = new ArenaState(20, 20, 8);
+        ProtocolCodec codec = new ProtocolCodec();
+        List<String> outbound = new ArrayList<>();
+        FrameDecoder decoder = new FrameDecoder(FrameDecoder.Mode.NEWLINE,
+                (frame, offset, length) -> state.apply(codec.decode(frame, offset, length)));
+
+        SessionReplayer.Stats stats = SessionReplayer.replay(log, SessionReplayer.AS_FAST_AS_POSSIBLE,
+                new SessionReplayer.Sink() {
+                    @Override
+                    public void onMode(FrameDecoder.Mode mode, boolean binary) {
+                        assertEquals(FrameDecoder.Mode.NEWLINE, mode);
+                        assertFalse(binary);
+                    }
+
+                    @Override
+                    public void onInbound(byte[] data, int offset, int length) {
+                        decoder.feed(data, offset, length);
+                    }
+
+                    @Override
+                    public void onOutbound(byte[] data, int offset, int length) {
+                        outbound.add(new String(data, offset, length, StandardCharsets.US_ASCII));
+                    }
+
+                    @Override
+                    public void onIdle() {
+                    }
+                });
+        assertTrue(stats.complete);
+        assertEquals(3, stats.records);
+        assertEquals(36, stats.inboundBytes);
+        assertEquals(2, state.getRobotX());
+        assertEquals(4, state.getRobotY());
+        assertEquals(2, state.getRobotDirection());
+        assertEquals(11, state.getObstacleTarget(1));
+        assertEquals(1, outbound.size());
+        assertEquals("SF010", outbound.get(0));
+    }
+
+    @Test
+    public void replay_keepsTheRecordedPace() throws Exception {
+        File log = recordRun();
+        SessionReplayer.Sink ignore = new SessionReplayer.Sink() {
+            @Override
+            public void onMode(FrameDecoder.Mode mode, boolean binary) {
+            }
+
+            @Override
+            public void onInbound(byte[] data, int offset, int length) {
+            }
+
+            @Override
+            public void onOutbound(byte[] data, int offset, int length) {
+            }
+
+            @Override
+            public void onIdle() {
+            }
+        };
+        SessionReplayer.Stats realTime = SessionReplayer.replay(log, 1, ignore);
+        assertTrue(realTime.recordedNanos >= 40 * MS);
+        assertTrue(realTime.elapsedNanos >= realTime.recordedNanos);
+
+        SessionReplayer.Stats fast = SessionReplayer.replay(log, 10, ignore);
+        assertTrue(fast.elapsedNanos >= realTime.recordedNanos / 10);
+        assertTrue(fast.elapsedNanos < realTime.elapsedNanos);
+    }
+
+    @Test
+    public void logCutShort_replaysWhatIsThere() throws Exception {
+        File log = recordRun();
+        try (RandomAccessFile file = new RandomAccessFile(log, "rw")) {
+            file.setLength(file.length() - 3);
+        }
+        int[] inbound = new int[1];
+        SessionReplayer.Stats stats = SessionReplayer.replay(log, SessionReplayer.AS_FAST_AS_POSSIBLE,
+                new SessionReplayer.Sink() {
+                    @Override
+                    public void onMode(FrameDecoder.Mode mode, boolean binary) {
+                    }
+
+                    @Override
+                    public void onInbound(byte[] data, int offset, int length) {
+                        inbound[0]++;
+                    }
+
+                    @Override
+                    public void onOutbound(byte[] data, int offset, int length) {
+                    }
+
+                    @Override
+                    public void onIdle() {
+                    }
+                });
+        assertFalse(stats.complete);
+        assertEquals(2, stats.records);
+        assertEquals(1, inbound[0]);
+    }
+
+    @Test
+    public void replay_decodesInTheRecordedModes() throws Exception {
+        File log = folder.newFile("modes.bin");
+        SessionRecorder recorder = new SessionRecorder(log, FrameDecoder.Mode.LENGTH_PREFIXED, true);
+        long t = System.nanoTime();
+        byte[] binary = FrameDecoder.lengthPrefix(ascii("BIN"));
+        byte[] unterminated = ascii("STATUS,ready");
+        byte[] framed = FrameDecoder.lengthPrefix(ascii("ROBOT,5,6,E"));
+        recorder.record(SessionRecorder.INBOUND, t, binary, 0, binary.length);
+        // Reconnected on ASCII, the RPi left its last message unterminated
+        recorder.recordMode(FrameDecoder.Mode.NEWLINE, false);
+        recorder.record(SessionRecorder.INBOUND, t, unterminated, 0, unterminated.length);
+        recorder.recordIdle();
+        recorder.recordMode(FrameDecoder.Mode.LENGTH_PREFIXED, false);
+        recorder.record(SessionRecorder.INBOUND, t, framed, 0, framed.length);
+        recorder.close();
+
+        List<String> modes = new ArrayList<>();
+        List<String> frames = new ArrayList<>();
+        FrameDecoder[] decoder = new FrameDecoder[1];
+        SessionReplayer.Stats stats = SessionReplayer.replay(log, SessionReplayer.AS_FAST_AS_POSSIBLE,
+                new SessionReplayer.Sink() {
+                    @Override
+                    public void onMode(FrameDecoder.Mode mode, boolean binary) {
+                        modes.add(mode + (binary ? " binary" : ""));
+                        decoder[0] = new FrameDecoder(mode, (frame, offset, length) ->
+                                frames.add(new String(frame, offset, length, StandardCharsets.US_ASCII)));
+                    }
+
+                    @Override
+                    public void onInbound(byte[] data, int offset, int length) {
+                        decoder[0].feed(data, offset, length);
+                    }
+
+                    @Override
+                    public void onOutbound(byte[] data, int offset, int length) {
+                    }
+
+                    @Override
+                    public void onIdle() {
+                        decoder[0].flush();
+                    }
+                });
+        assertTrue(stats.complete);
+        assertEquals(6, stats.records);
+        assertEquals("[LENGTH_PREFIXED binary, NEWLINE, LENGTH_PREFIXED]", modes.toString());
+        assertEquals("[BIN, STATUS,ready, ROBOT,5,6,E]", frames.toString());
+    }
+}
@@ -0,0 +1,126 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Arena changes are journaled, compacted and restored after a restart or crash.
+ */
+public class StateCheckpointerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Long enough that nothing is written unless flushed
+    private static final long NEVER = 60_000;
+
+    private static ArenaState reopen(File dir) throws Exception {
+        ArenaState state = new ArenaState(20, 20, 8);
+        StateCheckpointer checkpointer = new StateCheckpointer(dir, NEVER);
+        checkpointer.attach(state).get();
+        checkpointer.close();
+        return state;
+    }
+
+    @Test
+    public void changes_surviveReopening() throws Exception {
+        File dir = folder.newFolder("checkpoint");
+        ArenaState state = new ArenaState(20, 20, 8);
+        StateCheckpointer checkpointer = new StateCheckpointer(dir, NEVER);
+        checkpointer.attach(state).get();
+
+        state.placeObstacle(2, 7, 9);
+        state.setObstacleFace(2, ArenaState.FACE_S);
+        state.applyPose(4, 5, 6);
+        checkpointer.flush().get();
+        // Left without closing, like a crash
+        ArenaState restored = reopen(dir);
+        assertEquals(7, restored.getObstacleX(2));
+        assertEquals(9, restored.getObstacleY(2));
+        assertEquals(ArenaState.FACE_S, restored.getObstacleFace(2));
+        assertEquals(ArenaState.OFF_ARENA, restored.getObstacleX(0));
+        assertEquals(4, restored.getRobotX());
+        assertEquals(6, restored.getRobotDirection());
+    }
+
+    @Test
+    public void onlyChangedFields_areWritten() throws Exception {
+        File dir = folder.newFolder("checkpoint");
+        ArenaState state = new ArenaState(20, 20, 8);
+        StateCheckpointer checkpointer = new StateCheckpointer(dir, NEVER);
+        checkpointer.attach(state).get();
+
+        // Dragged around and dropped, one record for where it ended up
+        for (int x = 0; x < 10; x++) {
+            state.placeObstacle(0, x, 3);
+        }
+        // Moved and back again, nothing to write
+        state.placeObstacle(1, 5, 5);
+        state.removeObstacle(1);
+        checkpointer.flush().get();
+        assertEquals(1, checkpointer.getRecordCount());
+        checkpointer.close();
+
+        assertEquals(9, reopen(dir).getObstacleX(0));
+    }
+
+    @Test
+    public void debouncedChanges_areWrittenWithoutFlush() throws Exception {
+        File dir = folder.newFolder("checkpoint");
+        ArenaState state = new ArenaState(20, 20, 8);
+        StateCheckpointer checkpointer = new StateCheckpointer(dir, 10);
+        checkpointer.attach(state).get();
+
+        state.applyPose(8, 8, 2);
+        for (int i = 0; i < 200 && checkpointer.getRecordCount() == 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, checkpointer.getRecordCount());
+        assertEquals(8, reopen(dir).getRobotX());
+    }
+
+    @Test
+    public void tornJournalTail_isDropped() throws Exception {
+        File dir = folder.newFolder("checkpoint");
+        ArenaState state = new ArenaState(20, 20, 8);
+        StateCheckpointer checkpointer = new StateCheckpointer(dir, NEVER);
+        checkpointer.attach(state).get();
+        state.placeObstacle(3, 12, 13);
+        checkpointer.flush().get();
+        checkpointer.close();
+
+        // Half a batch, as if the app died while appending
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "journal.bin"), true)) {
+            out.write(new byte[]{0x43, 0x4B, 0x4A, 0x42, 0, 0, 0, 0, 0, 0, 0, 9, 0, 0, 0, 8, 2, 0});
+        }
+        ArenaState restored = reopen(dir);
+        assertEquals(12, restored.getObstacleX(3));
+        assertEquals(13, restored.getObstacleY(3));
+    }
+
+    @Test
+    public void longSessions_areCompactedIntoTheSnapshot() throws Exception {
+        File dir = folder.newFolder("checkpoint");
+        ArenaState state = new ArenaState(20, 20, 8);
+        StateCheckpointer checkpointer = new StateCheckpointer(dir, NEVER);
+        checkpointer.attach(state).get();
+        for (int i = 0; i < 2 * StateCheckpointer.COMPACT_AFTER; i++) {
+            state.applyPose(1 + i % 18, 1 + i / 18 % 18, i % 8);
+            checkpointer.flush().get();
+        }
+        checkpointer.close();
+
+        File journal = new File(dir, "journal.bin");
+        assertTrue(journal.length() < StateCheckpointer.COMPACT_AFTER * 26L);
+        int last = 2 * StateCheckpointer.COMPACT_AFTER - 1;
+        ArenaState restored = reopen(dir);
+        assertEquals(1 + last % 18, restored.getRobotX());
+        assertEquals(1 + last / 18 % 18, restored.getRobotY());
+        assertEquals(last % 8, restored.getRobotDirection());
+    }
+}
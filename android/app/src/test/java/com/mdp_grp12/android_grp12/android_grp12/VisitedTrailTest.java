@@ -0,0 +1,96 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The cells CanvasGrid paints as driven over, and the optional ordered path.
+ */
+public class VisitedTrailTest {
+
+    // 400 cells, so the bits span several words
+    private final VisitedTrail trail = new VisitedTrail(20, 20);
+
+    private List<String> walk() {
+        List<String> cells = new ArrayList<>();
+        for (int c = trail.nextVisited(0); c >= 0; c = trail.nextVisited(c + 1)) {
+            cells.add(trail.cellX(c) + "," + trail.cellY(c));
+        }
+        return cells;
+    }
+
+    @Test
+    public void revisitedCell_isCountedOnce() {
+        assertTrue(trail.visit(3, 4));
+        assertFalse(trail.visit(3, 4));
+        assertTrue(trail.isVisited(3, 4));
+        assertFalse(trail.isVisited(4, 3));
+        assertEquals(1, trail.getVisitedCount());
+
+        // The car sweeps past the edge when it turns near a wall
+        assertFalse(trail.visit(-1, 4));
+        assertFalse(trail.visit(3, 20));
+        assertEquals(1, trail.getVisitedCount());
+    }
+
+    @Test
+    public void nextVisited_walksCellsInIndexOrder() {
+        // Visited out of order, on both sides of a word boundary and in the very last cell
+        trail.visit(19, 19);
+        trail.visit(4, 3);
+        trail.visit(3, 3);
+        trail.visit(0, 0);
+        trail.visit(5, 12);
+
+        assertEquals("[0,0, 3,3, 4,3, 5,12, 19,19]", walk().toString());
+        assertEquals(-1, trail.nextVisited(20 * 20));
+    }
+
+    @Test
+    public void clear_forgetsCellsAndPath() {
+        trail.setPathLogging(true);
+        trail.visit(1, 1);
+        trail.visit(1, 2);
+        trail.clear();
+
+        assertEquals(0, trail.getVisitedCount());
+        assertEquals(0, trail.getPathLength());
+        assertFalse(trail.isVisited(1, 1));
+        assertEquals(-1, trail.nextVisited(0));
+        assertTrue("cleared cells are new again", trail.visit(1, 1));
+        assertEquals(1, trail.getPathLength());
+    }
+
+    @Test
+    public void pathLog_keepsEveryStepInOrderPastItsFirstBlock() {
+        trail.visit(0, 0);
+        assertEquals("off by default", 0, trail.getPathLength());
+
+        trail.setPathLogging(true);
+        // Up and down column 2 three times: revisits are logged, standing still is not
+        int steps = 0;
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 0; i < 40; i++) {
+                int y = i < 20 ? i : 39 - i;
+                trail.visit(2, y);
+                trail.visit(2, y);
+                steps++;
+            }
+        }
+
+        // Each turn at the end of the column repeats a cell, those repeats are dropped
+        assertEquals(steps - 5, trail.getPathLength());
+        assertEquals("column 2 and the cell before logging", 21, trail.getVisitedCount());
+        assertEquals(19, trail.getPathY(19));
+        assertEquals(18, trail.getPathY(20));
+        assertEquals(0, trail.getPathY(38));
+        assertEquals(1, trail.getPathY(39));
+        int last = trail.getPathLength() - 1;
+        assertEquals(2, trail.getPathX(last));
+        assertEquals(0, trail.getPathY(last));
+    }
+}
@@ -0,0 +1,39 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * One robot pose through each wire protocol, encoded the way the RPi sends it and decoded
+ * the way the tablet reads it. BinaryCodecTest checks the frame sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BinaryCodecBenchmark {
+    private final ProtocolCodec asciiCodec = new ProtocolCodec();
+    private final BinaryCodec binaryCodec = new BinaryCodec();
+    private final byte[] binary = new byte[BinaryCodec.MAX_SMALL_MESSAGE];
+    private int pose;
+
+    @Benchmark
+    public ProtocolMessage asciiPose() {
+        pose++;
+        byte[] ascii = ("ROBOT,<" + (pose % 20) + ">,<" + (pose % 17) + ">,<N>").getBytes(StandardCharsets.US_ASCII);
+        return asciiCodec.decode(ascii, 0, ascii.length);
+    }
+
+    @Benchmark
+    public ProtocolMessage binaryPose() {
+        pose++;
+        int n = BinaryCodec.encode(new ProtocolMessage.RobotPose(pose % 20, pose % 17, 0), binary, 0);
+        return binaryCodec.decode(binary, 0, n);
+    }
+}
@@ -0,0 +1,82 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * RPi messages per second across a LoopbackTransport, framed, decoded and applied to the
+ * arena state, with a fake RPi writing as fast as it is read. The tablet needs thousands
+ * per second to keep up with a chatty RPi.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class LoopbackTransportBenchmark {
+    // Messages read per invocation, so the score is in messages
+    private static final int MESSAGES = 10_000;
+    private static final String SCRIPT = "ROBOT,5,6,E\nTARGET,3,21\nSTATUS,Looking for target\n"
+            + "COMMAND,SF030\nROBOT,7,6,S\n";
+
+    private LoopbackTransport[] ends;
+    private Thread rpi;
+    private InputStream in;
+    private final byte[] buffer = new byte[1024];
+
+    private final ProtocolCodec codec = new ProtocolCodec();
+    private final ArenaState state = new ArenaState(20, 20, 8);
+    private FrameDecoder decoder;
+    private long frames;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        ends = LoopbackTransport.pair();
+        in = ends[0].getInputStream();
+        byte[] script = SCRIPT.getBytes(StandardCharsets.US_ASCII);
+        OutputStream out = ends[1].getOutputStream();
+        rpi = new Thread(() -> {
+            try {
+                while (true) {
+                    out.write(script);
+                }
+            } catch (IOException e) {
+                // Closed by tearDown()
+            }
+        }, "FakeRpi");
+        rpi.start();
+        decoder = new FrameDecoder(FrameDecoder.Mode.NEWLINE, (frame, offset, length) -> {
+            frames++;
+            state.apply(codec.decode(frame, offset, length));
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        ends[0].close();
+        rpi.join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(MESSAGES)
+    public ArenaState readDecodeApply() throws IOException {
+        long target = frames + MESSAGES;
+        while (frames < target) {
+            int n = in.read(buffer);
+            decoder.feed(buffer, 0, n);
+        }
+        return state;
+    }
+}
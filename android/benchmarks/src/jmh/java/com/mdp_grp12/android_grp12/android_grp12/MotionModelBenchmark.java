@@ -0,0 +1,54 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import com.mdp_grp12.android_grp12.android_grp12.ProtocolMessage.MoveCommand;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Pose math for the STM move commands, and queueing the moves for the animator
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MotionModelBenchmark {
+    private static final MoveCommand.Type[] TYPES = MoveCommand.Type.values();
+
+    private final MotionModel.Step step = new MotionModel.Step();
+    private final MoveQueue queue = new MoveQueue(16);
+    private final MoveQueue.Move move = new MoveQueue.Move();
+    private int next;
+
+    /*
+     * One command of every type in turn, three cells for the straight ones
+     */
+    @Benchmark
+    public MotionModel.Step apply() {
+        MoveCommand.Type type = TYPES[next++ % TYPES.length];
+        return MotionModel.apply(10, 10, next & 3, type, 3, step);
+    }
+
+    /*
+     * A straight run merged into one entry, then a turn, then both taken out
+     */
+    @Benchmark
+    public int queueAndPoll() {
+        MotionModel.apply(1, 1, 0, MoveCommand.Type.SF, 1, step);
+        queue.add(1, 1, 0, step);
+        MotionModel.apply(1, 2, 0, MoveCommand.Type.SF, 1, step);
+        queue.add(1, 2, 0, step);
+        MotionModel.apply(1, 3, 0, MoveCommand.Type.RF, 0, step);
+        queue.add(1, 3, 0, step);
+        int cells = 0;
+        while (queue.poll(move)) {
+            cells += move.straightCells;
+        }
+        return cells;
+    }
+}
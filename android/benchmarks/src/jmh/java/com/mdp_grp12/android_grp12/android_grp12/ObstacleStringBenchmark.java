@@ -0,0 +1,53 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The obstacle strings: the ALG: command sendObstacles() writes to the RPi and the
+ * layout encoding saved and restored for presets
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ObstacleStringBenchmark {
+    @Param({"8", "32"})
+    public int obstacles;
+
+    private ArenaState state;
+    private String encoded;
+
+    @Setup
+    public void setup() {
+        state = new ArenaState(20, 20, obstacles);
+        // Every other obstacle placed, the rest still in the tray
+        for (int i = 0; i < obstacles; i += 2) {
+            state.placeObstacle(i, (i * 7) % 20, (i * 3) % 20);
+            state.setObstacleFace(i, i & 3);
+        }
+        encoded = state.encodeObstacles();
+    }
+
+    @Benchmark
+    public String obstacleCommand() {
+        return state.obstacleCommand();
+    }
+
+    @Benchmark
+    public String encodeObstacles() {
+        return state.encodeObstacles();
+    }
+
+    @Benchmark
+    public boolean decodeObstacles() {
+        return state.decodeObstacles(encoded);
+    }
+}
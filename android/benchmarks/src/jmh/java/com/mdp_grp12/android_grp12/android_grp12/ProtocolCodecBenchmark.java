@@ -0,0 +1,62 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Decoding of every RPi message type, and a burst of mixed frames split across reads
+ * the way RFCOMM delivers them
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ProtocolCodecBenchmark {
+    @Param({"ROBOT,12,7,NE", "TARGET,3,21", "STATUS,Looking for target", "COMMAND,SF030",
+            "PLOT,2,3,N;5,8,E;10,10,S;14,2,W;17,17,N"})
+    public String message;
+
+    private final ProtocolCodec codec = new ProtocolCodec();
+    private byte[] frame;
+
+    private FrameDecoder decoder;
+    private byte[] burst;
+    // RFCOMM reads are at most this long
+    private static final int READ_SIZE = 1024;
+
+    @Setup
+    public void setup() {
+        frame = message.getBytes(StandardCharsets.US_ASCII);
+
+        StringBuilder mixed = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            mixed.append("ROBOT,").append(i % 18 + 1).append(",7,E\n")
+                    .append("TARGET,").append(i % 8).append(",11\n")
+                    .append("COMMAND,SF010\n");
+        }
+        burst = mixed.toString().getBytes(StandardCharsets.US_ASCII);
+        decoder = new FrameDecoder(FrameDecoder.Mode.NEWLINE, null);
+    }
+
+    @Benchmark
+    public ProtocolMessage decode() {
+        return codec.decode(frame, 0, frame.length);
+    }
+
+    @Benchmark
+    public void frameAndDecodeBurst(Blackhole blackhole) {
+        decoder.setListener((bytes, offset, length) -> blackhole.consume(codec.decode(bytes, offset, length)));
+        for (int offset = 0; offset < burst.length; offset += READ_SIZE) {
+            decoder.feed(burst, offset, Math.min(READ_SIZE, burst.length - offset));
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.mdp_grp12.android_grp12.android_grp12;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The trail CanvasGrid keeps: marking the cells of a run and walking them to draw
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class VisitedTrailBenchmark {
+    @Param({"20", "80"})
+    public int size;
+
+    private VisitedTrail trail;
+    private VisitedTrail drawn;
+
+    @Setup
+    public void setup() {
+        trail = new VisitedTrail(size, size);
+        drawn = new VisitedTrail(size, size);
+        lawnmower(drawn);
+    }
+
+    /*
+     * Row by row across the whole arena, every cell visited once
+     */
+    private static int lawnmower(VisitedTrail trail) {
+        int added = 0;
+        for (int y = 0; y < trail.getRows(); y++) {
+            for (int i = 0; i < trail.getCols(); i++) {
+                int x = (y & 1) == 0 ? i : trail.getCols() - 1 - i;
+                if (trail.visit(x, y)) {
+                    added++;
+                }
+            }
+        }
+        return added;
+    }
+
+    @Benchmark
+    public int visitRun() {
+        trail.clear();
+        return lawnmower(trail);
+    }
+
+    @Benchmark
+    public int revisitRun() {
+        // Cells already on the trail, what a robot going back and forth costs
+        return lawnmower(drawn);
+    }
+
+    @Benchmark
+    public int walkForDrawing() {
+        int sum = 0;
+        for (int cell = drawn.nextVisited(0); cell >= 0; cell = drawn.nextVisited(cell + 1)) {
+            sum += drawn.cellX(cell) + drawn.cellY(cell);
+        }
+        return sum;
+    }
+}